@@ -0,0 +1,25 @@
+package net.enabify.activeChat.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ベンチマークの起動クラス
+ * JMHのコマンドラインオプションをそのまま受け取り、割り当て量（gcプロファイラー）を常に計測する
+ *
+ * 例: java -jar target/benchmarks.jar PointsManagerBenchmark -rf json
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {}
+    
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
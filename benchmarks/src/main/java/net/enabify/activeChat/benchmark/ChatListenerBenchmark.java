@@ -0,0 +1,190 @@
+package net.enabify.activeChat.benchmark;
+
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.WriteBehindSaver;
+import io.papermc.paper.event.player.AsyncChatEvent;
+import net.enabify.activeChat.listener.ChatListener;
+import net.enabify.activeChat.listener.LegacyChatListener;
+import net.enabify.activeChat.manager.Leaderboard;
+import net.enabify.activeChat.manager.LoadShedder;
+import net.enabify.activeChat.manager.MuteDispatcher;
+import net.enabify.activeChat.manager.PointsManager;
+import net.enabify.activeChat.manager.ScoreQueue;
+import net.enabify.activeChat.manager.SessionManager;
+import net.enabify.activeChat.manager.SpamDetector;
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.metrics.PluginMetrics;
+import net.enabify.activeChat.testing.BukkitStubs;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatListener.onPlayerChatの全体（スパム検知・ポイント判定・ポイント加算）
+ * ポイントはScoreQueueに追加され、一定件数ごとに同じスレッドでまとめて加算される（保存は書き込み遅延保存にまとめられる）
+ *
+ * チャットイベントごとの比較:
+ * - asyncChatEvent : AsyncChatEventのComponentから平文を1回取り出して判定する（現在の方式）
+ * - legacyChatEvent : 旧AsyncPlayerChatEventの文字列で判定する（リスナー側の処理のみ）
+ * - legacyChatEventWithBridge : 旧イベントのためにサーバーが行う旧形式の文字列への変換とイベントの生成を含める（以前の方式の実際の負荷）
+ * - asyncChatEventShedding : 負荷軽減モードで判定する（事前判定・スパム検知の間引き）
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatListenerBenchmark {
+    private static final int PLAYERS = 300;
+    private static final int DRAIN_EVERY = 1024;
+    
+    private File dataFolder;
+    private PlayerDataManager dataManager;
+    private PointsManager pointsManager;
+    private ScoreQueue scoreQueue;
+    private ChatListener listener;
+    private ChatListener sheddingListener;
+    private LegacyChatListener legacyListener;
+    private AsyncChatEvent[] events;
+    private AsyncPlayerChatEvent[] legacyEvents;
+    private int index;
+    private int chats;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataFolder = Files.createTempDirectory("activechat-bench").toFile();
+        Plugin plugin = BukkitStubs.plugin();
+        dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, false));
+        // 定期保存はスタブで実行されず、未保存数の閾値にも達しない
+        new WriteBehindSaver(plugin, dataManager, 30000, Integer.MAX_VALUE).start();
+        pointsManager = new PointsManager();
+        // 一定間隔の取り出しはスタブで実行されないため、計測中にDRAIN_EVERY件ごとに取り出す
+        scoreQueue = new ScoreQueue(plugin, dataManager, new Leaderboard(dataFolder, Clock.systemUTC(), ZoneOffset.UTC),
+            8192, 50);
+        // プレイヤーは参加イベントを経ないため、チャット状態は下で作成する
+        SessionManager sessions = new SessionManager(8, pointsManager.getRuleCount());
+        SessionManager sheddingSessions = new SessionManager(8, pointsManager.getRuleCount());
+        listener = new ChatListener(pointsManager, sessions,
+            new SpamDetector(TimeUnit.SECONDS.toMillis(60), 3), new MuteDispatcher(plugin, "mute %player%"),
+            Clock.systemUTC(), new PluginMetrics(), scoreQueue, new ActivityLog(plugin, Clock.systemUTC(), null),
+            new LoadShedder(plugin, Clock.systemUTC(), scoreQueue, settings(Integer.MAX_VALUE), 1000));
+        // 閾値0のため最初の確認で負荷軽減モードになる（チャット状態は別に持つ）
+        LoadShedder shedder = new LoadShedder(plugin, Clock.systemUTC(), scoreQueue, settings(0), 1000);
+        shedder.check();
+        sheddingListener = new ChatListener(pointsManager, sheddingSessions,
+            new SpamDetector(TimeUnit.SECONDS.toMillis(60), 3), new MuteDispatcher(plugin, "mute %player%"),
+            Clock.systemUTC(), new PluginMetrics(), scoreQueue, new ActivityLog(plugin, Clock.systemUTC(), null), shedder);
+        
+        // プレイヤーとメッセージの組を事前に作り、計測中はイベントを生成しない
+        legacyListener = new LegacyChatListener(listener);
+        events = new AsyncChatEvent[PLAYERS * ChatMessages.MIX.length];
+        legacyEvents = new AsyncPlayerChatEvent[events.length];
+        Player[] players = new Player[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = BukkitStubs.player(UUID.randomUUID(), "player" + i);
+            sessions.open(players[i].getUniqueId());
+            sheddingSessions.open(players[i].getUniqueId());
+        }
+        for (int i = 0; i < events.length; i++) {
+            // 周回ごとにメッセージをずらし、各プレイヤーが全メッセージを順番に送るようにする
+            int player = i % PLAYERS;
+            int round = i / PLAYERS;
+            String message = ChatMessages.MIX[(player + round) % ChatMessages.MIX.length];
+            Component component = Component.text(message);
+            events[i] = new AsyncChatEvent(true, players[player], new HashSet<>(), null, component, component, null);
+            legacyEvents[i] = new AsyncPlayerChatEvent(true, players[player], message, new HashSet<>());
+        }
+    }
+    
+    /**
+     * 設定ファイルの既定値と同じ負荷軽減モードの設定（切り替えの閾値のみ指定）
+     */
+    private static LoadShedder.Settings settings(int enterChatsPerSecond) {
+        return new LoadShedder.Settings(enterChatsPerSecond, Long.MAX_VALUE, 50, 200,
+            TimeUnit.SECONDS.toMillis(30), 4, 1, 5000);
+    }
+    
+    @Setup(Level.Iteration)
+    public void openJoinWindows() {
+        pointsManager.recordNewPlayerJoin();
+        pointsManager.recordPlayerJoin();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scoreQueue.stop();
+        dataManager.close();
+        File[] files = dataFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dataFolder.delete();
+    }
+    
+    @Benchmark
+    public void asyncChatEvent() {
+        index = (index + 1) % events.length;
+        listener.onPlayerChat(events[index]);
+        drainPeriodically();
+    }
+    
+    @Benchmark
+    public void asyncChatEventShedding() {
+        index = (index + 1) % events.length;
+        sheddingListener.onPlayerChat(events[index]);
+        drainPeriodically();
+    }
+    
+    @Benchmark
+    public void legacyChatEvent() {
+        index = (index + 1) % legacyEvents.length;
+        legacyListener.onPlayerChat(legacyEvents[index]);
+        drainPeriodically();
+    }
+    
+    @Benchmark
+    public void legacyChatEventWithBridge() {
+        index = (index + 1) % events.length;
+        AsyncChatEvent event = events[index];
+        // 旧イベントのリスナーがある場合にサーバーがメッセージごとに行う処理
+        String legacy = LegacyComponentSerializer.legacySection().serialize(event.message());
+        legacyListener.onPlayerChat(new AsyncPlayerChatEvent(true, event.getPlayer(), legacy, new HashSet<>()));
+        drainPeriodically();
+    }
+    
+    /**
+     * 加算待ちのポイントを加算する（加算の負荷もチャット1件あたりに含めて計測する）
+     */
+    private void drainPeriodically() {
+        if (++chats % DRAIN_EVERY == 0) {
+            scoreQueue.drain();
+        }
+    }
+}
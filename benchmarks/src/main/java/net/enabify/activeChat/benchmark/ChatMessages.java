@@ -0,0 +1,36 @@
+package net.enabify.activeChat.benchmark;
+
+/**
+ * ベンチマーク用のチャットメッセージ
+ * 日本語と英語、キーワードを含むものと含まないもの、短文と長文を混ぜている
+ */
+final class ChatMessages {
+    static final String[] MIX = {
+        "こんにちは！",
+        "082",
+        "おはようございます",
+        "初見です、よろしくお願いします",
+        "新規さんいらっしゃい！",
+        "kon",
+        "ohayo everyone",
+        "52",
+        "58",
+        "08",
+        "今日のイベントは何時からですか？",
+        "ダイヤ見つけた！！！",
+        "anyone want to trade iron for redstone?",
+        "brb",
+        "lol",
+        "さっきのボス戦すごかったね、みんなお疲れさま",
+        "where is the spawn shop located?",
+        "草",
+        "I just joined, this server looks great",
+        "明日もログインするのでよろしくです",
+        "gg",
+        "建築手伝ってくれる人いませんか",
+        "konbanwa",
+        "こんばんは～",
+    };
+    
+    private ChatMessages() {}
+}
@@ -0,0 +1,156 @@
+package net.enabify.activeChat.benchmark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 参加・退出・チャットの記録（トレース）
+ * 1行に1イベントを、トレース開始からの経過ミリ秒の順に書く
+ * <pre>
+ * 0 join Steve new
+ * 1500 chat Alex 082 よろしくお願いします
+ * 60000 quit Steve
+ * </pre>
+ * joinの末尾のnewは初参加（hasPlayedBeforeがfalse）を表す
+ */
+final class ChatTrace {
+    enum Type { JOIN, QUIT, CHAT }
+    
+    /**
+     * @param argument joinの場合は"new"または空文字、chatの場合はメッセージ
+     */
+    record Event(long offsetMillis, Type type, String player, String argument) {
+        boolean newPlayer() {
+            return type == Type.JOIN && argument.equals("new");
+        }
+    }
+    
+    private ChatTrace() {}
+    
+    static List<Event> read(Path file) throws IOException {
+        List<Event> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(" ", 4);
+                if (parts.length < 3) {
+                    throw new IOException(lineNumber + "行目の形式が不正です: " + line);
+                }
+                Type type;
+                try {
+                    type = Type.valueOf(parts[1].toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(lineNumber + "行目のイベント種別が不正です: " + parts[1]);
+                }
+                events.add(new Event(Long.parseLong(parts[0]), type, parts[2], parts.length > 3 ? parts[3] : ""));
+            }
+        }
+        // 記録の順序が前後していても時刻順に再生する（同時刻は記録順）
+        events.sort(Comparator.comparingLong(Event::offsetMillis));
+        return events;
+    }
+    
+    static void write(List<Event> events, Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Event event : events) {
+                writer.write(event.offsetMillis() + " " + event.type().name().toLowerCase(Locale.ROOT)
+                    + " " + event.player());
+                if (!event.argument().isEmpty()) {
+                    writer.write(" " + event.argument());
+                }
+                writer.newLine();
+            }
+        }
+    }
+    
+    /**
+     * ピーク時を模したトレースを生成する
+     * 1. 最初の60秒で全員が参加する（約5%は初参加）
+     * 2. 参加を見た各プレイヤーが数秒以内に挨拶・歓迎を送る
+     * 3. 約5分間、各プレイヤーが15〜45秒おきに雑談する
+     * 4. 約2割のプレイヤーが途中で退出し、数十秒〜8分後に再参加する
+     * @param players プレイヤー数
+     * @param seed 乱数の種（同じ値なら同じトレースになる）
+     */
+    static List<Event> peak(int players, long seed) {
+        Random random = new Random(seed);
+        List<Event> events = new ArrayList<>();
+        long chatterEnd = 360_000;
+        for (int i = 0; i < players; i++) {
+            String name = "player" + i;
+            long joinAt = random.nextInt(60_000);
+            events.add(new Event(joinAt, Type.JOIN, name, random.nextInt(100) < 5 ? "new" : ""));
+            
+            // 参加直後の挨拶の波
+            long greetAt = joinAt + 500 + random.nextInt(10_000);
+            events.add(new Event(greetAt, Type.CHAT, name, random.nextBoolean() ? "082" : "こんにちは！"));
+            
+            // 雑談
+            long online = joinAt;
+            long quitAt = random.nextInt(100) < 20 ? 120_000 + random.nextInt(240_000) : Long.MAX_VALUE;
+            for (long t = greetAt + 15_000 + random.nextInt(30_000); t < chatterEnd; t += 15_000 + random.nextInt(30_000)) {
+                if (t >= quitAt && online <= quitAt) {
+                    // 退出と再参加
+                    events.add(new Event(quitAt, Type.QUIT, name, ""));
+                    online = quitAt + 30_000 + random.nextInt(450_000);
+                    events.add(new Event(online, Type.JOIN, name, ""));
+                }
+                if (t >= online) {
+                    events.add(new Event(t, Type.CHAT, name, ChatMessages.MIX[random.nextInt(ChatMessages.MIX.length)]));
+                }
+            }
+        }
+        events.sort(Comparator.comparingLong(Event::offsetMillis));
+        return events;
+    }
+    
+    /**
+     * 各時間枠（3秒 / 30秒 / 60秒 / 5分）の境界を確かめるトレース
+     * 期待値はTraceReplayのverifyで確認する
+     */
+    static List<Event> windows() {
+        return List.of(
+            new Event(0, Type.JOIN, "Alice", "new"),
+            new Event(0, Type.JOIN, "Bob", ""),
+            new Event(0, Type.JOIN, "Carol", ""),
+            // 通常+1 / 歓迎+50 / 挨拶+5（「082」は挨拶の「08」にも一致する）
+            new Event(1_000, Type.CHAT, "Bob", "082よろしく"),
+            // 3秒未満・30秒未満のため0
+            new Event(2_000, Type.CHAT, "Bob", "こんにちはです"),
+            // 通常+1（挨拶は30秒未満のため0）
+            new Event(5_000, Type.CHAT, "Bob", "こんにちは皆さん"),
+            // 前回から30秒経過、参加から60秒以内：通常+1 / 歓迎+50 / 挨拶+5
+            new Event(31_001, Type.CHAT, "Bob", "082 welcome!"),
+            // 参加から60秒を過ぎたため通常+1のみ
+            new Event(61_001, Type.CHAT, "Bob", "082 again!!"),
+            // 5分以内の再参加は参加として扱わない
+            new Event(70_000, Type.QUIT, "Carol", ""),
+            new Event(100_000, Type.JOIN, "Carol", ""),
+            new Event(100_500, Type.CHAT, "Bob", "こんばんは皆さん"),
+            // 新たな参加で挨拶の時間枠が開く：通常+1 / 挨拶+5
+            new Event(400_000, Type.JOIN, "Dave", ""),
+            new Event(400_500, Type.CHAT, "Bob", "こんにちは！！"),
+            // 退出から5分を過ぎた再参加は参加として扱う
+            new Event(410_000, Type.QUIT, "Carol", ""),
+            new Event(790_000, Type.CHAT, "Bob", "おはようございます"),
+            new Event(800_000, Type.JOIN, "Carol", ""),
+            new Event(800_500, Type.CHAT, "Bob", "おはようございます"),
+            // 再参加時に貯めたポイントが付与される
+            new Event(900_000, Type.QUIT, "Bob", ""),
+            new Event(900_500, Type.JOIN, "Bob", ""));
+    }
+}
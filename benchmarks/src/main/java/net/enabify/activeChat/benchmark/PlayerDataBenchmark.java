@@ -0,0 +1,83 @@
+package net.enabify.activeChat.benchmark;
+
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PointsStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * playerPoints.jsonの保存（saveData）
+ * 1回の処理が長いため、1回ずつの所要時間を計測する（起動時の読み込みはStartupBenchmark）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PlayerDataBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int players;
+    
+    /**
+     * 遅延読み込み（起動時は索引だけを作る）を使うかどうか
+     */
+    @Param({"false", "true"})
+    public boolean lazyLoad;
+    
+    private File dataFolder;
+    private PlayerDataManager dataManager;
+    
+    @Setup(Level.Trial)
+    public void createData() throws IOException {
+        dataFolder = Files.createTempDirectory("activechat-bench").toFile();
+        PointsStore store = new JsonPointsStore(dataFolder, false);
+        Random random = new Random(players);
+        for (int i = 0; i < players; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            store.add(uuid, PointsStore.NORMAL_CHAT, random.nextInt(500));
+            store.add(uuid, PointsStore.GREETING, random.nextInt(100) * 5);
+            store.add(uuid, PointsStore.WELCOME_NEW_PLAYER, random.nextInt(10) * 50);
+        }
+        store.save();
+        store.close();
+        dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, lazyLoad));
+    }
+    
+    @TearDown(Level.Trial)
+    public void deleteData() {
+        dataManager.close();
+        File[] files = dataFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dataFolder.delete();
+    }
+    
+    @Benchmark
+    public void saveData() {
+        dataManager.saveData();
+    }
+
+}
@@ -0,0 +1,69 @@
+package net.enabify.activeChat.benchmark;
+
+import net.enabify.activeChat.manager.ChatSession;
+import net.enabify.activeChat.manager.PointsManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PointsManagerのポイント判定
+ * 参加から60秒以内（キーワード判定が有効な状態）で、300人分のチャット状態を順番に使う
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PointsManagerBenchmark {
+    private static final int PLAYERS = 300;
+    
+    private PointsManager pointsManager;
+    private ChatSession[] sessions;
+    private int index;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        pointsManager = new PointsManager();
+        sessions = new ChatSession[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            sessions[i] = new ChatSession(8, pointsManager.getRuleCount());
+        }
+    }
+    
+    @Setup(Level.Iteration)
+    public void openJoinWindows() {
+        // 新規さん歓迎・挨拶の判定が行われるよう、参加を記録しておく
+        pointsManager.recordNewPlayerJoin();
+        pointsManager.recordPlayerJoin();
+    }
+    
+    private String nextMessage() {
+        index++;
+        return ChatMessages.MIX[index % ChatMessages.MIX.length];
+    }
+    
+    private ChatSession nextSession() {
+        return sessions[index % PLAYERS];
+    }
+    
+    /**
+     * 全ルール（通常・新規さん歓迎・挨拶）を1回で判定する
+     */
+    @Benchmark
+    public long evaluateChat() {
+        String message = nextMessage();
+        return pointsManager.evaluateChat(nextSession(), message, System.currentTimeMillis());
+    }
+}
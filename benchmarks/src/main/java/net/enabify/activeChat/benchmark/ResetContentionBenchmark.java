@@ -0,0 +1,109 @@
+package net.enabify.activeChat.benchmark;
+
+import net.enabify.activeChat.data.JournalPointsStore;
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.MappedPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PlayerPoints;
+import net.enabify.activeChat.data.PointsJournal;
+import net.enabify.activeChat.data.PointsStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 競合時のgetAndResetPoints
+ * チャットによる加算（6スレッド）、参加時の取得リセット（1スレッド）、
+ * 書き込み遅延保存（1スレッド）を同じプレイヤー群に対して同時に実行する
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResetContentionBenchmark {
+    private static final int PLAYERS = 1024;
+    
+    @Param({"json", "journal", "mapped"})
+    public String storage;
+    
+    private File dataFolder;
+    private PlayerDataManager dataManager;
+    private UUID[] players;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataFolder = Files.createTempDirectory("activechat-bench").toFile();
+        PointsStore store = switch (storage) {
+            case "journal" -> new JournalPointsStore(new PointsJournal(dataFolder, 1 << 20));
+            case "mapped" -> new MappedPointsStore(new File(dataFolder, "playerPoints.dat"), PLAYERS * 2);
+            default -> new JsonPointsStore(dataFolder, false);
+        };
+        dataManager = new PlayerDataManager(store);
+        players = new UUID[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = UUID.randomUUID();
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataManager.close();
+        deleteRecursively(dataFolder);
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+    
+    private UUID randomPlayer() {
+        return players[ThreadLocalRandom.current().nextInt(PLAYERS)];
+    }
+    
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(6)
+    public void addPoints() {
+        dataManager.addNormalChatPoints(randomPlayer(), 1);
+    }
+    
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public PlayerPoints getAndResetPoints() {
+        return dataManager.getAndResetPoints(randomPlayer());
+    }
+    
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public boolean flush() {
+        return dataManager.flush();
+    }
+}
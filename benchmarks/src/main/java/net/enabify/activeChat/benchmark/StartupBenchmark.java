@@ -0,0 +1,111 @@
+package net.enabify.activeChat.benchmark;
+
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PlayerPoints;
+import net.enabify.activeChat.data.PointsStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 起動時のplayerPoints.jsonの読み込み（onEnableでPlayerDataManagerを作るまで）
+ * - enable: ストアを作って戻るまで（onEnableが待つ時間。遅延読み込みでは索引の作成を待たない）
+ * - enableAndLookup: 続けて1人分のポイントを取得するまで（遅延読み込みでは索引の完成とレコードの読み込みを含む）
+ * - enableFully: すべてのプレイヤーを読み込み終わるまで（遅延読み込みでは索引の完成まで）
+ * 起動時の割り当て量はgcプロファイラーのgc.alloc.rate.normで確認する
+ *
+ * 例: java -jar target/benchmarks.jar StartupBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StartupBenchmark {
+    @Param({"1000000"})
+    public int players;
+    
+    /**
+     * 遅延読み込み（起動時は索引だけを作る）を使うかどうか
+     */
+    @Param({"false", "true"})
+    public boolean lazyLoad;
+    
+    private File dataFolder;
+    // 起動直後に取得するプレイヤー（最後に追加したプレイヤー）
+    private UUID lastPlayer;
+    private PlayerDataManager dataManager;
+    
+    @Setup(Level.Trial)
+    public void createData() throws IOException {
+        dataFolder = Files.createTempDirectory("activechat-startup").toFile();
+        PointsStore store = new JsonPointsStore(dataFolder, false);
+        Random random = new Random(players);
+        for (int i = 0; i < players; i++) {
+            lastPlayer = new UUID(random.nextLong(), random.nextLong());
+            store.add(lastPlayer, PointsStore.NORMAL_CHAT, 1 + random.nextInt(500));
+            store.add(lastPlayer, PointsStore.GREETING, random.nextInt(100) * 5);
+            store.add(lastPlayer, PointsStore.WELCOME_NEW_PLAYER, random.nextInt(10) * 50);
+        }
+        store.save();
+        store.close();
+    }
+    
+    @TearDown(Level.Invocation)
+    public void closeStore() {
+        if (dataManager != null) {
+            dataManager.close();
+            dataManager = null;
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void deleteData() {
+        File[] files = dataFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dataFolder.delete();
+    }
+    
+    @Benchmark
+    public PlayerDataManager enable() {
+        dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, lazyLoad));
+        return dataManager;
+    }
+    
+    @Benchmark
+    public PlayerPoints enableAndLookup() {
+        dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, lazyLoad));
+        return dataManager.getPoints(lastPlayer);
+    }
+    
+    @Benchmark
+    public boolean enableFully() {
+        JsonPointsStore store = new JsonPointsStore(dataFolder, lazyLoad);
+        dataManager = new PlayerDataManager(store);
+        // 遅延読み込みの場合は索引の完成を待つ
+        return store.isEmpty();
+    }
+}
@@ -0,0 +1,342 @@
+package net.enabify.activeChat.benchmark;
+
+import io.papermc.paper.event.player.AsyncChatEvent;
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PointsStore;
+import net.enabify.activeChat.data.WriteBehindSaver;
+import net.enabify.activeChat.listener.ChatListener;
+import net.enabify.activeChat.listener.JoinListener;
+import net.enabify.activeChat.manager.ExpiryWheel;
+import net.enabify.activeChat.manager.KeywordMatcher;
+import net.enabify.activeChat.manager.Leaderboard;
+import net.enabify.activeChat.manager.LoadShedder;
+import net.enabify.activeChat.manager.MuteDispatcher;
+import net.enabify.activeChat.manager.PayoutQueue;
+import net.enabify.activeChat.manager.PointsManager;
+import net.enabify.activeChat.manager.ScoreQueue;
+import net.enabify.activeChat.manager.ScoringPlan;
+import net.enabify.activeChat.manager.ScoringRule;
+import net.enabify.activeChat.manager.SessionManager;
+import net.enabify.activeChat.manager.SpamDetector;
+import net.enabify.activeChat.metrics.ActivityFile;
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.metrics.LatencyHistogram;
+import net.enabify.activeChat.metrics.PluginMetrics;
+import net.enabify.activeChat.testing.CountingPointsStore;
+import net.enabify.activeChat.testing.SimulatedClock;
+import net.enabify.activeChat.testing.SimulatedServer;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 参加・退出・チャットのトレースをサーバー無しで再生する負荷ハーネス
+ * JoinListener / ChatListener / PayoutQueue / WriteBehindSaver を模擬時計と模擬スケジューラーで動かすため、
+ * 実時間より速く再生でき、処理速度・タスク数・保存回数・獲得ポイントを集計できる
+ *
+ * 例:
+ *   java -cp target/benchmarks.jar net.enabify.activeChat.benchmark.TraceReplay verify
+ *   java -cp target/benchmarks.jar net.enabify.activeChat.benchmark.TraceReplay peak 3000
+ *   java -cp target/benchmarks.jar net.enabify.activeChat.benchmark.TraceReplay generate 300 peak.trace
+ *   java -cp target/benchmarks.jar net.enabify.activeChat.benchmark.TraceReplay replay peak.trace
+ */
+public final class TraceReplay {
+    // 模擬時計の開始時刻（時間枠の初期値0と区別できる十分大きな値）
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    // 最後のイベントの後、付与や保存が終わるまで進める時間
+    private static final long SETTLE_MILLIS = 10_000;
+    
+    private final SimulatedClock clock = new SimulatedClock(START_MILLIS);
+    private final SimulatedServer server = new SimulatedServer(clock);
+    private final PluginMetrics metrics = new PluginMetrics();
+    private final File dataFolder;
+    private final CountingPointsStore store;
+    private final PlayerDataManager dataManager;
+    private final WriteBehindSaver writeBehindSaver;
+    private final PayoutQueue payoutQueue;
+    private final Leaderboard leaderboard;
+    private final ScoreQueue scoreQueue;
+    private final LoadShedder loadShedder;
+    private final ActivityLog activity;
+    private final JoinListener joinListener;
+    private final ChatListener chatListener;
+    
+    private final Map<String, TracePlayer> players = new HashMap<>();
+    private final Map<UUID, Long> paid = new HashMap<>();
+    private long payouts;
+    private long ignoredEvents;
+    private long activityChats;
+    
+    private TraceReplay() throws IOException {
+        // 設定ファイルの既定値と同じ構成で組み立てる
+        Plugin plugin = server.plugin();
+        dataFolder = Files.createTempDirectory("activechat-replay").toFile();
+        store = new CountingPointsStore(new JsonPointsStore(dataFolder, false));
+        dataManager = new PlayerDataManager(store, metrics);
+        writeBehindSaver = new WriteBehindSaver(plugin, dataManager, TimeUnit.SECONDS.toMillis(30), 500);
+        writeBehindSaver.start();
+        
+        ExpiryWheel expiryWheel = new ExpiryWheel(plugin, 1000, clock);
+        expiryWheel.start();
+        PointsManager pointsManager = new PointsManager(
+            ScoringPlan.compile(ScoringRule.defaults(KeywordMatcher.defaultKeywords())), clock, 32, expiryWheel);
+        SessionManager sessionManager = new SessionManager(8, pointsManager.getRuleCount());
+        payoutQueue = new PayoutQueue(plugin, dataManager, (uuid, playerName, amount) -> {
+            payouts++;
+            paid.merge(uuid, amount, Long::sum);
+            return true;
+        }, 20, 1000, clock);
+        payoutQueue.start();
+        leaderboard = new Leaderboard(dataFolder, clock, ZoneOffset.UTC);
+        activity = new ActivityLog(plugin, clock, new ActivityFile(new File(dataFolder, "activity.dat"), ActivityLog.COLUMNS));
+        activity.start();
+        scoreQueue = new ScoreQueue(plugin, dataManager, leaderboard, 8192, 50);
+        scoreQueue.start();
+        loadShedder = new LoadShedder(plugin, clock, scoreQueue,
+            new LoadShedder.Settings(100, 500, 50, 200, TimeUnit.SECONDS.toMillis(30), 4, 1, 5000), 1000);
+        loadShedder.start();
+        chatListener = new ChatListener(pointsManager, sessionManager,
+            new SpamDetector(TimeUnit.SECONDS.toMillis(60), 3),
+            new MuteDispatcher(plugin, "mute %player% 5m スパムを検知しました"), clock, metrics, scoreQueue, activity,
+            loadShedder);
+        joinListener = new JoinListener(plugin, pointsManager, sessionManager, payoutQueue, clock, expiryWheel, activity);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "verify";
+        switch (mode) {
+            case "verify" -> {
+                if (!verify()) {
+                    System.exit(1);
+                }
+            }
+            case "peak" -> {
+                int players = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+                long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+                new TraceReplay().run("peak(" + players + "人)", ChatTrace.peak(players, seed)).print();
+            }
+            case "replay" -> {
+                if (args.length < 2) {
+                    usage();
+                    return;
+                }
+                Path file = Path.of(args[1]);
+                new TraceReplay().run(file.toString(), ChatTrace.read(file)).print();
+            }
+            case "generate" -> {
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+                List<ChatTrace.Event> events = ChatTrace.peak(Integer.parseInt(args[1]), seed);
+                ChatTrace.write(events, Path.of(args[2]));
+                System.out.println(events.size() + "件のイベントを" + args[2] + "に書き出しました。");
+            }
+            default -> usage();
+        }
+    }
+    
+    private static void usage() {
+        System.out.println("使い方: TraceReplay verify | peak [人数] [乱数の種] | replay <ファイル> | generate <人数> <ファイル> [乱数の種]");
+    }
+    
+    /**
+     * 時間枠の境界を確かめるトレースを再生し、獲得・付与ポイントを期待値と比べる
+     * @return すべて期待値どおりの場合はtrue
+     */
+    private static boolean verify() throws IOException {
+        TraceReplay replay = new TraceReplay();
+        Report report = replay.run("windows", ChatTrace.windows());
+        report.print();
+        
+        UUID bob = uuid("Bob");
+        boolean ok = replay.expect("Bobの通常チャット", 8, replay.store.awarded(bob, PointsStore.NORMAL_CHAT))
+            & replay.expect("Bobの挨拶", 20, replay.store.awarded(bob, PointsStore.GREETING))
+            & replay.expect("Bobの新規さん歓迎", 100, replay.store.awarded(bob, PointsStore.WELCOME_NEW_PLAYER))
+            & replay.expect("Bobへの付与", 128, replay.paid.getOrDefault(bob, 0L))
+            & replay.expect("付与後のBobの残り", 0, report.remaining.getOrDefault(bob, 0L))
+            & replay.expect("全体の獲得", 128, report.awardedTotal())
+            & replay.expectTop(bob, 128)
+            & replay.expect("活動記録のチャット数", replay.metrics.getChatsEvaluated(), replay.activityChats);
+        System.out.println(ok ? "すべての時間枠が期待どおりです。" : "期待値と一致しない項目があります。");
+        return ok;
+    }
+    
+    /**
+     * 累計ランキングの1位が期待どおりのプレイヤーとポイントかどうか
+     */
+    private boolean expectTop(UUID uuid, long points) {
+        List<Leaderboard.Entry> top = leaderboard.top(Leaderboard.Period.LIFETIME, Leaderboard.TOTAL, 1, 1).entries();
+        boolean first = expect("ランキング1位", 1, top.isEmpty() || !top.get(0).uuid().equals(uuid) ? 0 : 1);
+        return first & expect("ランキング1位のポイント", points, top.isEmpty() ? 0 : top.get(0).points());
+    }
+    
+    private boolean expect(String label, long expected, long actual) {
+        if (expected == actual) {
+            System.out.println("  OK " + label + ": " + actual);
+            return true;
+        }
+        System.out.println("  NG " + label + ": 期待値 " + expected + " / 実際 " + actual);
+        return false;
+    }
+    
+    /**
+     * トレースを再生する
+     * 各イベントの時刻まで模擬時計を進め、その間に予定されたタスク（付与・定期保存など）を実行してから
+     * イベントをリスナーに渡す
+     */
+    private Report run(String name, List<ChatTrace.Event> events) throws IOException {
+        long started = System.nanoTime();
+        long lastOffset = 0;
+        for (ChatTrace.Event event : events) {
+            lastOffset = event.offsetMillis();
+            server.advanceTo(START_MILLIS + lastOffset);
+            TracePlayer player = players.computeIfAbsent(event.player(), TracePlayer::new);
+            switch (event.type()) {
+                case JOIN -> {
+                    if (player.online) {
+                        ignoredEvents++;
+                        continue;
+                    }
+                    player.online = true;
+                    player.playedBefore[0] = !event.newPlayer() || player.joined;
+                    joinListener.onPlayerJoin(new PlayerJoinEvent(player.player, ""));
+                    player.joined = true;
+                }
+                case QUIT -> {
+                    if (!player.online) {
+                        ignoredEvents++;
+                        continue;
+                    }
+                    player.online = false;
+                    joinListener.onPlayerQuit(new PlayerQuitEvent(player.player, ""));
+                }
+                case CHAT -> {
+                    if (!player.online) {
+                        ignoredEvents++;
+                        continue;
+                    }
+                    Component message = Component.text(event.argument());
+                    chatListener.onPlayerChat(new AsyncChatEvent(true, player.player, new HashSet<>(), null, message, message, null));
+                }
+            }
+        }
+        long replayNanos = System.nanoTime() - started;
+        
+        // 残りの付与と保存を済ませる
+        server.advanceTo(START_MILLIS + lastOffset + SETTLE_MILLIS);
+        loadShedder.stop();
+        scoreQueue.stop();
+        payoutQueue.stop();
+        writeBehindSaver.shutdown(5000, new File(dataFolder, "playerPoints.recovery.json"));
+        // 活動記録（ファイルに書き込み済みの分とリングバッファの分）を1つにまとめて集計する
+        long fromMinute = TimeUnit.MILLISECONDS.toMinutes(START_MILLIS);
+        long toMinute = activity.getCurrentMinute() + 1;
+        activityChats = activity.query(fromMinute, toMinute, (int) (toMinute - fromMinute))[0][ActivityLog.CHATS];
+        activity.stop();
+        Map<UUID, Long> remaining = new HashMap<>();
+        for (TracePlayer player : players.values()) {
+            remaining.put(player.uuid, dataManager.getPoints(player.uuid).getTotal());
+        }
+        dataManager.close();
+        deleteDataFolder();
+        return new Report(name, events.size(), ignoredEvents, lastOffset, replayNanos, remaining);
+    }
+    
+    private void deleteDataFolder() {
+        File[] files = dataFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dataFolder.delete();
+    }
+    
+    /**
+     * オフラインモードのサーバーと同じ方法でプレイヤー名からUUIDを作る
+     */
+    private static UUID uuid(String name) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private final class TracePlayer {
+        final UUID uuid;
+        // hasPlayedBeforeの値（参加イベントごとに切り替える）
+        final boolean[] playedBefore = {true};
+        final Player player;
+        boolean online;
+        boolean joined;
+        
+        TracePlayer(String name) {
+            this.uuid = uuid(name);
+            this.player = server.player(uuid, name, playedBefore);
+        }
+    }
+    
+    private final class Report {
+        final String name;
+        final int events;
+        final long ignored;
+        final long simulatedMillis;
+        final long replayNanos;
+        final Map<UUID, Long> remaining;
+        
+        Report(String name, int events, long ignored, long simulatedMillis, long replayNanos, Map<UUID, Long> remaining) {
+            this.name = name;
+            this.events = events;
+            this.ignored = ignored;
+            this.simulatedMillis = simulatedMillis;
+            this.replayNanos = replayNanos;
+            this.remaining = remaining;
+        }
+        
+        long awardedTotal() {
+            return store.awarded(PointsStore.NORMAL_CHAT) + store.awarded(PointsStore.GREETING)
+                + store.awarded(PointsStore.WELCOME_NEW_PLAYER);
+        }
+        
+        void print() {
+            double seconds = replayNanos / 1e9;
+            System.out.printf("トレース: %s（%d件, 無視 %d件, %d人）%n", name, events, ignored, players.size());
+            System.out.printf("再生時間: %.3f秒 / 模擬時間: %.1f秒（%.0f倍速）%n",
+                seconds, simulatedMillis / 1000.0, simulatedMillis / 1000.0 / Math.max(seconds, 1e-9));
+            System.out.printf("処理速度: %.0f イベント/秒%n", events / Math.max(seconds, 1e-9));
+            System.out.println("チャット判定: " + latency(metrics.getChatLatency()) + " / 保存: " + latency(metrics.getSaveLatency()));
+            System.out.println("タスク: " + server.summary());
+            System.out.printf("保存: 書き込み %d回 / スキップ %d回 / 統合 %d件%n",
+                dataManager.getSavesWritten(), dataManager.getSavesSkipped(), dataManager.getUpdatesMerged());
+            System.out.printf("負荷軽減: 切り替え %d回 / 事前判定で省略 %d件 / スパム検知の省略 %d件 / ミュート %d回%n",
+                loadShedder.getActivations(), loadShedder.getPrefiltered(), loadShedder.getSpamChecksSkipped(),
+                metrics.getSpamMutes());
+            System.out.printf("獲得ポイント: 通常 %d / 挨拶 %d / 新規さん歓迎 %d（合計 %d）%n",
+                store.awarded(PointsStore.NORMAL_CHAT), store.awarded(PointsStore.GREETING),
+                store.awarded(PointsStore.WELCOME_NEW_PLAYER), awardedTotal());
+            System.out.printf("付与: %d回 / %dpt%n", payouts,
+                paid.values().stream().mapToLong(Long::longValue).sum());
+        }
+        
+        private static String latency(LatencyHistogram histogram) {
+            return String.format("p50 %.3fms / p99 %.3fms / 最大 %.3fms",
+                histogram.getPercentileNanos(0.5) / 1e6, histogram.getPercentileNanos(0.99) / 1e6,
+                histogram.getMaxNanos() / 1e6);
+        }
+    }
+}
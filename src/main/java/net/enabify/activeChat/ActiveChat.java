@@ -1,11 +1,59 @@
 package net.enabify.activeChat;
 
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.enabify.activeChat.data.JournalPointsStore;
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.MappedPointsStore;
+import net.enabify.activeChat.data.PayoutClaims;
 import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PointsJournal;
+import net.enabify.activeChat.data.PointsStore;
+import net.enabify.activeChat.data.SqlPointsStore;
+import net.enabify.activeChat.command.ActiveChatCommand;
+import net.enabify.activeChat.command.PointsCommand;
+import net.enabify.activeChat.data.WriteBehindSaver;
 import net.enabify.activeChat.listener.ChatListener;
 import net.enabify.activeChat.listener.JoinListener;
+import net.enabify.activeChat.listener.LegacyChatListener;
+import net.enabify.activeChat.manager.CommandPayout;
+import net.enabify.activeChat.manager.ExpiryWheel;
+import net.enabify.activeChat.manager.JoinWindowTracker;
+import net.enabify.activeChat.manager.KeywordMatcher;
+import net.enabify.activeChat.manager.Leaderboard;
+import net.enabify.activeChat.manager.LoadShedder;
+import net.enabify.activeChat.manager.MuteDispatcher;
+import net.enabify.activeChat.manager.PayoutQueue;
+import net.enabify.activeChat.manager.PlayerPointsPayout;
 import net.enabify.activeChat.manager.PointsManager;
+import net.enabify.activeChat.manager.PointsPayout;
+import net.enabify.activeChat.manager.ScoreQueue;
+import net.enabify.activeChat.manager.ScoringPlan;
+import net.enabify.activeChat.manager.ScoringRule;
+import net.enabify.activeChat.manager.SessionManager;
+import net.enabify.activeChat.manager.SpamDetector;
+import net.enabify.activeChat.metrics.ActivityFile;
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.metrics.PluginMetrics;
+import net.enabify.activeChat.metrics.PrometheusExporter;
+import net.enabify.activeChat.network.NetworkJoinBus;
+import net.enabify.activeChat.network.PluginMessageTransport;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * ActiveChat - チャット活性化プラグイン
  * Folia対応の非同期処理を使用
@@ -14,42 +62,456 @@ public final class ActiveChat extends JavaPlugin {
     
     private PlayerDataManager dataManager;
     private PointsManager pointsManager;
-
+    private SessionManager sessionManager;
+    private WriteBehindSaver writeBehindSaver;
+    private ScheduledTask pruneTask;
+    private PayoutQueue payoutQueue;
+    private ExpiryWheel expiryWheel;
+    private Leaderboard leaderboard;
+    private ScoreQueue scoreQueue;
+    private LoadShedder loadShedder;
+    private NetworkJoinBus networkBus;
+    private ScheduledTask leaderboardSaveTask;
+    private ActivityLog activityLog;
+    private final PluginMetrics metrics = new PluginMetrics();
+    private PrometheusExporter prometheusExporter;
+    
     @Override
     public void onEnable() {
         // Plugin startup logic
         getLogger().info("ActiveChatプラグインを起動しています...");
         
+        // 設定ファイルの読み込み（存在しない場合は自動作成）
+        saveDefaultConfig();
+        // Java Flight Recorderの設定（記録するときに -XX:StartFlightRecording や jcmd で指定する）
+        if (!new File(getDataFolder(), "activechat.jfc").exists()) {
+            saveResource("activechat.jfc", false);
+        }
+        
         // データマネージャーの初期化
-        dataManager = new PlayerDataManager(getDataFolder());
+        String storageMode = getConfig().getString("storage.mode", "json").toLowerCase(Locale.ROOT);
+        long loadStarted = System.nanoTime();
+        PointsStore store = createStore(storageMode);
+        metrics.recordLoad(System.nanoTime() - loadStarted);
+        dataManager = new PlayerDataManager(store, metrics);
         getLogger().info("プレイヤーデータを読み込みました。");
         
-        // ポイントマネージャーの初期化
-        pointsManager = new PointsManager();
+        // 書き込み遅延保存の開始（ジャーナル使用時はグループコミット、データベース使用時はバッチ書き込み）
+        if (getConfig().getBoolean("storage.write-behind.enabled", true)) {
+            long intervalMillis = switch (storageMode) {
+                case "journal" -> getConfig().getLong("storage.journal.commit-interval-millis", 200);
+                case "sql" -> getConfig().getLong("storage.sql.batch-interval-millis", 1000);
+                default -> TimeUnit.SECONDS.toMillis(getConfig().getLong("storage.write-behind.interval-seconds", 30));
+            };
+            writeBehindSaver = new WriteBehindSaver(this, dataManager, intervalMillis,
+                getConfig().getInt("storage.write-behind.max-dirty-players", 500));
+            writeBehindSaver.start();
+        }
+        
+        // 0ポイントのプレイヤーを定期的に取り除く（オンラインのプレイヤーは残す）
+        long pruneSeconds = getConfig().getLong("storage.prune-interval-seconds", 600);
+        if (pruneSeconds > 0) {
+            pruneTask = getServer().getAsyncScheduler().runAtFixedRate(this,
+                task -> dataManager.prune(uuid -> getServer().getPlayer(uuid) != null),
+                pruneSeconds, pruneSeconds, TimeUnit.SECONDS);
+        }
+        
+        // 現在時刻の取得元（各判定で共通）
+        Clock clock = Clock.systemUTC();
+        
+        // 退出記録・参加記録の期限切れ（1秒ごとにまとめて削除）
+        expiryWheel = new ExpiryWheel(this, 1000, clock);
+        expiryWheel.start();
+        
+        // ポイントマネージャーの初期化（ルールとキーワードは設定ファイルから読み込む）
+        pointsManager = new PointsManager(loadScoringPlan(), clock, getConfig().getInt("join-window.region-chunks", 32),
+            expiryWheel);
+        
+        // チャット状態の管理（オンライン中のプレイヤーのみ保持）
+        sessionManager = new SessionManager(getConfig().getInt("spam.history-size", 8), pointsManager.getRuleCount());
+        
+        // スパム検知
+        SpamDetector spamDetector = new SpamDetector(
+            TimeUnit.SECONDS.toMillis(getConfig().getLong("spam.window-seconds", 60)),
+            getConfig().getInt("spam.threshold", 3));
+        MuteDispatcher muteDispatcher = new MuteDispatcher(this,
+            getConfig().getString("spam.mute-command", "mute %player% 5m スパムを検知しました"));
+        
+        // 参加時のポイント付与キュー（付与を確かめるまで、取得したポイントを付与待ちの記録に残す）
+        PayoutClaims claims = null;
+        try {
+            claims = new PayoutClaims(new File(getDataFolder(), "payouts.pending"));
+        } catch (IOException e) {
+            getLogger().severe("付与待ちの一覧（payouts.pending）を開けませんでした。ポイントの付与を停止します: " + e.getMessage());
+        }
+        payoutQueue = new PayoutQueue(this, dataManager, createPayout(),
+            getConfig().getInt("payout.batch-size", 20),
+            getConfig().getLong("payout.delay-millis", 1000), clock,
+            claims != null ? claims : new PayoutClaims());
+        if (claims != null) {
+            payoutQueue.start();
+        }
+        
+        // 獲得ポイントのランキング（変更があれば定期的に保存）
+        ZoneId zone = reportingZone();
+        leaderboard = new Leaderboard(getDataFolder(), clock, zone);
+        long leaderboardSaveSeconds = Math.max(1, getConfig().getLong("leaderboard.save-interval-seconds", 300));
+        leaderboardSaveTask = getServer().getAsyncScheduler().runAtFixedRate(this, task -> leaderboard.save(),
+            leaderboardSaveSeconds, leaderboardSaveSeconds, TimeUnit.SECONDS);
+        
+        // チャット活動の分単位の集計（activity.datに追記）
+        activityLog = new ActivityLog(this, clock, openActivityFile());
+        activityLog.start();
         
         // イベントリスナーの登録
-        getServer().getPluginManager().registerEvents(
-            new ChatListener(this, dataManager, pointsManager), this);
-        getServer().getPluginManager().registerEvents(
-            new JoinListener(this, dataManager, pointsManager), this);
+        // チャットで獲得したポイントの加算（チャットスレッドはキューに追加するだけ）
+        scoreQueue = new ScoreQueue(this, dataManager, leaderboard,
+            getConfig().getInt("chat.score-queue.capacity", 8192),
+            getConfig().getLong("chat.score-queue.drain-interval-millis", 50));
+        scoreQueue.start();
+        
+        // チャットが集中したときの負荷軽減モード
+        loadShedder = new LoadShedder(this, clock, scoreQueue, new LoadShedder.Settings(
+            getConfig().getInt("chat.load-shedding.enter-chats-per-second", 100),
+            getConfig().getLong("chat.load-shedding.enter-latency-micros", 500),
+            getConfig().getInt("chat.load-shedding.exit-chats-per-second", 50),
+            getConfig().getLong("chat.load-shedding.exit-latency-micros", 200),
+            TimeUnit.SECONDS.toMillis(getConfig().getLong("chat.load-shedding.recovery-seconds", 30)),
+            getConfig().getInt("chat.load-shedding.spam-sample-rate", 4),
+            getConfig().getInt("chat.load-shedding.spam-suspicion-threshold", 1),
+            getConfig().getLong("chat.load-shedding.save-defer-millis", 5000)),
+            getConfig().getLong("chat.load-shedding.check-interval-millis", 1000));
+        if (getConfig().getBoolean("chat.load-shedding.enabled", true)) {
+            loadShedder.start();
+        }
+        
+        ChatListener chatListener = new ChatListener(pointsManager, sessionManager, spamDetector,
+            muteDispatcher, clock, metrics, scoreQueue, activityLog, loadShedder);
+        if (getConfig().getBoolean("chat.legacy-event", false)) {
+            // 旧イベントを使う場合は、AsyncChatEventのリスナーは登録しない（二重に判定しないため）
+            getServer().getPluginManager().registerEvents(new LegacyChatListener(chatListener), this);
+            getLogger().info("旧チャットイベント（AsyncPlayerChatEvent）でチャットを判定します。");
+        } else {
+            getServer().getPluginManager().registerEvents(chatListener, this);
+        }
+        // サーバー間の参加の共有（プロキシのプラグインメッセージで送受信する）
+        if (getConfig().getBoolean("network.enabled", false)) {
+            networkBus = new NetworkJoinBus(this, new PluginMessageTransport(this), pointsManager, clock, expiryWheel,
+                TimeUnit.MINUTES.toMillis(5),
+                getConfig().getLong("network.batch-interval-millis", 250),
+                getConfig().getBoolean("network.detect-new-players", true));
+            networkBus.start();
+            metrics.addCounter("network_messages_sent_total", "他のサーバーへ送った参加の通知の数", networkBus::getMessagesSent);
+            metrics.addCounter("network_events_sent_total", "他のサーバーへ送った参加の件数", networkBus::getEventsSent);
+            metrics.addCounter("network_events_received_total", "他のサーバーから届いた参加の件数", networkBus::getEventsReceived);
+            metrics.addCounter("network_events_duplicate_total", "既に数えた参加のため無視した件数", networkBus::getDuplicates);
+            metrics.addGauge("network_seen_players", "参加を記録しているプレイヤーの数", networkBus::getSeenCount);
+        }
+        
+        JoinListener joinListener = new JoinListener(this, pointsManager, sessionManager, payoutQueue, clock,
+            expiryWheel, activityLog, networkBus);
+        getServer().getPluginManager().registerEvents(joinListener, this);
+        // 再読み込み直後は参加イベントが届かないため、オンラインのプレイヤーの状態をここで作成する
+        joinListener.openOnlineSessions();
+        
+        // 計測値の登録
+        metrics.addCounter("saves_written_total", "書き込んだ保存の回数", dataManager::getSavesWritten);
+        metrics.addCounter("saves_skipped_total", "書き込まなかった保存要求の回数", dataManager::getSavesSkipped);
+        metrics.addCounter("updates_merged_total", "まとめて書き込んだ変更の件数", dataManager::getUpdatesMerged);
+        metrics.addGauge("pending_changes", "未保存の変更の件数", dataManager::getDirtyCount);
+        metrics.addGauge("points_resident", "メモリ（保存先）に保持しているプレイヤーの数", dataManager::getResidentCount);
+        metrics.addCounter("players_pruned_total", "0ポイントのため取り除いたプレイヤーの数", dataManager::getPlayersPruned);
+        metrics.addGauge("sessions", "チャット状態の保持数", sessionManager::size);
+        metrics.addGauge("recent_quits", "退出記録の保持数", joinListener::getRecentQuitCount);
+        metrics.addGauge("join_windows", "ワールド・リージョン単位の参加記録の数", pointsManager::getWindowCount);
+        metrics.addGauge("payout_queue", "ポイント付与待ちの人数", payoutQueue::size);
+        metrics.addGauge("expiry_entries", "期限切れ待ちの項目の数", expiryWheel::size);
+        metrics.addGauge("score_queue_depth", "加算待ちのチャットのポイントの件数", scoreQueue::size);
+        metrics.addCounter("score_queue_published_total", "加算待ちに追加したチャットのポイントの件数", scoreQueue::getPublished);
+        metrics.addCounter("score_queue_dropped_total", "加算待ちが満杯のため破棄したチャットのポイントの件数", scoreQueue::getDropped);
+        metrics.addCounter("score_queue_batches_total", "チャットのポイントをまとめて加算した回数", scoreQueue::getBatches);
+        metrics.addGauge("load_shedding", "チャットの負荷軽減モード（1: 負荷軽減中 / 0: 通常）",
+            () -> loadShedder.isShedding() ? 1 : 0);
+        metrics.addCounter("load_shedding_activations_total", "負荷軽減モードに切り替えた回数", loadShedder::getActivations);
+        metrics.addCounter("chats_prefiltered_total", "負荷軽減モードの事前判定で判定を省略したチャットの件数", loadShedder::getPrefiltered);
+        metrics.addCounter("spam_checks_skipped_total", "負荷軽減モードでスパム検知を省略したチャットの件数", loadShedder::getSpamChecksSkipped);
+        metrics.addGauge("leaderboard_players", "ランキングに載っているプレイヤーの数", leaderboard::size);
+        
+        // コマンドの登録
+        PluginCommand command = getCommand("activechat");
+        if (command != null) {
+            ActiveChatCommand executor = new ActiveChatCommand(this, metrics, activityLog, zone);
+            command.setExecutor(executor);
+            command.setTabCompleter(executor);
+        }
+        PluginCommand pointsCommand = getCommand("acpoints");
+        if (pointsCommand != null) {
+            PointsCommand executor = new PointsCommand(leaderboard, getConfig().getInt("leaderboard.max-rank", 100));
+            pointsCommand.setExecutor(executor);
+            pointsCommand.setTabCompleter(executor);
+        }
+        
+        // 計測値のファイル出力（node_exporterのtextfileコレクター用）
+        if (getConfig().getBoolean("metrics.prometheus.enabled", false)) {
+            File file = new File(getConfig().getString("metrics.prometheus.file", "activechat.prom"));
+            if (!file.isAbsolute()) {
+                file = new File(getDataFolder(), file.getPath());
+            }
+            prometheusExporter = new PrometheusExporter(this, metrics, file,
+                TimeUnit.SECONDS.toMillis(getConfig().getLong("metrics.prometheus.interval-seconds", 15)));
+            prometheusExporter.start();
+        }
         
         getLogger().info("ActiveChatプラグインが正常に起動しました！");
     }
-
+    
     @Override
     public void onDisable() {
         // Plugin shutdown logic
         getLogger().info("ActiveChatプラグインをシャットダウンしています...");
         
+        // 計測値の出力を停止（最後の値を書き出す）
+        if (prometheusExporter != null) {
+            prometheusExporter.stop();
+            prometheusExporter = null;
+        }
+        
+        // サーバー間の参加の共有を停止（残っている参加は送る）
+        if (networkBus != null) {
+            networkBus.stop();
+            networkBus = null;
+        }
+        
+        // 期限切れの判定を停止
+        if (expiryWheel != null) {
+            expiryWheel.stop();
+        }
+        
+        // 負荷軽減モードを終了（遅らせていた保存要求を戻す）
+        if (loadShedder != null) {
+            loadShedder.stop();
+            loadShedder = null;
+        }
+        
+        // 加算待ちのチャットのポイントを加算する（ランキング・データの保存より前）
+        if (scoreQueue != null) {
+            scoreQueue.stop();
+            scoreQueue = null;
+        }
+        
+        // ランキングを保存
+        if (leaderboardSaveTask != null) {
+            leaderboardSaveTask.cancel();
+            leaderboardSaveTask = null;
+        }
+        if (leaderboard != null) {
+            leaderboard.save();
+        }
+        
+        // チャット活動を書き込む
+        if (activityLog != null) {
+            activityLog.stop();
+            activityLog = null;
+        }
+        
+        // 0ポイントのプレイヤーの取り除きを停止
+        if (pruneTask != null) {
+            pruneTask.cancel();
+            pruneTask = null;
+        }
+        
+        // ポイント付与を停止（付与前のポイントはリセットされずに残る）
+        if (payoutQueue != null) {
+            payoutQueue.stop();
+        }
+        
         // データを保存
-        if (dataManager != null) {
+        if (writeBehindSaver != null) {
+            long timeout = getConfig().getLong("storage.write-behind.shutdown-timeout-millis", 5000);
+            File recoveryFile = new File(getDataFolder(), "playerPoints.recovery.json");
+            if (!writeBehindSaver.shutdown(timeout, recoveryFile)) {
+                getLogger().severe("プレイヤーデータを保存できませんでした。未保存の変更"
+                    + dataManager.getDirtyCount() + "件は" + recoveryFile.getName() + "を確認してください。");
+            }
+            writeBehindSaver = null;
+        } else if (dataManager != null) {
             dataManager.saveData();
-            getLogger().info("プレイヤーデータを保存しました。");
+        }
+        if (dataManager != null) {
+            dataManager.close();
+            getLogger().info("プレイヤーデータを保存しました。（書き込み: " + dataManager.getSavesWritten()
+                + "回, スキップ: " + dataManager.getSavesSkipped()
+                + "回, 統合: " + dataManager.getUpdatesMerged() + "件）");
         }
         
         getLogger().info("ActiveChatプラグインが正常にシャットダウンしました。");
     }
     
+    /**
+     * チャット活動の保存先を開く（開けない場合は直近24時間ぶんだけをメモリに保持する）
+     */
+    private ActivityFile openActivityFile() {
+        try {
+            return new ActivityFile(new File(getDataFolder(), "activity.dat"), ActivityLog.COLUMNS);
+        } catch (IOException e) {
+            getLogger().warning("activity.dat を開けませんでした（直近24時間のみ保持します）: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * ランキングの日間・週間とチャット活動の集計の区切りに使うタイムゾーン（未設定・不正な場合はサーバーのタイムゾーン）
+     */
+    private ZoneId reportingZone() {
+        String timezone = getConfig().getString("leaderboard.timezone", "");
+        if (timezone == null || timezone.isBlank()) {
+            return ZoneId.systemDefault();
+        }
+        try {
+            return ZoneId.of(timezone);
+        } catch (DateTimeException e) {
+            getLogger().warning("leaderboard.timezone が不正です: " + timezone + "（サーバーのタイムゾーンを使用します）");
+            return ZoneId.systemDefault();
+        }
+    }
+    
+    /**
+     * 設定の保存方式に応じてポイントの保存先を作成する
+     * JSON以外の保存先では、まだ取り込んでいないplayerPoints.jsonがあれば取り込む
+     * 開けなかった場合はJSONファイルを使用する
+     */
+    private PointsStore createStore(String storageMode) {
+        File folder = getDataFolder();
+        try {
+            PointsStore store = switch (storageMode) {
+                case "mapped" -> new MappedPointsStore(new File(folder, "playerPoints.dat"),
+                    getConfig().getInt("storage.mapped.initial-capacity", 4096));
+                case "journal" -> new JournalPointsStore(new PointsJournal(folder,
+                    getConfig().getLong("storage.journal.compact-threshold-bytes", 1048576)));
+                case "sql" -> {
+                    String url = getConfig().getString("storage.sql.url", "");
+                    if (url.isEmpty()) {
+                        folder.mkdirs();
+                        url = "jdbc:sqlite:" + new File(folder, "playerPoints.db").getAbsolutePath();
+                    }
+                    yield new SqlPointsStore(url,
+                        getConfig().getString("storage.sql.username", ""),
+                        getConfig().getString("storage.sql.password", ""),
+                        getConfig().getInt("storage.sql.pool-size", 4));
+                }
+                default -> null;
+            };
+            if (store != null) {
+                if (JsonPointsStore.importInto(folder, store)) {
+                    getLogger().info("playerPoints.jsonのデータを取り込みました。");
+                }
+                return store;
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            getLogger().severe("保存先（" + storageMode + "）を開けませんでした。JSONファイルを使用します: " + e.getMessage());
+        }
+        return new JsonPointsStore(folder, getConfig().getBoolean("storage.json.lazy-load", false));
+    }
+    
+    /**
+     * 設定の付与方法を作成する
+     * autoの場合はPlayerPointsのAPIを直接呼び出し、使えない場合はコマンドで付与する
+     */
+    private PointsPayout createPayout() {
+        String command = getConfig().getString("payout.command", "points give %player% %amount%");
+        if ("auto".equalsIgnoreCase(getConfig().getString("payout.method", "auto"))) {
+            Plugin playerPoints = getServer().getPluginManager().getPlugin("PlayerPoints");
+            if (playerPoints != null && playerPoints.isEnabled()) {
+                PointsPayout payout = PlayerPointsPayout.resolve(playerPoints);
+                if (payout != null) {
+                    getLogger().info("PlayerPointsのAPIでポイントを付与します。");
+                    return payout;
+                }
+            }
+        }
+        warnIfOwnCommand(command);
+        return new CommandPayout(getServer(), command);
+    }
+    
+    /**
+     * 付与コマンドがこのプラグインのコマンドを指している場合に警告する
+     * （ポイントプラグインが入っていないと付与されないまま成功扱いになるため）
+     */
+    private void warnIfOwnCommand(String command) {
+        String label = command.trim().split(" ", 2)[0];
+        PluginCommand resolved = getServer().getPluginCommand(label);
+        if (resolved != null && resolved.getPlugin() == this) {
+            getLogger().warning("payout.command の /" + label + " はActiveChatのコマンドです。"
+                + "ポイントが付与されないため、ポイントプラグインの付与コマンドを指定してください。");
+        }
+    }
+    
+    /**
+     * 設定ファイルのルールとキーワードから判定の実行計画を作成する
+     * 不正な場合は既定のルールとキーワードを使用する
+     */
+    private ScoringPlan loadScoringPlan() {
+        Map<String, List<String>> keywords = KeywordMatcher.defaultKeywords();
+        ConfigurationSection section = getConfig().getConfigurationSection("keywords");
+        if (section != null) {
+            for (String category : section.getKeys(false)) {
+                keywords.put(category, section.getStringList(category));
+            }
+        }
+        try {
+            return ScoringPlan.compile(loadRules(keywords));
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("ルールまたはキーワードの設定が不正なため既定値を使用します: " + e.getMessage());
+            return ScoringPlan.compile(ScoringRule.defaults(KeywordMatcher.defaultKeywords()));
+        }
+    }
+    
+    /**
+     * 設定ファイルの rules を読み込む（無い場合は既定のルール）
+     * @param keywords keywords の内容（ルールの keywords にカテゴリ名を書いた場合に参照する）
+     */
+    private List<ScoringRule> loadRules(Map<String, List<String>> keywords) {
+        ConfigurationSection section = getConfig().getConfigurationSection("rules");
+        if (section == null) {
+            return ScoringRule.defaults(keywords);
+        }
+        List<ScoringRule> rules = new ArrayList<>();
+        for (String id : section.getKeys(false)) {
+            ConfigurationSection rule = section.getConfigurationSection(id);
+            if (rule == null) {
+                throw new IllegalArgumentException(id + ": ルールの形式が不正です");
+            }
+            List<String> ruleKeywords = null;
+            if (rule.isList("keywords")) {
+                ruleKeywords = rule.getStringList("keywords");
+            } else if (rule.isString("keywords")) {
+                ruleKeywords = keywords.get(rule.getString("keywords"));
+                if (ruleKeywords == null) {
+                    throw new IllegalArgumentException(id + ": キーワードのカテゴリがありません: " + rule.getString("keywords"));
+                }
+            }
+            rules.add(new ScoringRule(id,
+                rule.getString("trigger", ScoringRule.TRIGGER_CHAT),
+                rule.getString("category", ""),
+                rule.getInt("points", 0),
+                rule.getInt("min-length", 0),
+                (long) (rule.getDouble("cooldown-seconds", 0) * 1000),
+                rule.getString("window.event", null),
+                (long) (rule.getDouble("window.seconds", 0) * 1000),
+                windowScope(id, rule.getString("window.scope", "global")),
+                ruleKeywords));
+        }
+        return rules;
+    }
+    
+    private static JoinWindowTracker.Scope windowScope(String id, String scope) {
+        try {
+            return JoinWindowTracker.Scope.valueOf(scope.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(id + ": 不明なwindow.scopeです: " + scope);
+        }
+    }
+    
     public PlayerDataManager getDataManager() {
         return dataManager;
     }
@@ -57,4 +519,12 @@ public final class ActiveChat extends JavaPlugin {
     public PointsManager getPointsManager() {
         return pointsManager;
     }
+    
+    public SessionManager getSessionManager() {
+        return sessionManager;
+    }
+    
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
 }
@@ -0,0 +1,207 @@
+package net.enabify.activeChat.command;
+
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.metrics.LatencyHistogram;
+import net.enabify.activeChat.metrics.PluginMetrics;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /activechat コマンド
+ * - /activechat stats : 動作状況の計測値を表示する
+ * - /activechat activity [期間] [minute|hour|day] : チャット活動の集計を表示する（例: 24h hour / 30d day）
+ */
+public class ActiveChatCommand implements TabExecutor {
+    // activityで表示する最大の行数
+    private static final int MAX_ROWS = 60;
+    private static final List<String> SUBCOMMANDS = List.of("stats", "activity");
+    private static final List<String> UNITS = List.of("minute", "hour", "day");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("MM/dd HH:mm");
+    
+    private final Plugin plugin;
+    private final PluginMetrics metrics;
+    private final ActivityLog activity;
+    // activityの時間・日の区切りと表示に使うタイムゾーン
+    private final ZoneId zone;
+    
+    public ActiveChatCommand(Plugin plugin, PluginMetrics metrics, ActivityLog activity, ZoneId zone) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.activity = activity;
+        this.zone = zone;
+    }
+    
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("activity")) {
+            return activity(sender, label, args);
+        }
+        if (args.length == 0 || !args[0].equalsIgnoreCase("stats")) {
+            sender.sendMessage(ChatColor.RED + "使い方: /" + label + " stats | activity [期間(例: 24h, 7d)] [minute|hour|day]");
+            return true;
+        }
+        sender.sendMessage(ChatColor.GOLD + "=== ActiveChat 統計 ===");
+        sender.sendMessage(ChatColor.YELLOW + "判定したチャット: " + ChatColor.WHITE + metrics.getChatsEvaluated() + "件");
+        sender.sendMessage(ChatColor.YELLOW + "獲得ポイント: " + ChatColor.WHITE
+            + "通常 " + metrics.getNormalChatPoints() + "pt / 挨拶 " + metrics.getGreetingPoints()
+            + "pt / 新規さん歓迎 " + metrics.getWelcomeNewPlayerPoints() + "pt");
+        sender.sendMessage(ChatColor.YELLOW + "スパムミュート: " + ChatColor.WHITE + metrics.getSpamMutes() + "回");
+        sender.sendMessage(latency("チャット判定", metrics.getChatLatency()));
+        sender.sendMessage(latency("保存", metrics.getSaveLatency()));
+        sender.sendMessage(latency("読み込み", metrics.getLoadLatency()));
+        metrics.readSamples().forEach((name, value) ->
+            sender.sendMessage(ChatColor.YELLOW + name + ": " + ChatColor.WHITE + value));
+        return true;
+    }
+    
+    /**
+     * 処理時間の要約（回数・平均・p50・p99・最大）
+     */
+    private static String latency(String label, LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        if (count == 0) {
+            return ChatColor.YELLOW + label + ": " + ChatColor.WHITE + "記録なし";
+        }
+        return ChatColor.YELLOW + label + ": " + ChatColor.WHITE + count + "回"
+            + " / 平均 " + millis(histogram.getSumNanos() / count)
+            + " / p50 " + millis(histogram.getPercentileNanos(0.5))
+            + " / p99 " + millis(histogram.getPercentileNanos(0.99))
+            + " / 最大 " + millis(histogram.getMaxNanos());
+    }
+    
+    /**
+     * チャット活動の集計を表示する（ファイルを読むため非同期で集計する）
+     */
+    private boolean activity(CommandSender sender, String label, String[] args) {
+        long rangeMinutes = TimeUnit.HOURS.toMinutes(24);
+        if (args.length > 1) {
+            rangeMinutes = parseMinutes(args[1]);
+            if (rangeMinutes <= 0) {
+                sender.sendMessage(ChatColor.RED + "期間は 90m / 24h / 30d のように指定してください。");
+                return true;
+            }
+        }
+        int bucketMinutes;
+        if (args.length > 2) {
+            bucketMinutes = switch (args[2].toLowerCase(Locale.ROOT)) {
+                case "minute" -> 1;
+                case "hour" -> 60;
+                case "day" -> 1440;
+                default -> -1;
+            };
+            if (bucketMinutes < 0) {
+                sender.sendMessage(ChatColor.RED + "単位は minute / hour / day のいずれかで指定してください。");
+                return true;
+            }
+        } else {
+            // 行数が収まる最も細かい単位
+            bucketMinutes = rangeMinutes <= MAX_ROWS ? 1 : rangeMinutes <= MAX_ROWS * 60L ? 60 : 1440;
+        }
+        if ((rangeMinutes + bucketMinutes - 1) / bucketMinutes > MAX_ROWS) {
+            sender.sendMessage(ChatColor.RED + "行数が多すぎます（最大" + MAX_ROWS + "行）。単位を大きくしてください。");
+            return true;
+        }
+        
+        // 現在の単位の区切りまでを含め、単位の境界から集計する
+        // 区切りと表示は同じオフセットで計算する（夏時間の切り替えをまたぐ場合は現在のオフセットで区切る）
+        long currentMinute = activity.getCurrentMinute();
+        ZoneOffset offset = zone.getRules().getOffset(Instant.ofEpochSecond(currentMinute * 60));
+        long offsetMinutes = offset.getTotalSeconds() / 60;
+        long toMinute = (Math.floorDiv(currentMinute + offsetMinutes, bucketMinutes) + 1) * bucketMinutes - offsetMinutes;
+        long fromMinute = toMinute - (rangeMinutes + bucketMinutes - 1) / bucketMinutes * bucketMinutes;
+        int unit = bucketMinutes;
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            long[][] buckets;
+            try {
+                buckets = activity.query(fromMinute, toMinute, unit);
+            } catch (IOException e) {
+                sender.sendMessage(ChatColor.RED + "チャット活動を読み込めませんでした: " + e.getMessage());
+                return;
+            }
+            sender.sendMessage(ChatColor.GOLD + "=== チャット活動（" + describe(args) + "） ===");
+            sender.sendMessage(ChatColor.GRAY + "時刻: チャット / ポイント対象 / 挨拶 / 歓迎 / 新規参加 / ミュート");
+            long[] total = new long[ActivityLog.COLUMNS];
+            for (int i = 0; i < buckets.length; i++) {
+                long[] row = buckets[i];
+                String time = TIME_FORMAT.format(Instant.ofEpochSecond((fromMinute + (long) i * unit) * 60).atOffset(offset));
+                sender.sendMessage(ChatColor.YELLOW + time + ": " + ChatColor.WHITE + row(row));
+                for (int column = 0; column < total.length; column++) {
+                    total[column] += row[column];
+                }
+            }
+            sender.sendMessage(ChatColor.YELLOW + "合計: " + ChatColor.WHITE + row(total));
+        });
+        return true;
+    }
+    
+    private static String describe(String[] args) {
+        List<String> parts = new ArrayList<>();
+        parts.add(args.length > 1 ? args[1] : "24h");
+        if (args.length > 2) {
+            parts.add(args[2]);
+        }
+        return String.join(" ", parts);
+    }
+    
+    private static String row(long[] values) {
+        return values[ActivityLog.CHATS] + " / " + values[ActivityLog.QUALIFYING_CHATS]
+            + " / " + values[ActivityLog.GREETINGS] + " / " + values[ActivityLog.WELCOMES]
+            + " / " + values[ActivityLog.NEW_PLAYER_JOINS] + " / " + values[ActivityLog.MUTES];
+    }
+    
+    /**
+     * 90m / 24h / 30d 形式の期間を分に変換する（不正な場合は-1）
+     */
+    private static long parseMinutes(String value) {
+        if (value.length() < 2) {
+            return -1;
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(value.substring(0, value.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'm' -> amount;
+            case 'h' -> TimeUnit.HOURS.toMinutes(amount);
+            case 'd' -> TimeUnit.DAYS.toMinutes(amount);
+            default -> -1;
+        };
+    }
+    
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3fms", nanos / 1_000_000.0);
+    }
+    
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (args.length == 1) {
+            String prefix = args[0].toLowerCase(Locale.ROOT);
+            return SUBCOMMANDS.stream().filter(name -> name.startsWith(prefix)).toList();
+        }
+        if (args[0].equalsIgnoreCase("activity")) {
+            if (args.length == 2) {
+                return List.of("60m", "24h", "7d", "30d");
+            }
+            if (args.length == 3) {
+                String prefix = args[2].toLowerCase(Locale.ROOT);
+                return UNITS.stream().filter(name -> name.startsWith(prefix)).toList();
+            }
+        }
+        return List.of();
+    }
+}
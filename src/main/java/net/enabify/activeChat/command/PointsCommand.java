@@ -0,0 +1,123 @@
+package net.enabify.activeChat.command;
+
+import net.enabify.activeChat.data.PointsStore;
+import net.enabify.activeChat.manager.Leaderboard;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * /acpoints コマンド
+ * - /acpoints top [lifetime|daily|weekly] [項目] [ページ] : 獲得ポイントのランキングを表示する
+ * ランキングはLeaderboardの索引を読むだけなので、どのスレッドから実行しても加算を待たない
+ * （/points はポイントプラグインの付与コマンドと衝突するため使わない）
+ */
+public class PointsCommand implements TabExecutor {
+    private static final int PAGE_SIZE = 10;
+    // 項目名（小文字） → 項目の番号
+    private static final Map<String, Integer> CATEGORIES = Map.of(
+        "total", Leaderboard.TOTAL,
+        "normalchat", PointsStore.NORMAL_CHAT,
+        "greeting", PointsStore.GREETING,
+        "welcomenewplayer", PointsStore.WELCOME_NEW_PLAYER);
+    private static final List<String> CATEGORY_NAMES = List.of("total", "normalChat", "greeting", "welcomeNewPlayer");
+    private static final String[] CATEGORY_LABELS = {"通常チャット", "挨拶", "新規さん歓迎", "合計"};
+    
+    private final Leaderboard leaderboard;
+    // 表示する最大の順位
+    private final int maxRank;
+    
+    public PointsCommand(Leaderboard leaderboard, int maxRank) {
+        this.leaderboard = leaderboard;
+        this.maxRank = Math.max(PAGE_SIZE, maxRank);
+    }
+    
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0 || !args[0].equalsIgnoreCase("top")) {
+            // 不明なサブコマンドは使い方を表示して失敗とする（コンソールから実行されても成功扱いにしない）
+            return false;
+        }
+        
+        // 期間・項目・ページはどの順でも指定できる
+        Leaderboard.Period period = Leaderboard.Period.LIFETIME;
+        int category = Leaderboard.TOTAL;
+        int page = 1;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i].toLowerCase(Locale.ROOT);
+            Leaderboard.Period parsed = period(arg);
+            if (parsed != null) {
+                period = parsed;
+            } else if (CATEGORIES.containsKey(arg)) {
+                category = CATEGORIES.get(arg);
+            } else {
+                try {
+                    page = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        int lastPage = (maxRank + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (page < 1 || page > lastPage) {
+            sender.sendMessage(ChatColor.RED + "ページは1～" + lastPage + "で指定してください。");
+            return true;
+        }
+        
+        Leaderboard.Page result = leaderboard.top(period, category, page, PAGE_SIZE);
+        int pages = Math.max(1, Math.min(lastPage, (result.players() + PAGE_SIZE - 1) / PAGE_SIZE));
+        sender.sendMessage(ChatColor.GOLD + "=== " + periodLabel(period) + "ランキング（" + CATEGORY_LABELS[category]
+            + "） " + page + "/" + pages + " ===");
+        if (result.entries().isEmpty()) {
+            sender.sendMessage(ChatColor.GRAY + "まだ記録がありません。");
+            return true;
+        }
+        for (Leaderboard.Entry entry : result.entries()) {
+            String name = entry.name() != null ? entry.name() : entry.uuid().toString();
+            sender.sendMessage(ChatColor.YELLOW + "#" + entry.rank() + " " + ChatColor.WHITE + name
+                + ChatColor.GRAY + " - " + ChatColor.WHITE + entry.points() + "pt");
+        }
+        return true;
+    }
+    
+    private static Leaderboard.Period period(String arg) {
+        for (Leaderboard.Period period : Leaderboard.Period.values()) {
+            if (period.getKey().equals(arg)) {
+                return period;
+            }
+        }
+        return null;
+    }
+    
+    private static String periodLabel(Leaderboard.Period period) {
+        return switch (period) {
+            case LIFETIME -> "累計";
+            case DAILY -> "今日の";
+            case WEEKLY -> "今週の";
+        };
+    }
+    
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (args.length == 1) {
+            return "top".startsWith(args[0].toLowerCase(Locale.ROOT)) ? List.of("top") : List.of();
+        }
+        if (args.length > 1 && args[0].equalsIgnoreCase("top")) {
+            String prefix = args[args.length - 1].toLowerCase(Locale.ROOT);
+            List<String> candidates = new ArrayList<>();
+            for (Leaderboard.Period period : Leaderboard.Period.values()) {
+                candidates.add(period.getKey());
+            }
+            candidates.addAll(CATEGORY_NAMES);
+            candidates.removeIf(candidate -> !candidate.toLowerCase(Locale.ROOT).startsWith(prefix));
+            return candidates;
+        }
+        return List.of();
+    }
+}
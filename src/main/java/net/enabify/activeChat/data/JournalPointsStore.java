@@ -0,0 +1,179 @@
+package net.enabify.activeChat.data;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 差分ジャーナルにポイントを保存するストア
+ * 変更はジャーナルに追記し、ジャーナルが大きくなったらスナップショットへ圧縮する
+ */
+public class JournalPointsStore implements PointsStore {
+    // 項目 → ジャーナルの操作種別
+    private static final byte[] OPS = {
+        PointsJournal.OP_NORMAL_CHAT, PointsJournal.OP_GREETING, PointsJournal.OP_WELCOME_NEW_PLAYER
+    };
+    
+    private final PointsJournal journal;
+    private final Map<UUID, PlayerPoints> playerPoints = new ConcurrentHashMap<>();
+    // ポイント変更とジャーナル追記の組をスナップショット取得から保護する
+    private final ReentrantReadWriteLock mutationLock = new ReentrantReadWriteLock();
+    
+    /**
+     * スナップショットとジャーナルからデータを復元する
+     */
+    public JournalPointsStore(PointsJournal journal) throws IOException {
+        this.journal = journal;
+        journal.recover(playerPoints);
+    }
+    
+    @Override
+    public PlayerPoints get(UUID uuid) {
+        PlayerPoints points = playerPoints.get(uuid);
+        return points != null ? points.copy() : new PlayerPoints();
+    }
+    
+    @Override
+    public void add(UUID uuid, int category, int points) {
+        Lock lock = mutationLock.readLock();
+        lock.lock();
+        try {
+            playerPoints.computeIfAbsent(uuid, k -> new PlayerPoints()).add(category, points);
+            journal.append(OPS[category], uuid, points);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public PlayerPoints getAndReset(UUID uuid) {
+        Lock lock = mutationLock.readLock();
+        lock.lock();
+        try {
+            PlayerPoints points = playerPoints.get(uuid);
+            if (points == null) {
+                return new PlayerPoints();
+            }
+            PlayerPoints copy = points.getAndReset();
+            appendReset(uuid, PointsJournal.OP_NORMAL_CHAT, copy.getNormalChat());
+            appendReset(uuid, PointsJournal.OP_GREETING, copy.getGreeting());
+            appendReset(uuid, PointsJournal.OP_WELCOME_NEW_PLAYER, copy.getWelcomeNewPlayer());
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * リセットを記録する
+     * 並行した加算と記録の順序が入れ替わっても再生結果が変わらないよう、
+     * 0に戻すのではなくリセットした分を差し引く差分としてジャーナルに残す
+     */
+    private void appendReset(UUID uuid, byte op, long amount) {
+        while (amount > 0) {
+            int chunk = (int) Math.min(Integer.MAX_VALUE, amount);
+            journal.append(op, uuid, -chunk);
+            amount -= chunk;
+        }
+    }
+    
+    @Override
+    public void importPoints(UUID uuid, PlayerPoints points) {
+        // 取り込んだ内容はsaveでスナップショットとして書き出す
+        playerPoints.computeIfAbsent(uuid, k -> new PlayerPoints()).addAll(points);
+    }
+    
+    /**
+     * ジャーナルをコミットし、大きくなっていればスナップショットへ圧縮する
+     */
+    @Override
+    public int flush() throws IOException {
+        int committed = journal.commit();
+        if (journal.needsCompaction()) {
+            compact();
+        }
+        return committed;
+    }
+    
+    @Override
+    public int save() throws IOException {
+        compact();
+        return 0;
+    }
+    
+    /**
+     * ジャーナルを切り替え、その時点の全データをスナップショットとして書き出す
+     */
+    private void compact() throws IOException {
+        long seq;
+        Map<UUID, PlayerPoints> copy = new HashMap<>(playerPoints.size());
+        mutationLock.writeLock().lock();
+        try {
+            seq = journal.rotate();
+            // 0ポイントのプレイヤーはスナップショットに含めない
+            playerPoints.forEach((uuid, points) -> {
+                if (!points.isZero()) {
+                    copy.put(uuid, points.copy());
+                }
+            });
+        } finally {
+            mutationLock.writeLock().unlock();
+        }
+        journal.writeSnapshot(copy, seq);
+    }
+    
+    /**
+     * 0ポイントのプレイヤーをメモリから取り除く（変更を止めて行うため、取り除いたオブジェクトに加算されることは無い）
+     * ジャーナル上の差分は合計が0のため、復元しても0ポイントになる
+     */
+    @Override
+    public int prune(Predicate<UUID> keep) {
+        int before;
+        int after;
+        mutationLock.writeLock().lock();
+        try {
+            before = playerPoints.size();
+            playerPoints.entrySet().removeIf(entry -> entry.getValue().isZero() && !keep.test(entry.getKey()));
+            after = playerPoints.size();
+        } finally {
+            mutationLock.writeLock().unlock();
+        }
+        return before - after;
+    }
+    
+    @Override
+    public int residentCount() {
+        return playerPoints.size();
+    }
+    
+    @Override
+    public int pendingCount() {
+        return journal.pendingRecords();
+    }
+    
+    @Override
+    public Set<UUID> pendingPlayers() {
+        return journal.pendingPlayers();
+    }
+    
+    @Override
+    public long bytesWritten() {
+        return journal.getBytesWritten();
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return !journal.hasSnapshot() && playerPoints.isEmpty();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+}
@@ -0,0 +1,442 @@
+package net.enabify.activeChat.data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * playerPoints.jsonにポイントを保存するストア
+ * 保存時は変更されたプレイヤーがいる場合のみ、ファイル全体を一時ファイル経由で書き換える
+ * 0ポイントのプレイヤーはファイルに書き込まず、メモリからもpruneで取り除く（メモリとファイルの大きさは
+ * ポイントを持っているプレイヤーの数に比例し、一度でも参加したプレイヤーの数には比例しない）
+ */
+public class JsonPointsStore implements PointsStore {
+    private final File dataFile;
+    private final File tempFile;
+    private final Map<UUID, PlayerPoints> playerPoints = new ConcurrentHashMap<>();
+    
+    // 前回の保存以降に変更されたプレイヤー
+    private final Set<UUID> dirtyPlayers = ConcurrentHashMap.newKeySet();
+    
+    // 遅延読み込みの有無（有効時は索引だけを作り、レコードは初回参照時に読み込む）
+    private final boolean lazyLoad;
+    // 遅延読み込み用の索引と、索引が指しているファイル（indexLockで保護）
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private CompletableFuture<PointsFileIndex> fileIndex;
+    private FileChannel indexedChannel;
+    
+    // 書き込んだファイルの大きさの合計（flush / saveは1スレッドずつ呼ばれる）
+    private volatile long bytesWritten;
+    
+    /**
+     * @param lazyLoad 起動時は索引だけを作り、レコードは初回参照時に読み込む
+     */
+    public JsonPointsStore(File dataFolder, boolean lazyLoad) {
+        this.dataFile = new File(dataFolder, "playerPoints.json");
+        this.tempFile = new File(dataFolder, "playerPoints.json.tmp");
+        this.lazyLoad = lazyLoad;
+        if (lazyLoad) {
+            loadIndex();
+        } else {
+            loadData();
+        }
+    }
+    
+    /**
+     * JSONファイルからデータを読み込む
+     */
+    private void loadData() {
+        if (!dataFile.exists()) {
+            try {
+                dataFile.getParentFile().mkdirs();
+                dataFile.createNewFile();
+                save(); // 空のJSONファイルを作成
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+        
+        try {
+            playerPoints.clear();
+            // 0ポイントのレコード（以前の形式で保存されたもの）は読み込まない。次回の保存でファイルからも除かれる
+            readFile(dataFile, (uuid, points) -> {
+                if (!points.isZero()) {
+                    playerPoints.put(uuid, points);
+                }
+            });
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * JSONファイルを1件ずつ読み込む（中間のMapを作らない）
+     */
+    static void readFile(File file, BiConsumer<UUID, PlayerPoints> action) throws IOException {
+        try (Reader fileReader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(fileReader)) {
+            if (reader.peek() == JsonToken.END_DOCUMENT) {
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String uuidStr = reader.nextName();
+                PlayerPoints points = readPoints(reader);
+                try {
+                    action.accept(UUID.fromString(uuidStr), points);
+                } catch (IllegalArgumentException e) {
+                    // 無効なUUIDは無視
+                }
+            }
+            reader.endObject();
+        }
+    }
+    
+    /**
+     * 既存のplayerPoints.jsonを別のストアへ取り込む（取り込んだポイントは加算する）
+     * 取り込み先に保存した後、ファイルをplayerPoints.json.importedに名前を変えて取り込み済みにする
+     * 取り込み先が空かどうかでは判定しないため、複数のサーバーが同じデータベースへ取り込んでもそれぞれのファイルが取り込まれる
+     * 保存してから名前を変えるまでの間に止まった場合は、次の起動で同じファイルをもう一度取り込む
+     * @return 取り込んだ場合はtrue
+     */
+    public static boolean importInto(File dataFolder, PointsStore target) throws IOException {
+        File file = new File(dataFolder, "playerPoints.json");
+        if (!file.exists()) {
+            return false;
+        }
+        readFile(file, target::importPoints);
+        target.save();
+        Files.move(file.toPath(), importedFile(dataFolder).toPath());
+        return true;
+    }
+    
+    /**
+     * 取り込み済みのファイル名（以前に取り込んだファイルがある場合は上書きせず番号を付ける）
+     */
+    private static File importedFile(File dataFolder) {
+        File imported = new File(dataFolder, "playerPoints.json.imported");
+        for (int i = 1; imported.exists(); i++) {
+            imported = new File(dataFolder, "playerPoints.json.imported." + i);
+        }
+        return imported;
+    }
+    
+    /**
+     * 1プレイヤー分のポイント（JSONオブジェクト）を読み込む
+     */
+    static PlayerPoints readPoints(JsonReader reader) throws IOException {
+        long normalChat = 0;
+        long greeting = 0;
+        long welcomeNewPlayer = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "normalChat" -> normalChat = reader.nextLong();
+                case "greeting" -> greeting = reader.nextLong();
+                case "welcomeNewPlayer" -> welcomeNewPlayer = reader.nextLong();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new PlayerPoints(normalChat, greeting, welcomeNewPlayer);
+    }
+    
+    /**
+     * 遅延読み込み用の索引をバックグラウンドで作成する（起動は索引の完成を待たない）
+     */
+    private void loadIndex() {
+        if (!dataFile.exists()) {
+            fileIndex = CompletableFuture.completedFuture(new PointsFileIndex());
+            loadData();
+            return;
+        }
+        fileIndex = CompletableFuture.supplyAsync(() -> {
+            try {
+                PointsFileIndex index = PointsFileIndex.build(dataFile);
+                indexedChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+                return index;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+    
+    /**
+     * 索引を使ってプレイヤーのレコードをファイルから読み込む
+     */
+    private PlayerPoints loadFromIndex(UUID uuid) {
+        Lock lock = indexLock.readLock();
+        lock.lock();
+        try {
+            long offset = fileIndex.join().offsetOf(uuid);
+            if (offset < 0) {
+                return new PlayerPoints();
+            }
+            return PointsFileIndex.readAt(indexedChannel, offset);
+        } catch (IOException e) {
+            // 0ポイントで上書きしないよう、読み込めなかった場合は例外にする
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * メモリに無いプレイヤーのポイントを読み込む
+     * 0ポイントのプレイヤーはメモリにもファイルにも持たないため、遅延読み込み時のみファイルを参照する
+     */
+    private PlayerPoints load(UUID uuid) {
+        return lazyLoad ? loadFromIndex(uuid) : new PlayerPoints();
+    }
+    
+    @Override
+    public PlayerPoints get(UUID uuid) {
+        // 参照だけではメモリに載せない（参加時の確認などで0ポイントのプレイヤーが溜まらないようにする）
+        PlayerPoints points = playerPoints.get(uuid);
+        return points != null ? points.copy() : load(uuid);
+    }
+    
+    @Override
+    public void add(UUID uuid, int category, int points) {
+        playerPoints.compute(uuid, (key, current) -> {
+            PlayerPoints target = current != null ? current : load(key);
+            target.add(category, points);
+            dirtyPlayers.add(key);
+            return target;
+        });
+    }
+    
+    @Override
+    public PlayerPoints getAndReset(UUID uuid) {
+        PlayerPoints[] reset = new PlayerPoints[1];
+        playerPoints.compute(uuid, (key, current) -> {
+            PlayerPoints target = current != null ? current : load(key);
+            reset[0] = target.getAndReset();
+            if (!reset[0].isZero()) {
+                dirtyPlayers.add(key);
+                return target;
+            }
+            // 元から0ポイントのプレイヤーは新たにメモリへ載せない
+            return current;
+        });
+        return reset[0];
+    }
+    
+    @Override
+    public void importPoints(UUID uuid, PlayerPoints points) {
+        playerPoints.compute(uuid, (key, current) -> {
+            PlayerPoints target = current != null ? current : load(key);
+            target.addAll(points);
+            dirtyPlayers.add(key);
+            return target;
+        });
+    }
+    
+    /**
+     * 0ポイントで未保存の変更が無いプレイヤーをメモリから取り除く
+     * 変更（add / getAndReset / importPoints）はcomputeの中で変更フラグまで立てるため、
+     * 取り除いたオブジェクトに加算されることも、未保存の変更を取り除くことも無い
+     * 保存と同時には呼ばれない（PlayerDataManagerが書き込みの排他制御の中で呼び出す）ため、
+     * 取り除いたプレイヤーは直前の保存でファイルからも除かれている
+     */
+    @Override
+    public int prune(Predicate<UUID> keep) {
+        int pruned = 0;
+        for (UUID uuid : playerPoints.keySet()) {
+            if (keep.test(uuid)) {
+                continue;
+            }
+            boolean[] removed = new boolean[1];
+            playerPoints.computeIfPresent(uuid, (key, points) -> {
+                if (points.isZero() && !dirtyPlayers.contains(key)) {
+                    removed[0] = true;
+                    return null;
+                }
+                return points;
+            });
+            if (removed[0]) {
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+    
+    @Override
+    public int residentCount() {
+        return playerPoints.size();
+    }
+    
+    @Override
+    public int flush() throws IOException {
+        // 変更フラグは書き込み前に回収する（書き込み中の変更は次回に保存される）
+        List<UUID> drained = drainDirtyPlayers();
+        if (drained.isEmpty()) {
+            return 0;
+        }
+        write(drained);
+        return drained.size();
+    }
+    
+    @Override
+    public int save() throws IOException {
+        List<UUID> drained = drainDirtyPlayers();
+        write(drained);
+        return drained.size();
+    }
+    
+    private void write(List<UUID> drained) throws IOException {
+        try {
+            writeAtomically();
+        } catch (IOException | RuntimeException e) {
+            // 失敗した場合は次回に再試行する
+            dirtyPlayers.addAll(drained);
+            throw e;
+        }
+    }
+    
+    @Override
+    public int pendingCount() {
+        return dirtyPlayers.size();
+    }
+    
+    @Override
+    public Set<UUID> pendingPlayers() {
+        return new HashSet<>(dirtyPlayers);
+    }
+    
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        if (lazyLoad) {
+            return playerPoints.isEmpty() && fileIndex.join().size() == 0;
+        }
+        return playerPoints.isEmpty();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (indexedChannel != null) {
+            indexedChannel.close();
+        }
+    }
+    
+    private List<UUID> drainDirtyPlayers() {
+        List<UUID> drained = new ArrayList<>(dirtyPlayers.size());
+        for (UUID uuid : dirtyPlayers) {
+            if (dirtyPlayers.remove(uuid)) {
+                drained.add(uuid);
+            }
+        }
+        return drained;
+    }
+    
+    /**
+     * 一時ファイルに書き込んでから置き換える（書き込み途中で停止してもデータが壊れない）
+     */
+    private void writeAtomically() throws IOException {
+        if (lazyLoad) {
+            writeWithIndex();
+            return;
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), 1 << 16)) {
+            JsonRecordWriter writer = new JsonRecordWriter(out);
+            for (Map.Entry<UUID, PlayerPoints> entry : playerPoints.entrySet()) {
+                // 0ポイントのプレイヤーは書き込まない（読み込み時は0ポイントとして扱われる）
+                if (!entry.getValue().isZero()) {
+                    writer.write(entry.getKey(), entry.getValue());
+                }
+            }
+            writer.finish();
+        }
+        replaceDataFile();
+    }
+    
+    /**
+     * 遅延読み込み時の保存
+     * 読み込み済みのレコードはメモリから、未読み込みのレコードは現在のファイルから書き写し、
+     * 書き込んだ位置で新しい索引を作る
+     */
+    private void writeWithIndex() throws IOException {
+        // 索引を作れなかった場合はファイルを上書きしない（例外がそのまま伝わる）
+        PointsFileIndex oldIndex = fileIndex.join();
+        // 書き込み中に読み込まれたレコードが重複しないよう、メモリ上のキーを先に確定させる
+        Set<UUID> inMemory = new HashSet<>(playerPoints.keySet());
+        PointsFileIndex newIndex = new PointsFileIndex(oldIndex.size() + inMemory.size());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), 1 << 16)) {
+            JsonRecordWriter writer = new JsonRecordWriter(out);
+            for (UUID uuid : inMemory) {
+                PlayerPoints points = playerPoints.get(uuid);
+                if (points != null && !points.isZero()) {
+                    newIndex.put(uuid, writer.write(uuid, points));
+                }
+            }
+            Lock lock = indexLock.readLock();
+            lock.lock();
+            try {
+                oldIndex.forEach((uuid, offset) -> {
+                    if (!inMemory.contains(uuid)) {
+                        PlayerPoints points = PointsFileIndex.readAt(indexedChannel, offset);
+                        if (!points.isZero()) {
+                            newIndex.put(uuid, writer.write(uuid, points));
+                        }
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+            writer.finish();
+        }
+        
+        Lock lock = indexLock.writeLock();
+        lock.lock();
+        try {
+            if (indexedChannel != null) {
+                indexedChannel.close();
+            }
+            replaceDataFile();
+            indexedChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+            fileIndex = CompletableFuture.completedFuture(newIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void replaceDataFile() throws IOException {
+        bytesWritten += tempFile.length();
+        try {
+            Files.move(tempFile.toPath(), dataFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
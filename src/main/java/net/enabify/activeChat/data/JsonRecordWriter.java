@@ -0,0 +1,52 @@
+package net.enabify.activeChat.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * playerPoints.jsonを1件ずつ書き出すクラス
+ * 書き出した各レコードの位置（バイトオフセット）を返すので、遅延読み込み用の索引を同時に作れる
+ * 出力はすべてASCIIなので文字数とバイト数が一致する
+ */
+class JsonRecordWriter {
+    private final OutputStream out;
+    private long position;
+    private boolean first = true;
+
+    JsonRecordWriter(OutputStream out) throws IOException {
+        this.out = out;
+        append("{");
+    }
+
+    /**
+     * 1プレイヤー分のレコードを書き出す
+     * @return 値のオブジェクト（'{'）の位置
+     */
+    long write(UUID uuid, PlayerPoints points) throws IOException {
+        append(first ? "\n  \"" : ",\n  \"");
+        first = false;
+        append(uuid.toString());
+        append("\": ");
+        long offset = position;
+        append("{\n    \"normalChat\": " + points.getNormalChat()
+            + ",\n    \"greeting\": " + points.getGreeting()
+            + ",\n    \"welcomeNewPlayer\": " + points.getWelcomeNewPlayer()
+            + "\n  }");
+        return offset;
+    }
+
+    /**
+     * 閉じ括弧を書き出す
+     */
+    void finish() throws IOException {
+        append(first ? "}" : "\n}");
+        out.flush();
+    }
+
+    private void append(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+        position += text.length();
+    }
+}
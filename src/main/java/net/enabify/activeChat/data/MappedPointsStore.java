@@ -0,0 +1,536 @@
+package net.enabify.activeChat.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * メモリマップドファイル上の固定長スロットにポイントを保持するストア
+ * ヒープにプレイヤーごとのオブジェクトを持たず、永続化はOSのページキャッシュに任せる
+ *
+ * スロット形式（32byte）: [UUID上位 8byte][UUID下位 8byte][通常 4byte][挨拶 4byte][歓迎 4byte][状態 4byte]
+ * スロットはUUIDのハッシュによるオープンアドレス法（線形探索）で配置する
+ *
+ * 拡張・縮小では世代番号を付けた新しいファイル（playerPoints.dat.1, .2, ...）を作り、マップを切り替えてから古いファイルを消す
+ * マップ中のファイルは置き換えられない環境（Windows）があるため、マップしたファイルを上書き・移動しない
+ * 新しいファイルは全スロットを書き込んだ後にマジックを書き込み、起動時はマジックが正しい最新の世代を開く
+ */
+public class MappedPointsStore implements PointsStore {
+    private static final int MAGIC = 0x4143504D; // "ACPM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 32;
+    private static final int OFFSET_MSB = 0;
+    private static final int OFFSET_LSB = 8;
+    private static final int OFFSET_COUNTERS = 16;
+    private static final int OFFSET_STATE = 28;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_SIZE_FIELD = 12;
+    private static final int STATE_USED = 1;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+    // マップできる大きさ（2GB未満）に収まる最大スロット数
+    private static final int MAX_CAPACITY = 1 << 25;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // 世代0のファイル（以降の世代はこの名前に".世代番号"を付ける）
+    private final File file;
+    // 拡張（再マップ）中は他の操作を止める
+    private final ReentrantReadWriteLock remapLock = new ReentrantReadWriteLock();
+    // 新しいスロットの確保は1スレッドずつ行う
+    private final Object insertLock = new Object();
+
+    private int generation;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private volatile int size;
+
+    /**
+     * @param initialCapacity 新規作成時のスロット数（2の累乗に切り上げる）
+     */
+    public MappedPointsStore(File file, int initialCapacity) throws IOException {
+        this.file = file;
+        file.getParentFile().mkdirs();
+        generation = latestGeneration();
+        if (generation < 0) {
+            generation = 0;
+            create(file, tableSizeFor(initialCapacity));
+            writeMagic(file);
+        }
+        open(generationFile(generation));
+        deleteOtherGenerations();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public PlayerPoints get(UUID uuid) {
+        ReentrantReadWriteLock.ReadLock lock = remapLock.readLock();
+        lock.lock();
+        try {
+            int slot = find(buffer, capacity, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (slot < 0) {
+                return new PlayerPoints();
+            }
+            int counters = slot + OFFSET_COUNTERS;
+            return new PlayerPoints(
+                (int) INT.getVolatile(buffer, counters),
+                (int) INT.getVolatile(buffer, counters + 4),
+                (int) INT.getVolatile(buffer, counters + 8));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ポイントを加算する（スロット上で直接アトミックに加算）
+     * @param counter NORMAL_CHAT / GREETING / WELCOME_NEW_PLAYER
+     */
+    @Override
+    public void add(UUID uuid, int counter, int points) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        while (true) {
+            ReentrantReadWriteLock.ReadLock lock = remapLock.readLock();
+            lock.lock();
+            try {
+                int slot = findOrInsert(msb, lsb);
+                if (slot >= 0) {
+                    INT.getAndAdd(buffer, slot + OFFSET_COUNTERS + counter * 4, points);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // 空きスロットが足りないので拡張してやり直す
+            grow();
+        }
+    }
+
+    @Override
+    public PlayerPoints getAndReset(UUID uuid) {
+        ReentrantReadWriteLock.ReadLock lock = remapLock.readLock();
+        lock.lock();
+        try {
+            int slot = find(buffer, capacity, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (slot < 0) {
+                return new PlayerPoints();
+            }
+            int counters = slot + OFFSET_COUNTERS;
+            return new PlayerPoints(
+                (int) INT.getAndSet(buffer, counters, 0),
+                (int) INT.getAndSet(buffer, counters + 4, 0),
+                (int) INT.getAndSet(buffer, counters + 8, 0));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 全プレイヤーのポイントを走査する（エクスポート用）
+     */
+    public void forEach(BiConsumer<UUID, PlayerPoints> action) {
+        ReentrantReadWriteLock.ReadLock lock = remapLock.readLock();
+        lock.lock();
+        try {
+            for (int i = 0; i < capacity; i++) {
+                int slot = HEADER_SIZE + i * SLOT_SIZE;
+                if ((int) INT.getAcquire(buffer, slot + OFFSET_STATE) != STATE_USED) {
+                    continue;
+                }
+                int counters = slot + OFFSET_COUNTERS;
+                action.accept(
+                    new UUID((long) LONG.get(buffer, slot + OFFSET_MSB), (long) LONG.get(buffer, slot + OFFSET_LSB)),
+                    new PlayerPoints(
+                        (int) INT.getVolatile(buffer, counters),
+                        (int) INT.getVolatile(buffer, counters + 4),
+                        (int) INT.getVolatile(buffer, counters + 8)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ページキャッシュの内容をディスクへ書き出す
+     */
+    public void force() {
+        ReentrantReadWriteLock.ReadLock lock = remapLock.readLock();
+        lock.lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 既存データを取り込む（スロットのポイントは4byteのため上限で切り詰める）
+     */
+    @Override
+    public void importPoints(UUID uuid, PlayerPoints points) {
+        add(uuid, NORMAL_CHAT, (int) Math.min(Integer.MAX_VALUE, points.getNormalChat()));
+        add(uuid, GREETING, (int) Math.min(Integer.MAX_VALUE, points.getGreeting()));
+        add(uuid, WELCOME_NEW_PLAYER, (int) Math.min(Integer.MAX_VALUE, points.getWelcomeNewPlayer()));
+    }
+    
+    /**
+     * 書き込みはOSのページキャッシュに任せるため、定期保存では何もしない
+     */
+    @Override
+    public int flush() {
+        return 0;
+    }
+    
+    @Override
+    public int save() {
+        force();
+        return 0;
+    }
+    
+    @Override
+    public int pendingCount() {
+        return 0;
+    }
+    
+    @Override
+    public Set<UUID> pendingPlayers() {
+        return Set.of();
+    }
+    
+    /**
+     * 書き込みはマップしたメモリへの更新のため数えない
+     */
+    @Override
+    public long bytesWritten() {
+        return 0;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        ReentrantReadWriteLock.WriteLock lock = remapLock.writeLock();
+        lock.lock();
+        try {
+            if (channel != null) {
+                buffer.force();
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * スロットを探し、無ければ確保する
+     * @return スロットの位置（拡張が必要な場合は-1）
+     */
+    private int findOrInsert(long msb, long lsb) {
+        int slot = find(buffer, capacity, msb, lsb);
+        if (slot >= 0) {
+            return slot;
+        }
+        synchronized (insertLock) {
+            // 他のスレッドが先に確保していないか再確認
+            slot = find(buffer, capacity, msb, lsb);
+            if (slot >= 0) {
+                return slot;
+            }
+            if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+                return -1;
+            }
+            slot = -slot - 1;
+            LONG.set(buffer, slot + OFFSET_MSB, msb);
+            LONG.set(buffer, slot + OFFSET_LSB, lsb);
+            // UUIDを書き込んでから使用中にする（探索側はgetAcquireで読む）
+            INT.setRelease(buffer, slot + OFFSET_STATE, STATE_USED);
+            size++;
+            INT.setRelease(buffer, HEADER_SIZE_FIELD, size);
+            return slot;
+        }
+    }
+
+    /**
+     * @return 見つかった場合はスロットの位置、見つからない場合は(-空きスロットの位置 - 1)
+     */
+    private static int find(MappedByteBuffer buffer, int capacity, long msb, long lsb) {
+        int mask = capacity - 1;
+        int index = hash(msb, lsb) & mask;
+        while (true) {
+            int slot = HEADER_SIZE + index * SLOT_SIZE;
+            if ((int) INT.getAcquire(buffer, slot + OFFSET_STATE) != STATE_USED) {
+                return -slot - 1;
+            }
+            if ((long) LONG.get(buffer, slot + OFFSET_MSB) == msb && (long) LONG.get(buffer, slot + OFFSET_LSB) == lsb) {
+                return slot;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * スロット数を2倍にしたファイルを作り直して置き換える
+     */
+    private void grow() {
+        ReentrantReadWriteLock.WriteLock lock = remapLock.writeLock();
+        lock.lock();
+        try {
+            if (size + 1 <= capacity * MAX_LOAD_FACTOR) {
+                // 他のスレッドが既に拡張した
+                return;
+            }
+            if (capacity >= MAX_CAPACITY) {
+                throw new IllegalStateException("ポイントファイルのスロット数が上限に達しました: " + file);
+            }
+            rebuild(capacity * 2, null);
+        } catch (IOException e) {
+            throw new IllegalStateException("ポイントファイルを拡張できませんでした: " + file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 0ポイントのプレイヤーのスロットを除いてファイルを作り直す
+     * 線形探索のスロットは個別に空けると探索が途切れるため、残すスロットだけを新しいファイルに配置し直す
+     * 残るプレイヤー数に合わせてスロット数も縮小する（ファイルの大きさはポイントを持つプレイヤーの数に比例する）
+     */
+    @Override
+    public int prune(Predicate<UUID> keep) throws IOException {
+        ReentrantReadWriteLock.WriteLock lock = remapLock.writeLock();
+        lock.lock();
+        try {
+            int removable = 0;
+            for (int i = 0; i < capacity; i++) {
+                if (isPrunable(HEADER_SIZE + i * SLOT_SIZE, keep)) {
+                    removable++;
+                }
+            }
+            if (removable == 0) {
+                return 0;
+            }
+            // 縮小直後に再び拡張しないよう、残る数の2倍を収められる大きさにする
+            int before = size;
+            int remaining = size - removable;
+            int newCapacity = Math.min(capacity, tableSizeFor((int) Math.ceil(remaining * 2 / MAX_LOAD_FACTOR)));
+            rebuild(newCapacity, keep);
+            return before - size;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private boolean isPrunable(int slot, Predicate<UUID> keep) {
+        if ((int) INT.get(buffer, slot + OFFSET_STATE) != STATE_USED) {
+            return false;
+        }
+        int counters = slot + OFFSET_COUNTERS;
+        if ((int) INT.get(buffer, counters) != 0 || (int) INT.get(buffer, counters + 4) != 0
+            || (int) INT.get(buffer, counters + 8) != 0) {
+            return false;
+        }
+        return !keep.test(new UUID((long) LONG.get(buffer, slot + OFFSET_MSB), (long) LONG.get(buffer, slot + OFFSET_LSB)));
+    }
+    
+    @Override
+    public int residentCount() {
+        return size;
+    }
+    
+    /**
+     * 指定したスロット数で次の世代のファイルを作り、マップを切り替える（remapLockの書き込みロック中に呼び出す）
+     * 作り直しに失敗した場合は、今のファイルとマップをそのまま使い続ける
+     * @param prune nullでない場合は、0ポイントでこの条件に当てはまらないプレイヤーのスロットを除く
+     */
+    private void rebuild(int newCapacity, Predicate<UUID> prune) throws IOException {
+        File next = generationFile(generation + 1);
+        FileChannel nextChannel = null;
+        MappedByteBuffer grown;
+        int newSize = 0;
+        try {
+            create(next, newCapacity);
+            nextChannel = FileChannel.open(next.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            grown = nextChannel.map(FileChannel.MapMode.READ_WRITE, 0, nextChannel.size());
+            for (int i = 0; i < capacity; i++) {
+                int from = HEADER_SIZE + i * SLOT_SIZE;
+                if ((int) INT.get(buffer, from + OFFSET_STATE) != STATE_USED
+                    || prune != null && isPrunable(from, prune)) {
+                    continue;
+                }
+                long msb = (long) LONG.get(buffer, from + OFFSET_MSB);
+                long lsb = (long) LONG.get(buffer, from + OFFSET_LSB);
+                int to = -find(grown, newCapacity, msb, lsb) - 1;
+                grown.put(to, buffer, from, SLOT_SIZE);
+                newSize++;
+            }
+            INT.set(grown, HEADER_SIZE_FIELD, newSize);
+            grown.force();
+            // 全スロットをディスクに書き出してからマジックを書き込む（途中で止まったファイルは起動時に使わない）
+            INT.set(grown, 0, MAGIC);
+            grown.force();
+        } catch (IOException | RuntimeException e) {
+            if (nextChannel != null) {
+                nextChannel.close();
+            }
+            deleteQuietly(next);
+            throw e;
+        }
+        FileChannel previous = channel;
+        channel = nextChannel;
+        buffer = grown;
+        capacity = newCapacity;
+        size = newSize;
+        generation++;
+        try {
+            previous.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // 古いマップが解放されるまで消せない環境では、次回の作り直しか起動時に消す
+        deleteOtherGenerations();
+    }
+
+    private void open(File target) throws IOException {
+        channel = FileChannel.open(target.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if ((int) INT.get(buffer, 0) != MAGIC || (int) INT.get(buffer, 4) != VERSION) {
+            channel.close();
+            throw new IOException("ポイントファイルの形式が不正です: " + target);
+        }
+        capacity = (int) INT.get(buffer, HEADER_CAPACITY);
+        size = (int) INT.getVolatile(buffer, HEADER_SIZE_FIELD);
+    }
+
+    /**
+     * マジック以外のヘッダーを書き込んだ空のファイルを作る
+     */
+    private static void create(File target, int capacity) throws IOException {
+        try (FileChannel created = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = created.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            INT.set(header, 4, VERSION);
+            INT.set(header, HEADER_CAPACITY, capacity);
+            INT.set(header, HEADER_SIZE_FIELD, 0);
+            header.force();
+        }
+    }
+
+    private static void writeMagic(File target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).putInt(0, MAGIC);
+            channel.write(magic, 0);
+            channel.force(false);
+        }
+    }
+
+    private File generationFile(int generation) {
+        return generation == 0 ? file : new File(file.getParentFile(), file.getName() + "." + generation);
+    }
+
+    /**
+     * 開くべき世代（マジックを書き込み済みの最新の世代。無い場合は-1）
+     * 世代0は形式が不正でも開こうとする（壊れたファイルを新しいファイルで上書きしない）
+     */
+    private int latestGeneration() throws IOException {
+        int latest = file.exists() && file.length() >= HEADER_SIZE ? 0 : -1;
+        File[] files = file.getParentFile().listFiles();
+        if (files == null) {
+            return latest;
+        }
+        for (File candidate : files) {
+            int number = generationOf(candidate);
+            if (number > latest && hasMagic(candidate)) {
+                latest = number;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return 世代0以外のこのストアのファイルであれば世代番号、そうでなければ-1
+     */
+    private int generationOf(File candidate) {
+        String prefix = file.getName() + ".";
+        String name = candidate.getName();
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 9) {
+            return -1;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(name.substring(prefix.length()));
+    }
+
+    private static boolean hasMagic(File candidate) throws IOException {
+        if (candidate.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(candidate.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            channel.read(magic, 0);
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * 今の世代以外のファイル（古い世代、作りかけの世代、以前の版の拡張用ファイル）を消す
+     */
+    private void deleteOtherGenerations() {
+        File[] files = file.getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File candidate : files) {
+            int number = candidate.equals(file) ? 0 : generationOf(candidate);
+            if (number >= 0 && number != generation) {
+                deleteQuietly(candidate);
+            }
+        }
+        deleteQuietly(new File(file.getParentFile(), file.getName() + ".grow"));
+    }
+
+    private static void deleteQuietly(File target) {
+        try {
+            Files.deleteIfExists(target.toPath());
+        } catch (IOException e) {
+            // マップが残っていて消せない場合は、次の機会に消す
+        }
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int n = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        return Math.min(n, MAX_CAPACITY);
+    }
+}
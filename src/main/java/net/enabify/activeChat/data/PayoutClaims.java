@@ -0,0 +1,152 @@
+package net.enabify.activeChat.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 付与待ちの記録（取得してリセットしたが、まだ付与を確かめていないポイント）の置き場所
+ *
+ * 取得したポイントは、プレイヤーごとに決まる付与待ちの記録用のUUID（key）へ移して保存する
+ * （PlayerDataManager.claimPoints。リセットと同じ書き込みで保存される）
+ * 付与待ちの記録があるプレイヤーの一覧はファイルに保存し、付与を確かめる前に停止した場合は起動時にプレイヤーへ戻す
+ *
+ * keyはサーバーごとの乱数でUUIDを変換したもの（データベースを共有する他のサーバーの記録と混ざらない）
+ * 変種のビットを実在のプレイヤーのUUIDで使われない値にするため、プレイヤーのUUIDと重なることはない
+ *
+ * ファイル形式: [マジック 4byte][乱数 16byte][件数 4byte][UUID 16byte × 件数]
+ */
+public class PayoutClaims {
+    private static final int MAGIC = 0x41435043; // "ACPC"
+    // 変種のビット（上位2bit）。プレイヤーのUUIDの10を11に、Bedrock版（Floodgate）の00を01に変える
+    private static final long VARIANT_MASK = 0xC000000000000000L;
+    private static final long VARIANT_FLIP = 0x4000000000000000L;
+    
+    // 保存先（nullの場合はファイルに保存しない）
+    private final File file;
+    private final File tempFile;
+    private final long saltMsb;
+    private final long saltLsb;
+    // 付与待ちの記録があるプレイヤー（thisで保護）
+    private final Set<UUID> players = new LinkedHashSet<>();
+    
+    /**
+     * 一覧をファイルから読み込む（無い場合は新しい乱数で作成する）
+     */
+    public PayoutClaims(File file) throws IOException {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        if (!file.exists()) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            this.saltMsb = random.nextLong();
+            this.saltLsb = random.nextLong() & ~VARIANT_MASK | VARIANT_FLIP;
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            write();
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("付与待ちの一覧の形式が不正です: " + file.getName());
+            }
+            this.saltMsb = in.readLong();
+            this.saltLsb = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                players.add(new UUID(in.readLong(), in.readLong()));
+            }
+        }
+    }
+    
+    /**
+     * ファイルに保存しない一覧（再生・テスト用。停止すると付与待ちの記録を起動時に戻せない）
+     */
+    public PayoutClaims() {
+        this.file = null;
+        this.tempFile = null;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.saltMsb = random.nextLong();
+        this.saltLsb = random.nextLong() & ~VARIANT_MASK | VARIANT_FLIP;
+    }
+    
+    /**
+     * プレイヤーの付与待ちの記録のUUID
+     */
+    public UUID key(UUID player) {
+        return new UUID(player.getMostSignificantBits() ^ saltMsb, player.getLeastSignificantBits() ^ saltLsb);
+    }
+    
+    /**
+     * 付与待ちの記録があるプレイヤー
+     */
+    public synchronized List<UUID> players() {
+        return new ArrayList<>(players);
+    }
+    
+    /**
+     * ポイントを付与待ちの記録へ移す前に、プレイヤーを一覧に加えて保存する
+     * 保存できなかった場合は一覧を元に戻して例外を投げる（ポイントを移してはいけない）
+     */
+    public synchronized void add(Collection<UUID> uuids) throws IOException {
+        List<UUID> added = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            if (players.add(uuid)) {
+                added.add(uuid);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        try {
+            write();
+        } catch (IOException e) {
+            added.forEach(players::remove);
+            throw e;
+        }
+    }
+    
+    /**
+     * 付与待ちの記録を消した（または戻した）ことを保存した後に、プレイヤーを一覧から除く
+     */
+    public synchronized void remove(Collection<UUID> uuids) throws IOException {
+        if (players.removeAll(uuids)) {
+            write();
+        }
+    }
+    
+    private void write() throws IOException {
+        if (file == null) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeLong(saltMsb);
+            out.writeLong(saltLsb);
+            out.writeInt(players.size());
+            for (UUID uuid : players) {
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            }
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
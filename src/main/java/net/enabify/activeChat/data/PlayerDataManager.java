@@ -1,118 +1,342 @@
 package net.enabify.activeChat.data;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import net.enabify.activeChat.metrics.PluginMetrics;
+import net.enabify.activeChat.metrics.PointsSavedEvent;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
 /**
  * プレイヤーのポイントデータを管理するクラス
+ * 実際の保存先はPointsStore（JSON / ジャーナル / メモリマップド / データベース）に任せる
  */
 public class PlayerDataManager {
-    private final File dataFile;
-    private final Gson gson;
-    private final Map<UUID, PlayerPoints> playerPoints;
+    private final PointsStore store;
+    // 保存時間の計測先
+    private final PluginMetrics metrics;
     
-    public PlayerDataManager(File dataFolder) {
-        this.dataFile = new File(dataFolder, "playerPoints.json");
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.playerPoints = new ConcurrentHashMap<>();
-        loadData();
+    // 書き込みの排他制御
+    private final ReentrantLock saveLock = new ReentrantLock();
+    
+    // 書き込み遅延保存（nullの場合は保存要求ごとに即時保存）
+    private volatile WriteBehindSaver writeBehind;
+    
+    // 統計：実際に書き込んだ回数
+    private final AtomicLong savesWritten = new AtomicLong();
+    // 統計：書き込みを行わなかった保存要求の回数
+    private final AtomicLong savesSkipped = new AtomicLong();
+    // 統計：まとめて書き込まれたプレイヤー変更の件数
+    private final AtomicLong updatesMerged = new AtomicLong();
+    // 統計：0ポイントのため取り除いたプレイヤーの件数
+    private final AtomicLong playersPruned = new AtomicLong();
+    
+    public PlayerDataManager(PointsStore store) {
+        this(store, new PluginMetrics());
+    }
+    
+    public PlayerDataManager(PointsStore store, PluginMetrics metrics) {
+        this.store = store;
+        this.metrics = metrics;
     }
     
     /**
-     * JSONファイルからデータを読み込む
+     * 全体を保存する（変更の有無に関わらず書き込む）
      */
-    private void loadData() {
-        if (!dataFile.exists()) {
-            try {
-                dataFile.getParentFile().mkdirs();
-                dataFile.createNewFile();
-                saveData(); // 空のJSONファイルを作成
-            } catch (IOException e) {
-                e.printStackTrace();
+    public void saveData() {
+        saveLock.lock();
+        try {
+            PointsSavedEvent trace = PointsSavedEvent.start();
+            long bytesBefore = store.bytesWritten();
+            long started = System.nanoTime();
+            int merged = store.save();
+            updatesMerged.addAndGet(merged);
+            metrics.recordSave(System.nanoTime() - started);
+            savesWritten.incrementAndGet();
+            if (trace != null) {
+                trace.finish(merged, store.bytesWritten() - bytesBefore, true);
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    /**
+     * 保存を要求する
+     * 書き込み遅延保存が有効な場合は次回のフラッシュにまとめられる
+     */
+    public void requestSave() {
+        WriteBehindSaver saver = writeBehind;
+        if (saver == null) {
+            flush();
             return;
         }
-        
-        try (FileReader reader = new FileReader(dataFile)) {
-            Type type = new TypeToken<Map<String, PlayerPoints>>(){}.getType();
-            Map<String, PlayerPoints> loaded = gson.fromJson(reader, type);
-            
-            if (loaded != null) {
-                playerPoints.clear();
-                loaded.forEach((uuidStr, points) -> {
-                    try {
-                        UUID uuid = UUID.fromString(uuidStr);
-                        playerPoints.put(uuid, points);
-                    } catch (IllegalArgumentException e) {
-                        // 無効なUUIDは無視
-                    }
-                });
+        savesSkipped.incrementAndGet();
+        saver.onSaveRequested(store.pendingCount());
+    }
+    
+    /**
+     * 未保存の変更がある場合のみ保存する
+     * @return 書き込んだ場合はtrue
+     */
+    public boolean flush() {
+        if (store.pendingCount() == 0) {
+            savesSkipped.incrementAndGet();
+            return false;
+        }
+        saveLock.lock();
+        try {
+            return flushLocked();
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    /**
+     * 待ち時間の上限を指定して保存する（シャットダウン用）
+     * @param timeoutMillis 実行中の保存を待つ最大時間（ミリ秒）
+     * @return 時間内に保存を完了できた場合はtrue
+     */
+    public boolean flush(long timeoutMillis) {
+        try {
+            if (!saveLock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            if (store.pendingCount() > 0) {
+                flushLocked();
             }
+            return store.pendingCount() == 0;
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    /**
+     * 未保存の変更を書き込む（書き込めなかった場合は例外）
+     * ポイント付与のように、保存できたことを確かめてから次に進む場合に使う
+     */
+    public void commit() throws IOException {
+        saveLock.lock();
+        try {
+            writeLocked();
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    private boolean flushLocked() {
+        try {
+            return writeLocked();
         } catch (IOException e) {
+            // 失敗した変更はストアに残り、次回に再試行される
             e.printStackTrace();
+            return false;
         }
     }
     
+    private boolean writeLocked() throws IOException {
+        // JFRのイベント（記録していない場合はnull。書き込まなかった場合は記録しない）
+        PointsSavedEvent trace = PointsSavedEvent.start();
+        long bytesBefore = store.bytesWritten();
+        long started = System.nanoTime();
+        int written = store.flush();
+        if (written == 0) {
+            savesSkipped.incrementAndGet();
+            return false;
+        }
+        metrics.recordSave(System.nanoTime() - started);
+        savesWritten.incrementAndGet();
+        updatesMerged.addAndGet(written);
+        if (trace != null) {
+            trace.finish(written, store.bytesWritten() - bytesBefore, false);
+        }
+        return true;
+    }
+    
     /**
-     * JSONファイルにデータを保存する
+     * 0ポイントのプレイヤーをメモリと保存先から取り除く（一定間隔の非同期タスクから呼び出す）
+     * 書き込みと同時に行わないよう、書き込みの排他制御の中で行う
+     * @param keep 取り除かないプレイヤー（オンラインのプレイヤー）
+     * @return 取り除いた件数
      */
-    public void saveData() {
-        try (FileWriter writer = new FileWriter(dataFile)) {
-            Map<String, PlayerPoints> toSave = new HashMap<>();
-            playerPoints.forEach((uuid, points) -> toSave.put(uuid.toString(), points));
-            gson.toJson(toSave, writer);
+    public int prune(Predicate<UUID> keep) {
+        saveLock.lock();
+        try {
+            int pruned = store.prune(keep);
+            playersPruned.addAndGet(pruned);
+            return pruned;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    /**
+     * 未保存の変更があるプレイヤーの現在のポイントを、playerPoints.jsonと同じ形式でファイルに書き出す
+     * 書き込みの排他制御は取らない（保存が終わらずにシャットダウンする場合の退避用）
+     * @return 書き出したプレイヤー数
+     */
+    public int dumpPending(File file) throws IOException {
+        int count = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()))) {
+            JsonRecordWriter writer = new JsonRecordWriter(out);
+            for (UUID uuid : store.pendingPlayers()) {
+                writer.write(uuid, store.get(uuid));
+                count++;
+            }
+            writer.finish();
+        }
+        return count;
+    }
+    
+    /**
+     * 保存先を閉じる（未書き込みの変更は書き込まれる）
+     */
+    public void close() {
+        try {
+            store.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
     
     /**
-     * プレイヤーのポイントを取得
+     * 書き込み遅延保存を設定する
+     */
+    public void setWriteBehind(WriteBehindSaver writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+    
+    /**
+     * 未保存の変更の件数を取得
+     */
+    public int getDirtyCount() {
+        return store.pendingCount();
+    }
+    
+    public long getSavesWritten() {
+        return savesWritten.get();
+    }
+    
+    public long getSavesSkipped() {
+        return savesSkipped.get();
+    }
+    
+    public long getUpdatesMerged() {
+        return updatesMerged.get();
+    }
+    
+    public long getPlayersPruned() {
+        return playersPruned.get();
+    }
+    
+    /**
+     * メモリ（保存先がファイルの場合はファイル上）に保持しているプレイヤーの数
+     */
+    public int getResidentCount() {
+        return store.residentCount();
+    }
+    
+    /**
+     * プレイヤーのポイントを取得（複製を返すため、変更しても保存されない）
      */
     public PlayerPoints getPoints(UUID uuid) {
-        return playerPoints.computeIfAbsent(uuid, k -> new PlayerPoints());
+        return store.get(uuid);
     }
     
     /**
      * 通常チャットポイントを追加
      */
     public void addNormalChatPoints(UUID uuid, int points) {
-        getPoints(uuid).addNormalChat(points);
+        store.add(uuid, PointsStore.NORMAL_CHAT, points);
     }
     
     /**
      * 挨拶ポイントを追加
      */
     public void addGreetingPoints(UUID uuid, int points) {
-        getPoints(uuid).addGreeting(points);
+        store.add(uuid, PointsStore.GREETING, points);
     }
     
     /**
      * 新規さん歓迎ポイントを追加
      */
     public void addWelcomeNewPlayerPoints(UUID uuid, int points) {
-        getPoints(uuid).addWelcomeNewPlayer(points);
+        store.add(uuid, PointsStore.WELCOME_NEW_PLAYER, points);
+    }
+    
+    /**
+     * getAndResetPointsで取得したポイントを戻す（付与に失敗した場合）
+     * 取得後に加算されたポイントに足すため、その間の獲得は失われない
+     */
+    public void restorePoints(UUID uuid, PlayerPoints claimed) {
+        add(uuid, claimed, 1);
+    }
+    
+    /**
+     * ポイントを取得してリセットし、付与待ちの記録（key）へ移す（ポイント付与用）
+     * 書き込みの排他制御の中で移すため、リセットと付与待ちの記録は必ず同じ書き込みで保存される
+     * @return 移したポイント
+     */
+    public PlayerPoints claimPoints(UUID uuid, UUID key) {
+        saveLock.lock();
+        try {
+            return store.getAndMove(uuid, key);
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    /**
+     * claimPointsで移したポイントを付与待ちの記録から差し引く
+     * @param restoreTo 付与できなかった場合に戻すプレイヤー（付与できた場合はnull）
+     */
+    public void releaseClaim(UUID key, PlayerPoints claimed, UUID restoreTo) {
+        saveLock.lock();
+        try {
+            add(key, claimed, -1);
+            if (restoreTo != null) {
+                add(restoreTo, claimed, 1);
+            }
+        } finally {
+            saveLock.unlock();
+        }
+    }
+    
+    private void add(UUID uuid, PlayerPoints points, int sign) {
+        add(uuid, PointsStore.NORMAL_CHAT, sign * points.getNormalChat());
+        add(uuid, PointsStore.GREETING, sign * points.getGreeting());
+        add(uuid, PointsStore.WELCOME_NEW_PLAYER, sign * points.getWelcomeNewPlayer());
+    }
+    
+    private void add(UUID uuid, int category, long amount) {
+        while (amount != 0) {
+            int chunk = (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, amount));
+            store.add(uuid, category, chunk);
+            amount -= chunk;
+        }
     }
     
     /**
      * プレイヤーのポイントを取得してリセット
      */
     public PlayerPoints getAndResetPoints(UUID uuid) {
-        PlayerPoints points = getPoints(uuid);
-        PlayerPoints copy = new PlayerPoints(points.normalChat, points.greeting, points.welcomeNewPlayer);
-        points.reset();
-        return copy;
+        return store.getAndReset(uuid);
     }
 }
-
@@ -1,30 +1,61 @@
 package net.enabify.activeChat.data;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * プレイヤーのポイント内訳を保持するクラス
+ * 複数スレッドから同時に加算・取得リセットしてもポイントが失われない（ロックを使わずCASで更新）
  */
 public class PlayerPoints {
+    private static final VarHandle NORMAL_CHAT;
+    private static final VarHandle GREETING;
+    private static final VarHandle WELCOME_NEW_PLAYER;
+    
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NORMAL_CHAT = lookup.findVarHandle(PlayerPoints.class, "normalChat", long.class);
+            GREETING = lookup.findVarHandle(PlayerPoints.class, "greeting", long.class);
+            WELCOME_NEW_PLAYER = lookup.findVarHandle(PlayerPoints.class, "welcomeNewPlayer", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
     // 通常チャットのポイント
-    public int normalChat = 0;
+    private volatile long normalChat = 0;
     
     // 挨拶チャットのポイント
-    public int greeting = 0;
+    private volatile long greeting = 0;
     
     // 新規さん歓迎チャットのポイント
-    public int welcomeNewPlayer = 0;
+    private volatile long welcomeNewPlayer = 0;
     
     public PlayerPoints() {}
     
-    public PlayerPoints(int normalChat, int greeting, int welcomeNewPlayer) {
+    public PlayerPoints(long normalChat, long greeting, long welcomeNewPlayer) {
         this.normalChat = normalChat;
         this.greeting = greeting;
         this.welcomeNewPlayer = welcomeNewPlayer;
     }
     
+    public long getNormalChat() {
+        return normalChat;
+    }
+    
+    public long getGreeting() {
+        return greeting;
+    }
+    
+    public long getWelcomeNewPlayer() {
+        return welcomeNewPlayer;
+    }
+    
     /**
      * 総ポイント数を取得
      */
-    public int getTotal() {
+    public long getTotal() {
         return normalChat + greeting + welcomeNewPlayer;
     }
     
@@ -32,30 +63,70 @@ public class PlayerPoints {
      * 通常チャットポイントを追加
      */
     public void addNormalChat(int points) {
-        this.normalChat += points;
+        NORMAL_CHAT.getAndAdd(this, (long) points);
     }
     
     /**
      * 挨拶ポイントを追加
      */
     public void addGreeting(int points) {
-        this.greeting += points;
+        GREETING.getAndAdd(this, (long) points);
     }
     
     /**
      * 新規さん歓迎ポイントを追加
      */
     public void addWelcomeNewPlayer(int points) {
-        this.welcomeNewPlayer += points;
+        WELCOME_NEW_PLAYER.getAndAdd(this, (long) points);
+    }
+    
+    /**
+     * 項目を指定してポイントを追加
+     * @param category PointsStore.NORMAL_CHAT / GREETING / WELCOME_NEW_PLAYER
+     */
+    void add(int category, int points) {
+        switch (category) {
+            case PointsStore.NORMAL_CHAT -> addNormalChat(points);
+            case PointsStore.GREETING -> addGreeting(points);
+            case PointsStore.WELCOME_NEW_PLAYER -> addWelcomeNewPlayer(points);
+            default -> throw new IllegalArgumentException("不明な項目です: " + category);
+        }
+    }
+    
+    /**
+     * 別のポイントをすべて加算する
+     */
+    void addAll(PlayerPoints other) {
+        NORMAL_CHAT.getAndAdd(this, other.normalChat);
+        GREETING.getAndAdd(this, other.greeting);
+        WELCOME_NEW_PLAYER.getAndAdd(this, other.welcomeNewPlayer);
+    }
+    
+    /**
+     * すべて0かどうか
+     */
+    boolean isZero() {
+        return normalChat == 0 && greeting == 0 && welcomeNewPlayer == 0;
+    }
+    
+    /**
+     * すべてのポイントを取得して0にリセットする
+     * 各項目は取得と同時に0へ置き換えるため、並行して加算されたポイントは
+     * 今回の結果か、リセット後の値のどちらかに必ず残る
+     * @return リセット前のポイント
+     */
+    public PlayerPoints getAndReset() {
+        return new PlayerPoints(
+            (long) NORMAL_CHAT.getAndSet(this, 0L),
+            (long) GREETING.getAndSet(this, 0L),
+            (long) WELCOME_NEW_PLAYER.getAndSet(this, 0L));
     }
     
     /**
-     * すべてのポイントをリセット
+     * 現在のポイントの複製を取得
      */
-    public void reset() {
-        this.normalChat = 0;
-        this.greeting = 0;
-        this.welcomeNewPlayer = 0;
+    public PlayerPoints copy() {
+        return new PlayerPoints(normalChat, greeting, welcomeNewPlayer);
     }
     
     /**
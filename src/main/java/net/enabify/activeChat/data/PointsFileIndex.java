@@ -0,0 +1,233 @@
+package net.enabify.activeChat.data;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * playerPoints.json内の各プレイヤーのレコード位置（バイトオフセット）の索引
+ * 起動時は索引だけを作り、レコードは初めて参照されたときに読み込む（遅延読み込み）
+ *
+ * 索引はUUIDの上位・下位とオフセットをプリミティブ配列に持つオープンアドレス法のハッシュ表
+ */
+public class PointsFileIndex {
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    // [上位, 下位]の組
+    private long[] keys;
+    // オフセット + 1（0は空きスロット）
+    private long[] offsets;
+    private int size;
+
+    public PointsFileIndex() {
+        this(16);
+    }
+
+    public PointsFileIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD_FACTOR)) - 1) << 1;
+        this.keys = new long[capacity * 2];
+        this.offsets = new long[capacity];
+    }
+
+    /**
+     * JSONファイルを走査し、トップレベルの各キーの値（'{'）の位置を記録する
+     * 値そのものは解析しない
+     */
+    public static PointsFileIndex build(File file) throws IOException {
+        PointsFileIndex index = new PointsFileIndex((int) Math.min(Integer.MAX_VALUE / 2, file.length() / 100));
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] chunk = new byte[1 << 16];
+            StringBuilder key = new StringBuilder(36);
+            String pendingKey = null;
+            boolean inString = false;
+            boolean escaped = false;
+            int depth = 0;
+            long base = 0;
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk[i];
+                    if (inString) {
+                        if (escaped) {
+                            escaped = false;
+                        } else if (b == '\\') {
+                            escaped = true;
+                        } else if (b == '"') {
+                            inString = false;
+                            if (depth == 1) {
+                                pendingKey = key.toString();
+                            }
+                        } else if (depth == 1) {
+                            key.append((char) b);
+                        }
+                        continue;
+                    }
+                    switch (b) {
+                        case '"' -> {
+                            inString = true;
+                            key.setLength(0);
+                        }
+                        case '{' -> {
+                            if (depth == 1 && pendingKey != null) {
+                                try {
+                                    index.put(UUID.fromString(pendingKey), base + i);
+                                } catch (IllegalArgumentException e) {
+                                    // 無効なUUIDは無視
+                                }
+                                pendingKey = null;
+                            }
+                            depth++;
+                        }
+                        case '}' -> depth--;
+                        case ',' -> pendingKey = null;
+                        default -> {
+                        }
+                    }
+                }
+                base += read;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 索引の位置からレコードを1件読み込む
+     */
+    public static PlayerPoints readAt(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                throw new IOException("レコードが途中で切れています: offset=" + offset);
+            }
+            int end = indexOf(buffer.array(), read, (byte) '}');
+            if (end >= 0) {
+                String json = new String(buffer.array(), 0, end + 1, StandardCharsets.US_ASCII);
+                try (JsonReader reader = new JsonReader(new StringReader(json))) {
+                    return JsonPointsStore.readPoints(reader);
+                }
+            }
+            if (read < buffer.capacity()) {
+                throw new IOException("レコードが途中で切れています: offset=" + offset);
+            }
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte target) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * レコードの位置を取得する
+     * @return 位置（索引に無い場合は-1）
+     */
+    public long offsetOf(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = offsets.length - 1;
+        int i = hash(msb, lsb) & mask;
+        while (offsets[i] != 0) {
+            if (keys[i * 2] == msb && keys[i * 2 + 1] == lsb) {
+                return offsets[i] - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean contains(UUID uuid) {
+        return offsetOf(uuid) >= 0;
+    }
+
+    /**
+     * レコードの位置を記録する（同じUUIDは上書き）
+     */
+    public void put(UUID uuid, long offset) {
+        if (size + 1 > offsets.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = offsets.length - 1;
+        int i = hash(msb, lsb) & mask;
+        while (offsets[i] != 0) {
+            if (keys[i * 2] == msb && keys[i * 2 + 1] == lsb) {
+                offsets[i] = offset + 1;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i * 2] = msb;
+        keys[i * 2 + 1] = lsb;
+        offsets[i] = offset + 1;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 索引の全エントリを走査する
+     */
+    public void forEach(EntryConsumer consumer) throws IOException {
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] != 0) {
+                consumer.accept(new UUID(keys[i * 2], keys[i * 2 + 1]), offsets[i] - 1);
+            }
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldOffsets = offsets;
+        keys = new long[oldKeys.length * 2];
+        offsets = new long[oldOffsets.length * 2];
+        int mask = offsets.length - 1;
+        for (int j = 0; j < oldOffsets.length; j++) {
+            if (oldOffsets[j] == 0) {
+                continue;
+            }
+            long msb = oldKeys[j * 2];
+            long lsb = oldKeys[j * 2 + 1];
+            int i = hash(msb, lsb) & mask;
+            while (offsets[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i * 2] = msb;
+            keys[i * 2 + 1] = lsb;
+            offsets[i] = oldOffsets[j];
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * 索引エントリの受け取り
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(UUID uuid, long offset) throws IOException;
+    }
+}
@@ -0,0 +1,436 @@
+package net.enabify.activeChat.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ポイント変更の追記型ジャーナル
+ * 変更（差分）をバイナリ形式で追記し、定期的にスナップショットへ圧縮する
+ *
+ * レコード形式: [種別 1byte][UUID上位 8byte][UUID下位 8byte][値 4byte]
+ */
+public class PointsJournal {
+    public static final byte OP_NORMAL_CHAT = 1;
+    public static final byte OP_GREETING = 2;
+    public static final byte OP_WELCOME_NEW_PLAYER = 3;
+    // 0へのリセット（旧形式。現在はリセット分を負の差分として記録する）
+    public static final byte OP_RESET = 4;
+
+    private static final int JOURNAL_MAGIC = 0x41434A4C; // "ACJL"
+    private static final int SNAPSHOT_MAGIC = 0x41435350; // "ACSP"（ポイントは4byte）
+    private static final int SNAPSHOT_MAGIC_LONG = 0x41435332; // "ACS2"（ポイントは8byte）
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_SIZE = 21;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // 未コミットのレコードのバッファの初期サイズ
+    private static final int INITIAL_CAPACITY = 256 * RECORD_SIZE;
+    // 書き込みに失敗した後、次のコミットを試すまでの待ち時間（失敗が続くと最大まで倍にする）
+    private static final long MIN_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final File journalFolder;
+    private final File snapshotFile;
+    private final File snapshotTempFile;
+    private final long compactThresholdBytes;
+
+    // 未コミットのレコード（appendLockで保護）
+    private final Object appendLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    // 書き込み中のセグメント（commitLockで保護）
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segmentSeq;
+    private long segmentBytes;
+    // 書き込みに失敗した後の再試行の時刻と待ち時間（commitLockで保護）
+    private long retryAtNanos;
+    private long retryDelayNanos;
+    // ジャーナルとスナップショットに書き込んだバイト数の合計
+    private volatile long bytesWritten;
+
+    public PointsJournal(File dataFolder, long compactThresholdBytes) {
+        this.journalFolder = new File(dataFolder, "journal");
+        this.snapshotFile = new File(dataFolder, "playerPoints.snapshot");
+        this.snapshotTempFile = new File(dataFolder, "playerPoints.snapshot.tmp");
+        this.compactThresholdBytes = compactThresholdBytes;
+    }
+
+    /**
+     * スナップショットを読み込み、それ以降のジャーナルを再生する
+     * 完了後は新しいセグメントへの追記を開始する
+     * @param target 復元先
+     * @return 再生したレコード数
+     */
+    public int recover(Map<UUID, PlayerPoints> target) throws IOException {
+        journalFolder.mkdirs();
+        long baseSeq = 0;
+        if (snapshotFile.exists()) {
+            baseSeq = readSnapshot(target);
+        }
+
+        int replayed = 0;
+        long nextSeq = baseSeq;
+        for (long seq : listSegments()) {
+            File segment = segmentFile(seq);
+            if (seq < baseSeq) {
+                // スナップショットに含まれている古いセグメント
+                segment.delete();
+                continue;
+            }
+            replayed += replaySegment(segment, seq, target);
+            nextSeq = seq + 1;
+        }
+
+        openSegment(nextSeq);
+        return replayed;
+    }
+
+    /**
+     * スナップショットが存在するかどうか
+     */
+    public boolean hasSnapshot() {
+        return snapshotFile.exists();
+    }
+
+    /**
+     * 変更をメモリ上のバッファに追記する（ディスクへの書き込みはcommitでまとめて行う）
+     */
+    public void append(byte op, UUID uuid, int value) {
+        synchronized (appendLock) {
+            if (pending.remaining() < RECORD_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            pending.put(op);
+            pending.putLong(uuid.getMostSignificantBits());
+            pending.putLong(uuid.getLeastSignificantBits());
+            pending.putInt(value);
+        }
+    }
+
+    /**
+     * 溜まったレコードをまとめて書き込み、ディスクへ同期する（グループコミット）
+     * 書き込みに失敗した後は、待ち時間が過ぎるまで書き込まない（ディスクが一杯のときに毎回試さない）
+     * @return 書き込んだレコード数
+     */
+    public int commit() throws IOException {
+        commitLock.lock();
+        try {
+            if (retryAtNanos != 0 && System.nanoTime() - retryAtNanos < 0) {
+                return 0;
+            }
+            return commitNow();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * 待ち時間に関わらず書き込む（commitLockを保持して呼び出す）
+     */
+    private int commitNow() throws IOException {
+        ByteBuffer toWrite;
+        synchronized (appendLock) {
+            if (pending.position() == 0) {
+                return 0;
+            }
+            toWrite = pending;
+            pending = spare;
+            spare = null;
+        }
+        
+        toWrite.flip();
+        int bytes = toWrite.remaining();
+        long start = channel.position();
+        try {
+            while (toWrite.hasRemaining()) {
+                channel.write(toWrite);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // 書き込めなかったレコードは次回のコミットで再試行する
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException ignored) {
+                // 切り詰めに失敗しても再生時に末尾の不完全なレコードは無視される
+            }
+            toWrite.rewind();
+            synchronized (appendLock) {
+                // 使っている分だけの大きさにまとめる（失敗のたびに大きくしない）
+                ByteBuffer merged = ByteBuffer.allocate(Math.max(INITIAL_CAPACITY, bytes + pending.position()));
+                merged.put(toWrite);
+                pending.flip();
+                merged.put(pending);
+                spare = pending.clear();
+                pending = merged;
+            }
+            retryDelayNanos = retryDelayNanos == 0 ? MIN_RETRY_DELAY_NANOS
+                : Math.min(MAX_RETRY_DELAY_NANOS, retryDelayNanos * 2);
+            retryAtNanos = System.nanoTime() + retryDelayNanos;
+            throw e;
+        }
+        
+        segmentBytes += bytes;
+        bytesWritten += bytes;
+        retryAtNanos = 0;
+        retryDelayNanos = 0;
+        toWrite.clear();
+        spare = toWrite;
+        return bytes / RECORD_SIZE;
+    }
+    
+    /**
+     * 未コミットのレコード数
+     */
+    public int pendingRecords() {
+        synchronized (appendLock) {
+            return pending.position() / RECORD_SIZE;
+        }
+    }
+    
+    /**
+     * 未コミットのレコードの対象のプレイヤー
+     */
+    public Set<UUID> pendingPlayers() {
+        synchronized (appendLock) {
+            Set<UUID> players = new HashSet<>();
+            for (int offset = 0; offset < pending.position(); offset += RECORD_SIZE) {
+                players.add(new UUID(pending.getLong(offset + 1), pending.getLong(offset + 9)));
+            }
+            return players;
+        }
+    }
+    
+    /**
+     * ジャーナルとスナップショットに書き込んだバイト数の合計
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * 圧縮が必要な大きさまでジャーナルが伸びたかどうか
+     */
+    public boolean needsCompaction() {
+        return segmentBytes >= compactThresholdBytes;
+    }
+
+    /**
+     * 未コミットのレコードを書き込んでから新しいセグメントに切り替える
+     * 呼び出し側は切り替え中に追記が行われないようにすること
+     * 新しいセグメントを開けなかった場合は、元のセグメントへの書き込みを続ける
+     * @return 新しいセグメントの番号（この番号以降がスナップショットに含まれない）
+     */
+    public long rotate() throws IOException {
+        commitLock.lock();
+        try {
+            commitNow();
+            openSegment(segmentSeq + 1);
+            return segmentSeq;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * スナップショットを書き込み、不要になったセグメントを削除する
+     * @param state rotate時点のポイントの複製
+     * @param seq rotateが返したセグメント番号
+     */
+    public void writeSnapshot(Map<UUID, PlayerPoints> state, long seq) throws IOException {
+        try (FileOutputStream fileOut = new FileOutputStream(snapshotTempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(SNAPSHOT_MAGIC_LONG);
+            out.writeLong(seq);
+            out.writeInt(state.size());
+            for (Map.Entry<UUID, PlayerPoints> entry : state.entrySet()) {
+                PlayerPoints points = entry.getValue();
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeLong(points.getNormalChat());
+                out.writeLong(points.getGreeting());
+                out.writeLong(points.getWelcomeNewPlayer());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+            bytesWritten += out.size();
+        }
+        try {
+            Files.move(snapshotTempFile.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(snapshotTempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        for (long old : listSegments()) {
+            if (old < seq) {
+                segmentFile(old).delete();
+            }
+        }
+    }
+
+    /**
+     * 未コミットのレコードを書き込んでジャーナルを閉じる
+     */
+    public void close() throws IOException {
+        commitLock.lock();
+        try {
+            if (channel != null) {
+                commitNow();
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private long readSnapshot(Map<UUID, PlayerPoints> target) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_LONG) {
+                throw new IOException("スナップショットの形式が不正です: " + snapshotFile);
+            }
+            boolean wide = magic == SNAPSHOT_MAGIC_LONG;
+            long seq = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                target.put(uuid, wide
+                    ? new PlayerPoints(in.readLong(), in.readLong(), in.readLong())
+                    : new PlayerPoints(in.readInt(), in.readInt(), in.readInt()));
+            }
+            return seq;
+        }
+    }
+
+    private int replaySegment(File segment, long seq, Map<UUID, PlayerPoints> target) throws IOException {
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            if (in.readInt() != JOURNAL_MAGIC || in.readLong() != seq) {
+                return 0;
+            }
+            while (true) {
+                byte op = in.readByte();
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                int value = in.readInt();
+                if (!apply(target, op, uuid, value)) {
+                    // 書き込み途中で停止した末尾のレコード
+                    break;
+                }
+                replayed++;
+            }
+        } catch (EOFException e) {
+            // 末尾まで再生した（途中で切れたレコードは無視）
+        }
+        return replayed;
+    }
+
+    private static boolean apply(Map<UUID, PlayerPoints> target, byte op, UUID uuid, int value) {
+        switch (op) {
+            case OP_NORMAL_CHAT -> target.computeIfAbsent(uuid, k -> new PlayerPoints()).addNormalChat(value);
+            case OP_GREETING -> target.computeIfAbsent(uuid, k -> new PlayerPoints()).addGreeting(value);
+            case OP_WELCOME_NEW_PLAYER -> target.computeIfAbsent(uuid, k -> new PlayerPoints()).addWelcomeNewPlayer(value);
+            case OP_RESET -> {
+                PlayerPoints points = target.get(uuid);
+                if (points != null) {
+                    points.getAndReset();
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新しいセグメントを開いてから、書き込み中のセグメントを閉じて切り替える
+     * 開けなかった場合は作りかけのファイルを削除し、書き込み中のセグメントをそのまま使う
+     */
+    private void openSegment(long seq) throws IOException {
+        File file = segmentFile(seq);
+        FileChannel opened = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(JOURNAL_MAGIC);
+            header.putLong(seq);
+            header.flip();
+            while (header.hasRemaining()) {
+                opened.write(header);
+            }
+            opened.force(true);
+        } catch (IOException e) {
+            try {
+                opened.close();
+            } catch (IOException ignored) {
+                // 作りかけのファイルは削除する
+            }
+            file.delete();
+            throw e;
+        }
+        FileChannel previous = channel;
+        channel = opened;
+        segmentSeq = seq;
+        segmentBytes = 0;
+        if (previous != null) {
+            try {
+                previous.close();
+            } catch (IOException e) {
+                // 書き込みは同期済みのため、閉じられなくてもレコードは失われない
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        String[] names = journalFolder.list();
+        if (names == null) {
+            return segments;
+        }
+        for (String name : names) {
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+            try {
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // 無関係なファイルは無視
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private File segmentFile(long seq) {
+        return new File(journalFolder, String.format("%s%016d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,117 @@
+package net.enabify.activeChat.data;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * ポイントの保存先
+ * PlayerDataManagerはこのインターフェースを通してポイントを読み書きする
+ *
+ * flush / save / prune / close はPlayerDataManagerが1スレッドずつ呼び出す
+ * get / add / getAndReset は複数スレッドから同時に呼び出される
+ */
+public interface PointsStore {
+    int NORMAL_CHAT = 0;
+    int GREETING = 1;
+    int WELCOME_NEW_PLAYER = 2;
+    
+    /**
+     * ポイントの複製を取得する（存在しない場合は0ポイント）
+     */
+    PlayerPoints get(UUID uuid);
+    
+    /**
+     * ポイントを加算する
+     * @param category NORMAL_CHAT / GREETING / WELCOME_NEW_PLAYER
+     */
+    void add(UUID uuid, int category, int points);
+    
+    /**
+     * ポイントを取得して0にリセットする
+     * 並行して加算されたポイントは、今回の結果かリセット後の値のどちらかに必ず残る
+     */
+    PlayerPoints getAndReset(UUID uuid);
+    
+    /**
+     * fromのポイントを取得して0にリセットし、同じ量をtoに加算する
+     * リセットと加算は同じ書き込みで保存される（片方だけが保存されることはない）
+     * 既定の実装はgetAndResetとaddを続けて行う。PlayerDataManagerが書き込みの排他制御の中で呼び出すため、
+     * 間にflushは入らない（リセットをその場で書き込む保存先は上書きする）
+     * @return 移したポイント
+     */
+    default PlayerPoints getAndMove(UUID from, UUID to) {
+        PlayerPoints points = getAndReset(from);
+        addChunked(to, NORMAL_CHAT, points.getNormalChat());
+        addChunked(to, GREETING, points.getGreeting());
+        addChunked(to, WELCOME_NEW_PLAYER, points.getWelcomeNewPlayer());
+        return points;
+    }
+    
+    private void addChunked(UUID uuid, int category, long amount) {
+        while (amount > 0) {
+            int chunk = (int) Math.min(Integer.MAX_VALUE, amount);
+            add(uuid, category, chunk);
+            amount -= chunk;
+        }
+    }
+    
+    /**
+     * 未保存の変更を書き込む
+     * @return 書き込んだ変更の件数（書き込まなかった場合は0）
+     */
+    int flush() throws IOException;
+    
+    /**
+     * 変更の有無に関わらず全体を書き込む
+     * @return 書き込んだ変更の件数
+     */
+    int save() throws IOException;
+    
+    /**
+     * 未保存の変更の件数
+     */
+    int pendingCount();
+    
+    /**
+     * 未保存の変更があるプレイヤー（シャットダウン時に保存できなかった変更の退避用）
+     * 実行中の書き込みが扱っている変更は含まれない
+     */
+    Set<UUID> pendingPlayers();
+    
+    /**
+     * これまでに書き込んだバイト数の合計（flush / saveの前後の差を1回の保存の大きさとして記録する）
+     * 書き込んだ量を数えられない保存先は0を返す
+     */
+    long bytesWritten();
+    
+    /**
+     * 0ポイントのプレイヤーをメモリ（および保存先）から取り除く
+     * 取り除いたプレイヤーは、次に参照されたときに0ポイントとして扱われる
+     * flush / saveと同時には呼び出されない
+     * @param keep 取り除かないプレイヤー（オンラインのプレイヤーなど）
+     * @return 取り除いた件数
+     */
+    int prune(Predicate<UUID> keep) throws IOException;
+    
+    /**
+     * メモリ（保存先がファイルの場合はファイル上）に保持しているプレイヤーの数
+     */
+    int residentCount();
+    
+    /**
+     * 1件もデータが無いかどうか
+     */
+    boolean isEmpty();
+    
+    /**
+     * 既存データを取り込む（起動時の移行用。保存はsaveで行う）
+     */
+    void importPoints(UUID uuid, PlayerPoints points);
+    
+    /**
+     * 未書き込みの変更を書き込んで閉じる
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,126 @@
+package net.enabify.activeChat.data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * データベース接続の簡易プール
+ * 接続は必要になった時点で作成し、最大数までを使い回す（自動コミットは無効）
+ */
+class SqlConnectionPool {
+    // 接続が空くのを待つ最大時間
+    private static final long BORROW_TIMEOUT_SECONDS = 10;
+    
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    // 接続ごとに最初に実行する文（自動コミットを無効にする前に実行する）
+    private final List<String> initStatements;
+    private final BlockingQueue<Connection> idle;
+    // 作成済み（貸し出し中を含む）の接続数
+    private final AtomicInteger created = new AtomicInteger();
+    private volatile boolean closed;
+    
+    SqlConnectionPool(String url, String username, String password, int maxSize, List<String> initStatements) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.initStatements = initStatements;
+        this.idle = new ArrayBlockingQueue<>(this.maxSize);
+    }
+    
+    /**
+     * 接続を借りる（使い終わったらreleaseで返すこと）
+     */
+    Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("接続プールは閉じられています");
+        }
+        Connection connection = idle.poll();
+        while (connection != null) {
+            if (connection.isValid(1)) {
+                return connection;
+            }
+            // 切断された接続は捨てて作り直す
+            discard(connection);
+            connection = idle.poll();
+        }
+        if (created.incrementAndGet() <= maxSize) {
+            try {
+                return open();
+            } catch (SQLException | RuntimeException e) {
+                created.decrementAndGet();
+                throw e;
+            }
+        }
+        created.decrementAndGet();
+        try {
+            connection = idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("接続の待機が中断されました", e);
+        }
+        if (connection == null) {
+            throw new SQLException("空いている接続がありません");
+        }
+        return connection;
+    }
+    
+    /**
+     * 接続を返す
+     */
+    void release(Connection connection) {
+        try {
+            if (closed || connection.isClosed() || !idle.offer(connection)) {
+                discard(connection);
+            }
+        } catch (SQLException e) {
+            discard(connection);
+        }
+    }
+    
+    private Connection open() throws SQLException {
+        Connection connection = username.isEmpty()
+            ? DriverManager.getConnection(url)
+            : DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : initStatements) {
+                statement.execute(sql);
+            }
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+    
+    private void discard(Connection connection) {
+        created.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // 既に切断されている
+        }
+    }
+    
+    /**
+     * 空いている接続をすべて閉じる（貸し出し中の接続は返却時に閉じる）
+     */
+    void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            discard(connection);
+        }
+    }
+}
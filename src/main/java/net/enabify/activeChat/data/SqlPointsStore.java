@@ -0,0 +1,429 @@
+package net.enabify.activeChat.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * データベース（SQLite / MySQL / MariaDB / PostgreSQL）にポイントを保存するストア
+ * UPSERTの構文（ON CONFLICT / ON DUPLICATE KEY UPDATE）があるこれらのデータベースだけに対応し、
+ * それ以外（H2など）は開くときにSQLExceptionを投げる
+ * 複数のサーバーが同じデータベースを使うことで、どのサーバーで貯めたポイントも
+ * 次にどのサーバーへ参加したときでも受け取れる
+ *
+ * 加算はメモリ上の差分にまとめ、flushでまとめてUPSERTする
+ * 取得リセットは1件ずつデータベース上でアトミックに行う
+ */
+public class SqlPointsStore implements PointsStore {
+    private static final String TABLE = "activechat_points";
+    // 1回のバッチで送るUPSERTの件数
+    private static final int BATCH_SIZE = 500;
+    
+    private final SqlConnectionPool pool;
+    // MySQL / MariaDBの構文（ON DUPLICATE KEY UPDATE）を使うかどうか
+    private final boolean mysqlSyntax;
+    // DELETE ... RETURNINGで取得とリセットを1文で行えるかどうか
+    private final boolean deleteReturning;
+    
+    // まだデータベースに書き込んでいない加算分（プレイヤーごとの差分）
+    private final Map<UUID, PlayerPoints> pending = new ConcurrentHashMap<>();
+    
+    /**
+     * @param url JDBC URL（例: jdbc:sqlite:plugins/ActiveChat/playerPoints.db）
+     * @param poolSize 同時に使う接続の最大数
+     */
+    public SqlPointsStore(String url, String username, String password, int poolSize) throws SQLException {
+        boolean sqlite = url.startsWith("jdbc:sqlite:");
+        if (sqlite) {
+            loadDriver("org.sqlite.JDBC");
+        }
+        this.pool = new SqlConnectionPool(url, username, password, poolSize,
+            sqlite ? List.of("PRAGMA journal_mode=WAL", "PRAGMA busy_timeout=5000") : List.of());
+        
+        Connection connection = pool.borrow();
+        try {
+            DatabaseMetaData meta = connection.getMetaData();
+            String product = meta.getDatabaseProductName().toLowerCase(Locale.ROOT);
+            this.mysqlSyntax = product.contains("mysql") || product.contains("mariadb");
+            // ON CONFLICTはSQLite 3.24以降、PostgreSQL 9.5以降で使える
+            boolean onConflict = product.contains("sqlite") && atLeast(meta, 3, 24)
+                || product.contains("postgresql") && atLeast(meta, 9, 5);
+            if (!mysqlSyntax && !onConflict) {
+                throw new SQLException("対応していないデータベースです: " + meta.getDatabaseProductName() + " "
+                    + meta.getDatabaseProductVersion() + "（SQLite 3.24以降 / PostgreSQL 9.5以降 / MySQL / MariaDBに対応）");
+            }
+            // SQLiteは3.35以降、PostgreSQLは全バージョンでDELETE ... RETURNINGを使える
+            this.deleteReturning = product.contains("postgresql") || product.contains("sqlite") && atLeast(meta, 3, 35);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "uuid CHAR(36) NOT NULL PRIMARY KEY, "
+                    + "normal_chat BIGINT NOT NULL DEFAULT 0, "
+                    + "greeting BIGINT NOT NULL DEFAULT 0, "
+                    + "welcome_new_player BIGINT NOT NULL DEFAULT 0)");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            pool.release(connection);
+            pool.close();
+            throw e;
+        }
+        pool.release(connection);
+    }
+    
+    private static boolean atLeast(DatabaseMetaData meta, int major, int minor) throws SQLException {
+        int actualMajor = meta.getDatabaseMajorVersion();
+        return actualMajor > major || actualMajor == major && meta.getDatabaseMinorVersion() >= minor;
+    }
+    
+    private static void loadDriver(String className) {
+        try {
+            Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            // ドライバーはDriverManagerの自動登録に任せる
+        }
+    }
+    
+    @Override
+    public PlayerPoints get(UUID uuid) {
+        PlayerPoints points;
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT normal_chat, greeting, welcome_new_player FROM " + TABLE + " WHERE uuid = ?")) {
+                statement.setString(1, uuid.toString());
+                points = readRow(statement);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new UncheckedIOException(new IOException(e));
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+        PlayerPoints delta = pending.get(uuid);
+        if (delta != null) {
+            points.addAll(delta);
+        }
+        return points;
+    }
+    
+    @Override
+    public void add(UUID uuid, int category, int points) {
+        // computeの中で加算するため、flushやgetAndResetでの差分の回収と競合しない
+        pending.compute(uuid, (key, delta) -> {
+            PlayerPoints target = delta != null ? delta : new PlayerPoints();
+            target.add(category, points);
+            return target;
+        });
+    }
+    
+    @Override
+    public PlayerPoints getAndReset(UUID uuid) {
+        PlayerPoints delta = pending.remove(uuid);
+        PlayerPoints points;
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try {
+                points = deleteReturning ? deleteRow(connection, uuid) : subtractRow(connection, uuid);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            // 0ポイントを返して差分を失わないよう、回収した差分を戻して例外にする
+            if (delta != null) {
+                merge(uuid, delta);
+            }
+            throw new UncheckedIOException(new IOException(e));
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+        if (delta != null) {
+            points.addAll(delta);
+        }
+        return points;
+    }
+    
+    /**
+     * リセットとtoへの加算を1トランザクションで行う
+     */
+    @Override
+    public PlayerPoints getAndMove(UUID from, UUID to) {
+        PlayerPoints delta = pending.remove(from);
+        PlayerPoints points;
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try {
+                points = deleteReturning ? deleteRow(connection, from) : subtractRow(connection, from);
+                if (delta != null) {
+                    points.addAll(delta);
+                }
+                if (!points.isZero()) {
+                    try (PreparedStatement statement = connection.prepareStatement(upsertSql())) {
+                        statement.setString(1, to.toString());
+                        statement.setLong(2, points.getNormalChat());
+                        statement.setLong(3, points.getGreeting());
+                        statement.setLong(4, points.getWelcomeNewPlayer());
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            if (delta != null) {
+                merge(from, delta);
+            }
+            throw new UncheckedIOException(new IOException(e));
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+        return points;
+    }
+    
+    /**
+     * 行を削除し、削除前の値を返す（行が無い状態を0ポイントとして扱う）
+     */
+    private PlayerPoints deleteRow(Connection connection, UUID uuid) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "DELETE FROM " + TABLE + " WHERE uuid = ? RETURNING normal_chat, greeting, welcome_new_player")) {
+            statement.setString(1, uuid.toString());
+            return readRow(statement);
+        }
+    }
+    
+    /**
+     * RETURNINGを使えない場合のリセット
+     * 読み取った分だけを差し引くため、読み取りから更新までの間に他のサーバーが
+     * 加算したポイントは失われずに残る
+     */
+    private PlayerPoints subtractRow(Connection connection, UUID uuid) throws SQLException {
+        PlayerPoints points;
+        try (PreparedStatement statement = connection.prepareStatement(
+            "SELECT normal_chat, greeting, welcome_new_player FROM " + TABLE + " WHERE uuid = ?"
+                + (mysqlSyntax ? " FOR UPDATE" : ""))) {
+            statement.setString(1, uuid.toString());
+            points = readRow(statement);
+        }
+        if (points.isZero()) {
+            return points;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+            "UPDATE " + TABLE + " SET normal_chat = normal_chat - ?, greeting = greeting - ?, "
+                + "welcome_new_player = welcome_new_player - ? WHERE uuid = ?")) {
+            statement.setLong(1, points.getNormalChat());
+            statement.setLong(2, points.getGreeting());
+            statement.setLong(3, points.getWelcomeNewPlayer());
+            statement.setString(4, uuid.toString());
+            statement.executeUpdate();
+        }
+        return points;
+    }
+    
+    private static PlayerPoints readRow(PreparedStatement statement) throws SQLException {
+        try (ResultSet result = statement.executeQuery()) {
+            if (!result.next()) {
+                return new PlayerPoints();
+            }
+            return new PlayerPoints(result.getLong(1), result.getLong(2), result.getLong(3));
+        }
+    }
+    
+    @Override
+    public void importPoints(UUID uuid, PlayerPoints points) {
+        merge(uuid, points);
+    }
+    
+    private void merge(UUID uuid, PlayerPoints points) {
+        pending.compute(uuid, (key, delta) -> {
+            PlayerPoints target = delta != null ? delta : new PlayerPoints();
+            target.addAll(points);
+            return target;
+        });
+    }
+    
+    /**
+     * 溜まった差分をまとめてUPSERTする（1トランザクション）
+     */
+    @Override
+    public int flush() throws IOException {
+        List<UUID> uuids = new ArrayList<>(pending.size());
+        List<PlayerPoints> deltas = new ArrayList<>(pending.size());
+        for (UUID uuid : pending.keySet()) {
+            PlayerPoints delta = pending.remove(uuid);
+            if (delta != null) {
+                uuids.add(uuid);
+                deltas.add(delta);
+            }
+        }
+        if (uuids.isEmpty()) {
+            return 0;
+        }
+        
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (PreparedStatement statement = connection.prepareStatement(upsertSql())) {
+                for (int i = 0; i < uuids.size(); i++) {
+                    PlayerPoints delta = deltas.get(i);
+                    statement.setString(1, uuids.get(i).toString());
+                    statement.setLong(2, delta.getNormalChat());
+                    statement.setLong(3, delta.getGreeting());
+                    statement.setLong(4, delta.getWelcomeNewPlayer());
+                    statement.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            // 書き込めなかった差分は次回に再試行する
+            for (int i = 0; i < uuids.size(); i++) {
+                merge(uuids.get(i), deltas.get(i));
+            }
+            throw new IOException(e);
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+        return uuids.size();
+    }
+    
+    private String upsertSql() {
+        String insert = "INSERT INTO " + TABLE + " (uuid, normal_chat, greeting, welcome_new_player) VALUES (?, ?, ?, ?)";
+        if (mysqlSyntax) {
+            return insert + " ON DUPLICATE KEY UPDATE "
+                + "normal_chat = normal_chat + VALUES(normal_chat), "
+                + "greeting = greeting + VALUES(greeting), "
+                + "welcome_new_player = welcome_new_player + VALUES(welcome_new_player)";
+        }
+        return insert + " ON CONFLICT (uuid) DO UPDATE SET "
+            + "normal_chat = " + TABLE + ".normal_chat + excluded.normal_chat, "
+            + "greeting = " + TABLE + ".greeting + excluded.greeting, "
+            + "welcome_new_player = " + TABLE + ".welcome_new_player + excluded.welcome_new_player";
+    }
+    
+    /**
+     * コミット済みのデータは既にデータベース上にあるため、差分だけを書き込む
+     */
+    @Override
+    public int save() throws IOException {
+        return flush();
+    }
+    
+    /**
+     * すべて0ポイントになった行を削除する（付与済みの行はsubtractRowで0のまま残るため）
+     * データベースは複数のサーバーで共有するため、オンラインかどうかに関わらず削除する（行が無い状態は0ポイントと同じ）
+     */
+    @Override
+    public int prune(Predicate<UUID> keep) throws IOException {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (Statement statement = connection.createStatement()) {
+                int deleted = statement.executeUpdate("DELETE FROM " + TABLE
+                    + " WHERE normal_chat = 0 AND greeting = 0 AND welcome_new_player = 0");
+                connection.commit();
+                return deleted;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+    
+    /**
+     * メモリ上に保持している未書き込みの差分の件数（それ以外はデータベース上にある）
+     */
+    @Override
+    public int residentCount() {
+        return pending.size();
+    }
+    
+    @Override
+    public int pendingCount() {
+        return pending.size();
+    }
+    
+    @Override
+    public Set<UUID> pendingPlayers() {
+        return new HashSet<>(pending.keySet());
+    }
+    
+    /**
+     * データベースに送った量は分からないため数えない
+     */
+    @Override
+    public long bytesWritten() {
+        return 0;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        if (!pending.isEmpty()) {
+            return false;
+        }
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT 1 FROM " + TABLE + " LIMIT 1")) {
+                boolean empty = !result.next();
+                connection.commit();
+                return empty;
+            }
+        } catch (SQLException e) {
+            throw new UncheckedIOException(new IOException(e));
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.enabify.activeChat.data;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 書き込み遅延（write-behind）保存を行うクラス
+ * 保存要求をまとめ、一定間隔または未保存数の閾値で1回だけ書き込む
+ */
+public class WriteBehindSaver {
+    private final Plugin plugin;
+    private final PlayerDataManager dataManager;
+    private final long intervalMillis;
+    private final int maxDirtyPlayers;
+    
+    // 前倒しの保存タスクが登録済みかどうか
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    private ScheduledTask flushTask;
+    
+    /**
+     * @param intervalMillis 定期保存の間隔（ミリ秒）。ジャーナル使用時はグループコミットの間隔になる
+     */
+    public WriteBehindSaver(Plugin plugin, PlayerDataManager dataManager, long intervalMillis, int maxDirtyPlayers) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.maxDirtyPlayers = Math.max(1, maxDirtyPlayers);
+    }
+    
+    /**
+     * 定期保存を開始する
+     */
+    public void start() {
+        flushTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, scheduledTask -> dataManager.flush(),
+            intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        dataManager.setWriteBehind(this);
+    }
+    
+    /**
+     * 保存要求を受け取る
+     * 未保存のプレイヤー数が閾値に達した場合は定期保存を待たずに保存する
+     * @param dirtyCount 現在の未保存プレイヤー数
+     */
+    void onSaveRequested(int dirtyCount) {
+        if (dirtyCount < maxDirtyPlayers || !flushQueued.compareAndSet(false, true)) {
+            return;
+        }
+        plugin.getServer().getAsyncScheduler().runNow(plugin, scheduledTask -> {
+            flushQueued.set(false);
+            dataManager.flush();
+        });
+    }
+    
+    /**
+     * 定期保存を停止し、残りの変更を保存する
+     * 時間内に終わらなかった場合は同じ時間だけもう一度待つ。それでも終わらない場合は、
+     * 未保存の変更があるプレイヤーの現在のポイントを退避用のファイルに書き出して諦める（シャットダウンを止めない）
+     * @param timeoutMillis 実行中の保存を待つ時間（ミリ秒）。最大でこの2倍待つ
+     * @param recoveryFile 保存できなかった変更の書き出し先（playerPoints.jsonと同じ形式）
+     * @return すべての変更を保存できた場合はtrue
+     */
+    public boolean shutdown(long timeoutMillis, File recoveryFile) {
+        dataManager.setWriteBehind(null);
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (dataManager.flush(timeoutMillis)) {
+            return true;
+        }
+        plugin.getLogger().warning("プレイヤーデータの保存が" + timeoutMillis + "ミリ秒以内に完了しませんでした。"
+            + "もう一度待って、未保存の変更" + dataManager.getDirtyCount() + "件を書き込みます。");
+        if (dataManager.flush(timeoutMillis)) {
+            return true;
+        }
+        try {
+            int dumped = dataManager.dumpPending(recoveryFile);
+            plugin.getLogger().warning("保存できなかった" + dumped + "人の現在のポイントを"
+                + recoveryFile.getName() + "に書き出しました。");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+}
@@ -1,134 +1,156 @@
 package net.enabify.activeChat.listener;
 
-import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
-import net.enabify.activeChat.ActiveChat;
-import net.enabify.activeChat.data.PlayerDataManager;
+import io.papermc.paper.event.player.AsyncChatEvent;
+import net.enabify.activeChat.manager.ChatSession;
+import net.enabify.activeChat.manager.LoadShedder;
+import net.enabify.activeChat.manager.MuteDispatcher;
 import net.enabify.activeChat.manager.PointsManager;
-import org.bukkit.Bukkit;
+import net.enabify.activeChat.manager.ScoreQueue;
+import net.enabify.activeChat.manager.ScoringPlan;
+import net.enabify.activeChat.manager.SessionManager;
+import net.enabify.activeChat.manager.SpamDetector;
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.metrics.ChatScoredEvent;
+import net.enabify.activeChat.metrics.PluginMetrics;
+import net.enabify.activeChat.metrics.SpamMutedEvent;
+import net.kyori.adventure.text.Component;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
-import org.bukkit.event.player.AsyncPlayerChatEvent;
 
-import java.util.Map;
+import java.time.Clock;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 /**
  * チャットイベントを監視してポイントを付与するリスナー
  * Folia対応のため非同期処理を使用
+ * PaperのAsyncChatEventを使用する（旧AsyncPlayerChatEventはLegacyChatListenerで設定により使用）
  */
 public class ChatListener implements Listener {
-    private final ActiveChat plugin;
-    private final PlayerDataManager dataManager;
     private final PointsManager pointsManager;
+    private final SessionManager sessionManager;
+    private final SpamDetector spamDetector;
+    private final MuteDispatcher muteDispatcher;
+    private final Clock clock;
+    private final PluginMetrics metrics;
+    private final ScoreQueue scoreQueue;
+    private final ActivityLog activity;
+    private final LoadShedder loadShedder;
     
-    // スパム検知用：プレイヤーの前回メッセージ
-    private final Map<UUID, String> lastMessage = new ConcurrentHashMap<>();
-    // スパム検知用：同じメッセージの連続送信回数
-    private final Map<UUID, Integer> spamCount = new ConcurrentHashMap<>();
-    // スパム検知用：最初のスパムメッセージの送信時刻
-    private final Map<UUID, Long> spamStartTime = new ConcurrentHashMap<>();
-    
-    public ChatListener(ActiveChat plugin, PlayerDataManager dataManager, PointsManager pointsManager) {
-        this.plugin = plugin;
-        this.dataManager = dataManager;
+    public ChatListener(PointsManager pointsManager, SessionManager sessionManager,
+                        SpamDetector spamDetector, MuteDispatcher muteDispatcher, Clock clock,
+                        PluginMetrics metrics, ScoreQueue scoreQueue, ActivityLog activity,
+                        LoadShedder loadShedder) {
         this.pointsManager = pointsManager;
+        this.sessionManager = sessionManager;
+        this.spamDetector = spamDetector;
+        this.muteDispatcher = muteDispatcher;
+        this.clock = clock;
+        this.metrics = metrics;
+        this.scoreQueue = scoreQueue;
+        this.activity = activity;
+        this.loadShedder = loadShedder;
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
-    public void onPlayerChat(AsyncPlayerChatEvent event) {
+    public void onPlayerChat(AsyncChatEvent event) {
         if (event.isCancelled()) {
             return;
         }
-        
-        Player player = event.getPlayer();
+        long started = System.nanoTime();
+        // メッセージの平文は、判定を省略しない場合だけ取り出す
+        handleChat(event.getPlayer(), event.message(), null, started);
+    }
+    
+    /**
+     * 旧イベントのチャットを判定する
+     * @param message メッセージの平文（この呼び出しの間だけ使い、保持しない）
+     * @param started 処理の開始時刻（System.nanoTime）
+     */
+    void handleChat(Player player, CharSequence message, long started) {
+        handleChat(player, null, message, started);
+    }
+    
+    /**
+     * チャットを判定してポイントを付与する（AsyncChatEvent / 旧イベントの共通処理）
+     * @param component メッセージ（平文が必要になったときだけ取り出す）
+     * @param plain メッセージの平文（旧イベントの場合。nullの場合はcomponentから取り出す）
+     * @param started 処理の開始時刻（System.nanoTime）
+     */
+    private void handleChat(Player player, Component component, CharSequence plain, long started) {
+        // JFRのイベント（記録していない場合はnull）
+        ChatScoredEvent trace = ChatScoredEvent.start();
         UUID uuid = player.getUniqueId();
-        String message = event.getMessage();
-        int messageLength = message.length();
+        // 現在時刻（スパム検知とポイント判定で共通）
+        long now = clock.millis();
         
-        // スパム検知
-        checkSpam(player, message);
+        // プレイヤーのチャット状態（1回の検索で全判定に使う）
+        ChatSession session = sessionManager.get(uuid);
+        if (session == null) {
+            // 退出後に届いたチャットなど、オンラインでないプレイヤーは判定しない
+            return;
+        }
         
-        // 各ポイント判定を実行
-        int normalPoints = 0;
-        int greetingPoints = 0;
-        int welcomePoints = 0;
+        // 負荷軽減モード：どのルールも獲得できないプレイヤーは、メッセージを扱う前に判定を省略する
+        boolean shedding = loadShedder.isShedding();
+        boolean quiet = shedding && pointsManager.isQuiet(session, now);
+        boolean checkSpam = loadShedder.shouldCheckSpam(session);
+        if (quiet && !checkSpam) {
+            loadShedder.recordPrefiltered();
+            finish(player, trace, -1, 0, 0, 0, true, started);
+            return;
+        }
         
-        // 1. 通常チャットのポイント判定
-        normalPoints = pointsManager.checkNormalChat(uuid, messageLength);
+        // メッセージの平文（1回だけ取り出し、以降の判定で共有する）
+        CharSequence message = plain != null ? plain : ChatText.plain(component);
         
-        // 2. 新規さん歓迎チャットのポイント判定
-        welcomePoints = pointsManager.checkWelcomeChat(uuid, message);
+        // スパム検知（ほぼ同じメッセージの連投）
+        if (checkSpam && spamDetector.check(session, message, now)) {
+            muteDispatcher.mute(player.getName());
+            metrics.recordSpamMute();
+            activity.record(ActivityLog.MUTES);
+            SpamMutedEvent.emit(player.getName(), message.length(), shedding);
+        }
+        if (quiet) {
+            loadShedder.recordPrefiltered();
+            finish(player, trace, message.length(), 0, 0, 0, true, started);
+            return;
+        }
         
-        // 3. 挨拶チャットのポイント判定
-        greetingPoints = pointsManager.checkGreetingChat(uuid, message);
+        // 全ルールを1回で判定（メッセージの走査は1回だけ）
+        long result = pointsManager.evaluateChat(session, message, now);
+        if (shedding) {
+            // 次のチャットの事前判定に使う
+            pointsManager.updateQuiet(session, now);
+        }
+        int normalPoints = ScoringPlan.points(result, ScoringPlan.NORMAL_CHAT);
+        int greetingPoints = ScoringPlan.points(result, ScoringPlan.GREETING);
+        int welcomePoints = ScoringPlan.points(result, ScoringPlan.WELCOME_NEW_PLAYER);
         
-        // ポイントを分類して記録
-        if (normalPoints > 0 || greetingPoints > 0 || welcomePoints > 0) {
-            int finalNormalPoints = normalPoints;
-            int finalGreetingPoints = greetingPoints;
-            int finalWelcomePoints = welcomePoints;
-            plugin.getServer().getAsyncScheduler().runNow(plugin, scheduledTask -> {
-                if (finalNormalPoints > 0) {
-                    dataManager.addNormalChatPoints(uuid, finalNormalPoints);
-                }
-                if (finalGreetingPoints > 0) {
-                    dataManager.addGreetingPoints(uuid, finalGreetingPoints);
-                }
-                if (finalWelcomePoints > 0) {
-                    dataManager.addWelcomeNewPlayerPoints(uuid, finalWelcomePoints);
-                }
-                dataManager.saveData();
-            });
+        // ポイントを分類して記録（チャットスレッドではキューへの追加だけ行い、加算はScoreQueueがまとめて行う）
+        if (result != 0) {
+            scoreQueue.publish(uuid, player.getName(), normalPoints, greetingPoints, welcomePoints);
         }
+        finish(player, trace, message.length(), normalPoints, greetingPoints, welcomePoints, false, started);
     }
     
     /**
-     * スパム検知：直近1分以内に同じメッセージを3回連続で送信したかチェック
+     * 判定結果を活動記録と計測値に記録する
+     * @param trace JFRのイベント（記録していない場合はnull）
+     * @param messageLength メッセージの文字数（平文を取り出していない場合は-1）
+     * @param prefiltered 負荷軽減モードの事前判定で判定を省略したかどうか
      */
-    private void checkSpam(Player player, String message) {
-        UUID uuid = player.getUniqueId();
-        String currentLast = lastMessage.get(uuid);
-        int currentCount = spamCount.getOrDefault(uuid, 0);
-        long currentTime = System.currentTimeMillis();
-        Long firstTime = spamStartTime.get(uuid);
-        
-        if (message.equals(currentLast)) {
-            // 前回と同じメッセージ
-            currentCount++;
-            spamCount.put(uuid, currentCount);
-            
-            // 初回の送信時刻を記録（初めてこのメッセージでスパムカウントが増加した場合）
-            if (currentCount == 2) {
-                spamStartTime.put(uuid, currentTime);
-                firstTime = currentTime;
-            }
-            
-            // 3回連続で同じメッセージを送信し、かつ直近1分以内の場合はミュート
-            if (currentCount >= 3) {
-                long timeSinceFirst = currentTime - (firstTime != null ? firstTime : currentTime);
-                if (timeSinceFirst <= TimeUnit.MINUTES.toMillis(1)) {
-                    final String playerName = player.getName();
-                    // グローバルスケジューラーでコマンド実行
-                    Bukkit.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-                        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), 
-                            "mute " + playerName + " 5m スパムを検知しました");
-                    });
-                }
-                
-                // スパムカウントをリセット
-                spamCount.remove(uuid);
-                lastMessage.remove(uuid);
-                spamStartTime.remove(uuid);
-            }
-        } else {
-            // 異なるメッセージが送信された
-            lastMessage.put(uuid, message);
-            spamCount.put(uuid, 1);
-            spamStartTime.remove(uuid);
+    private void finish(Player player, ChatScoredEvent trace, int messageLength, int normalPoints, int greetingPoints,
+                        int welcomePoints, boolean prefiltered, long started) {
+        long nanos = System.nanoTime() - started;
+        activity.recordChat(normalPoints + greetingPoints + welcomePoints > 0, greetingPoints > 0, welcomePoints > 0);
+        metrics.recordChat(normalPoints, greetingPoints, welcomePoints, nanos);
+        loadShedder.record(nanos);
+        if (trace != null) {
+            trace.finish(player.getName(), messageLength, normalPoints, greetingPoints, welcomePoints, prefiltered,
+                loadShedder.isShedding());
         }
     }
+    
 }
@@ -0,0 +1,53 @@
+package net.enabify.activeChat.listener;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+
+/**
+ * チャットメッセージ（Component）の平文を取り出す
+ * 1イベントにつき1回だけ取り出し、文字数の判定・キーワード判定・スパム検知で共有する
+ *
+ * - 子を持たないテキストだけのメッセージ（通常のプレイヤーチャット）は、その文字列をそのまま返す（複製しない）
+ * - テキストの組み合わせはスレッドごとのバッファに連結して返す（Stringを生成しない）
+ * - 翻訳キーなどテキスト以外を含む場合のみ、PlainTextComponentSerializerで文字列にする
+ */
+public final class ChatText {
+    // スレッドごとの連結用バッファ（非同期チャットのスレッドは使い回される）
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    
+    private ChatText() {}
+    
+    /**
+     * メッセージの平文を取得する
+     * 戻り値は同じスレッドで次にplainを呼ぶまでの間だけ有効（イベントの処理中だけ使い、保持しないこと）
+     */
+    public static CharSequence plain(Component message) {
+        if (message instanceof TextComponent text && text.children().isEmpty()) {
+            return text.content();
+        }
+        StringBuilder builder = BUFFER.get();
+        builder.setLength(0);
+        if (!appendText(message, builder)) {
+            return PlainTextComponentSerializer.plainText().serialize(message);
+        }
+        return builder;
+    }
+    
+    /**
+     * テキストを子も含めて連結する
+     * @return テキスト以外が含まれていた場合はfalse
+     */
+    private static boolean appendText(Component component, StringBuilder builder) {
+        if (!(component instanceof TextComponent text)) {
+            return false;
+        }
+        builder.append(text.content());
+        for (Component child : component.children()) {
+            if (!appendText(child, builder)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,18 +1,21 @@
 package net.enabify.activeChat.listener;
 
-import net.enabify.activeChat.ActiveChat;
-import net.enabify.activeChat.data.PlayerDataManager;
-import net.enabify.activeChat.data.PlayerPoints;
+import net.enabify.activeChat.manager.ChatSession;
+import net.enabify.activeChat.manager.ExpiryWheel;
+import net.enabify.activeChat.manager.PayoutQueue;
 import net.enabify.activeChat.manager.PointsManager;
-import org.bukkit.Bukkit;
-import org.bukkit.ChatColor;
+import net.enabify.activeChat.manager.SessionManager;
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.network.NetworkJoinBus;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
 
+import java.time.Clock;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -23,17 +26,41 @@ import java.util.concurrent.TimeUnit;
  * Folia対応のため非同期処理を使用
  */
 public class JoinListener implements Listener {
-    private final ActiveChat plugin;
-    private final PlayerDataManager dataManager;
+    // 再参加を参加として数えない時間
+    private static final long REJOIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    
+    private final Plugin plugin;
     private final PointsManager pointsManager;
+    private final SessionManager sessionManager;
+    private final PayoutQueue payoutQueue;
+    private final Clock clock;
+    private final ExpiryWheel expiry;
+    private final ActivityLog activity;
+    // サーバー間の参加の共有（無効の場合はnull）
+    private final NetworkJoinBus network;
+    
+    // 直近5分以内に退出したプレイヤーを追跡（5分経つとexpiryで削除される）
+    private final Map<UUID, QuitRecord> recentQuits = new ConcurrentHashMap<>();
     
-    // 直近5分以内に退出したプレイヤーを追跡
-    private final Map<UUID, Long> recentQuits = new ConcurrentHashMap<>();
+    public JoinListener(Plugin plugin, PointsManager pointsManager, SessionManager sessionManager,
+                        PayoutQueue payoutQueue, Clock clock, ExpiryWheel expiry, ActivityLog activity) {
+        this(plugin, pointsManager, sessionManager, payoutQueue, clock, expiry, activity, null);
+    }
     
-    public JoinListener(ActiveChat plugin, PlayerDataManager dataManager, PointsManager pointsManager) {
+    /**
+     * @param network サーバー間の参加の共有（nullの場合はこのサーバーの参加だけを数える）
+     */
+    public JoinListener(Plugin plugin, PointsManager pointsManager, SessionManager sessionManager,
+                        PayoutQueue payoutQueue, Clock clock, ExpiryWheel expiry, ActivityLog activity,
+                        NetworkJoinBus network) {
         this.plugin = plugin;
-        this.dataManager = dataManager;
         this.pointsManager = pointsManager;
+        this.sessionManager = sessionManager;
+        this.payoutQueue = payoutQueue;
+        this.clock = clock;
+        this.expiry = expiry;
+        this.activity = activity;
+        this.network = network;
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
@@ -41,48 +68,35 @@ public class JoinListener implements Listener {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
         
-        // 新規プレイヤーかどうかを判定
-        if (!player.hasPlayedBefore()) {
-            pointsManager.recordNewPlayerJoin();
+        // チャット状態を作成（参加イベントはプレイヤーのリージョンスレッドで呼ばれるため位置を読める）
+        long location = openSession(player);
+        
+        // 新規プレイヤーかどうかを判定（ネットワークでは新規プレイヤーを判定するサーバーのみ）
+        boolean newPlayer = !player.hasPlayedBefore() && (network == null || network.detectsNewPlayers());
+        // ネットワークで直近に数えた参加（他のサーバーからの移動）は数えない
+        int counted = network != null ? network.recordLocalJoin(uuid, newPlayer)
+            : NetworkJoinBus.JOIN | (newPlayer ? NetworkJoinBus.NEW_PLAYER : 0);
+        if ((counted & NetworkJoinBus.NEW_PLAYER) != 0) {
+            pointsManager.recordNewPlayerJoin(location);
+            activity.record(ActivityLog.NEW_PLAYER_JOINS);
         }
         
         // 直近5分以内に退出したプレイヤーを除外して判定
         boolean isRecentRejoin = false;
-        Long quitTime = recentQuits.get(uuid);
-        if (quitTime != null) {
-            long timeSinceQuit = System.currentTimeMillis() - quitTime;
-            if (timeSinceQuit < TimeUnit.MINUTES.toMillis(5)) {
-                isRecentRejoin = true;
-            } else {
-                recentQuits.remove(uuid);
-            }
+        QuitRecord quit = recentQuits.remove(uuid);
+        if (quit != null) {
+            // 削除前の記録が残っていた場合も時刻で判定する（期限切れの判定は最大で1tick遅れる）
+            isRecentRejoin = clock.millis() - quit.time() < REJOIN_MILLIS;
+            quit.expiry().cancel();
         }
         
         // 直近5分以内に退出したプレイヤーでない場合は、プレイヤー参加として記録
-        if (!isRecentRejoin) {
-            pointsManager.recordPlayerJoin();
+        if (!isRecentRejoin && (counted & NetworkJoinBus.JOIN) != 0) {
+            pointsManager.recordPlayerJoin(location);
         }
         
-        // 前回獲得したポイントを付与
-        plugin.getServer().getAsyncScheduler().runDelayed(plugin, scheduledTask -> {
-            PlayerPoints points = dataManager.getAndResetPoints(uuid);
-            
-            if (points.getTotal() > 0) {
-                // コマンド実行はグローバルスケジューラーで実行（Folia対応）
-                Bukkit.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), 
-                        "points give " + player.getName() + " " + points.getTotal());
-                });
-                
-                // ポイント内訳メッセージはプレイヤースケジューラーで実行
-                player.getScheduler().run(plugin, task -> {
-                    player.sendMessage(ChatColor.GREEN + "たくさんチャットと挨拶をしてポイントを貯めよう！\n前回のログインで獲得したポイント：\n" + points.getDetails());
-                }, null);
-            }
-            
-            // データを保存
-            dataManager.saveData();
-        }, 20L, TimeUnit.MILLISECONDS); // 1秒後に実行
+        // 前回獲得したポイントを付与（付与キューでまとめて処理）
+        payoutQueue.enqueue(player);
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
@@ -90,14 +104,52 @@ public class JoinListener implements Listener {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
         
-        // 退出時刻を記録
-        recentQuits.put(uuid, System.currentTimeMillis());
+        // チャット状態を破棄
+        sessionManager.close(uuid);
         
-        // 古い退出記録をクリーンアップ（10分以上前のもの）
-        plugin.getServer().getAsyncScheduler().runNow(plugin, scheduledTask -> {
-            long currentTime = System.currentTimeMillis();
-            recentQuits.entrySet().removeIf(entry -> 
-                currentTime - entry.getValue() > TimeUnit.MINUTES.toMillis(10));
-        });
+        // 退出時刻を記録し、5分後に削除する
+        // （取り消しが間に合わなかった古い期限で、新しい退出記録を消さないよう時刻を確かめてから削除する）
+        QuitRecord quit = new QuitRecord(clock.millis(), expiry.schedule(REJOIN_MILLIS, () ->
+            recentQuits.computeIfPresent(uuid, (k, q) -> clock.millis() - q.time() >= REJOIN_MILLIS ? null : q)));
+        QuitRecord previous = recentQuits.put(uuid, quit);
+        if (previous != null) {
+            previous.expiry().cancel();
+        }
+    }
+    
+    /**
+     * 参加イベントを経ていないオンラインのプレイヤーのチャット状態を作成する（プラグインの再読み込み直後用）
+     * 位置を読むため、各プレイヤーのリージョンスレッドで作成する
+     */
+    public void openOnlineSessions() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            player.getScheduler().run(plugin, task -> openSession(player), null);
+        }
+    }
+    
+    /**
+     * チャット状態を作成し、位置の更新を始める（プレイヤーのリージョンスレッドで呼ぶ）
+     * @return プレイヤーの現在の位置
+     */
+    private long openSession(Player player) {
+        ChatSession session = sessionManager.open(player.getUniqueId());
+        long location = pointsManager.locationKey(player.getLocation());
+        session.setLocationKey(location);
+        if (pointsManager.usesScopedWindows()) {
+            // 近くでの参加を判定するため、プレイヤーのリージョンスレッドで位置を1秒ごとに更新する
+            // （退出するとタスクは自動で終了する）
+            player.getScheduler().runAtFixedRate(plugin, task ->
+                session.setLocationKey(pointsManager.locationKey(player.getLocation())), null, 20, 20);
+        }
+        return location;
     }
+    
+    /**
+     * 退出記録の保持数
+     */
+    public int getRecentQuitCount() {
+        return recentQuits.size();
+    }
+    
+    private record QuitRecord(long time, ExpiryWheel.Entry expiry) {}
 }
@@ -0,0 +1,28 @@
+package net.enabify.activeChat.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+
+/**
+ * 旧AsyncPlayerChatEventでチャットを判定するリスナー（chat.legacy-event: true の場合のみ登録）
+ * 旧イベントを使うプラグインがあると、サーバーはメッセージごとに旧形式の文字列への変換を行うため、
+ * AsyncChatEventが使えない環境での代替としてのみ使う
+ */
+public class LegacyChatListener implements Listener {
+    private final ChatListener chatListener;
+    
+    public LegacyChatListener(ChatListener chatListener) {
+        this.chatListener = chatListener;
+    }
+    
+    @SuppressWarnings("deprecation")
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChat(AsyncPlayerChatEvent event) {
+        if (event.isCancelled()) {
+            return;
+        }
+        chatListener.handleChat(event.getPlayer(), event.getMessage(), System.nanoTime());
+    }
+}
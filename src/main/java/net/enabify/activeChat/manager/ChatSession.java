@@ -0,0 +1,55 @@
+package net.enabify.activeChat.manager;
+
+/**
+ * オンライン中のプレイヤー1人分のチャット状態
+ * ポイント判定のクールダウンとスパム検知の状態をまとめて保持する
+ * 参加時に作成し、退出時に破棄する
+ */
+public class ChatSession {
+    // ルールごとの最後の獲得時刻（0は未獲得、ScoringPlanのルール順）
+    final long[] ruleTimes;
+    
+    // プレイヤーの位置（JoinWindowTracker.locationKey、リージョンスレッドで更新してチャットのスレッドで読む）
+    volatile long locationKey = JoinWindowTracker.UNKNOWN_LOCATION;
+    
+    // スパム検知用：直近のメッセージの指紋（リングバッファ）
+    final long[] recentFingerprints;
+    
+    // スパム検知用：直近のメッセージの送信時刻（0は空き）
+    final long[] recentTimes;
+    
+    // スパム検知用：次に書き込む位置
+    int recentIndex;
+    
+    // スパム検知用：疑わしさ（ほぼ同じメッセージが続くと上がり、違うメッセージで半減する）
+    int suspicion;
+    
+    // 負荷軽減モード用：スパム検知を省略した連続回数
+    int spamSkipped;
+    
+    // 負荷軽減モード用：この時刻まではどのルールも獲得できない（quietVersionの後に出来事が無く、quietLocationから動いていない場合）
+    long quietUntil;
+    
+    // 負荷軽減モード用：quietUntilを求めたときの出来事の記録の版
+    long quietVersion;
+    
+    // 負荷軽減モード用：quietUntilを求めたときの位置（移動した先では有効時間が開いていることがある）
+    long quietLocation = JoinWindowTracker.UNKNOWN_LOCATION;
+    
+    /**
+     * @param spamHistorySize スパム検知で覚えておくメッセージ数
+     * @param ruleCount ポイント獲得ルールの数
+     */
+    public ChatSession(int spamHistorySize, int ruleCount) {
+        this.ruleTimes = new long[ruleCount];
+        this.recentFingerprints = new long[spamHistorySize];
+        this.recentTimes = new long[spamHistorySize];
+    }
+    
+    /**
+     * プレイヤーの位置を更新する（プレイヤーのリージョンスレッドから呼び出す）
+     */
+    public void setLocationKey(long locationKey) {
+        this.locationKey = locationKey;
+    }
+}
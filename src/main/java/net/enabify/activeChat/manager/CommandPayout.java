@@ -0,0 +1,27 @@
+package net.enabify.activeChat.manager;
+
+import org.bukkit.Server;
+
+import java.util.UUID;
+
+/**
+ * コンソールコマンドでポイントを付与する
+ */
+public class CommandPayout implements PointsPayout {
+    private final Server server;
+    private final String commandTemplate;
+    
+    /**
+     * @param commandTemplate 付与コマンド（%player% がプレイヤー名、%amount% がポイント数に置き換わる）
+     */
+    public CommandPayout(Server server, String commandTemplate) {
+        this.server = server;
+        this.commandTemplate = commandTemplate;
+    }
+    
+    @Override
+    public boolean give(UUID uuid, String playerName, long amount) {
+        return server.dispatchCommand(server.getConsoleSender(),
+            commandTemplate.replace("%player%", playerName).replace("%amount%", Long.toString(amount)));
+    }
+}
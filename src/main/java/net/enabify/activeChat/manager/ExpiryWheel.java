@@ -0,0 +1,265 @@
+package net.enabify.activeChat.manager;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.plugin.Plugin;
+
+import java.time.Clock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * 有効期限付きの項目を期限切れにする階層型タイミングホイール
+ * 登録と取り消しはどのスレッドからでもO(1)で行え、期限切れの処理は非同期スケジューラーの1つの定期タスクでまとめて行う
+ *
+ * - 登録・取り消しはキューに積むだけにし、ホイールの操作は定期タスクのスレッドだけが行う（ロックを使わない）
+ * - 1段目は1tickごと、2段目以降は64倍ずつ粗い単位で64個のスロットを持ち、期限が近づいたら下の段へ移す
+ * - 期限切れの処理（コールバック）は定期タスクのスレッドで実行されるため、短い処理にすること
+ */
+public final class ExpiryWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // 1回の定期タスクで取り込む新しい項目の上限（大量登録時に1回の処理が長引かないようにする）
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+    
+    private final long tickMillis;
+    private final Clock clock;
+    private final Plugin plugin;
+    
+    // 登録待ち・取り消し待ちの項目（どのスレッドからも追加できる）
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+    // 登録済みでまだ期限切れ・取り消しになっていない項目の数
+    private final AtomicInteger size = new AtomicInteger();
+    
+    // 以下は定期タスクのスレッドだけが操作する
+    private final Entry[][] buckets = new Entry[LEVELS][SLOTS];
+    private long currentTick;
+    private ScheduledTask tickTask;
+    
+    /**
+     * @param tickMillis 期限の単位（ミリ秒）。期限切れはこの間隔で判定される
+     */
+    public ExpiryWheel(Plugin plugin, long tickMillis, Clock clock) {
+        this.plugin = plugin;
+        this.tickMillis = Math.max(1, tickMillis);
+        this.clock = clock;
+        this.currentTick = clock.millis() / this.tickMillis;
+    }
+    
+    /**
+     * 期限切れの判定を開始する
+     */
+    public void start() {
+        tickTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> tick(),
+            tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 期限切れの判定を停止する（残っている項目は期限切れにならない）
+     */
+    public void stop() {
+        if (tickTask != null) {
+            tickTask.cancel();
+            tickTask = null;
+        }
+    }
+    
+    /**
+     * 項目を登録する
+     * @param ttlMillis 有効期間（ミリ秒）。期限は最大で1tick遅れて判定される
+     * @param onExpire 期限切れになったときの処理（定期タスクのスレッドで実行）
+     * @return 取り消し用の項目
+     */
+    public Entry schedule(long ttlMillis, Runnable onExpire) {
+        long deadline = Math.floorDiv(clock.millis() + Math.max(0, ttlMillis) + tickMillis - 1, tickMillis);
+        Entry entry = new Entry(this, deadline, onExpire);
+        size.incrementAndGet();
+        added.add(entry);
+        return entry;
+    }
+    
+    /**
+     * 期限の判定に使う現在時刻（ミリ秒）
+     */
+    public long millis() {
+        return clock.millis();
+    }
+    
+    /**
+     * 登録済みで、まだ期限切れ・取り消しになっていない項目の数
+     */
+    public int size() {
+        return size.get();
+    }
+    
+    /**
+     * 現在時刻までの期限切れを処理する（定期タスクから呼び出す）
+     */
+    void tick() {
+        long nowTick = clock.millis() / tickMillis;
+        removeCancelled();
+        transferAdded();
+        while (currentTick < nowTick) {
+            currentTick++;
+            // 上の段の項目のうち、この区間に期限が来るものを下の段へ移す
+            for (int level = LEVELS - 1; level > 0; level--) {
+                long shift = (long) SLOT_BITS * level;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    cascade(level, (int) ((currentTick >>> shift) & SLOT_MASK));
+                }
+            }
+            expire((int) (currentTick & SLOT_MASK));
+        }
+    }
+    
+    private void removeCancelled() {
+        Entry entry;
+        while ((entry = cancelled.poll()) != null) {
+            if (entry.level >= 0) {
+                unlink(entry);
+            }
+        }
+    }
+    
+    private void transferAdded() {
+        Entry entry;
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK && (entry = added.poll()) != null; i++) {
+            if (entry.state.get() == Entry.PENDING) {
+                place(entry);
+            }
+        }
+    }
+    
+    /**
+     * 期限までの残りに応じた段とスロットに入れる
+     */
+    private void place(Entry entry) {
+        // 既に過ぎた期限は次のtickで期限切れにする
+        long deadline = Math.max(entry.deadline, currentTick + 1);
+        long delta = deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        entry.level = level;
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = buckets[level][slot];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        buckets[level][slot] = entry;
+    }
+    
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            buckets[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.level = -1;
+    }
+    
+    private void cascade(int level, int slot) {
+        Entry entry = buckets[level][slot];
+        buckets[level][slot] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.deadline <= currentTick) {
+                // 期限ちょうどのものは、このtickで処理する1段目のスロットに入れる
+                entry.level = 0;
+                entry.slot = (int) (currentTick & SLOT_MASK);
+                entry.prev = null;
+                entry.next = buckets[0][entry.slot];
+                if (entry.next != null) {
+                    entry.next.prev = entry;
+                }
+                buckets[0][entry.slot] = entry;
+            } else {
+                place(entry);
+            }
+            entry = next;
+        }
+    }
+    
+    private void expire(int slot) {
+        Entry entry = buckets[0][slot];
+        buckets[0][slot] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.prev = null;
+            entry.next = null;
+            entry.level = -1;
+            if (entry.deadline > currentTick) {
+                // 最上段からあふれた遠い期限は、もう一度入れ直す
+                place(entry);
+            } else if (entry.markExpired()) {
+                size.decrementAndGet();
+                try {
+                    entry.onExpire.run();
+                } catch (RuntimeException e) {
+                    plugin.getLogger().log(Level.WARNING, "期限切れの処理に失敗しました", e);
+                }
+            }
+            entry = next;
+        }
+    }
+    
+    /**
+     * 登録した項目（取り消しに使う）
+     */
+    public static final class Entry {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        
+        private final ExpiryWheel wheel;
+        private final long deadline;
+        private final Runnable onExpire;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        
+        // 以下は定期タスクのスレッドだけが操作する（-1はホイールに入っていない）
+        private int level = -1;
+        private int slot;
+        private Entry prev;
+        private Entry next;
+        
+        private Entry(ExpiryWheel wheel, long deadline, Runnable onExpire) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.onExpire = onExpire;
+        }
+        
+        /**
+         * 取り消す（期限切れの処理は実行されない）
+         * @return 取り消せた場合はtrue（既に期限切れ・取り消し済みの場合はfalse）
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.size.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+        
+        private boolean markExpired() {
+            return state.compareAndSet(PENDING, EXPIRED);
+        }
+        
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package net.enabify.activeChat.manager;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 参加などの出来事の最後の発生時刻を記録するクラス（Foliaのスレッドモデル向け）
+ *
+ * Foliaでは参加イベントが複数のリージョンスレッドで同時に処理され、チャットの判定は非同期スレッドで行われる
+ * 1つの変数やロックを共有すると全リージョンの競合箇所になるため、
+ * - 書き込みはスレッドごとに分けた領域（ストライプ）に行う（別のキャッシュラインのため互いに干渉しない）
+ * - 読み取りは全ストライプの最大値を取る（ロックを使わず、acquireで最新の書き込みを読む）
+ *
+ * 出来事はサーバー全体・ワールド単位・リージョン単位のそれぞれに記録し、
+ * ルールごとにどの範囲の出来事を条件にするかを選べる
+ * ExpiryWheelを渡した場合、ワールド・リージョン単位の記録は保持期間が過ぎると1件ずつ削除される
+ */
+public final class JoinWindowTracker {
+    public enum Scope {
+        // サーバー全体
+        GLOBAL,
+        // 同じワールド
+        WORLD,
+        // 同じリージョンと周囲8リージョン
+        REGION
+    }
+    
+    // 位置が不明な場合のlocationKey
+    public static final long UNKNOWN_LOCATION = -1;
+    
+    private static final VarHandle TIMES = MethodHandles.arrayElementVarHandle(long[].class);
+    // キャッシュライン（64バイト）あたりのlong数
+    private static final int LINE = 8;
+    private static final int COORD_BITS = 24;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+    
+    private final int eventCount;
+    private final int stripes;
+    // リージョンの大きさ（チャンク数の2の対数）
+    private final int regionShift;
+    
+    private final Stamps global;
+    // ワールド単位・リージョン単位の記録（キーはworldKey / regionKey）
+    private final Map<Long, Stamps> scoped = new ConcurrentHashMap<>();
+    // ワールドのUUID → 番号（キーを詰めるため）
+    private final Map<UUID, Integer> worldIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextWorldIndex = new AtomicInteger();
+    // ストライプごとの記録の版（記録したストライプだけ増える。チャットの事前判定が、判定した後に出来事が無かったことを確かめる）
+    // 1つのカウンターを全リージョンスレッドで増やさないよう、ストライプごとに別のキャッシュラインに置く
+    private final long[] versions;
+    
+    // 記録の期限切れ（nullの場合はpruneで削除する）
+    private final ExpiryWheel expiry;
+    private final long retainMillis;
+    
+    /**
+     * @param eventCount 出来事の数
+     * @param regionChunks リージョンの1辺のチャンク数（2の累乗に切り上げる）
+     */
+    public JoinWindowTracker(int eventCount, int regionChunks) {
+        this(eventCount, regionChunks, null, 0);
+    }
+    
+    /**
+     * @param expiry 記録の期限切れに使うホイール
+     * @param retainMillis 最後の出来事から記録を保持する時間（ミリ秒）
+     */
+    public JoinWindowTracker(int eventCount, int regionChunks, ExpiryWheel expiry, long retainMillis) {
+        this.expiry = expiry;
+        this.retainMillis = retainMillis;
+        this.eventCount = eventCount;
+        this.stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.regionShift = 32 - Integer.numberOfLeadingZeros(Math.max(1, regionChunks) - 1);
+        this.global = new Stamps(stripes, eventCount);
+        this.versions = new long[stripes * LINE];
+    }
+    
+    /**
+     * 位置をキーに変換する（チャット状態に保持し、読み取り時に使う）
+     */
+    public long locationKey(Location location) {
+        World world = location.getWorld();
+        if (world == null) {
+            return UNKNOWN_LOCATION;
+        }
+        return locationKey(world.getUID(), location.getBlockX(), location.getBlockZ());
+    }
+    
+    /**
+     * ワールドとブロック座標をキーに変換する
+     * キーはワールド番号（16bit）とリージョン座標（24bitずつ）を詰めたもの
+     */
+    public long locationKey(UUID world, int blockX, int blockZ) {
+        int index = worldIndexes.computeIfAbsent(world, k -> nextWorldIndex.getAndIncrement()) & 0x7FFF;
+        return regionKey(index, (blockX >> 4) >> regionShift, (blockZ >> 4) >> regionShift);
+    }
+    
+    private static long regionKey(long worldIndex, int regionX, int regionZ) {
+        return worldIndex << (COORD_BITS * 2) | (regionX & COORD_MASK) << COORD_BITS | (regionZ & COORD_MASK);
+    }
+    
+    private static long worldKey(long locationKey) {
+        // リージョンのキーと重ならないよう最上位ビットを立てる
+        return Long.MIN_VALUE | locationKey >>> (COORD_BITS * 2);
+    }
+    
+    /**
+     * 出来事を記録する（参加イベントを処理しているリージョンスレッドから呼び出す）
+     * @param event 出来事の番号
+     * @param locationKey 出来事の位置（UNKNOWN_LOCATIONの場合はサーバー全体のみ記録）
+     * @param time 発生時刻（ミリ秒）
+     */
+    public void record(int event, long locationKey, long time) {
+        int stripe = stripe();
+        global.update(stripe, event, time);
+        if (locationKey != UNKNOWN_LOCATION) {
+            // ワールドには複数のリージョンスレッドから書き込むためストライプに分ける
+            update(worldKey(locationKey), stripes, stripe, event, time);
+            // リージョンへの書き込みはほぼそのリージョンのスレッドだけなので1つにまとめる
+            update(locationKey, 1, 0, event, time);
+        }
+        // 時刻を書き込んでから版を進める（版を先に読んだ側は、古い時刻を読んでも版の違いで気付ける）
+        TIMES.getAndAdd(versions, stripe * LINE, 1L);
+    }
+    
+    /**
+     * 記録の版（出来事を記録するたびに増える。全ストライプの版の合計）
+     * 各ストライプの版は減らないため、合計が同じならその間にどのストライプにも記録されていない
+     */
+    public long version() {
+        long version = 0;
+        for (int index = 0; index < versions.length; index += LINE) {
+            version += (long) TIMES.getAcquire(versions, index);
+        }
+        return version;
+    }
+    
+    private void update(long key, int stripeCount, int stripe, int event, long time) {
+        Stamps stamps = scoped.get(key);
+        if (stamps != null) {
+            stamps.update(stripe, event, time);
+            if (!stamps.retired) {
+                return;
+            }
+        }
+        // 初めての位置、またはpruneで削除される途中の記録に書き込んだ場合は、削除と直列にして書き直す
+        scoped.compute(key, (k, current) -> {
+            Stamps target = current;
+            if (target == null || target.retired) {
+                target = new Stamps(stripeCount, eventCount);
+                scheduleExpiry(key, target, retainMillis);
+            }
+            target.update(stripe, event, time);
+            return target;
+        });
+    }
+    
+    private void scheduleExpiry(long key, Stamps stamps, long ttlMillis) {
+        if (expiry != null) {
+            expiry.schedule(ttlMillis, () -> expire(key, stamps));
+        }
+    }
+    
+    /**
+     * 保持期間が過ぎた記録を削除する（ホイールの定期タスクから呼ばれる）
+     * 期間中に新しい出来事があった場合は、その出来事から保持期間が過ぎる頃にもう一度確認する
+     */
+    private void expire(long key, Stamps stamps) {
+        long olderThan = expiry.millis() - retainMillis;
+        // 削除後に同じキーで作り直された記録は、作り直したときに登録した期限に任せる
+        Stamps remaining = scoped.computeIfPresent(key, (k, current) -> {
+            if (current != stamps) {
+                return current;
+            }
+            return retire(current, olderThan) ? null : current;
+        });
+        if (remaining == stamps) {
+            scheduleExpiry(key, stamps, stamps.latestOfAll() - olderThan);
+        }
+    }
+    
+    /**
+     * 出来事の最後の発生時刻を取得する（オブジェクトを生成しない）
+     * @param locationKey 読み取る側の位置（UNKNOWN_LOCATIONの場合はサーバー全体の値を返す）
+     * @return 発生時刻（記録が無い場合は0）
+     */
+    public long lastTime(int event, Scope scope, long locationKey) {
+        if (scope == Scope.GLOBAL || locationKey == UNKNOWN_LOCATION) {
+            return global.latest(event);
+        }
+        if (scope == Scope.WORLD) {
+            Stamps stamps = scoped.get(worldKey(locationKey));
+            return stamps != null ? stamps.latest(event) : 0;
+        }
+        long worldIndex = locationKey >>> (COORD_BITS * 2);
+        int regionX = signExtend(locationKey >>> COORD_BITS);
+        int regionZ = signExtend(locationKey);
+        long latest = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                Stamps stamps = scoped.get(regionKey(worldIndex, regionX + dx, regionZ + dz));
+                if (stamps != null) {
+                    latest = Math.max(latest, stamps.latest(event));
+                }
+            }
+        }
+        return latest;
+    }
+    
+    private static int signExtend(long coordinate) {
+        return (int) (coordinate << (Long.SIZE - COORD_BITS) >> (Long.SIZE - COORD_BITS));
+    }
+    
+    /**
+     * 古い記録を削除する（リージョン単位の記録が増え続けないようにする）
+     * @param olderThan この時刻より前の出来事しか無い記録を削除する
+     */
+    public void prune(long olderThan) {
+        for (Long key : scoped.keySet()) {
+            scoped.computeIfPresent(key, (k, stamps) -> retire(stamps, olderThan) ? null : stamps);
+        }
+    }
+    
+    /**
+     * 記録が削除できる場合は削除済みの印を付ける（scopedのcompute内で呼び出す）
+     * @return 削除できる場合はtrue
+     */
+    private static boolean retire(Stamps stamps, long olderThan) {
+        if (stamps.latestOfAll() >= olderThan) {
+            return false;
+        }
+        stamps.retired = true;
+        // 削除済みの印を付けた後にもう一度読み、その間に記録された出来事があれば残す
+        if (stamps.latestOfAll() >= olderThan) {
+            stamps.retired = false;
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 保持しているワールド・リージョン単位の記録の数
+     */
+    public int size() {
+        return scoped.size();
+    }
+    
+    private int stripe() {
+        // スレッドごとに固定のストライプを使う（リージョンスレッドの数はおおむねCPU数以下）
+        int hash = System.identityHashCode(Thread.currentThread()) * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & (stripes - 1);
+    }
+    
+    /**
+     * ストライプごとの出来事の発生時刻
+     * 各ストライプを別のキャッシュラインに置き、書き込みは同じストライプ内での最大値の更新だけにする
+     */
+    private static final class Stamps {
+        private final long[] times;
+        private final int stride;
+        private final int events;
+        // pruneで削除される記録（書き込んだ側は記録し直す）
+        volatile boolean retired;
+        
+        Stamps(int stripes, int events) {
+            // ストライプの間に1ライン空けて、隣のストライプと同じキャッシュラインに乗らないようにする
+            this.stride = (events + LINE - 1) / LINE * LINE + LINE;
+            this.events = events;
+            this.times = new long[stride * stripes];
+        }
+        
+        void update(int stripe, int event, long time) {
+            int index = stripe * stride + event;
+            long previous;
+            // 同じストライプを共有するスレッドがあっても、新しい時刻が古い時刻で上書きされないようにする
+            while ((previous = (long) TIMES.getAcquire(times, index)) < time
+                && !TIMES.compareAndSet(times, index, previous, time)) {
+                Thread.onSpinWait();
+            }
+        }
+        
+        long latest(int event) {
+            long latest = 0;
+            for (int index = event; index < times.length; index += stride) {
+                latest = Math.max(latest, (long) TIMES.getAcquire(times, index));
+            }
+            return latest;
+        }
+        
+        long latestOfAll() {
+            long latest = 0;
+            for (int event = 0; event < events; event++) {
+                for (int index = event; index < times.length; index += stride) {
+                    latest = Math.max(latest, (long) TIMES.getVolatile(times, index));
+                }
+            }
+            return latest;
+        }
+    }
+}
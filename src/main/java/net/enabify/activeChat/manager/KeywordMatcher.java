@@ -0,0 +1,254 @@
+package net.enabify.activeChat.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * キーワード判定エンジン
+ * 全カテゴリのキーワードを1つのAho-Corasickオートマトンにまとめ、
+ * メッセージを1回走査するだけで一致したカテゴリをすべて判定する
+ *
+ * キーワードの「%」はワイルドカード（制作方針.mdの表記）
+ * - 「%こん%」: 含む
+ * - 「こん%」 : 前方一致
+ * - 「%こん」 : 後方一致
+ * - 「082」   : 完全一致
+ * 大文字・小文字は区別しない
+ */
+public final class KeywordMatcher {
+    // カテゴリの上限（一致したカテゴリをintのビットで表す）
+    public static final int MAX_CATEGORIES = Integer.SIZE;
+    private static final int[] NO_PATTERNS = new int[0];
+
+    // カテゴリ名 → ビット位置
+    private final Map<String, Integer> categoryBits;
+
+    // 状態ごとの遷移（edgeStart[s]からedgeStart[s + 1]まで、文字の昇順）
+    private final int[] edgeStart;
+    private final char[] edgeLabels;
+    private final int[] edgeTargets;
+    // 失敗遷移
+    private final int[] fail;
+    // この状態で一致する「含む」パターンのカテゴリ（失敗遷移先の分も含む）
+    private final int[] containsMask;
+    // この状態で一致する前方・後方・完全一致パターン（失敗遷移先の分も含む）
+    private final int[][] anchoredOutputs;
+
+    // パターンごとの情報
+    private final int[] patternLength;
+    private final int[] patternCategoryMask;
+    private final boolean[] patternAnchorStart;
+    private final boolean[] patternAnchorEnd;
+
+    private KeywordMatcher(Map<String, Integer> categoryBits, int[] edgeStart, char[] edgeLabels, int[] edgeTargets,
+                           int[] fail, int[] containsMask, int[][] anchoredOutputs, int[] patternLength,
+                           int[] patternCategoryMask, boolean[] patternAnchorStart, boolean[] patternAnchorEnd) {
+        this.categoryBits = categoryBits;
+        this.edgeStart = edgeStart;
+        this.edgeLabels = edgeLabels;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.containsMask = containsMask;
+        this.anchoredOutputs = anchoredOutputs;
+        this.patternLength = patternLength;
+        this.patternCategoryMask = patternCategoryMask;
+        this.patternAnchorStart = patternAnchorStart;
+        this.patternAnchorEnd = patternAnchorEnd;
+    }
+
+    /**
+     * カテゴリごとのキーワードからオートマトンを作成する
+     * @param categories カテゴリ名 → キーワード（最大MAX_CATEGORIESカテゴリ）
+     */
+    public static KeywordMatcher compile(Map<String, List<String>> categories) {
+        if (categories.size() > MAX_CATEGORIES) {
+            throw new IllegalArgumentException("カテゴリは" + MAX_CATEGORIES + "個までです: " + categories.size());
+        }
+        Map<String, Integer> bits = new LinkedHashMap<>();
+        for (String category : categories.keySet()) {
+            bits.put(category, bits.size());
+        }
+
+        // パターンを解析してトライ木に登録する
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        List<List<Integer>> outputs = new ArrayList<>();
+        outputs.add(new ArrayList<>());
+        List<Integer> lengths = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        List<Boolean> anchorStarts = new ArrayList<>();
+        List<Boolean> anchorEnds = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> entry : categories.entrySet()) {
+            int mask = 1 << bits.get(entry.getKey());
+            for (String raw : entry.getValue()) {
+                boolean anchorStart = !raw.startsWith("%");
+                boolean anchorEnd = !raw.endsWith("%") || raw.length() == 1;
+                String body = raw.substring(anchorStart ? 0 : 1, raw.length() - (anchorEnd ? 0 : 1));
+                if (body.isEmpty() || body.indexOf('%') >= 0) {
+                    throw new IllegalArgumentException("キーワードの形式が不正です: " + raw);
+                }
+                int state = 0;
+                for (int i = 0; i < body.length(); i++) {
+                    char c = Character.toLowerCase(body.charAt(i));
+                    Integer next = trie.get(state).get(c);
+                    if (next == null) {
+                        next = trie.size();
+                        trie.get(state).put(c, next);
+                        trie.add(new TreeMap<>());
+                        outputs.add(new ArrayList<>());
+                    }
+                    state = next;
+                }
+                outputs.get(state).add(lengths.size());
+                lengths.add(body.length());
+                masks.add(mask);
+                anchorStarts.add(anchorStart);
+                anchorEnds.add(anchorEnd);
+            }
+        }
+
+        int stateCount = trie.size();
+        int patternCount = lengths.size();
+        int[] patternLength = new int[patternCount];
+        int[] patternCategoryMask = new int[patternCount];
+        boolean[] patternAnchorStart = new boolean[patternCount];
+        boolean[] patternAnchorEnd = new boolean[patternCount];
+        for (int p = 0; p < patternCount; p++) {
+            patternLength[p] = lengths.get(p);
+            patternCategoryMask[p] = masks.get(p);
+            patternAnchorStart[p] = anchorStarts.get(p);
+            patternAnchorEnd[p] = anchorEnds.get(p);
+        }
+
+        // 遷移を平坦な配列にする
+        int[] edgeStart = new int[stateCount + 1];
+        int edgeCount = 0;
+        for (int s = 0; s < stateCount; s++) {
+            edgeStart[s] = edgeCount;
+            edgeCount += trie.get(s).size();
+        }
+        edgeStart[stateCount] = edgeCount;
+        char[] edgeLabels = new char[edgeCount];
+        int[] edgeTargets = new int[edgeCount];
+        for (int s = 0; s < stateCount; s++) {
+            int e = edgeStart[s];
+            for (Map.Entry<Character, Integer> edge : trie.get(s).entrySet()) {
+                edgeLabels[e] = edge.getKey();
+                edgeTargets[e] = edge.getValue();
+                e++;
+            }
+        }
+
+        // 幅優先で失敗遷移と出力をまとめる
+        int[] fail = new int[stateCount];
+        int[] containsMask = new int[stateCount];
+        int[][] anchoredOutputs = new int[stateCount][];
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            int mask = s == 0 ? 0 : containsMask[fail[s]];
+            List<Integer> anchored = new ArrayList<>();
+            if (s != 0) {
+                for (int p : anchoredOutputs[fail[s]]) {
+                    anchored.add(p);
+                }
+            }
+            for (int p : outputs.get(s)) {
+                if (patternAnchorStart[p] || patternAnchorEnd[p]) {
+                    anchored.add(p);
+                } else {
+                    mask |= patternCategoryMask[p];
+                }
+            }
+            containsMask[s] = mask;
+            anchoredOutputs[s] = anchored.isEmpty() ? NO_PATTERNS : anchored.stream().mapToInt(Integer::intValue).toArray();
+
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int child = edgeTargets[e];
+                if (s != 0) {
+                    int f = fail[s];
+                    int next;
+                    while ((next = step(edgeStart, edgeLabels, edgeTargets, f, edgeLabels[e])) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = next >= 0 && next != child ? next : 0;
+                }
+                queue.add(child);
+            }
+        }
+
+        return new KeywordMatcher(bits, edgeStart, edgeLabels, edgeTargets, fail, containsMask, anchoredOutputs,
+            patternLength, patternCategoryMask, patternAnchorStart, patternAnchorEnd);
+    }
+
+    /**
+     * カテゴリのビットを取得する
+     * @return ビット（カテゴリが存在しない場合は0）
+     */
+    public int categoryBit(String category) {
+        Integer bit = categoryBits.get(category);
+        return bit == null ? 0 : 1 << bit;
+    }
+
+    /**
+     * メッセージを1回走査し、一致したカテゴリをビットの組で返す（オブジェクトを生成しない）
+     * @param message チャットメッセージ
+     * @param interestMask 判定したいカテゴリ（0の場合は走査しない）
+     * @return 一致したカテゴリのビットの組
+     */
+    public int match(CharSequence message, int interestMask) {
+        if (interestMask == 0) {
+            return 0;
+        }
+        int matched = 0;
+        int state = 0;
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(message.charAt(i));
+            int next;
+            while ((next = step(edgeStart, edgeLabels, edgeTargets, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+
+            matched |= containsMask[state];
+            for (int p : anchoredOutputs[state]) {
+                if (patternAnchorStart[p] && i + 1 != patternLength[p]) {
+                    continue;
+                }
+                if (patternAnchorEnd[p] && i + 1 != length) {
+                    continue;
+                }
+                matched |= patternCategoryMask[p];
+            }
+            if ((matched & interestMask) == interestMask) {
+                // 判定したいカテゴリがすべて見つかった
+                break;
+            }
+        }
+        return matched & interestMask;
+    }
+
+    private static int step(int[] edgeStart, char[] edgeLabels, int[] edgeTargets, int state, char c) {
+        int index = Arrays.binarySearch(edgeLabels, edgeStart[state], edgeStart[state + 1], c);
+        return index >= 0 ? edgeTargets[index] : -1;
+    }
+
+    /**
+     * 設定の既定値と同じキーワード
+     */
+    public static Map<String, List<String>> defaultKeywords() {
+        Map<String, List<String>> keywords = new LinkedHashMap<>();
+        keywords.put(PointsManager.CATEGORY_WELCOME, List.of("%082%", "%初%", "%新規さん%", "%よろしく%"));
+        keywords.put(PointsManager.CATEGORY_GREETING, List.of("%08%", "%52%", "%58%", "%oha%", "%おは%", "%kon%", "%こん%"));
+        return keywords;
+    }
+}
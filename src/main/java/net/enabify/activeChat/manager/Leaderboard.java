@@ -0,0 +1,368 @@
+package net.enabify.activeChat.manager;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.enabify.activeChat.data.PointsStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 獲得ポイントのランキング（累計・日間・週間 × 項目ごと）
+ * 付与でリセットされるPointsStoreとは別に、獲得したポイントを積み上げて順位を保持する
+ *
+ * - 加算はプレイヤーごとの合計を更新し、順位の索引（スキップリスト）を入れ替えるだけ（O(log n)）
+ * - 読み取りは索引を上から辿るだけで、加算をブロックしない
+ * - 日間・週間は期間が変わった最初の加算または読み取りで新しい集計に切り替わる
+ */
+public final class Leaderboard {
+    public enum Period {
+        LIFETIME("lifetime"),
+        DAILY("daily"),
+        WEEKLY("weekly");
+        
+        private final String key;
+        
+        Period(String key) {
+            this.key = key;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+    }
+    
+    // 項目の番号（PointsStoreの項目と合計）
+    public static final int TOTAL = 3;
+    private static final int CATEGORIES = 4;
+    // 保存ファイルでの項目名（PointsStoreの項目の順）
+    private static final String[] CATEGORY_KEYS = {"normalChat", "greeting", "welcomeNewPlayer", "total"};
+    
+    private final Clock clock;
+    private final ZoneId zone;
+    private final File dataFile;
+    private final File tempFile;
+    
+    @SuppressWarnings("unchecked")
+    private final AtomicReference<Boards>[] periods = new AtomicReference[Period.values().length];
+    // 表示用のプレイヤー名（最後に獲得したときの名前）
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    // 前回の保存以降に変更があったかどうか
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    
+    /**
+     * @param dataFolder 保存先のフォルダ（leaderboard.json）
+     * @param zone 日間・週間の区切りに使うタイムゾーン（週は月曜日から）
+     */
+    public Leaderboard(File dataFolder, Clock clock, ZoneId zone) {
+        this.clock = clock;
+        this.zone = zone;
+        this.dataFile = new File(dataFolder, "leaderboard.json");
+        this.tempFile = new File(dataFolder, "leaderboard.json.tmp");
+        long now = clock.millis();
+        for (Period period : Period.values()) {
+            periods[period.ordinal()] = new AtomicReference<>(newBoards(period, now));
+        }
+        load();
+    }
+    
+    /**
+     * 獲得したポイントを加算する（チャット判定の後、非同期スレッドから呼び出す）
+     * @param name 表示に使うプレイヤー名
+     */
+    public void record(UUID uuid, String name, int normalChat, int greeting, int welcomeNewPlayer) {
+        int total = normalChat + greeting + welcomeNewPlayer;
+        if (total <= 0) {
+            return;
+        }
+        if (name != null) {
+            names.put(uuid, name);
+        }
+        long now = clock.millis();
+        for (Period period : Period.values()) {
+            Boards boards = current(period, now);
+            boards.add(PointsStore.NORMAL_CHAT, uuid, normalChat);
+            boards.add(PointsStore.GREETING, uuid, greeting);
+            boards.add(PointsStore.WELCOME_NEW_PLAYER, uuid, welcomeNewPlayer);
+            boards.add(TOTAL, uuid, total);
+        }
+        dirty.set(true);
+    }
+    
+    /**
+     * 順位を1ページ分取得する（加算をブロックしない）
+     * @param category PointsStoreの項目、またはTOTAL
+     * @param page ページ番号（1から）
+     */
+    public Page top(Period period, int category, int page, int pageSize) {
+        Board board = current(period, clock.millis()).boards[category];
+        int skip = (Math.max(1, page) - 1) * pageSize;
+        List<Entry> entries = new ArrayList<>(pageSize);
+        // 加算の途中では同じプレイヤーが新旧2つの順位に見えることがあるため、2回目以降は飛ばす
+        Set<UUID> seen = new HashSet<>();
+        int rank = 0;
+        for (Rank entry : board.index) {
+            if (!seen.add(entry.uuid())) {
+                continue;
+            }
+            rank++;
+            if (rank <= skip) {
+                continue;
+            }
+            entries.add(new Entry(rank, entry.uuid(), names.get(entry.uuid()), entry.score()));
+            if (entries.size() == pageSize) {
+                break;
+            }
+        }
+        return new Page(entries, board.scores.size());
+    }
+    
+    /**
+     * ランキングに載っているプレイヤーの数（累計）
+     */
+    public int size() {
+        return periods[Period.LIFETIME.ordinal()].get().boards[TOTAL].scores.size();
+    }
+    
+    /**
+     * 現在の期間の集計を取得する（期間が変わっていれば新しい集計に切り替える）
+     */
+    private Boards current(Period period, long now) {
+        AtomicReference<Boards> reference = periods[period.ordinal()];
+        Boards boards = reference.get();
+        while (now >= boards.end) {
+            Boards next = newBoards(period, now);
+            if (reference.compareAndSet(boards, next)) {
+                dirty.set(true);
+                return next;
+            }
+            boards = reference.get();
+        }
+        return boards;
+    }
+    
+    private Boards newBoards(Period period, long now) {
+        if (period == Period.LIFETIME) {
+            return new Boards(0, Long.MAX_VALUE);
+        }
+        LocalDate today = Instant.ofEpochMilli(now).atZone(zone).toLocalDate();
+        LocalDate start = period == Period.DAILY ? today : today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        LocalDate end = period == Period.DAILY ? start.plusDays(1) : start.plusWeeks(1);
+        return new Boards(start.atStartOfDay(zone).toInstant().toEpochMilli(),
+            end.atStartOfDay(zone).toInstant().toEpochMilli());
+    }
+    
+    /**
+     * 変更がある場合のみleaderboard.jsonに保存する（一時ファイルに書いてから置き換える）
+     */
+    public synchronized void save() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            dataFile.getParentFile().mkdirs();
+            try (Writer fileWriter = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8);
+                 JsonWriter writer = new JsonWriter(fileWriter)) {
+                writer.beginObject();
+                writer.name("names").beginObject();
+                for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                    writer.name(entry.getKey().toString()).value(entry.getValue());
+                }
+                writer.endObject();
+                for (Period period : Period.values()) {
+                    Boards boards = periods[period.ordinal()].get();
+                    writer.name(period.getKey()).beginObject();
+                    writer.name("start").value(boards.start);
+                    for (int category = 0; category < CATEGORIES; category++) {
+                        writer.name(CATEGORY_KEYS[category]).beginObject();
+                        for (Map.Entry<UUID, Long> entry : boards.boards[category].scores.entrySet()) {
+                            writer.name(entry.getKey().toString()).value(entry.getValue());
+                        }
+                        writer.endObject();
+                    }
+                    writer.endObject();
+                }
+                writer.endObject();
+            }
+            try {
+                Files.move(tempFile.toPath(), dataFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // 次回の保存で再試行する
+            dirty.set(true);
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * leaderboard.jsonを読み込む（日間・週間は現在の期間のものだけを使う）
+     */
+    private void load() {
+        if (!dataFile.exists()) {
+            return;
+        }
+        try (Reader fileReader = Files.newBufferedReader(dataFile.toPath(), StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(fileReader)) {
+            if (reader.peek() == JsonToken.END_DOCUMENT) {
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                Period period = period(name);
+                if (name.equals("names")) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        UUID uuid = uuid(reader.nextName());
+                        String playerName = reader.nextString();
+                        if (uuid != null) {
+                            names.put(uuid, playerName);
+                        }
+                    }
+                    reader.endObject();
+                } else if (period != null) {
+                    readBoards(reader, periods[period.ordinal()].get());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private static void readBoards(JsonReader reader, Boards boards) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            int category = List.of(CATEGORY_KEYS).indexOf(name);
+            if (name.equals("start")) {
+                if (reader.nextLong() != boards.start) {
+                    // 前の期間の集計は読み込まない
+                    while (reader.hasNext()) {
+                        reader.nextName();
+                        reader.skipValue();
+                    }
+                    break;
+                }
+            } else if (category >= 0) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    UUID uuid = uuid(reader.nextName());
+                    long score = reader.nextLong();
+                    if (uuid != null && score > 0) {
+                        boards.boards[category].add(uuid, score);
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+    
+    private static Period period(String key) {
+        for (Period period : Period.values()) {
+            if (period.getKey().equals(key)) {
+                return period;
+            }
+        }
+        return null;
+    }
+    
+    private static UUID uuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            // 無効なUUIDは無視
+            return null;
+        }
+    }
+    
+    /**
+     * 1つの期間の集計（項目ごとのランキング）
+     * @param start 期間の開始時刻（ミリ秒）
+     * @param end 期間の終了時刻（ミリ秒、この時刻から次の期間）
+     */
+    private record Boards(long start, long end, Board[] boards) {
+        Boards(long start, long end) {
+            this(start, end, new Board[CATEGORIES]);
+            for (int category = 0; category < CATEGORIES; category++) {
+                boards[category] = new Board();
+            }
+        }
+        
+        void add(int category, UUID uuid, long points) {
+            if (points > 0) {
+                boards[category].add(uuid, points);
+            }
+        }
+    }
+    
+    /**
+     * 1つのランキング
+     * プレイヤーごとの合計と、合計の大きい順に並べた索引を持つ
+     */
+    private static final class Board {
+        private static final Comparator<Rank> ORDER = Comparator.comparingLong(Rank::score).reversed()
+            .thenComparing(Rank::uuid);
+        
+        final Map<UUID, Long> scores = new ConcurrentHashMap<>();
+        final ConcurrentSkipListSet<Rank> index = new ConcurrentSkipListSet<>(ORDER);
+        
+        void add(UUID uuid, long points) {
+            // 同じプレイヤーの加算はcomputeで直列になり、索引の入れ替えが重ならない
+            scores.compute(uuid, (k, previous) -> {
+                long score = previous != null ? previous + points : points;
+                if (previous != null) {
+                    index.remove(new Rank(k, previous));
+                }
+                index.add(new Rank(k, score));
+                return score;
+            });
+        }
+    }
+    
+    private record Rank(UUID uuid, long score) {}
+    
+    /**
+     * ランキングの1行
+     * @param name 最後に獲得したときのプレイヤー名（不明な場合はnull）
+     */
+    public record Entry(int rank, UUID uuid, String name, long points) {}
+    
+    /**
+     * ランキングの1ページ
+     * @param players ランキングに載っているプレイヤーの数
+     */
+    public record Page(List<Entry> entries, int players) {}
+}
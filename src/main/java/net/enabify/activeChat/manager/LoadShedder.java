@@ -0,0 +1,205 @@
+package net.enabify.activeChat.manager;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.plugin.Plugin;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * チャットが集中したときの負荷軽減モード
+ * 一定間隔でチャットの件数と判定にかかった平均時間を調べ、閾値を超えたら負荷軽減モードに切り替える
+ *
+ * 負荷軽減モードでは
+ * - どのルールもクールダウン中か有効時間外のプレイヤーは、メッセージの文字列を扱う前に判定を省略する
+ *   （獲得できないことが確実な場合だけ省略するため、獲得ポイントは変わらない）
+ * - 疑わしさが低いプレイヤーのスパム検知は、数回に1回だけ行う（疑わしいプレイヤーは毎回行う）
+ * - チャットのポイントの保存要求を、一定時間ごとにまとめる
+ *
+ * 負荷が下がった状態が一定時間続くと、通常モードに戻る
+ */
+public class LoadShedder {
+    /**
+     * @param enterChatsPerSecond 1秒あたりのチャットがこの件数以上で負荷軽減モードにする
+     * @param enterLatencyMicros 判定の平均時間がこの値（マイクロ秒）以上で負荷軽減モードにする
+     * @param exitChatsPerSecond 1秒あたりのチャットがこの件数未満の状態が続いたら通常モードに戻す
+     * @param exitLatencyMicros 判定の平均時間がこの値（マイクロ秒）未満の状態が続いたら通常モードに戻す
+     * @param recoveryMillis 負荷が下がった状態が、この時間（ミリ秒）続いたら通常モードに戻す
+     * @param spamSampleRate 疑わしさが低いプレイヤーのスパム検知を、この回数に1回だけ行う
+     * @param suspicionThreshold 疑わしさがこの値以上のプレイヤーは毎回スパム検知を行う
+     * @param saveDeferMillis チャットのポイントの保存要求をまとめる間隔（ミリ秒）
+     */
+    public record Settings(int enterChatsPerSecond, long enterLatencyMicros, int exitChatsPerSecond,
+                           long exitLatencyMicros, long recoveryMillis, int spamSampleRate,
+                           int suspicionThreshold, long saveDeferMillis) {}
+    
+    // まだ負荷が下がっていない
+    private static final long NEVER = Long.MIN_VALUE;
+    // 平均時間で判断する最小の件数（少ない件数の遅い判定で切り替えない）
+    private static final long MIN_LATENCY_SAMPLES = 20;
+    
+    private final Plugin plugin;
+    private final Clock clock;
+    private final ScoreQueue scoreQueue;
+    private final Settings settings;
+    private final long checkIntervalMillis;
+    
+    // 前回の確認からのチャットの件数と判定時間の合計（チャットのスレッドから加算する）
+    private final LongAdder chats = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    
+    private volatile boolean shedding;
+    // 以下はcheckの中だけで使う
+    private long lastCheck;
+    private long calmSince = NEVER;
+    private long enteredAt;
+    
+    private final AtomicLong activations = new AtomicLong();
+    private final LongAdder prefiltered = new LongAdder();
+    private final LongAdder spamChecksSkipped = new LongAdder();
+    private ScheduledTask checkTask;
+    
+    /**
+     * @param checkIntervalMillis 負荷を確認する間隔（ミリ秒）
+     */
+    public LoadShedder(Plugin plugin, Clock clock, ScoreQueue scoreQueue, Settings settings, long checkIntervalMillis) {
+        this.plugin = plugin;
+        this.clock = clock;
+        this.scoreQueue = scoreQueue;
+        this.settings = settings;
+        this.checkIntervalMillis = Math.max(1, checkIntervalMillis);
+    }
+    
+    /**
+     * 負荷の確認を開始する（開始しない場合は常に通常モード）
+     */
+    public void start() {
+        lastCheck = clock.millis();
+        checkTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> check(),
+            checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 負荷の確認を停止し、通常モードに戻す
+     */
+    public void stop() {
+        if (checkTask != null) {
+            checkTask.cancel();
+            checkTask = null;
+        }
+        if (shedding) {
+            leave();
+        }
+    }
+    
+    /**
+     * チャット1件の判定を記録する（チャットのスレッドから呼び出す）
+     * @param nanos 判定にかかった時間（ナノ秒）
+     */
+    public void record(long nanos) {
+        chats.increment();
+        this.nanos.add(nanos);
+    }
+    
+    /**
+     * 負荷軽減モードかどうか
+     */
+    public boolean isShedding() {
+        return shedding;
+    }
+    
+    /**
+     * このメッセージでスパム検知を行うかどうか
+     * 負荷軽減モードでは、疑わしさが低いプレイヤーは数回に1回だけ検知する
+     * （省略したメッセージは記録されないが、同じメッセージを続けて送ると検知したときに疑わしさが上がり、以降は毎回検知する）
+     */
+    public boolean shouldCheckSpam(ChatSession session) {
+        if (!shedding || session.suspicion >= settings.suspicionThreshold()) {
+            return true;
+        }
+        if (++session.spamSkipped >= settings.spamSampleRate()) {
+            session.spamSkipped = 0;
+            return true;
+        }
+        spamChecksSkipped.increment();
+        return false;
+    }
+    
+    /**
+     * 事前判定で判定を省略したことを記録する
+     */
+    public void recordPrefiltered() {
+        prefiltered.increment();
+    }
+    
+    /**
+     * チャットの件数と平均時間を調べてモードを切り替える（通常は一定間隔のタスクから呼ばれる）
+     */
+    public synchronized void check() {
+        long now = clock.millis();
+        long elapsed = Math.max(1, now - lastCheck);
+        lastCheck = now;
+        long count = chats.sumThenReset();
+        long total = nanos.sumThenReset();
+        long rate = count * 1000 / elapsed;
+        long latencyMicros = count >= MIN_LATENCY_SAMPLES ? total / count / 1000 : 0;
+        
+        if (!shedding) {
+            if (rate >= settings.enterChatsPerSecond() || latencyMicros >= settings.enterLatencyMicros()) {
+                enter(now, rate, latencyMicros);
+            }
+            return;
+        }
+        if (rate >= settings.exitChatsPerSecond() || latencyMicros >= settings.exitLatencyMicros()) {
+            calmSince = NEVER;
+            return;
+        }
+        if (calmSince == NEVER) {
+            calmSince = now;
+        }
+        if (now - calmSince >= settings.recoveryMillis()) {
+            plugin.getLogger().info("チャットの負荷が下がったため通常モードに戻しました（負荷軽減モード "
+                + (now - enteredAt) / 1000 + "秒, 事前判定で省略 " + prefiltered.sum() + "件）");
+            leave();
+        }
+    }
+    
+    private void enter(long now, long rate, long latencyMicros) {
+        shedding = true;
+        enteredAt = now;
+        calmSince = NEVER;
+        activations.incrementAndGet();
+        scoreQueue.setSaveDeferral(settings.saveDeferMillis());
+        plugin.getLogger().warning("チャットが集中しているため負荷軽減モードに切り替えました（"
+            + rate + "件/秒, 判定の平均 " + latencyMicros + "µs）");
+    }
+    
+    private void leave() {
+        shedding = false;
+        calmSince = NEVER;
+        scoreQueue.setSaveDeferral(0);
+    }
+    
+    /**
+     * 負荷軽減モードに切り替えた回数
+     */
+    public long getActivations() {
+        return activations.get();
+    }
+    
+    /**
+     * 事前判定で判定を省略したチャットの件数
+     */
+    public long getPrefiltered() {
+        return prefiltered.sum();
+    }
+    
+    /**
+     * スパム検知を省略したチャットの件数
+     */
+    public long getSpamChecksSkipped() {
+        return spamChecksSkipped.sum();
+    }
+}
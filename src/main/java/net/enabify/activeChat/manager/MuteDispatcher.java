@@ -0,0 +1,50 @@
+package net.enabify.activeChat.manager;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * スパム検知によるミュートコマンドの実行
+ * 複数プレイヤーのミュートを1つのグローバルリージョンタスクにまとめて実行する
+ */
+public class MuteDispatcher {
+    private final Plugin plugin;
+    private final String commandTemplate;
+    
+    // ミュート待ちのプレイヤー名
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    // 実行タスクが登録済みかどうか
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    
+    /**
+     * @param commandTemplate ミュートコマンド（%player% がプレイヤー名に置き換わる）
+     */
+    public MuteDispatcher(Plugin plugin, String commandTemplate) {
+        this.plugin = plugin;
+        this.commandTemplate = commandTemplate;
+    }
+    
+    /**
+     * プレイヤーのミュートを予約する
+     */
+    public void mute(String playerName) {
+        pending.add(playerName);
+        if (scheduled.compareAndSet(false, true)) {
+            // グローバルスケジューラーでコマンド実行
+            plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> drain());
+        }
+    }
+    
+    private void drain() {
+        // 先にフラグを戻し、実行中に追加された分は次のタスクで処理する
+        scheduled.set(false);
+        String playerName;
+        while ((playerName = pending.poll()) != null) {
+            plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(),
+                commandTemplate.replace("%player%", playerName));
+        }
+    }
+}
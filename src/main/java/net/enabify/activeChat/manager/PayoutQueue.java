@@ -0,0 +1,361 @@
+package net.enabify.activeChat.manager;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.enabify.activeChat.data.PayoutClaims;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PlayerPoints;
+import net.enabify.activeChat.metrics.RewardPaidEvent;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 参加時のポイント付与キュー
+ * 参加したプレイヤーを順番に並べ、一定間隔ごとに決まった人数ずつまとめて付与する
+ *
+ * 1. 非同期スレッドでポイントを取得してリセットし、付与待ちの記録（PayoutClaims）へ移して保存する
+ * 2. グローバルリージョンで1バッチ分をまとめて付与する
+ * 3. 付与できたプレイヤーは付与待ちの記録を消し、付与できなかったプレイヤーはポイントを戻して保存する
+ * リセットと付与待ちの記録は同じ書き込みで保存されるため、どの時点で停止してもポイントは失われない
+ * （付与を確かめる前に停止した場合は、停止時か次回の起動時にプレイヤーへ戻す）
+ * 付与してから付与待ちの記録を消すまでの間に停止した場合だけは、次回の参加時に同じポイントを再度付与する
+ */
+public class PayoutQueue {
+    // 付与処理の実行間隔（1tick）
+    private static final long DRAIN_INTERVAL_MILLIS = 50;
+    
+    private final Plugin plugin;
+    private final PlayerDataManager dataManager;
+    private final PointsPayout defaultPayout;
+    private final int batchSize;
+    private final long delayMillis;
+    private final Clock clock;
+    // 付与待ちの記録の置き場所と、記録があるプレイヤーの一覧
+    private final PayoutClaims claims;
+    
+    // 付与待ちのプレイヤー（参加順）
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    // 付与待ちのプレイヤー（同じプレイヤーを重複して並べない）
+    private final Set<UUID> queued = ConcurrentHashMap.newKeySet();
+    // 付与中のバッチがあるかどうか（バッチは1つずつ処理する）
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+    // 取得済みでまだ付与していないバッチ（付与と停止のどちらか先に取り出した方が扱う）
+    private final AtomicReference<List<Reward>> claimed = new AtomicReference<>();
+    // 付与の結果で、まだ付与待ちの記録に反映していないもの（反映と停止のどちらか先に取り出した方が扱う）
+    private final AtomicReference<Result> results = new AtomicReference<>();
+    private ScheduledTask drainTask;
+    
+    /**
+     * 付与待ちの一覧をファイルに保存しない付与キュー（再生・テスト用）
+     */
+    public PayoutQueue(Plugin plugin, PlayerDataManager dataManager, PointsPayout defaultPayout,
+                       int batchSize, long delayMillis, Clock clock) {
+        this(plugin, dataManager, defaultPayout, batchSize, delayMillis, clock, new PayoutClaims());
+    }
+    
+    /**
+     * @param defaultPayout 付与方法（ServicesManagerに登録された付与方法があればそちらを優先する）
+     * @param batchSize 1回にまとめて付与する最大人数
+     * @param delayMillis 参加から付与までの待ち時間（ミリ秒）
+     * @param claims 付与待ちの記録の置き場所
+     */
+    public PayoutQueue(Plugin plugin, PlayerDataManager dataManager, PointsPayout defaultPayout,
+                       int batchSize, long delayMillis, Clock clock, PayoutClaims claims) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+        this.defaultPayout = defaultPayout;
+        this.batchSize = Math.max(1, batchSize);
+        this.delayMillis = Math.max(0, delayMillis);
+        this.clock = clock;
+        this.claims = claims;
+    }
+    
+    /**
+     * 前回の停止時に残った付与待ちの記録をプレイヤーに戻し、付与処理を開始する
+     */
+    public void start() {
+        recover();
+        drainTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, scheduledTask -> drain(),
+            DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 付与処理を停止する（付与待ちのポイントはリセットされずに残る）
+     * 取得済みで付与前のバッチはプレイヤーに戻し、付与の結果は付与待ちの記録に反映して、その場で保存する
+     */
+    public void stop() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        List<Reward> batch = claimed.getAndSet(null);
+        if (batch != null) {
+            settle(List.of(), batch);
+        }
+        Result result = results.getAndSet(null);
+        if (result != null) {
+            settle(result.paid(), result.failed());
+        }
+    }
+    
+    /**
+     * 参加したプレイヤーを付与待ちに追加する
+     */
+    public void enqueue(Player player) {
+        if (queued.add(player.getUniqueId())) {
+            queue.add(new Entry(player, clock.millis() + delayMillis));
+        }
+    }
+    
+    /**
+     * 付与待ちの人数
+     */
+    public int size() {
+        return queued.size();
+    }
+    
+    /**
+     * 付与を確かめる前に停止したときの付与待ちの記録を、プレイヤーに戻す
+     * 付与できたかどうか分からないため、次回の参加時に付与する
+     */
+    private void recover() {
+        List<UUID> players = claims.players();
+        if (players.isEmpty()) {
+            return;
+        }
+        int restored = 0;
+        for (UUID uuid : players) {
+            UUID key = claims.key(uuid);
+            PlayerPoints left = dataManager.getPoints(key);
+            if (left.getTotal() != 0) {
+                dataManager.releaseClaim(key, left, uuid);
+                restored++;
+            }
+        }
+        if (commit(players) && restored > 0) {
+            plugin.getLogger().warning("付与を確かめる前に停止した" + restored + "人分のポイントを戻しました。次回の参加時に付与します。");
+        }
+    }
+    
+    /**
+     * 付与時刻になったプレイヤーを1バッチ分取り出し、ポイントを付与待ちの記録へ移して保存する
+     */
+    void drain() {
+        if (queue.isEmpty() || !inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        long now = clock.millis();
+        List<Player> due = new ArrayList<>(batchSize);
+        List<UUID> uuids = new ArrayList<>(batchSize);
+        Entry entry;
+        while (due.size() < batchSize && (entry = queue.peek()) != null && entry.dueAt() <= now) {
+            queue.poll();
+            UUID uuid = entry.player().getUniqueId();
+            queued.remove(uuid);
+            due.add(entry.player());
+            uuids.add(uuid);
+        }
+        if (due.isEmpty()) {
+            inFlight.set(false);
+            return;
+        }
+        try {
+            claims.add(uuids);
+        } catch (IOException e) {
+            // 一覧を保存できない場合は取得しない（ポイントはリセットされずに残り、次回の参加時に付与する）
+            plugin.getLogger().warning("付与待ちの一覧を保存できないため、ポイントの付与を延期します: " + e.getMessage());
+            inFlight.set(false);
+            return;
+        }
+        
+        List<Reward> batch = new ArrayList<>(due.size());
+        for (Player player : due) {
+            try {
+                PlayerPoints points = dataManager.claimPoints(player.getUniqueId(), claims.key(player.getUniqueId()));
+                if (points.getTotal() > 0) {
+                    batch.add(new Reward(player, points));
+                }
+            } catch (RuntimeException e) {
+                // 取得できなかったポイントはリセットされずに残り、次回の参加時に付与する
+                plugin.getLogger().warning(player.getName() + "のポイントを読み取れませんでした: " + e.getMessage());
+            }
+        }
+        // 付与より先にリセットと付与待ちの記録を保存する（保存できない場合は付与せずに戻す）
+        try {
+            dataManager.commit();
+        } catch (IOException e) {
+            plugin.getLogger().warning("ポイントの取得を保存できないため、付与を延期します: " + e.getMessage());
+            release(batch);
+            inFlight.set(false);
+            return;
+        }
+        // 0ポイントだったプレイヤーは付与待ちの記録が無いため、一覧から除く
+        List<UUID> empty = new ArrayList<>(uuids);
+        for (Reward reward : batch) {
+            empty.remove(reward.player().getUniqueId());
+        }
+        forget(empty);
+        if (batch.isEmpty()) {
+            inFlight.set(false);
+            return;
+        }
+        claimed.set(batch);
+        // コマンド実行はグローバルスケジューラーで実行（Folia対応）
+        plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> pay());
+    }
+    
+    /**
+     * 1バッチ分をまとめて付与する（グローバルリージョン）
+     */
+    private void pay() {
+        List<Reward> batch = claimed.getAndSet(null);
+        if (batch == null) {
+            // 停止時に戻し済み
+            inFlight.set(false);
+            return;
+        }
+        List<Reward> paid = new ArrayList<>(batch.size());
+        List<Reward> failed = new ArrayList<>();
+        try {
+            PointsPayout payout = plugin.getServer().getServicesManager().load(PointsPayout.class);
+            if (payout == null) {
+                payout = defaultPayout;
+            }
+            for (Reward reward : batch) {
+                Player player = reward.player();
+                long total = reward.points().getTotal();
+                // JFRのイベント（記録していない場合はnull）
+                RewardPaidEvent trace = RewardPaidEvent.start();
+                boolean succeeded = false;
+                try {
+                    succeeded = payout.give(player.getUniqueId(), player.getName(), total);
+                    if (!succeeded) {
+                        plugin.getLogger().warning(player.getName() + "へのポイント付与に失敗しました。次回の参加時に再度付与します。");
+                    }
+                } catch (RuntimeException e) {
+                    plugin.getLogger().warning(player.getName() + "へのポイント付与に失敗しました: " + e.getMessage());
+                } finally {
+                    (succeeded ? paid : failed).add(reward);
+                    if (trace != null) {
+                        trace.finish(player.getName(), total, succeeded);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // 付与方法を取得できなかった場合など、結果が分からないプレイヤーは付与できなかったものとして戻す
+            plugin.getLogger().warning("ポイントの付与に失敗しました: " + e.getMessage());
+            for (Reward reward : batch) {
+                if (!paid.contains(reward) && !failed.contains(reward)) {
+                    failed.add(reward);
+                }
+            }
+        } finally {
+            // 付与待ちの記録への反映と保存は非同期で行う（停止時に実行されなければ、停止処理で反映する）
+            results.set(new Result(paid, failed));
+            plugin.getServer().getAsyncScheduler().runNow(plugin, task -> confirm());
+        }
+    }
+    
+    /**
+     * 付与の結果を付与待ちの記録に反映して保存し、付与できたプレイヤーに内訳を送る
+     */
+    private void confirm() {
+        try {
+            Result result = results.getAndSet(null);
+            if (result == null) {
+                // 停止時に反映済み
+                return;
+            }
+            settle(result.paid(), result.failed());
+            for (Reward reward : result.paid()) {
+                Player player = reward.player();
+                PlayerPoints points = reward.points();
+                
+                // ポイント内訳メッセージはプレイヤースケジューラーで実行
+                player.getScheduler().run(plugin, task -> {
+                    player.sendMessage(ChatColor.GREEN + "たくさんチャットと挨拶をしてポイントを貯めよう！\n前回のログインで獲得したポイント：\n" + points.getDetails());
+                }, null);
+            }
+        } finally {
+            inFlight.set(false);
+        }
+    }
+    
+    /**
+     * 付与できたプレイヤーの付与待ちの記録を消し、付与できなかったプレイヤーにポイントを戻して保存する
+     */
+    private void settle(List<Reward> paid, List<Reward> failed) {
+        List<UUID> uuids = new ArrayList<>(paid.size() + failed.size());
+        for (Reward reward : paid) {
+            UUID uuid = reward.player().getUniqueId();
+            dataManager.releaseClaim(claims.key(uuid), reward.points(), null);
+            uuids.add(uuid);
+        }
+        uuids.addAll(release(failed));
+        commit(uuids);
+    }
+    
+    /**
+     * 付与待ちの記録からプレイヤーにポイントを戻す（保存は呼び出し側で行う）
+     * @return 戻したプレイヤー
+     */
+    private List<UUID> release(List<Reward> rewards) {
+        List<UUID> uuids = new ArrayList<>(rewards.size());
+        for (Reward reward : rewards) {
+            UUID uuid = reward.player().getUniqueId();
+            dataManager.releaseClaim(claims.key(uuid), reward.points(), uuid);
+            uuids.add(uuid);
+        }
+        return uuids;
+    }
+    
+    /**
+     * 付与待ちの記録への反映を保存し、保存できたプレイヤーを一覧から除く
+     * 保存できなかった場合は一覧に残す（反映は次回の保存で書き込まれ、それまでに停止した場合は起動時に戻す）
+     * @return 保存できた場合はtrue
+     */
+    private boolean commit(List<UUID> uuids) {
+        try {
+            dataManager.commit();
+        } catch (IOException e) {
+            plugin.getLogger().warning("付与待ちの記録を保存できませんでした: " + e.getMessage());
+            return false;
+        }
+        forget(uuids);
+        return true;
+    }
+    
+    /**
+     * 付与待ちの記録が無くなったプレイヤーを一覧から除く
+     * （除けなかった場合は一覧に残るが、次回の起動時に戻すポイントが無いだけで害はない）
+     */
+    private void forget(List<UUID> uuids) {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        try {
+            claims.remove(uuids);
+        } catch (IOException e) {
+            plugin.getLogger().warning("付与待ちの一覧を保存できませんでした: " + e.getMessage());
+        }
+    }
+    
+    private record Entry(Player player, long dueAt) {}
+    
+    private record Reward(Player player, PlayerPoints points) {}
+    
+    private record Result(List<Reward> paid, List<Reward> failed) {}
+}
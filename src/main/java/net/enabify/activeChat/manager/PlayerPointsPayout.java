@@ -0,0 +1,53 @@
+package net.enabify.activeChat.manager;
+
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+/**
+ * PlayerPointsプラグインのAPIを直接呼び出してポイントを付与する
+ * コマンド文字列の組み立てと解析を行わない
+ *
+ * PlayerPointsに依存せずにビルドできるよう、APIはリフレクションで1回だけ解決する
+ */
+public class PlayerPointsPayout implements PointsPayout {
+    private final Object api;
+    private final Method give;
+    
+    private PlayerPointsPayout(Object api, Method give) {
+        this.api = api;
+        this.give = give;
+    }
+    
+    /**
+     * PlayerPointsのAPIを解決する
+     * @param playerPoints PlayerPointsプラグイン（有効になっていること）
+     * @return 解決できなかった場合はnull
+     */
+    public static PlayerPointsPayout resolve(Plugin playerPoints) {
+        try {
+            Object api = playerPoints.getClass().getMethod("getAPI").invoke(playerPoints);
+            Method give = api.getClass().getMethod("give", UUID.class, int.class);
+            return new PlayerPointsPayout(api, give);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+    
+    @Override
+    public boolean give(UUID uuid, String playerName, long amount) {
+        if (amount > Integer.MAX_VALUE) {
+            // APIは4byteのポイントしか受け取れない
+            return false;
+        }
+        try {
+            return (boolean) give.invoke(api, uuid, (int) amount);
+        } catch (IllegalAccessException e) {
+            return false;
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("PlayerPointsでの付与に失敗しました", e.getCause());
+        }
+    }
+}
@@ -1,139 +1,143 @@
 package net.enabify.activeChat.manager;
 
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.Location;
+
+import java.time.Clock;
 
 /**
  * チャットイベントごとのポイント獲得条件を管理するクラス
+ * 獲得条件は設定ファイルのルールから作成したScoringPlanで判定する
  */
 public class PointsManager {
-    // 各プレイヤーの最後のチャット時刻（通常チャット用）
-    private final Map<UUID, Long> lastChatTime = new ConcurrentHashMap<>();
+    // キーワードのカテゴリ名（設定ファイルの keywords.<カテゴリ名>）
+    public static final String CATEGORY_WELCOME = "welcome";
+    public static final String CATEGORY_GREETING = "greeting";
+    
+    // 現在時刻の取得元（再生テストでは模擬時計に差し替える）
+    private final Clock clock;
     
-    // 各プレイヤーの最後の歓迎チャット時刻
-    private final Map<UUID, Long> lastWelcomeTime = new ConcurrentHashMap<>();
+    // 全ルールをまとめた実行計画
+    private final ScoringPlan plan;
     
-    // 各プレイヤーの最後の挨拶チャット時刻
-    private final Map<UUID, Long> lastGreetingTime = new ConcurrentHashMap<>();
+    // 出来事（プレイヤーの参加など）ごとの最後の発生時刻
+    private final JoinWindowTracker windows;
+    private final int playerJoinEvent;
+    private final int newPlayerJoinEvent;
     
-    // 新規プレイヤーが参加した時刻
-    private long lastNewPlayerJoinTime = 0;
+    public PointsManager() {
+        this(ScoringPlan.compile(ScoringRule.defaults(KeywordMatcher.defaultKeywords())), Clock.systemUTC());
+    }
     
-    // 誰かしらのプレイヤーが参加した時刻
-    private long lastAnyPlayerJoinTime = 0;
+    public PointsManager(ScoringPlan plan, Clock clock) {
+        this(plan, clock, 32);
+    }
     
     /**
-     * 通常チャットのポイント判定
-     * @param uuid プレイヤーUUID
-     * @param messageLength メッセージの長さ
-     * @return 付与するポイント数（条件を満たさない場合は0）
+     * @param regionChunks リージョン単位の有効時間で使うリージョンの1辺のチャンク数
      */
-    public int checkNormalChat(UUID uuid, int messageLength) {
-        long currentTime = System.currentTimeMillis();
-        Long lastTime = lastChatTime.get(uuid);
-        
-        // 文字数が6文字以下の場合はカウントしない
-        if (messageLength <= 6) {
-            return 0;
-        }
-        
-        // 間隔が3秒未満の場合はカウントしない
-        if (lastTime != null && (currentTime - lastTime) < 3000) {
-            return 0;
-        }
-        
-        // 最後のチャット時刻を更新
-        lastChatTime.put(uuid, currentTime);
-        return 1;
+    public PointsManager(ScoringPlan plan, Clock clock, int regionChunks) {
+        this(plan, clock, regionChunks, null);
     }
     
     /**
-     * 新規さん歓迎チャットのポイント判定
-     * @param uuid プレイヤーUUID
-     * @param message チャットメッセージ
-     * @return 付与するポイント数（条件を満たさない場合は0）
+     * @param expiry ワールド・リージョン単位の出来事の記録を、有効時間が過ぎたら削除するためのホイール
      */
-    public int checkWelcomeChat(UUID uuid, String message) {
-        long currentTime = System.currentTimeMillis();
-        
-        // 新規さんが参加してから60秒以内でない場合はカウントしない
-        if (currentTime - lastNewPlayerJoinTime > 60000) {
-            return 0;
-        }
-        
-        // キーワードチェック
-        String lowerMessage = message.toLowerCase();
-        boolean isWelcomeMessage = message.contains("082") ||
-                                   lowerMessage.contains("初") ||
-                                   lowerMessage.contains("新規さん") ||
-                                   lowerMessage.contains("よろしく");
-        
-        if (!isWelcomeMessage) {
-            return 0;
-        }
-        
-        // 間隔が30秒未満の場合はカウントしない
-        Long lastTime = lastWelcomeTime.get(uuid);
-        if (lastTime != null && (currentTime - lastTime) < 30000) {
-            return 0;
-        }
-        
-        // 最後の歓迎チャット時刻を更新
-        lastWelcomeTime.put(uuid, currentTime);
-        return 50;
+    public PointsManager(ScoringPlan plan, Clock clock, int regionChunks, ExpiryWheel expiry) {
+        this.clock = clock;
+        this.plan = plan;
+        this.windows = new JoinWindowTracker(plan.getEventCount(), regionChunks, expiry, plan.getMaxWindowMillis());
+        this.playerJoinEvent = plan.eventIndex(ScoringRule.EVENT_PLAYER_JOIN);
+        this.newPlayerJoinEvent = plan.eventIndex(ScoringRule.EVENT_NEW_PLAYER_JOIN);
     }
     
     /**
-     * 挨拶チャットのポイント判定
-     * @param uuid プレイヤーUUID
+     * チャットに対して全ルールを1回で判定する
+     * @param session プレイヤーのチャット状態
      * @param message チャットメッセージ
-     * @return 付与するポイント数（条件を満たさない場合は0）
+     * @param now 現在時刻（ミリ秒）
+     * @return 項目ごとの獲得ポイントを詰めた値（ScoringPlan.pointsで取り出す）
      */
-    public int checkGreetingChat(UUID uuid, String message) {
-        long currentTime = System.currentTimeMillis();
-        
-        // プレイヤーが参加してから60秒以内でない場合はカウントしない
-        if (currentTime - lastAnyPlayerJoinTime > 60000) {
-            return 0;
-        }
-        
-        // キーワードチェック
-        String lowerMessage = message.toLowerCase();
-        boolean isGreetingMessage = message.contains("08") ||
-                                    message.contains("52") ||
-                                    message.contains("58") ||
-                                    lowerMessage.contains("oha") ||
-                                    lowerMessage.contains("おは") ||
-                                    lowerMessage.contains("kon") ||
-                                    lowerMessage.contains("こん");
-        
-        if (!isGreetingMessage) {
-            return 0;
-        }
-        
-        // 間隔が30秒未満の場合はカウントしない
-        Long lastTime = lastGreetingTime.get(uuid);
-        if (lastTime != null && (currentTime - lastTime) < 30000) {
-            return 0;
+    public long evaluateChat(ChatSession session, CharSequence message, long now) {
+        return plan.evaluate(session, message, now, windows);
+    }
+    
+    /**
+     * どのルールもクールダウン中か有効時間外で、メッセージを見ずに獲得なしと分かる場合はtrue
+     * （負荷軽減モードの事前判定。updateQuietで記録した状態を比べるだけで、文字列は扱わない）
+     */
+    public boolean isQuiet(ChatSession session, long now) {
+        return ScoringPlan.isQuiet(session, now, windows);
+    }
+    
+    /**
+     * isQuietで使う状態を、判定した後のクールダウンと有効時間から更新する
+     */
+    public void updateQuiet(ChatSession session, long now) {
+        plan.updateQuiet(session, now, windows);
+    }
+    
+    /**
+     * ルールの数（チャット状態の作成に使う）
+     */
+    public int getRuleCount() {
+        return plan.getRuleCount();
+    }
+    
+    /**
+     * ワールド・リージョン単位の有効時間を使うルールがあるかどうか
+     */
+    public boolean usesScopedWindows() {
+        return plan.usesScopedWindows();
+    }
+    
+    /**
+     * 位置をキーに変換する（ChatSession.setLocationKeyとrecordEventに渡す）
+     */
+    public long locationKey(Location location) {
+        return location != null ? windows.locationKey(location) : JoinWindowTracker.UNKNOWN_LOCATION;
+    }
+    
+    /**
+     * 出来事が起きたことを記録する（その出来事を条件とするルールの有効時間が始まる）
+     * @param event 出来事の名前（ルールで使われていない場合は何もしない）
+     * @param locationKey 出来事の位置（locationKeyの結果）
+     */
+    public void recordEvent(String event, long locationKey) {
+        recordEvent(plan.eventIndex(event), locationKey);
+    }
+    
+    private void recordEvent(int index, long locationKey) {
+        if (index >= 0) {
+            windows.record(index, locationKey, clock.millis());
         }
-        
-        // 最後の挨拶チャット時刻を更新
-        lastGreetingTime.put(uuid, currentTime);
-        return 5;
     }
     
     /**
      * 新規プレイヤーが参加したことを記録
      */
     public void recordNewPlayerJoin() {
-        lastNewPlayerJoinTime = System.currentTimeMillis();
+        recordNewPlayerJoin(JoinWindowTracker.UNKNOWN_LOCATION);
+    }
+    
+    public void recordNewPlayerJoin(long locationKey) {
+        recordEvent(newPlayerJoinEvent, locationKey);
     }
     
     /**
      * プレイヤーが参加したことを記録
      */
     public void recordPlayerJoin() {
-        lastAnyPlayerJoinTime = System.currentTimeMillis();
+        recordPlayerJoin(JoinWindowTracker.UNKNOWN_LOCATION);
+    }
+    
+    public void recordPlayerJoin(long locationKey) {
+        recordEvent(playerJoinEvent, locationKey);
+    }
+    
+    /**
+     * ワールド・リージョン単位の出来事の記録数
+     */
+    public int getWindowCount() {
+        return windows.size();
     }
 }
@@ -0,0 +1,15 @@
+package net.enabify.activeChat.manager;
+
+import java.util.UUID;
+
+/**
+ * 外部のポイントプラグインへポイントを付与する方法
+ * 他のプラグインはServicesManagerにこのインターフェースを登録すると、付与方法を差し替えられる
+ */
+public interface PointsPayout {
+    /**
+     * ポイントを付与する（グローバルリージョンのスレッドで呼び出される）
+     * @return 付与できた場合はtrue（falseの場合はポイントをリセットせず、次回の参加時に再度付与する）
+     */
+    boolean give(UUID uuid, String playerName, long amount);
+}
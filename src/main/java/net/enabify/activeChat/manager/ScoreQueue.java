@@ -0,0 +1,242 @@
+package net.enabify.activeChat.manager;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.enabify.activeChat.data.PlayerDataManager;
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * チャットで獲得したポイントを加算するキュー（複数のチャットスレッドから書き込み、1つの処理で取り出す）
+ *
+ * - 固定長のリングバッファ。書き込みは書き込み位置のCAS1回とスロットへの代入だけ（ロックもオブジェクトの生成もない）
+ * - スロットは配列の列（UUID・名前の参照と3項目のポイントのint）で持ち、連番の配列で書き込み完了を公開する
+ * - 一定間隔の非同期タスク1つがまとめて取り出し、順番にポイントストアとランキングに加算する（保存要求はまとめて1回）
+ * - 満杯の場合はすぐに取り出しを要求して短い時間だけ待ち、それでも空かなければ破棄して破棄した件数を記録する
+ *   （チャットのスレッドで加算・保存要求・ランキングの更新を行わない。大量のチャットを受け止めるためのキューのため）
+ */
+public class ScoreQueue {
+    // 満杯のときに空きを待つ最大時間
+    private static final long FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final Plugin plugin;
+    private final PlayerDataManager dataManager;
+    private final Leaderboard leaderboard;
+    private final long drainIntervalMillis;
+    
+    private final int mask;
+    // スロットの連番（書き込み可能: 位置、取り出し可能: 位置+1）
+    private final AtomicLongArray sequences;
+    private final UUID[] uuids;
+    private final String[] names;
+    // [スロット × 3項目] のポイント
+    private final int[] points;
+    
+    // 次に書き込む位置（チャットスレッドがCASで確保する）
+    private final AtomicLong tail = new AtomicLong();
+    // 次に取り出す位置（取り出し処理だけが更新する）
+    private volatile long head;
+    
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile ScheduledTask drainTask;
+    // 満杯による臨時の取り出しを登録済み（まだ開始していない）
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    
+    // 保存要求をまとめる取り出しの回数（負荷軽減モード中のみ1以上）
+    private volatile int deferDrains;
+    // 加算した後、まだ保存を要求していない（drainの中だけで使う）
+    private boolean savePending;
+    private int drainsSinceSave;
+    
+    /**
+     * @param capacity 保持できる件数（2の累乗に切り上げ）
+     * @param drainIntervalMillis 取り出しの間隔（ミリ秒）
+     */
+    public ScoreQueue(Plugin plugin, PlayerDataManager dataManager, Leaderboard leaderboard,
+                      int capacity, long drainIntervalMillis) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+        this.leaderboard = leaderboard;
+        this.drainIntervalMillis = Math.max(1, drainIntervalMillis);
+        int size = Integer.highestOneBit(Math.max(2, Math.min(capacity, 1 << 20)) * 2 - 1);
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.uuids = new UUID[size];
+        this.names = new String[size];
+        this.points = new int[size * 3];
+        for (int slot = 0; slot < size; slot++) {
+            sequences.set(slot, slot);
+        }
+    }
+    
+    /**
+     * 一定間隔での取り出しを開始する
+     */
+    public void start() {
+        drainTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, scheduledTask -> drain(),
+            drainIntervalMillis, drainIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 取り出しを停止し、残っている分をすべて加算する（保存の前に呼び出す）
+     */
+    public void stop() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        deferDrains = 0;
+        drain();
+    }
+    
+    /**
+     * 保存要求を遅らせる（負荷軽減モード用）
+     * 取り出しごとではなく、この時間ごとに1回だけ保存を要求する（0で元に戻し、遅らせていた分は次の取り出しで要求する）
+     * @param deferMillis 保存要求の間隔（ミリ秒）
+     */
+    public void setSaveDeferral(long deferMillis) {
+        deferDrains = (int) Math.min(Integer.MAX_VALUE, Math.max(0, deferMillis) / drainIntervalMillis);
+    }
+    
+    /**
+     * 獲得したポイントを追加する（どのスレッドからでも呼び出せる）
+     * 満杯の場合は取り出しを待ち、FULL_WAIT_NANOS以内に空かなければ破棄する
+     */
+    public void publish(UUID uuid, String name, int normalChat, int greeting, int welcome) {
+        long position = tail.get();
+        long deadline = 0;
+        while (true) {
+            int slot = (int) position & mask;
+            long diff = sequences.getAcquire(slot) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    uuids[slot] = uuid;
+                    names[slot] = name;
+                    points[slot * 3] = normalChat;
+                    points[slot * 3 + 1] = greeting;
+                    points[slot * 3 + 2] = welcome;
+                    // スロットの値を書き終えてから取り出し可能にする
+                    sequences.setRelease(slot, position + 1);
+                    published.incrementAndGet();
+                    return;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                // 1周前の値がまだ取り出されていない（満杯）
+                if (deadline == 0) {
+                    requestDrain();
+                    deadline = System.nanoTime() + FULL_WAIT_NANOS;
+                } else if (System.nanoTime() - deadline > 0) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                Thread.yield();
+                position = tail.get();
+            } else {
+                // 他のスレッドが先に確保した
+                position = tail.get();
+            }
+        }
+    }
+    
+    /**
+     * 書き込み済みの分をまとめて加算する（通常は一定間隔のタスクから呼ばれる。同時に実行されるのは1つだけ）
+     */
+    public synchronized void drain() {
+        long position = head;
+        long start = position;
+        while (true) {
+            int slot = (int) position & mask;
+            if (sequences.getAcquire(slot) != position + 1) {
+                // 空、または書き込み中（確保済みで公開前）のスロット。続きは次回に取り出す
+                break;
+            }
+            UUID uuid = uuids[slot];
+            String name = names[slot];
+            int normalChat = points[slot * 3];
+            int greeting = points[slot * 3 + 1];
+            int welcome = points[slot * 3 + 2];
+            uuids[slot] = null;
+            names[slot] = null;
+            // スロットを次の周の書き込みに戻す
+            sequences.setRelease(slot, position + mask + 1);
+            position++;
+            head = position;
+            
+            try {
+                apply(uuid, normalChat, greeting, welcome);
+                // ランキングは付与でリセットされない獲得の累計
+                leaderboard.record(uuid, name, normalChat, greeting, welcome);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        if (position != start) {
+            batches.incrementAndGet();
+            savePending = true;
+        }
+        if (savePending && ++drainsSinceSave > deferDrains) {
+            savePending = false;
+            drainsSinceSave = 0;
+            dataManager.requestSave();
+        }
+    }
+    
+    /**
+     * 次の定期実行を待たずに取り出す（満杯のとき。登録済みで未開始の間は重ねて登録しない）
+     */
+    private void requestDrain() {
+        if (drainTask != null && drainRequested.compareAndSet(false, true)) {
+            plugin.getServer().getAsyncScheduler().runNow(plugin, scheduledTask -> {
+                drainRequested.set(false);
+                drain();
+            });
+        }
+    }
+    
+    private void apply(UUID uuid, int normalChat, int greeting, int welcome) {
+        if (normalChat > 0) {
+            dataManager.addNormalChatPoints(uuid, normalChat);
+        }
+        if (greeting > 0) {
+            dataManager.addGreetingPoints(uuid, greeting);
+        }
+        if (welcome > 0) {
+            dataManager.addWelcomeNewPlayerPoints(uuid, welcome);
+        }
+    }
+    
+    /**
+     * 取り出し待ちの件数
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+    
+    /**
+     * キューに追加した件数
+     */
+    public long getPublished() {
+        return published.get();
+    }
+    
+    /**
+     * 満杯のため破棄した件数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+    
+    /**
+     * まとめて加算した回数
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+}
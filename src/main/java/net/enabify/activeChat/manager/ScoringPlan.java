@@ -0,0 +1,276 @@
+package net.enabify.activeChat.manager;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ポイント獲得ルールを1回の判定にまとめた実行計画
+ * 起動時にルールを配列へ展開し、全ルールのキーワードを1つのKeywordMatcherにまとめる
+ * 判定では時刻を1回だけ受け取り、メッセージの走査も1回だけ行い、結果を1つのlongに詰めて返す
+ */
+public final class ScoringPlan {
+    // 結果の項目（PointsStoreの項目番号と同じ）
+    public static final int NORMAL_CHAT = 0;
+    public static final int GREETING = 1;
+    public static final int WELCOME_NEW_PLAYER = 2;
+    private static final String[] CATEGORY_NAMES = {"normal_chat", "greeting", "welcome_new_player"};
+    
+    // 結果のlongに詰める1項目あたりのビット数
+    private static final int POINTS_BITS = 21;
+    private static final long POINTS_MASK = (1L << POINTS_BITS) - 1;
+    
+    private final int ruleCount;
+    private final String[] ruleIds;
+    private final int[] category;
+    private final int[] points;
+    private final int[] minLength;
+    private final long[] cooldownMillis;
+    // 有効時間の基準となる出来事の番号（-1は制限なし）
+    private final int[] windowEvent;
+    private final long[] windowMillis;
+    private final JoinWindowTracker.Scope[] windowScope;
+    // ルールのキーワードのビット（0はキーワード制限なし）
+    private final int[] keywordBit;
+    // キーワードが空のため獲得しないルール
+    private final boolean[] disabled;
+    
+    // 出来事の名前 → 番号
+    private final Map<String, Integer> events;
+    private final KeywordMatcher keywordMatcher;
+    
+    private ScoringPlan(List<ScoringRule> rules, Map<String, Integer> events, KeywordMatcher keywordMatcher,
+                        int[] keywordBit, boolean[] disabled) {
+        this.ruleCount = rules.size();
+        this.ruleIds = new String[ruleCount];
+        this.category = new int[ruleCount];
+        this.points = new int[ruleCount];
+        this.minLength = new int[ruleCount];
+        this.cooldownMillis = new long[ruleCount];
+        this.windowEvent = new int[ruleCount];
+        this.windowMillis = new long[ruleCount];
+        this.windowScope = new JoinWindowTracker.Scope[ruleCount];
+        for (int r = 0; r < ruleCount; r++) {
+            ScoringRule rule = rules.get(r);
+            ruleIds[r] = rule.id();
+            category[r] = categoryIndex(rule.category());
+            points[r] = rule.points();
+            minLength[r] = rule.minLength();
+            cooldownMillis[r] = rule.cooldownMillis();
+            windowEvent[r] = rule.windowEvent() == null ? -1 : events.get(rule.windowEvent());
+            windowMillis[r] = rule.windowMillis();
+            windowScope[r] = rule.windowScope() != null ? rule.windowScope() : JoinWindowTracker.Scope.GLOBAL;
+        }
+        this.events = events;
+        this.keywordMatcher = keywordMatcher;
+        this.keywordBit = keywordBit;
+        this.disabled = disabled;
+    }
+    
+    /**
+     * ルールを検証して実行計画を作成する
+     * @throws IllegalArgumentException ルールの内容が不正な場合
+     */
+    public static ScoringPlan compile(List<ScoringRule> rules) {
+        Map<String, List<String>> keywords = new LinkedHashMap<>();
+        Map<String, Integer> events = new LinkedHashMap<>();
+        events.put(ScoringRule.EVENT_PLAYER_JOIN, 0);
+        events.put(ScoringRule.EVENT_NEW_PLAYER_JOIN, 1);
+        long[] maxPoints = new long[CATEGORY_NAMES.length];
+        if (rules.size() > Long.SIZE) {
+            throw new IllegalArgumentException("ルールは" + Long.SIZE + "個までです: " + rules.size());
+        }
+        
+        Set<String> ids = new HashSet<>();
+        for (ScoringRule rule : rules) {
+            if (!ids.add(rule.id())) {
+                throw new IllegalArgumentException("ルール名が重複しています: " + rule.id());
+            }
+            if (!ScoringRule.TRIGGER_CHAT.equals(rule.trigger())) {
+                throw new IllegalArgumentException(rule.id() + ": 未対応のtriggerです: " + rule.trigger());
+            }
+            int index = categoryIndex(rule.category());
+            if (index < 0) {
+                throw new IllegalArgumentException(rule.id() + ": 不明なcategoryです: " + rule.category());
+            }
+            if (rule.points() < 0 || rule.minLength() < 0 || rule.cooldownMillis() < 0 || rule.windowMillis() < 0) {
+                throw new IllegalArgumentException(rule.id() + ": points / min-length / cooldown / window に負の値は指定できません");
+            }
+            maxPoints[index] += rule.points();
+            if (maxPoints[index] > POINTS_MASK) {
+                throw new IllegalArgumentException(rule.category() + ": 1回のチャットで獲得できるポイントが多すぎます");
+            }
+            if (rule.windowEvent() != null) {
+                events.putIfAbsent(rule.windowEvent(), events.size());
+            }
+            if (rule.keywords() != null && !rule.keywords().isEmpty()) {
+                keywords.put(rule.id(), rule.keywords());
+                if (keywords.size() > KeywordMatcher.MAX_CATEGORIES) {
+                    throw new IllegalArgumentException(rule.id() + ": keywords を指定できるルールは"
+                        + KeywordMatcher.MAX_CATEGORIES + "個までです");
+                }
+            }
+        }
+        
+        // 全ルールのキーワードを1つのオートマトンにまとめる（ルール名をカテゴリにする）
+        KeywordMatcher matcher = KeywordMatcher.compile(keywords);
+        int[] keywordBit = new int[rules.size()];
+        boolean[] disabled = new boolean[rules.size()];
+        for (int r = 0; r < rules.size(); r++) {
+            ScoringRule rule = rules.get(r);
+            keywordBit[r] = matcher.categoryBit(rule.id());
+            disabled[r] = rule.keywords() != null && rule.keywords().isEmpty();
+        }
+        return new ScoringPlan(rules, events, matcher, keywordBit, disabled);
+    }
+    
+    private static int categoryIndex(String name) {
+        for (int i = 0; i < CATEGORY_NAMES.length; i++) {
+            if (CATEGORY_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * ルールの数（ChatSessionがルールごとの前回獲得時刻を保持する）
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+    
+    /**
+     * 出来事の数
+     */
+    public int getEventCount() {
+        return events.size();
+    }
+    
+    /**
+     * 出来事の番号を取得する
+     * @return 番号（ルールで使われていない出来事の場合は-1）
+     */
+    public int eventIndex(String event) {
+        Integer index = events.get(event);
+        return index == null ? -1 : index;
+    }
+    
+    public String getRuleId(int rule) {
+        return ruleIds[rule];
+    }
+    
+    /**
+     * ワールド・リージョン単位の有効時間を使うルールがあるかどうか
+     * （無い場合はプレイヤーの位置を追跡しなくてよい）
+     */
+    public boolean usesScopedWindows() {
+        for (int r = 0; r < ruleCount; r++) {
+            if (windowEvent[r] >= 0 && windowScope[r] != JoinWindowTracker.Scope.GLOBAL) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 最も長い有効時間（これより古い出来事の記録は削除してよい）
+     */
+    public long getMaxWindowMillis() {
+        long max = 0;
+        for (int r = 0; r < ruleCount; r++) {
+            max = Math.max(max, windowMillis[r]);
+        }
+        return max;
+    }
+    
+    /**
+     * 全ルールを1回で判定する（オブジェクトを生成しない）
+     * 1. 文字数・クールダウン・有効時間で判定できるルールを先に絞り込む
+     * 2. 残ったルールのキーワードだけを対象に、メッセージを1回走査する
+     * 3. 条件を満たしたルールのポイントを項目ごとに合計し、前回獲得時刻を更新する
+     * @param session プレイヤーのチャット状態
+     * @param message チャットメッセージ
+     * @param now 現在時刻（ミリ秒）
+     * @param windows 出来事ごとの最後の発生時刻
+     * @return 項目ごとの獲得ポイントを詰めた値（points で取り出す）
+     */
+    long evaluate(ChatSession session, CharSequence message, long now, JoinWindowTracker windows) {
+        long[] lastTimes = session.ruleTimes;
+        int length = message.length();
+        long candidates = 0;
+        int interest = 0;
+        for (int r = 0; r < ruleCount; r++) {
+            if (disabled[r] || length < minLength[r]) {
+                continue;
+            }
+            if (lastTimes[r] != 0 && now - lastTimes[r] < cooldownMillis[r]) {
+                continue;
+            }
+            if (windowEvent[r] >= 0
+                && now - windows.lastTime(windowEvent[r], windowScope[r], session.locationKey) > windowMillis[r]) {
+                continue;
+            }
+            candidates |= 1L << r;
+            interest |= keywordBit[r];
+        }
+        if (candidates == 0) {
+            return 0;
+        }
+        
+        int matched = keywordMatcher.match(message, interest);
+        long result = 0;
+        for (int r = 0; r < ruleCount; r++) {
+            if ((candidates & (1L << r)) == 0 || keywordBit[r] != 0 && (matched & keywordBit[r]) == 0) {
+                continue;
+            }
+            lastTimes[r] = now;
+            result += (long) points[r] << (category[r] * POINTS_BITS);
+        }
+        return result;
+    }
+    
+    /**
+     * メッセージに関係なく、次にいずれかのルールを獲得できる最も早い時刻を求めてチャット状態に記録する
+     * 有効時間が閉じているルールは、次の出来事が記録されるまで獲得できないものとして扱う
+     * （文字数やキーワードは次のメッセージ次第のため、クールダウンと有効時間だけで判断する）
+     */
+    void updateQuiet(ChatSession session, long now, JoinWindowTracker windows) {
+        // 版を先に読む（この後に記録された出来事は版の違いで分かる）
+        long version = windows.version();
+        long location = session.locationKey;
+        long[] lastTimes = session.ruleTimes;
+        long until = Long.MAX_VALUE;
+        for (int r = 0; r < ruleCount; r++) {
+            if (disabled[r]) {
+                continue;
+            }
+            if (windowEvent[r] >= 0
+                && now - windows.lastTime(windowEvent[r], windowScope[r], location) > windowMillis[r]) {
+                continue;
+            }
+            until = Math.min(until, lastTimes[r] != 0 ? lastTimes[r] + cooldownMillis[r] : 0);
+        }
+        session.quietUntil = until;
+        session.quietVersion = version;
+        session.quietLocation = location;
+    }
+    
+    /**
+     * updateQuietで記録した時刻より前で、その後に出来事が無く、同じ位置にいる場合はtrue（どのルールも獲得できないため判定を省略できる）
+     */
+    static boolean isQuiet(ChatSession session, long now, JoinWindowTracker windows) {
+        return now < session.quietUntil && session.quietLocation == session.locationKey
+            && session.quietVersion == windows.version();
+    }
+    
+    /**
+     * 判定結果から項目の獲得ポイントを取り出す
+     * @param category NORMAL_CHAT / GREETING / WELCOME_NEW_PLAYER
+     */
+    public static int points(long result, int category) {
+        return (int) ((result >>> (category * POINTS_BITS)) & POINTS_MASK);
+    }
+}
@@ -0,0 +1,44 @@
+package net.enabify.activeChat.manager;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ポイント獲得ルール（設定ファイルの rules.<ルール名>）
+ * @param id ルール名
+ * @param trigger 判定のきっかけ（現在は "chat" のみ）
+ * @param category 加算する項目（normal_chat / greeting / welcome_new_player）
+ * @param points 1回の獲得ポイント
+ * @param minLength メッセージの最小文字数（0は制限なし）
+ * @param cooldownMillis 前回の獲得からこの時間が経つまでは獲得しない（0は制限なし）
+ * @param windowEvent この出来事から windowMillis 以内のみ獲得する（nullは制限なし）
+ * @param windowMillis 出来事からの有効時間
+ * @param windowScope 出来事の範囲（サーバー全体 / 同じワールド / 近くのリージョン）
+ * @param keywords いずれかに一致したときのみ獲得する（nullは制限なし、空の場合は獲得しない、「%」はワイルドカード）
+ */
+public record ScoringRule(String id, String trigger, String category, int points, int minLength,
+                          long cooldownMillis, String windowEvent, long windowMillis,
+                          JoinWindowTracker.Scope windowScope, List<String> keywords) {
+    public static final String TRIGGER_CHAT = "chat";
+    
+    // 出来事の名前（JoinListenerが記録する）
+    public static final String EVENT_PLAYER_JOIN = "player-join";
+    public static final String EVENT_NEW_PLAYER_JOIN = "new-player-join";
+    
+    /**
+     * 制作方針.mdのポイント獲得条件と同じルール
+     * @param keywords キーワードのカテゴリ名 → キーワード（welcome / greeting）
+     */
+    public static List<ScoringRule> defaults(Map<String, List<String>> keywords) {
+        return List.of(
+            // 通常チャット：6文字以下・3秒未満はカウントしない
+            new ScoringRule("normal-chat", TRIGGER_CHAT, "normal_chat", 1, 7, 3000, null, 0,
+                JoinWindowTracker.Scope.GLOBAL, null),
+            // 新規さん歓迎チャット：新規さんの参加から60秒以内、30秒未満はカウントしない
+            new ScoringRule("welcome", TRIGGER_CHAT, "welcome_new_player", 50, 0, 30000,
+                EVENT_NEW_PLAYER_JOIN, 60000, JoinWindowTracker.Scope.GLOBAL, keywords.getOrDefault(PointsManager.CATEGORY_WELCOME, List.of())),
+            // 挨拶チャット：誰かの参加から60秒以内、30秒未満はカウントしない
+            new ScoringRule("greeting", TRIGGER_CHAT, "greeting", 5, 0, 30000,
+                EVENT_PLAYER_JOIN, 60000, JoinWindowTracker.Scope.GLOBAL, keywords.getOrDefault(PointsManager.CATEGORY_GREETING, List.of())));
+    }
+}
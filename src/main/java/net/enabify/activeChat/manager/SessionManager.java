@@ -0,0 +1,54 @@
+package net.enabify.activeChat.manager;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * オンライン中のプレイヤーのチャット状態を管理するクラス
+ * 保持する数はオンライン人数までに抑えられる
+ */
+public class SessionManager {
+    private final Map<UUID, ChatSession> sessions = new ConcurrentHashMap<>();
+    
+    // スパム検知で覚えておくメッセージ数
+    private final int spamHistorySize;
+    
+    // ポイント獲得ルールの数
+    private final int ruleCount;
+    
+    public SessionManager(int spamHistorySize, int ruleCount) {
+        this.spamHistorySize = Math.max(1, spamHistorySize);
+        this.ruleCount = ruleCount;
+    }
+    
+    /**
+     * 参加したプレイヤーの状態を作成する
+     */
+    public ChatSession open(UUID uuid) {
+        return sessions.computeIfAbsent(uuid, k -> new ChatSession(spamHistorySize, ruleCount));
+    }
+    
+    /**
+     * 退出したプレイヤーの状態を破棄する
+     */
+    public void close(UUID uuid) {
+        sessions.remove(uuid);
+    }
+    
+    /**
+     * プレイヤーの状態を取得する
+     * 参加イベントを経ていない場合（退出後に届いたチャットなど）は作成せずにnullを返す
+     * （ここで作成すると退出後の状態が残り続け、再参加時にクールダウンも引き継がれなくなる）
+     */
+    public ChatSession get(UUID uuid) {
+        return sessions.get(uuid);
+    }
+    
+    /**
+     * 保持している状態の数
+     */
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,86 @@
+package net.enabify.activeChat.manager;
+
+/**
+ * 指紋によるスパム検知
+ * メッセージを正規化（大文字・小文字と空白を無視し、連続する同じ文字を1文字にまとめる）して
+ * 64bitの指紋にし、プレイヤーごとのリングバッファで直近の送信と比較する
+ * メッセージの長さに関わらずプレイヤーごとの記憶量は一定で、判定中にオブジェクトを生成しない
+ */
+public class SpamDetector {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private final long windowMillis;
+    private final int threshold;
+    
+    /**
+     * @param windowMillis この時間内の送信だけを比較する（ミリ秒）
+     * @param threshold ほぼ同じメッセージがこの回数に達したらスパムとみなす（今回の送信を含む）
+     */
+    public SpamDetector(long windowMillis, int threshold) {
+        this.windowMillis = windowMillis;
+        this.threshold = Math.max(2, threshold);
+    }
+    
+    /**
+     * メッセージを記録し、スパムかどうかを判定する
+     * スパムと判定した場合、そのメッセージの記録は消去する（再カウントは0から）
+     * @param session プレイヤーのチャット状態
+     * @param message チャットメッセージ
+     * @param currentTime 現在時刻（ミリ秒）
+     * @return スパムの場合はtrue
+     */
+    public boolean check(ChatSession session, CharSequence message, long currentTime) {
+        long fingerprint = fingerprint(message);
+        long[] fingerprints = session.recentFingerprints;
+        long[] times = session.recentTimes;
+        
+        // 時間内のほぼ同じメッセージを数える
+        int count = 1;
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (times[i] != 0 && fingerprints[i] == fingerprint && currentTime - times[i] <= windowMillis) {
+                count++;
+            }
+        }
+        // 疑わしさ（負荷軽減モードでスパム検知を省略しないプレイヤーの判断に使う）
+        session.suspicion = count > 1 ? session.suspicion + 1 : session.suspicion >> 1;
+        
+        if (count >= threshold) {
+            for (int i = 0; i < fingerprints.length; i++) {
+                if (fingerprints[i] == fingerprint) {
+                    times[i] = 0;
+                }
+            }
+            return true;
+        }
+        
+        int index = session.recentIndex;
+        fingerprints[index] = fingerprint;
+        times[index] = currentTime;
+        session.recentIndex = (index + 1) % fingerprints.length;
+        return false;
+    }
+    
+    /**
+     * 正規化したメッセージの64bit指紋（FNV-1a）を計算する
+     */
+    static long fingerprint(CharSequence message) {
+        long hash = FNV_OFFSET;
+        char previous = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            if (c == previous) {
+                // 「ああああ」と「あ」を同じとみなす
+                continue;
+            }
+            previous = c;
+            hash ^= c;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,204 @@
+package net.enabify.activeChat.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分単位のチャット活動を保存する列指向のバイナリファイル
+ * 1日ごとに固定長のブロックを持ち、ブロック内は項目（列）ごとに1440分ぶんのintを並べる
+ * 位置は日付と分から計算できるため、範囲の読み取りは必要な日・列の区間だけを読む（全体を読み込まない）
+ *
+ * ファイル形式: [マジック 4byte][バージョン 2byte][項目数 2byte][最初の日（UTCのエポック日） 8byte][日ごとのブロック...]
+ * ブロック形式: [列0の1440分 4byte×1440][列1の1440分]...
+ * 書き込まれていない分（サーバー停止中など）は0として読める
+ */
+public class ActivityFile implements AutoCloseable {
+    public static final int MINUTES_PER_DAY = 1440;
+    
+    private static final int MAGIC = 0x41434143; // "ACAC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    
+    private final int columns;
+    private final int blockSize;
+    private final FileChannel channel;
+    // 読み取り・書き込みの排他制御（定期的な書き込みと集計コマンドが重ならないようにする）
+    private final ReentrantLock lock = new ReentrantLock();
+    // 1日分の1列を読み書きするバッファ（lockで保護）
+    private final ByteBuffer buffer = ByteBuffer.allocate(MINUTES_PER_DAY * Integer.BYTES);
+    // 最初の日（-1は未記録）
+    private long firstDay;
+    
+    /**
+     * @param columns 項目の数（既存ファイルと異なる場合は例外）
+     */
+    public ActivityFile(File file, int columns) throws IOException {
+        this.columns = columns;
+        this.blockSize = columns * MINUTES_PER_DAY * Integer.BYTES;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        this.channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            readHeader();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    private void readHeader() throws IOException {
+        if (channel.size() == 0) {
+            firstDay = -1;
+            writeHeader();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        int magic = header.getInt();
+        short version = header.getShort();
+        short storedColumns = header.getShort();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("活動記録ファイルの形式が不正です");
+        }
+        if (storedColumns != columns) {
+            // ブロックの長さが変わると読み取る位置を誤るため使わない
+            throw new IOException("活動記録ファイルの項目数が一致しません（ファイル: " + storedColumns + " / 現在: " + columns + "）");
+        }
+        firstDay = header.getLong();
+    }
+    
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) columns).putLong(firstDay).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+    
+    /**
+     * 1分ぶんの値を加算する（同じ分を2回書いても上書きせずに足す）
+     * 書き込んだ項目はvaluesを0に戻す（途中で失敗した場合は、残った項目だけを再試行すれば重複して加算しない）
+     * @param minute UTCのエポック分
+     * @param values 項目ごとの値
+     */
+    public void add(long minute, long[] values) throws IOException {
+        long day = Math.floorDiv(minute, MINUTES_PER_DAY);
+        lock.lock();
+        try {
+            if (firstDay < 0) {
+                firstDay = day;
+                writeHeader();
+            }
+            if (day < firstDay) {
+                // 最初の日より前（時計が戻った場合など）は記録しない
+                return;
+            }
+            ByteBuffer value = ByteBuffer.allocate(Integer.BYTES);
+            for (int column = 0; column < columns; column++) {
+                if (values[column] == 0) {
+                    continue;
+                }
+                long position = position(day, column, (int) Math.floorMod(minute, MINUTES_PER_DAY));
+                value.clear();
+                int current = channel.read(value, position) == Integer.BYTES ? value.getInt(0) : 0;
+                long sum = Math.min(Integer.MAX_VALUE, current + values[column]);
+                value.clear();
+                value.putInt((int) sum).flip();
+                while (value.hasRemaining()) {
+                    channel.write(value, position + value.position());
+                }
+                values[column] = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 範囲内の値を項目ごとに集計する（1日・1列ずつ読むため、範囲が長くても使用メモリは一定）
+     * @param fromMinute 開始（UTCのエポック分、含む）
+     * @param toMinute 終了（UTCのエポック分、含まない）
+     * @param bucketMinutes 集計の単位（分）
+     * @param buckets 集計先 [バケット][項目]。バケットはfromMinuteからbucketMinutesごと
+     */
+    public void sum(long fromMinute, long toMinute, int bucketMinutes, long[][] buckets) throws IOException {
+        lock.lock();
+        try {
+            if (firstDay < 0) {
+                return;
+            }
+            long from = Math.max(fromMinute, firstDay * MINUTES_PER_DAY);
+            long end = Math.min(toMinute, (lastDay() + 1) * MINUTES_PER_DAY);
+            while (from < end) {
+                long day = Math.floorDiv(from, MINUTES_PER_DAY);
+                int startOfDay = (int) Math.floorMod(from, MINUTES_PER_DAY);
+                int endOfDay = (int) Math.min(MINUTES_PER_DAY, end - day * MINUTES_PER_DAY);
+                for (int column = 0; column < columns; column++) {
+                    buffer.clear().limit((endOfDay - startOfDay) * Integer.BYTES);
+                    int read = readFully(buffer, position(day, column, startOfDay));
+                    for (int i = 0; i < read / Integer.BYTES; i++) {
+                        int value = buffer.getInt(i * Integer.BYTES);
+                        if (value != 0) {
+                            long minute = day * MINUTES_PER_DAY + startOfDay + i;
+                            buckets[(int) ((minute - fromMinute) / bucketMinutes)][column] += value;
+                        }
+                    }
+                }
+                from = (day + 1) * MINUTES_PER_DAY;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private long lastDay() throws IOException {
+        return firstDay + (channel.size() - HEADER_SIZE + blockSize - 1) / blockSize - 1;
+    }
+    
+    private long position(long day, int column, int minuteOfDay) {
+        return HEADER_SIZE + (day - firstDay) * blockSize + (long) column * MINUTES_PER_DAY * Integer.BYTES
+            + (long) minuteOfDay * Integer.BYTES;
+    }
+    
+    /**
+     * ファイルの終わりまでに読めた分だけ読む
+     * @return 読んだバイト数
+     */
+    private int readFully(ByteBuffer target, long position) throws IOException {
+        int total = 0;
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+    
+    /**
+     * ファイルサイズ（バイト）
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
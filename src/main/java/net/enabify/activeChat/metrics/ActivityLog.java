@@ -0,0 +1,226 @@
+package net.enabify.activeChat.metrics;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * チャット活動の分単位の集計（チャット数・ポイント対象のチャット数・挨拶・歓迎・新規さんの参加・ミュート）
+ *
+ * - 記録は直近24時間ぶんのリングバッファ（分 × 項目のint配列）への加算だけ（O(1)、オブジェクトを生成しない）
+ * - 終わった分は定期タスクでActivityFileに追記し、それより前の範囲はファイルから集計する
+ * - まだファイルに書いていない分はリングバッファから集計する
+ */
+public class ActivityLog {
+    public static final int CHATS = 0;
+    public static final int QUALIFYING_CHATS = 1;
+    public static final int GREETINGS = 2;
+    public static final int WELCOMES = 3;
+    public static final int NEW_PLAYER_JOINS = 4;
+    public static final int MUTES = 5;
+    public static final int COLUMNS = 6;
+    
+    // リングバッファの分数（24時間）
+    private static final int RING_MINUTES = ActivityFile.MINUTES_PER_DAY;
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // ファイルへの書き込みの間隔
+    private static final long FLUSH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    
+    private final Plugin plugin;
+    private final Clock clock;
+    private final ActivityFile file;
+    
+    // [分のスロット × 項目] の値
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(RING_MINUTES * COLUMNS);
+    // スロットが表している分（UTCのエポック分、-1は未使用）
+    private final AtomicLongArray slotMinutes = new AtomicLongArray(RING_MINUTES);
+    // ここより前の分はファイルに書き込み済み（flushだけが更新する）
+    private volatile long flushedMinute;
+    // 途中まで書き込んで失敗した分（-1はなし）と、書き込めなかった項目の値（flushで保護）
+    private long pendingMinute = -1;
+    private final long[] pending = new long[COLUMNS];
+    private ScheduledTask flushTask;
+    
+    /**
+     * @param file 保存先（nullの場合はリングバッファの24時間ぶんだけを保持する）
+     */
+    public ActivityLog(Plugin plugin, Clock clock, ActivityFile file) {
+        this.plugin = plugin;
+        this.clock = clock;
+        this.file = file;
+        for (int slot = 0; slot < RING_MINUTES; slot++) {
+            slotMinutes.set(slot, -1);
+        }
+        this.flushedMinute = currentMinute();
+    }
+    
+    /**
+     * 定期的な書き込みを開始する
+     */
+    public void start() {
+        flushTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> flush(false),
+            FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 定期的な書き込みを停止し、現在の分までを書き込む
+     */
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush(true);
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * チャットを1件記録する
+     */
+    public void recordChat(boolean qualifying, boolean greeting, boolean welcome) {
+        int base = slot(currentMinute()) * COLUMNS;
+        counts.getAndIncrement(base + CHATS);
+        if (qualifying) {
+            counts.getAndIncrement(base + QUALIFYING_CHATS);
+        }
+        if (greeting) {
+            counts.getAndIncrement(base + GREETINGS);
+        }
+        if (welcome) {
+            counts.getAndIncrement(base + WELCOMES);
+        }
+    }
+    
+    /**
+     * 項目を1件記録する
+     * @param column NEW_PLAYER_JOINS / MUTES など
+     */
+    public void record(int column) {
+        counts.getAndIncrement(slot(currentMinute()) * COLUMNS + column);
+    }
+    
+    private long currentMinute() {
+        return Math.floorDiv(clock.millis(), MINUTE_MILLIS);
+    }
+    
+    /**
+     * 分に対応するスロットを取得する
+     * スロットが24時間前の分のままであれば、最初に書き込むスレッドが0に戻してから使う
+     * （分の切り替わりの瞬間に同時に書き込まれた数件は失われることがある）
+     */
+    private int slot(long minute) {
+        int slot = (int) Math.floorMod(minute, RING_MINUTES);
+        long previous = slotMinutes.get(slot);
+        if (previous < minute && slotMinutes.compareAndSet(slot, previous, minute)) {
+            for (int column = 0; column < COLUMNS; column++) {
+                counts.set(slot * COLUMNS + column, 0);
+            }
+        }
+        return slot;
+    }
+    
+    /**
+     * 終わった分をファイルに書き込む
+     * @param includeCurrent 現在の分も書き込む（停止時）
+     */
+    private synchronized void flush(boolean includeCurrent) {
+        long now = currentMinute();
+        // 分が変わった直後に書き込まれる値を取りこぼさないよう、1分遅らせて書き込む
+        long until = includeCurrent ? now + 1 : now - 1;
+        long from = Math.max(flushedMinute, until - RING_MINUTES);
+        if (file != null) {
+            long[] values = new long[COLUMNS];
+            for (long minute = from; minute < until; minute++) {
+                long[] row;
+                if (minute == pendingMinute) {
+                    // 前回途中まで書き込んだ分は、書き込めなかった項目だけを書き込む
+                    row = pending;
+                } else if (read(minute, values)) {
+                    row = values;
+                } else {
+                    continue;
+                }
+                try {
+                    file.add(minute, row);
+                } catch (IOException e) {
+                    plugin.getLogger().warning("チャット活動を書き込めませんでした: " + e.getMessage());
+                    // 書き込めた分・項目は次回に重複して加算しないよう、書き込めなかった項目から再試行する
+                    // （addは書き込んだ項目を0に戻すため、残った値が書き込めなかった項目）
+                    if (row != pending) {
+                        System.arraycopy(row, 0, pending, 0, COLUMNS);
+                    }
+                    pendingMinute = minute;
+                    flushedMinute = minute;
+                    return;
+                }
+            }
+            pendingMinute = -1;
+        }
+        if (until > flushedMinute) {
+            flushedMinute = until;
+        }
+    }
+    
+    /**
+     * リングバッファから1分ぶんの値を読む
+     * @return 値がある場合はtrue
+     */
+    private boolean read(long minute, long[] values) {
+        int slot = (int) Math.floorMod(minute, RING_MINUTES);
+        if (slotMinutes.get(slot) != minute) {
+            return false;
+        }
+        boolean any = false;
+        for (int column = 0; column < COLUMNS; column++) {
+            values[column] = counts.get(slot * COLUMNS + column);
+            any |= values[column] != 0;
+        }
+        return any;
+    }
+    
+    /**
+     * 範囲を一定の単位で集計する（ファイルは必要な区間だけを読む）
+     * @param fromMinute 開始（UTCのエポック分、含む）
+     * @param toMinute 終了（UTCのエポック分、含まない）
+     * @param bucketMinutes 集計の単位（分）
+     * @return [バケット][項目] の合計
+     */
+    public long[][] query(long fromMinute, long toMinute, int bucketMinutes) throws IOException {
+        int bucketCount = (int) ((toMinute - fromMinute + bucketMinutes - 1) / bucketMinutes);
+        long[][] buckets = new long[Math.max(0, bucketCount)][COLUMNS];
+        // 書き込み済みの分はファイルから、それ以降はリングバッファから集計する
+        long flushed = flushedMinute;
+        if (file != null) {
+            file.sum(fromMinute, Math.min(toMinute, flushed), bucketMinutes, buckets);
+        }
+        long[] values = new long[COLUMNS];
+        long ringFrom = Math.max(file != null ? flushed : fromMinute, Math.max(fromMinute, currentMinute() - RING_MINUTES + 1));
+        for (long minute = ringFrom; minute < toMinute; minute++) {
+            if (read(minute, values)) {
+                long[] bucket = buckets[(int) ((minute - fromMinute) / bucketMinutes)];
+                for (int column = 0; column < COLUMNS; column++) {
+                    bucket[column] += values[column];
+                }
+            }
+        }
+        return buckets;
+    }
+    
+    /**
+     * 現在の分（UTCのエポック分）
+     */
+    public long getCurrentMinute() {
+        return currentMinute();
+    }
+}
@@ -0,0 +1,94 @@
+package net.enabify.activeChat.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * チャット1件の判定（Java Flight Recorderのイベント）
+ * イベントの時間が判定にかかった時間（スパム検知・ポイント判定・キューへの追加を含む）
+ * 記録していない場合はstartがnullを返し、オブジェクトを作らない
+ * 既定では1ms以上かかった判定だけを記録する（activechat.jfcでは全件）
+ */
+@Name("net.enabify.activeChat.ChatScored")
+@Label("Chat Scored")
+@Category("ActiveChat")
+@Description("ActiveChatがチャット1件を判定した時間と結果")
+@StackTrace(false)
+@Threshold("1 ms")
+public class ChatScoredEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(ChatScoredEvent.class);
+    
+    @Label("Player")
+    private String player;
+    
+    @Label("Message Length")
+    @Description("メッセージの文字数（平文を取り出さずに判定を省略した場合は-1）")
+    private int messageLength;
+    
+    @Label("Categories")
+    @Description("ポイントを獲得した項目（空白区切り）")
+    private String categories;
+    
+    @Label("Points")
+    private int points;
+    
+    @Label("Prefiltered")
+    @Description("負荷軽減モードの事前判定で判定を省略したかどうか")
+    private boolean prefiltered;
+    
+    @Label("Shedding")
+    @Description("負荷軽減モード中だったかどうか")
+    private boolean shedding;
+    
+    /**
+     * 記録中でこのイベントが有効な場合だけ、計測を開始したイベントを返す
+     * @return イベント（記録していない場合はnull）
+     */
+    public static ChatScoredEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        ChatScoredEvent event = new ChatScoredEvent();
+        event.begin();
+        return event;
+    }
+    
+    /**
+     * 計測を終了し、閾値以上かかった場合だけ記録する（項目名の文字列は記録する場合だけ作る）
+     * @param messageLength メッセージの文字数（平文を取り出していない場合は-1）
+     */
+    public void finish(String player, int messageLength, int normalPoints, int greetingPoints, int welcomePoints,
+                       boolean prefiltered, boolean shedding) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.player = player;
+        this.messageLength = messageLength;
+        this.points = normalPoints + greetingPoints + welcomePoints;
+        this.categories = categories(normalPoints, greetingPoints, welcomePoints);
+        this.prefiltered = prefiltered;
+        this.shedding = shedding;
+        commit();
+    }
+    
+    private static String categories(int normalPoints, int greetingPoints, int welcomePoints) {
+        StringBuilder builder = new StringBuilder();
+        if (normalPoints > 0) {
+            builder.append("normal_chat");
+        }
+        if (greetingPoints > 0) {
+            builder.append(builder.isEmpty() ? "" : " ").append("greeting");
+        }
+        if (welcomePoints > 0) {
+            builder.append(builder.isEmpty() ? "" : " ").append("welcome_new_player");
+        }
+        return builder.toString();
+    }
+}
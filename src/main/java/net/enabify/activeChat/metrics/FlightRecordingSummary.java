@@ -0,0 +1,254 @@
+package net.enabify.activeChat.metrics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Java Flight Recorderの記録ファイル（.jfr）からActiveChatのイベントを集計する（サーバーを止めた後やサーバーの外で実行する）
+ * - イベントごとの件数と時間の分布
+ * - 時間がかかったチャットの判定・保存・付与
+ * - ActiveChatの処理時間が長かった1秒間と、同じ1秒間のGCの停止時間（ActiveChatと他の原因の切り分け用）
+ *
+ * 例: java -cp <ActiveChatのjarファイル> net.enabify.activeChat.metrics.FlightRecordingSummary activechat.jfr [表示する件数]
+ * JDK以外のライブラリを使わないため、プラグインのjarだけで実行できる
+ */
+public final class FlightRecordingSummary {
+    private static final String PREFIX = "net.enabify.activeChat.";
+    private static final String CHAT_SCORED = PREFIX + "ChatScored";
+    private static final String POINTS_SAVED = PREFIX + "PointsSaved";
+    private static final String REWARD_PAID = PREFIX + "RewardPaid";
+    private static final String SPAM_MUTED = PREFIX + "SpamMuted";
+    private static final String GARBAGE_COLLECTION = "jdk.GarbageCollection";
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+        .withZone(ZoneId.systemDefault());
+    
+    private final int limit;
+    private final Map<String, Durations> durations = new HashMap<>();
+    private final List<RecordedEvent> slowChats = new ArrayList<>();
+    private final List<RecordedEvent> slowSaves = new ArrayList<>();
+    private final List<RecordedEvent> rewards = new ArrayList<>();
+    private final Map<String, Integer> mutes = new TreeMap<>();
+    // 1秒ごとの集計（エポック秒 → 集計）
+    private final Map<Long, Second> seconds = new HashMap<>();
+    
+    private long prefiltered;
+    private long rewardFailures;
+    private long rewardPoints;
+    private long savedRecords;
+    private long savedBytes;
+    private long gcEvents;
+    
+    private FlightRecordingSummary(int limit) {
+        this.limit = limit;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("使い方: FlightRecordingSummary <記録ファイル.jfr> [表示する件数]");
+            System.exit(2);
+        }
+        Path path = Path.of(args[0]);
+        if (!Files.isRegularFile(path)) {
+            System.err.println("記録ファイルが見つかりません: " + path);
+            System.exit(2);
+        }
+        FlightRecordingSummary summary = new FlightRecordingSummary(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+        try (RecordingFile file = new RecordingFile(path)) {
+            while (file.hasMoreEvents()) {
+                summary.accept(file.readEvent());
+            }
+        }
+        summary.print();
+    }
+    
+    private void accept(RecordedEvent event) {
+        String name = event.getEventType().getName();
+        if (name.equals(GARBAGE_COLLECTION)) {
+            // GCの停止時間（GC自体の時間ではなく、アプリケーションが止まった時間）
+            gcEvents++;
+            second(event.getStartTime()).gcPauseNanos += event.getDuration("sumOfPauses").toNanos();
+            return;
+        }
+        if (!name.startsWith(PREFIX)) {
+            return;
+        }
+        long nanos = event.getDuration().toNanos();
+        durations.computeIfAbsent(name, key -> new Durations()).add(nanos);
+        switch (name) {
+            case CHAT_SCORED -> {
+                Second second = second(event.getStartTime());
+                second.chats++;
+                second.chatNanos += nanos;
+                if (event.getBoolean("prefiltered")) {
+                    prefiltered++;
+                }
+                keepSlowest(slowChats, event);
+            }
+            case POINTS_SAVED -> {
+                second(event.getStartTime()).saveNanos += nanos;
+                savedRecords += event.getInt("records");
+                savedBytes += event.getLong("bytes");
+                keepSlowest(slowSaves, event);
+            }
+            case REWARD_PAID -> {
+                if (!event.getBoolean("succeeded")) {
+                    rewardFailures++;
+                }
+                rewardPoints += event.getLong("points");
+                keepSlowest(rewards, event);
+            }
+            case SPAM_MUTED -> mutes.merge(event.getString("player"), 1, Integer::sum);
+            default -> {
+                // 新しいイベントは件数と時間だけ集計する
+            }
+        }
+    }
+    
+    private Second second(Instant time) {
+        return seconds.computeIfAbsent(time.getEpochSecond(), key -> new Second());
+    }
+    
+    /**
+     * 時間が長い順にlimit件まで残す
+     */
+    private void keepSlowest(List<RecordedEvent> slowest, RecordedEvent event) {
+        if (slowest.size() < limit) {
+            slowest.add(event);
+            return;
+        }
+        int shortest = 0;
+        for (int i = 1; i < slowest.size(); i++) {
+            if (slowest.get(i).getDuration().compareTo(slowest.get(shortest).getDuration()) < 0) {
+                shortest = i;
+            }
+        }
+        if (event.getDuration().compareTo(slowest.get(shortest).getDuration()) > 0) {
+            slowest.set(shortest, event);
+        }
+    }
+    
+    private void print() {
+        if (durations.isEmpty()) {
+            System.out.println("ActiveChatのイベントが記録されていません（activechat.jfcを指定して記録してください）");
+            return;
+        }
+        System.out.println("== イベント ==");
+        System.out.printf("  %-12s %10s %12s %12s %12s %12s%n", "イベント", "件数", "合計(ms)", "中央値(µs)", "99%(µs)", "最大(µs)");
+        for (String name : List.of(CHAT_SCORED, POINTS_SAVED, REWARD_PAID, SPAM_MUTED)) {
+            Durations d = durations.get(name);
+            if (d != null) {
+                System.out.printf("  %-12s %10d %12.1f %12.1f %12.1f %12.1f%n", name.substring(PREFIX.length()), d.count,
+                    d.total / 1e6, d.percentile(0.5) / 1e3, d.percentile(0.99) / 1e3, d.percentile(1.0) / 1e3);
+            }
+        }
+        
+        if (durations.containsKey(CHAT_SCORED)) {
+            System.out.printf("%n== 時間がかかったチャットの判定（事前判定で省略 %d件）==%n", prefiltered);
+            for (RecordedEvent event : sorted(slowChats)) {
+                System.out.printf("  %s %10.1fµs %-16s %4d文字 %s%s%n", TIME.format(event.getStartTime()),
+                    event.getDuration().toNanos() / 1e3, event.getString("player"), event.getInt("messageLength"),
+                    event.getString("categories"), event.getBoolean("shedding") ? " [負荷軽減モード]" : "");
+            }
+        }
+        if (durations.containsKey(POINTS_SAVED)) {
+            System.out.printf("%n== 時間がかかった保存（合計 %d件 / %dバイト）==%n", savedRecords, savedBytes);
+            for (RecordedEvent event : sorted(slowSaves)) {
+                System.out.printf("  %s %10.1fms %6d件 %10dバイト%s%n", TIME.format(event.getStartTime()),
+                    event.getDuration().toNanos() / 1e6, event.getInt("records"), event.getLong("bytes"),
+                    event.getBoolean("fullSave") ? " [全体]" : "");
+            }
+        }
+        if (durations.containsKey(REWARD_PAID)) {
+            System.out.printf("%n== 時間がかかった付与（合計 %dポイント / 失敗 %d件）==%n", rewardPoints, rewardFailures);
+            for (RecordedEvent event : sorted(rewards)) {
+                System.out.printf("  %s %10.1fms %-16s %6dポイント%s%n", TIME.format(event.getStartTime()),
+                    event.getDuration().toNanos() / 1e6, event.getString("player"), event.getLong("points"),
+                    event.getBoolean("succeeded") ? "" : " [失敗]");
+            }
+        }
+        if (!mutes.isEmpty()) {
+            System.out.println();
+            System.out.println("== ミュートしたプレイヤー ==");
+            mutes.forEach((player, count) -> System.out.printf("  %-16s %d回%n", player, count));
+        }
+        
+        System.out.println();
+        System.out.println("== ActiveChatの処理時間が長かった1秒間 ==");
+        if (gcEvents == 0) {
+            System.out.println("  （GCのイベントが無いため、GCの停止時間は表示しません。settings=defaultと組み合わせて記録してください）");
+        }
+        System.out.printf("  %-19s %8s %12s %12s %12s%n", "時刻", "チャット", "判定(ms)", "保存(ms)", "GC停止(ms)");
+        seconds.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<Long, Second> entry) -> entry.getValue().activeChatNanos()).reversed())
+            .limit(limit)
+            .forEach(entry -> {
+                Second second = entry.getValue();
+                System.out.printf("  %-19s %8d %12.2f %12.2f %12.2f%n",
+                    TIME.format(Instant.ofEpochSecond(entry.getKey())).substring(0, 19), second.chats,
+                    second.chatNanos / 1e6, second.saveNanos / 1e6, second.gcPauseNanos / 1e6);
+            });
+    }
+    
+    private static List<RecordedEvent> sorted(List<RecordedEvent> events) {
+        List<RecordedEvent> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparing(RecordedEvent::getDuration, Comparator.<Duration>reverseOrder()));
+        return sorted;
+    }
+    
+    /**
+     * イベントの時間（ナノ秒）の一覧
+     */
+    private static final class Durations {
+        private long[] values = new long[1024];
+        private int count;
+        private long total;
+        private boolean sorted;
+        
+        void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+            total += nanos;
+            sorted = false;
+        }
+        
+        long percentile(double p) {
+            if (!sorted) {
+                Arrays.sort(values, 0, count);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(p * count) - 1;
+            return values[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+    
+    /**
+     * 1秒間の集計
+     */
+    private static final class Second {
+        long chats;
+        long chatNanos;
+        long saveNanos;
+        long gcPauseNanos;
+        
+        long activeChatNanos() {
+            return chatNanos + saveNanos;
+        }
+    }
+}
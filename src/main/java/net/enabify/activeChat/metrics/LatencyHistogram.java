@@ -0,0 +1,95 @@
+package net.enabify.activeChat.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間のヒストグラム
+ * 区切りは固定のため、記録時にオブジェクトを作らない（チャットのスレッドから呼び出せる）
+ */
+public class LatencyHistogram {
+    // 各区間の上限（ナノ秒）。最後の区間より長いものは+Infに数える
+    private static final long[] BOUNDS = {
+        1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+        1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000, 100_000_000,
+        250_000_000, 500_000_000, 1_000_000_000, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+    
+    // 区間ごとの件数（累積ではない。最後の要素は+Inf）
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    /**
+     * 処理時間を記録する
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && nanos > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // 他のスレッドが更新した場合は再試行
+        }
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+    
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+    
+    /**
+     * 指定した割合の記録が収まる区間の上限を返す（区間単位のおおよその値）
+     * @param quantile 0.0〜1.0（例: 0.99）
+     * @return ナノ秒（記録が無い場合は0、+Infの区間に入る場合は最大値）
+     */
+    public long getPercentileNanos(double quantile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return BOUNDS[i];
+            }
+        }
+        return maxNanos.get();
+    }
+    
+    /**
+     * Prometheusのテキスト形式（histogram、単位は秒）で書き出す
+     */
+    void writePrometheus(StringBuilder out, String name, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            cumulative += buckets.get(i);
+            out.append(name).append("_bucket{le=\"").append(seconds(BOUNDS[i])).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        cumulative += buckets.get(BOUNDS.length);
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(seconds(sumNanos.get())).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+    
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
@@ -0,0 +1,166 @@
+package net.enabify.activeChat.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * プラグインの動作状況の計測値
+ * カウンターとヒストグラムの記録はオブジェクトを作らないため、チャットのスレッドから呼び出せる
+ * 他のクラスが既に数えている値（保存回数・保持数など）は読み取り関数として登録する
+ */
+public class PluginMetrics {
+    private static final String PREFIX = "activechat_";
+    
+    // 判定したチャットの件数
+    private final LongAdder chatsEvaluated = new LongAdder();
+    // 項目ごとの獲得ポイント
+    private final LongAdder normalChatPoints = new LongAdder();
+    private final LongAdder greetingPoints = new LongAdder();
+    private final LongAdder welcomeNewPlayerPoints = new LongAdder();
+    // スパム検知によるミュートの回数
+    private final LongAdder spamMutes = new LongAdder();
+    
+    private final LatencyHistogram chatLatency = new LatencyHistogram();
+    private final LatencyHistogram saveLatency = new LatencyHistogram();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+    
+    // 他のクラスから読み取る値
+    private final List<Sample> samples = new ArrayList<>();
+    
+    private record Sample(String name, String help, String type, LongSupplier value) {}
+    
+    /**
+     * チャット1件の判定結果を記録する
+     * @param nanos 判定にかかった時間（ナノ秒）
+     */
+    public void recordChat(int normalPoints, int greetingPoints, int welcomePoints, long nanos) {
+        chatsEvaluated.increment();
+        if (normalPoints > 0) {
+            normalChatPoints.add(normalPoints);
+        }
+        if (greetingPoints > 0) {
+            this.greetingPoints.add(greetingPoints);
+        }
+        if (welcomePoints > 0) {
+            welcomeNewPlayerPoints.add(welcomePoints);
+        }
+        chatLatency.record(nanos);
+    }
+    
+    public void recordSpamMute() {
+        spamMutes.increment();
+    }
+    
+    /**
+     * 保存1回にかかった時間を記録する
+     */
+    public void recordSave(long nanos) {
+        saveLatency.record(nanos);
+    }
+    
+    /**
+     * 起動時の読み込みにかかった時間を記録する
+     */
+    public void recordLoad(long nanos) {
+        loadLatency.record(nanos);
+    }
+    
+    /**
+     * 他のクラスが数えている累計値を登録する（起動時のみ呼び出す）
+     */
+    public synchronized void addCounter(String name, String help, LongSupplier value) {
+        samples.add(new Sample(PREFIX + name, help, "counter", value));
+    }
+    
+    /**
+     * 現在の状態を表す値（保持数・待ち数など）を登録する（起動時のみ呼び出す）
+     */
+    public synchronized void addGauge(String name, String help, LongSupplier value) {
+        samples.add(new Sample(PREFIX + name, help, "gauge", value));
+    }
+    
+    public long getChatsEvaluated() {
+        return chatsEvaluated.sum();
+    }
+    
+    public long getNormalChatPoints() {
+        return normalChatPoints.sum();
+    }
+    
+    public long getGreetingPoints() {
+        return greetingPoints.sum();
+    }
+    
+    public long getWelcomeNewPlayerPoints() {
+        return welcomeNewPlayerPoints.sum();
+    }
+    
+    public long getSpamMutes() {
+        return spamMutes.sum();
+    }
+    
+    public LatencyHistogram getChatLatency() {
+        return chatLatency;
+    }
+    
+    public LatencyHistogram getSaveLatency() {
+        return saveLatency;
+    }
+    
+    public LatencyHistogram getLoadLatency() {
+        return loadLatency;
+    }
+    
+    /**
+     * 登録された値を説明と現在値の組で取得する（statsコマンド用、登録順）
+     */
+    public synchronized Map<String, Long> readSamples() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Sample sample : samples) {
+            values.put(sample.help(), sample.value().getAsLong());
+        }
+        return values;
+    }
+    
+    /**
+     * すべての値をPrometheusのテキスト形式で取得する
+     */
+    public synchronized String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        counter(out, "chats_evaluated_total", "判定したチャットの件数", chatsEvaluated.sum());
+        out.append("# HELP ").append(PREFIX).append("points_awarded_total 項目ごとの獲得ポイント\n");
+        out.append("# TYPE ").append(PREFIX).append("points_awarded_total counter\n");
+        awarded(out, "normal_chat", normalChatPoints.sum());
+        awarded(out, "greeting", greetingPoints.sum());
+        awarded(out, "welcome_new_player", welcomeNewPlayerPoints.sum());
+        counter(out, "spam_mutes_total", "スパム検知によるミュートの回数", spamMutes.sum());
+        chatLatency.writePrometheus(out, PREFIX + "chat_evaluation_seconds", "チャット1件の判定にかかった時間");
+        saveLatency.writePrometheus(out, PREFIX + "save_seconds", "保存1回にかかった時間");
+        loadLatency.writePrometheus(out, PREFIX + "load_seconds", "起動時の読み込みにかかった時間");
+        for (Sample sample : samples) {
+            out.append("# HELP ").append(sample.name()).append(' ').append(sample.help()).append('\n');
+            out.append("# TYPE ").append(sample.name()).append(' ').append(sample.type()).append('\n');
+            out.append(sample.name()).append(' ').append(sample.value().getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+    
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        sample(out, name, help, "counter", value);
+    }
+    
+    private static void sample(StringBuilder out, String name, String help, String type, long value) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void awarded(StringBuilder out, String category, long value) {
+        out.append(PREFIX).append("points_awarded_total{category=\"").append(category).append("\"} ")
+            .append(value).append('\n');
+    }
+}
@@ -0,0 +1,67 @@
+package net.enabify.activeChat.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * ポイントの保存1回（Java Flight Recorderのイベント）
+ * イベントの時間が保存先への書き込みにかかった時間
+ * 記録していない場合はstartがnullを返し、オブジェクトを作らない
+ * 既定では10ms以上かかった保存だけを記録する（activechat.jfcでは全件）
+ */
+@Name("net.enabify.activeChat.PointsSaved")
+@Label("Points Saved")
+@Category("ActiveChat")
+@Description("ActiveChatがポイントを保存した時間と大きさ")
+@StackTrace(false)
+@Threshold("10 ms")
+public class PointsSavedEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(PointsSavedEvent.class);
+    
+    @Label("Records")
+    @Description("書き込んだ変更の件数")
+    private int records;
+    
+    @Label("Bytes")
+    @Description("書き込んだバイト数（数えられない保存先では0）")
+    @DataAmount
+    private long bytes;
+    
+    @Label("Full Save")
+    @Description("変更の有無に関わらず全体を書き込んだかどうか")
+    private boolean fullSave;
+    
+    /**
+     * 記録中でこのイベントが有効な場合だけ、計測を開始したイベントを返す
+     * @return イベント（記録していない場合はnull）
+     */
+    public static PointsSavedEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        PointsSavedEvent event = new PointsSavedEvent();
+        event.begin();
+        return event;
+    }
+    
+    /**
+     * 計測を終了し、閾値以上かかった場合だけ記録する
+     */
+    public void finish(int records, long bytes, boolean fullSave) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.records = records;
+        this.bytes = bytes;
+        this.fullSave = fullSave;
+        commit();
+    }
+}
@@ -0,0 +1,74 @@
+package net.enabify.activeChat.metrics;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 計測値をPrometheusのテキスト形式でファイルに定期的に書き出す
+ * node_exporterのtextfileコレクターが途中まで書かれたファイルを読まないよう、一時ファイルから置き換える
+ */
+public class PrometheusExporter {
+    private final Plugin plugin;
+    private final PluginMetrics metrics;
+    private final File file;
+    private final File tempFile;
+    private final long intervalMillis;
+    private ScheduledTask exportTask;
+    
+    /**
+     * @param file 書き出し先（node_exporterのtextfileコレクターのディレクトリ内の *.prom）
+     * @param intervalMillis 書き出しの間隔（ミリ秒）
+     */
+    public PrometheusExporter(Plugin plugin, PluginMetrics metrics, File file, long intervalMillis) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.intervalMillis = Math.max(1000, intervalMillis);
+    }
+    
+    /**
+     * 定期的な書き出しを開始する
+     */
+    public void start() {
+        exportTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, scheduledTask -> export(),
+            intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 定期的な書き出しを停止し、最後の値を書き出す
+     */
+    public void stop() {
+        if (exportTask != null) {
+            exportTask.cancel();
+            exportTask = null;
+        }
+        export();
+    }
+    
+    private void export() {
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            Files.writeString(tempFile.toPath(), metrics.toPrometheus(), StandardCharsets.UTF_8);
+            try {
+                Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("計測値を書き出せませんでした: " + e.getMessage());
+        }
+    }
+}
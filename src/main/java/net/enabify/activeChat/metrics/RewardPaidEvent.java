@@ -0,0 +1,61 @@
+package net.enabify.activeChat.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 参加時のポイント付与1人分（Java Flight Recorderのイベント）
+ * イベントの時間が付与方法（コマンドや他のプラグイン）の呼び出しにかかった時間
+ * 記録していない場合はstartがnullを返し、オブジェクトを作らない
+ * 付与は参加ごとに1回のため、閾値は設けず全件を記録する
+ */
+@Name("net.enabify.activeChat.RewardPaid")
+@Label("Reward Paid")
+@Category("ActiveChat")
+@Description("ActiveChatが参加したプレイヤーにポイントを付与した時間と結果")
+@StackTrace(false)
+public class RewardPaidEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(RewardPaidEvent.class);
+    
+    @Label("Player")
+    private String player;
+    
+    @Label("Points")
+    private long points;
+    
+    @Label("Succeeded")
+    @Description("付与できたかどうか（失敗した場合は次回の参加時に再度付与する）")
+    private boolean succeeded;
+    
+    /**
+     * 記録中でこのイベントが有効な場合だけ、計測を開始したイベントを返す
+     * @return イベント（記録していない場合はnull）
+     */
+    public static RewardPaidEvent start() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        RewardPaidEvent event = new RewardPaidEvent();
+        event.begin();
+        return event;
+    }
+    
+    /**
+     * 計測を終了して記録する
+     */
+    public void finish(String player, long points, boolean succeeded) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.player = player;
+        this.points = points;
+        this.succeeded = succeeded;
+        commit();
+    }
+}
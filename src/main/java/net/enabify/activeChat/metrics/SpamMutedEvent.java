@@ -0,0 +1,47 @@
+package net.enabify.activeChat.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * スパム検知によるミュート（Java Flight Recorderのイベント）
+ * 時間を持たない出来事のため、閾値は設けず全件を記録する
+ * 記録していない場合はオブジェクトを作らない
+ */
+@Name("net.enabify.activeChat.SpamMuted")
+@Label("Spam Muted")
+@Category("ActiveChat")
+@Description("ActiveChatが連投を検知してプレイヤーをミュートした")
+@StackTrace(false)
+public class SpamMutedEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(SpamMutedEvent.class);
+    
+    @Label("Player")
+    private String player;
+    
+    @Label("Message Length")
+    private int messageLength;
+    
+    @Label("Shedding")
+    @Description("負荷軽減モード中だったかどうか")
+    private boolean shedding;
+    
+    /**
+     * 記録中でこのイベントが有効な場合だけ記録する
+     */
+    public static void emit(String player, int messageLength, boolean shedding) {
+        if (!TYPE.isEnabled()) {
+            return;
+        }
+        SpamMutedEvent event = new SpamMutedEvent();
+        event.player = player;
+        event.messageLength = messageLength;
+        event.shedding = shedding;
+        event.commit();
+    }
+}
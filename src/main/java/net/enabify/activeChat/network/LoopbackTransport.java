@@ -0,0 +1,56 @@
+package net.enabify.activeChat.network;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 同じプロセス内のNetworkJoinBus同士をつなぐ送受信方法（確認用ツール・再生用）
+ * 同じNetworkに参加している他のメンバーへ、送信したスレッドでそのまま届ける
+ */
+public class LoopbackTransport implements NetworkTransport {
+    /**
+     * 模擬ネットワーク（参加しているメンバー全員にメッセージが届く）
+     */
+    public static final class Network {
+        private final List<LoopbackTransport> members = new CopyOnWriteArrayList<>();
+        // 届けたメッセージの数（メンバーごとに1通と数える）
+        private final AtomicLong deliveries = new AtomicLong();
+        
+        public long getDeliveries() {
+            return deliveries.get();
+        }
+    }
+    
+    private final Network network;
+    private volatile Consumer<byte[]> receiver;
+    
+    public LoopbackTransport(Network network) {
+        this.network = network;
+    }
+    
+    @Override
+    public void open(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        network.members.add(this);
+    }
+    
+    @Override
+    public boolean send(byte[] message) {
+        for (LoopbackTransport member : network.members) {
+            Consumer<byte[]> target = member.receiver;
+            if (member != this && target != null) {
+                network.deliveries.incrementAndGet();
+                target.accept(message);
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public void close() {
+        network.members.remove(this);
+        receiver = null;
+    }
+}
@@ -0,0 +1,272 @@
+package net.enabify.activeChat.network;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.enabify.activeChat.manager.ExpiryWheel;
+import net.enabify.activeChat.manager.PointsManager;
+import org.bukkit.plugin.Plugin;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * サーバー間で参加・新規参加を共有するイベントバス
+ * ロビーで参加した新規さんを別のサーバーのプレイヤーが歓迎しても、ポイントの対象になるようにする
+ *
+ * - 参加はすぐには送らず、一定間隔でまとめて1通のメッセージにする（同じプレイヤーの参加は1件にまとめる）
+ *   参加が集中しても、送るメッセージは間隔ごとにサーバーあたり1通（サーバー数の2乗に増えない）
+ * - メッセージ形式: [バージョン 1byte][送信元 8byte][件数 2byte][種別 1byte][UUID 16byte]...
+ * - 受け取った参加は、参加した位置が分からないためサーバー全体（GLOBAL）の有効時間だけを始める
+ * - 同じプレイヤーの参加は一定時間に1回だけ数える（サーバーの移動を参加として数えない）
+ */
+public class NetworkJoinBus {
+    // 参加の種別（recordLocalJoinの戻り値とメッセージで使う）
+    public static final int JOIN = 1;
+    public static final int NEW_PLAYER = 2;
+    
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 11;
+    private static final int EVENT_BYTES = 17;
+    // 1通に入れる最大件数（プラグインメッセージの大きさの上限に収める）
+    private static final int MAX_EVENTS_PER_MESSAGE = 1000;
+    // 送れずに残しておく最大件数（運ぶプレイヤーがいない間に溜まる分）
+    private static final int MAX_UNSENT = 10000;
+    // まだ数えていない種別の時刻
+    private static final long NEVER = Long.MIN_VALUE;
+    
+    private final Plugin plugin;
+    private final NetworkTransport transport;
+    private final PointsManager pointsManager;
+    private final Clock clock;
+    private final ExpiryWheel expiry;
+    private final long dedupeMillis;
+    private final long batchIntervalMillis;
+    private final boolean detectNewPlayers;
+    // 送信元の識別子（自分が送ったメッセージを受け取った場合に無視する）
+    private final long origin = ThreadLocalRandom.current().nextLong();
+    
+    // プレイヤーごとの最後に数えた参加（dedupeMillisが過ぎるとexpiryで削除される）
+    private final Map<UUID, Seen> seen = new ConcurrentHashMap<>();
+    // 送信待ちの参加（参加したスレッドから追加する）
+    private final Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<>();
+    // まとめた送信待ち（flushの中だけで使う。送れなかった分は次回に残る）
+    private final Map<UUID, Outgoing> unsent = new LinkedHashMap<>();
+    private ScheduledTask flushTask;
+    
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong eventsSent = new AtomicLong();
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    
+    /**
+     * @param dedupeMillis 同じプレイヤーの参加を1回として数える時間（ミリ秒）
+     * @param batchIntervalMillis 参加をまとめて送る間隔（ミリ秒）
+     * @param detectNewPlayers このサーバーで新規プレイヤーを判定するかどうか（ネットワークで最初に入るロビーのみtrue）
+     */
+    public NetworkJoinBus(Plugin plugin, NetworkTransport transport, PointsManager pointsManager, Clock clock,
+                          ExpiryWheel expiry, long dedupeMillis, long batchIntervalMillis, boolean detectNewPlayers) {
+        this.plugin = plugin;
+        this.transport = transport;
+        this.pointsManager = pointsManager;
+        this.clock = clock;
+        this.expiry = expiry;
+        this.dedupeMillis = dedupeMillis;
+        this.batchIntervalMillis = Math.max(1, batchIntervalMillis);
+        this.detectNewPlayers = detectNewPlayers;
+    }
+    
+    /**
+     * 受信と、一定間隔でのまとめた送信を開始する
+     */
+    public void start() {
+        transport.open(this::receive);
+        flushTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> flush(),
+            batchIntervalMillis, batchIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 残っている参加を送ってから停止する
+     */
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+        transport.close();
+    }
+    
+    /**
+     * このサーバーで新規プレイヤーを判定するかどうか
+     * falseの場合、新規プレイヤーは他のサーバーから届いた新規参加だけで判定する
+     * （プレイヤーが初めて入ったサーバーかどうかは、ネットワークで初めてかどうかとは異なるため）
+     */
+    public boolean detectsNewPlayers() {
+        return detectNewPlayers;
+    }
+    
+    /**
+     * このサーバーでの参加を記録し、数えた参加を他のサーバーへ送る
+     * @param newPlayer このサーバーが新規プレイヤーと判定したかどうか
+     * @return 数えた参加の種別（JOIN / NEW_PLAYER の組み合わせ）。直近に別のサーバーで数えた参加（サーバーの移動）は含まない
+     */
+    public int recordLocalJoin(UUID uuid, boolean newPlayer) {
+        long now = clock.millis();
+        int counted = mark(uuid, JOIN | (newPlayer ? NEW_PLAYER : 0), now);
+        if (counted != 0) {
+            outgoing.add(new Outgoing(uuid, counted, now));
+        }
+        return counted;
+    }
+    
+    /**
+     * 参加を記録済みとして印を付ける
+     * @return まだ数えていなかった種別
+     */
+    private int mark(UUID uuid, int kinds, long now) {
+        int[] counted = new int[1];
+        seen.compute(uuid, (key, current) -> {
+            long joinTime = current != null ? current.joinTime() : NEVER;
+            long newPlayerTime = current != null ? current.newPlayerTime() : NEVER;
+            if ((kinds & JOIN) != 0 && (joinTime == NEVER || now - joinTime >= dedupeMillis)) {
+                joinTime = now;
+                counted[0] |= JOIN;
+            }
+            if ((kinds & NEW_PLAYER) != 0 && (newPlayerTime == NEVER || now - newPlayerTime >= dedupeMillis)) {
+                newPlayerTime = now;
+                counted[0] |= NEW_PLAYER;
+            }
+            if (counted[0] == 0) {
+                return current;
+            }
+            if (current != null) {
+                current.expiry().cancel();
+            }
+            // 取り消しが間に合わなかった古い期限で、新しい記録を消さないよう時刻を確かめてから削除する
+            return new Seen(joinTime, newPlayerTime, expiry.schedule(dedupeMillis, () ->
+                seen.computeIfPresent(key, (k, s) -> isExpired(s) ? null : s)));
+        });
+        return counted[0];
+    }
+    
+    private boolean isExpired(Seen record) {
+        return clock.millis() - Math.max(record.joinTime(), record.newPlayerTime()) >= dedupeMillis;
+    }
+    
+    /**
+     * 送信待ちの参加をまとめて送る（通常は一定間隔のタスクから呼ばれる）
+     */
+    public synchronized void flush() {
+        long now = clock.millis();
+        Outgoing event;
+        while ((event = outgoing.poll()) != null) {
+            // 同じプレイヤーの参加は1件にまとめる
+            Outgoing previous = unsent.remove(event.uuid());
+            unsent.put(event.uuid(), previous != null
+                ? new Outgoing(event.uuid(), previous.kinds() | event.kinds(), event.time()) : event);
+        }
+        Iterator<Outgoing> iterator = unsent.values().iterator();
+        while (iterator.hasNext()) {
+            Outgoing pending = iterator.next();
+            // 送れないまま有効時間を過ぎた参加や、上限を超えた古い参加は送らない
+            if (now - pending.time() >= dedupeMillis || unsent.size() > MAX_UNSENT) {
+                iterator.remove();
+            }
+        }
+        while (!unsent.isEmpty()) {
+            int count = Math.min(unsent.size(), MAX_EVENTS_PER_MESSAGE);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * EVENT_BYTES);
+            buffer.put(VERSION).putLong(origin).putShort((short) count);
+            iterator = unsent.values().iterator();
+            for (int i = 0; i < count; i++) {
+                Outgoing pending = iterator.next();
+                buffer.put((byte) pending.kinds())
+                    .putLong(pending.uuid().getMostSignificantBits())
+                    .putLong(pending.uuid().getLeastSignificantBits());
+            }
+            if (!transport.send(buffer.array())) {
+                // 運ぶプレイヤーがいない。次回にもう一度送る
+                return;
+            }
+            iterator = unsent.values().iterator();
+            for (int i = 0; i < count; i++) {
+                iterator.next();
+                iterator.remove();
+            }
+            messagesSent.incrementAndGet();
+            eventsSent.addAndGet(count);
+        }
+    }
+    
+    /**
+     * 他のサーバーから届いたメッセージを処理する
+     * 参加した位置は分からないため、サーバー全体の有効時間を始める
+     */
+    void receive(byte[] message) {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        try {
+            if (buffer.get() != VERSION || buffer.getLong() == origin) {
+                return;
+            }
+            int count = buffer.getShort() & 0xFFFF;
+            long now = clock.millis();
+            for (int i = 0; i < count; i++) {
+                int kinds = buffer.get() & (JOIN | NEW_PLAYER);
+                UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                eventsReceived.incrementAndGet();
+                int counted = mark(uuid, kinds, now);
+                if (counted != kinds) {
+                    duplicates.incrementAndGet();
+                }
+                if ((counted & NEW_PLAYER) != 0) {
+                    pointsManager.recordNewPlayerJoin();
+                }
+                if ((counted & JOIN) != 0) {
+                    pointsManager.recordPlayerJoin();
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            plugin.getLogger().warning("サーバー間の参加の通知の形式が不正です（" + message.length + "byte）");
+        }
+    }
+    
+    /**
+     * 参加を記録しているプレイヤーの数
+     */
+    public int getSeenCount() {
+        return seen.size();
+    }
+    
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+    
+    public long getEventsSent() {
+        return eventsSent.get();
+    }
+    
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+    
+    /**
+     * 既に数えた参加のため無視した件数（サーバーの移動や、複数のサーバーからの同じ通知）
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+    
+    private record Seen(long joinTime, long newPlayerTime, ExpiryWheel.Entry expiry) {}
+    
+    private record Outgoing(UUID uuid, int kinds, long time) {}
+}
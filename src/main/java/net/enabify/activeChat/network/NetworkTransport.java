@@ -0,0 +1,26 @@
+package net.enabify.activeChat.network;
+
+import java.util.function.Consumer;
+
+/**
+ * NetworkJoinBusのメッセージをサーバー間で送受信する方法
+ * メッセージの中身（参加のまとまり）はNetworkJoinBusが作るため、送受信する方法はバイト列だけを扱う
+ */
+public interface NetworkTransport {
+    /**
+     * 受信を開始する
+     * @param receiver 他のサーバーから届いたメッセージの処理（受信したスレッドで呼び出される）
+     */
+    void open(Consumer<byte[]> receiver);
+    
+    /**
+     * 他のすべてのサーバーへメッセージを送る
+     * @return 今は送れない場合（メッセージを運ぶプレイヤーがいないなど）はfalse。次回にもう一度送る
+     */
+    boolean send(byte[] message);
+    
+    /**
+     * 送受信を終了する
+     */
+    void close();
+}
@@ -0,0 +1,95 @@
+package net.enabify.activeChat.network;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * プロキシ（BungeeCord / Velocity）のプラグインメッセージでサーバー間の送受信を行う
+ * BungeeCordチャンネルのForwardで、プロキシにつながる他のすべてのサーバーへ届ける
+ * （Velocityの場合は bungee-plugin-message-channel: true が必要）
+ *
+ * プラグインメッセージはプレイヤーの接続に乗せて送るため、オンラインのプレイヤーがいない間は送れない
+ * 受信側のサーバーにもプレイヤーがいない場合、そのサーバーには届かない（プロキシが破棄する）
+ */
+public class PluginMessageTransport implements NetworkTransport, PluginMessageListener {
+    private static final String CHANNEL = "BungeeCord";
+    // Forwardで使うサブチャンネル名（他のプラグインのメッセージと区別する）
+    private static final String SUBCHANNEL = "ActiveChatJoin";
+    
+    private final Plugin plugin;
+    private volatile Consumer<byte[]> receiver;
+    
+    public PluginMessageTransport(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public void open(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+        plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+    }
+    
+    @Override
+    public boolean send(byte[] message) {
+        Player carrier = null;
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            carrier = player;
+            break;
+        }
+        if (carrier == null) {
+            return false;
+        }
+        byte[] data;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length + 32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF("Forward");
+            out.writeUTF("ALL");
+            out.writeUTF(SUBCHANNEL);
+            out.writeShort(message.length);
+            out.write(message);
+            data = bytes.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return true;
+        }
+        // Foliaではプレイヤーの接続はそのプレイヤーのリージョンスレッドから使う
+        Player target = carrier;
+        return target.getScheduler().run(plugin, task -> target.sendPluginMessage(plugin, CHANNEL, data), null) != null;
+    }
+    
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        Consumer<byte[]> target = receiver;
+        if (!CHANNEL.equals(channel) || target == null) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            if (!SUBCHANNEL.equals(in.readUTF())) {
+                return;
+            }
+            byte[] payload = new byte[in.readUnsignedShort()];
+            in.readFully(payload);
+            target.accept(payload);
+        } catch (IOException e) {
+            plugin.getLogger().warning("サーバー間の参加の通知を読み取れませんでした: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void close() {
+        receiver = null;
+        plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin);
+        plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin);
+    }
+}
@@ -0,0 +1,84 @@
+package net.enabify.activeChat.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * メモリマップドストアのファイルの作り直しの確認
+ * マップ中のファイルを置き換えず、世代番号を付けた新しいファイルへ切り替える
+ */
+class MappedPointsStoreTest {
+    private static final int PLAYERS = 100;
+    
+    @TempDir
+    File dataFolder;
+    
+    /**
+     * 拡張のたびに次の世代へ切り替え、古い世代を消す。再度開くと最新の世代を読む
+     */
+    @Test
+    void growSwitchesToNextGeneration() throws IOException {
+        File file = new File(dataFolder, "playerPoints.dat");
+        MappedPointsStore store = new MappedPointsStore(file, 16);
+        for (int i = 0; i < PLAYERS; i++) {
+            store.add(player(i), PointsStore.NORMAL_CHAT, i + 1);
+        }
+        store.close();
+        
+        String[] names = dataFolder.list();
+        assertEquals(1, names.length, "残っているファイル");
+        assertTrue(names[0].startsWith("playerPoints.dat."), "最新の世代: " + names[0]);
+        
+        MappedPointsStore reopened = new MappedPointsStore(file, 16);
+        try {
+            assertEquals(PLAYERS, reopened.size());
+            for (int i = 0; i < PLAYERS; i++) {
+                assertEquals(i + 1, reopened.get(player(i)).getNormalChat());
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    /**
+     * 作り直しの途中で止まった（マジックを書き込んでいない）世代は使わずに消す
+     */
+    @Test
+    void unfinishedGenerationIsIgnored() throws IOException {
+        File file = new File(dataFolder, "playerPoints.dat");
+        MappedPointsStore store = new MappedPointsStore(file, 16);
+        store.add(player(1), PointsStore.GREETING, 7);
+        store.close();
+        
+        File unfinished = new File(dataFolder, "playerPoints.dat.1");
+        try (RandomAccessFile raf = new RandomAccessFile(unfinished, "rw")) {
+            raf.setLength(file.length() * 2);
+        }
+        
+        MappedPointsStore reopened = new MappedPointsStore(file, 16);
+        try {
+            assertEquals(7, reopened.get(player(1)).getGreeting());
+            assertFalse(unfinished.exists(), "作りかけの世代");
+            // 次の拡張は消した世代の番号を使い直す
+            for (int i = 0; i < PLAYERS; i++) {
+                reopened.add(player(i), PointsStore.NORMAL_CHAT, 1);
+            }
+            assertEquals(7, reopened.get(player(1)).getGreeting());
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    private static UUID player(int i) {
+        return new UUID(0x4143L, i);
+    }
+}
@@ -0,0 +1,79 @@
+package net.enabify.activeChat.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 複数のサーバーのplayerPoints.jsonを同じ保存先へ取り込む場合の確認
+ * 2台目以降のサーバーのファイルも取り込まれ、同じファイルは2回取り込まれない
+ */
+class PointsImportTest {
+    private static final UUID SHARED = new UUID(0x4143L, 1);
+    private static final UUID ONLY_B = new UUID(0x4143L, 2);
+    
+    @TempDir
+    File root;
+    
+    @Test
+    void importsEveryServerIntoNonEmptyStore() throws Exception {
+        File serverA = writeJson("a", SHARED, 10);
+        File serverB = writeJson("b", SHARED, 5);
+        writeJson("b", ONLY_B, 7);
+        
+        PointsStore shared = new JournalPointsStore(new PointsJournal(new File(root, "shared"), 1048576));
+        try {
+            assertTrue(JsonPointsStore.importInto(serverA, shared), "1台目");
+            assertFalse(shared.isEmpty());
+            assertTrue(JsonPointsStore.importInto(serverB, shared), "取り込み先が空でない2台目");
+            
+            assertEquals(15, shared.get(SHARED).getNormalChat());
+            assertEquals(7, shared.get(ONLY_B).getNormalChat());
+            
+            // 取り込み済みのファイルは名前を変えるため、再起動しても2回取り込まない
+            assertFalse(JsonPointsStore.importInto(serverA, shared), "取り込み済み");
+            assertTrue(new File(serverA, "playerPoints.json.imported").exists());
+            assertEquals(15, shared.get(SHARED).getNormalChat());
+        } finally {
+            shared.close();
+        }
+    }
+    
+    @Test
+    void keepsEarlierImportedFile() throws Exception {
+        File server = writeJson("a", SHARED, 1);
+        PointsStore store = new JournalPointsStore(new PointsJournal(new File(root, "shared"), 1048576));
+        try {
+            JsonPointsStore.importInto(server, store);
+            writeJson("a", SHARED, 2);
+            JsonPointsStore.importInto(server, store);
+            
+            assertTrue(new File(server, "playerPoints.json.imported").exists());
+            assertTrue(new File(server, "playerPoints.json.imported.1").exists());
+            assertEquals(3, store.get(SHARED).getNormalChat());
+        } finally {
+            store.close();
+        }
+    }
+    
+    /**
+     * サーバーのフォルダのplayerPoints.jsonにポイントを加算して保存する
+     */
+    private File writeJson(String server, UUID uuid, int points) throws Exception {
+        File folder = new File(root, server);
+        JsonPointsStore store = new JsonPointsStore(folder, false);
+        try {
+            store.add(uuid, PointsStore.NORMAL_CHAT, points);
+            store.save();
+        } finally {
+            store.close();
+        }
+        return folder;
+    }
+}
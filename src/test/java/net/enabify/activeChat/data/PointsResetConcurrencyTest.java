@@ -0,0 +1,177 @@
+package net.enabify.activeChat.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 加算と取得リセットを同時に行っても、ポイントが失われず2重にも数えられないことの確認
+ * 加算したポイントの合計 = 取得リセットで取り出した合計 + 最後に残っている合計 になる
+ */
+class PointsResetConcurrencyTest {
+    private static final int WRITERS = 6;
+    private static final int PLAYERS = 16;
+    // 項目ごとに加算するポイント（項目の取り違えも分かるように変える）
+    private static final int[] STEP = {1, 2, 3};
+    
+    @TempDir
+    File dataFolder;
+    
+    @Test
+    void playerPointsKeepsEveryPointAcrossReset() throws Exception {
+        int adds = 500_000;
+        PlayerPoints points = new PlayerPoints();
+        long[] claimed = new long[3];
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < adds; i++) {
+                        points.addNormalChat(STEP[0]);
+                        points.addGreeting(STEP[1]);
+                        points.addWelcomeNewPlayer(STEP[2]);
+                    }
+                }));
+            }
+            Future<?> resetter = executor.submit(() -> {
+                while (writing.get()) {
+                    addTo(claimed, points.getAndReset());
+                }
+            });
+            await(writers);
+            writing.set(false);
+            resetter.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        addTo(claimed, points.getAndReset());
+        
+        for (int category = 0; category < 3; category++) {
+            assertEquals((long) WRITERS * adds * STEP[category], claimed[category], "項目 " + category);
+        }
+    }
+    
+    @Test
+    void jsonStoreKeepsEveryPointAcrossReset() throws Exception {
+        assertNoLostPoints(new JsonPointsStore(dataFolder, false));
+    }
+    
+    @Test
+    void journalStoreKeepsEveryPointAcrossReset() throws Exception {
+        // 圧縮も途中で起きるよう、閾値を小さくする
+        long[] remaining = assertNoLostPoints(new JournalPointsStore(new PointsJournal(dataFolder, 64 * 1024)));
+        
+        // リセットは差分として記録されるため、再生しても残りのポイントだけが戻る
+        PointsStore reopened = new JournalPointsStore(new PointsJournal(dataFolder, 64 * 1024));
+        try {
+            assertEquals3(remaining, sum(reopened), "再生後の残り");
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    void mappedStoreKeepsEveryPointAcrossReset() throws Exception {
+        assertNoLostPoints(new MappedPointsStore(new File(dataFolder, "playerPoints.dat"), PLAYERS * 2));
+    }
+    
+    /**
+     * 加算（WRITERSスレッド）、参加時の取得リセット（1スレッド）、保存（1スレッド）を同時に実行する
+     * @return 最後に残っているポイントの項目ごとの合計
+     */
+    private long[] assertNoLostPoints(PointsStore store) throws Exception {
+        int adds = 50_000;
+        PlayerDataManager dataManager = new PlayerDataManager(store);
+        long[] claimed = new long[3];
+        long[] remaining;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < adds; i++) {
+                        UUID uuid = player((writer + i) % PLAYERS);
+                        dataManager.addNormalChatPoints(uuid, STEP[0]);
+                        dataManager.addGreetingPoints(uuid, STEP[1]);
+                        dataManager.addWelcomeNewPlayerPoints(uuid, STEP[2]);
+                    }
+                }));
+            }
+            Future<?> resetter = executor.submit(() -> {
+                int player = 0;
+                while (writing.get()) {
+                    addTo(claimed, dataManager.getAndResetPoints(player(player++ % PLAYERS)));
+                }
+            });
+            Future<?> saver = executor.submit(() -> {
+                while (writing.get()) {
+                    dataManager.flush();
+                }
+            });
+            await(writers);
+            writing.set(false);
+            resetter.get();
+            saver.get();
+            dataManager.flush();
+            remaining = sum(store);
+        } finally {
+            executor.shutdownNow();
+            dataManager.close();
+        }
+        
+        long[] total = new long[3];
+        for (int category = 0; category < 3; category++) {
+            total[category] = claimed[category] + remaining[category];
+        }
+        long[] expected = new long[3];
+        for (int category = 0; category < 3; category++) {
+            expected[category] = (long) WRITERS * adds * STEP[category];
+        }
+        assertEquals3(expected, total, "取り出した合計 + 残り");
+        return remaining;
+    }
+    
+    private static UUID player(int index) {
+        return new UUID(0x4143L, index);
+    }
+    
+    private static long[] sum(PointsStore store) {
+        long[] total = new long[3];
+        for (int i = 0; i < PLAYERS; i++) {
+            addTo(total, store.get(player(i)));
+        }
+        return total;
+    }
+    
+    private static void addTo(long[] total, PlayerPoints points) {
+        total[0] += points.getNormalChat();
+        total[1] += points.getGreeting();
+        total[2] += points.getWelcomeNewPlayer();
+    }
+    
+    private static void assertEquals3(long[] expected, long[] actual, String label) {
+        for (int category = 0; category < 3; category++) {
+            assertEquals(expected[category], actual[category], label + "（項目 " + category + "）");
+        }
+    }
+    
+    private static void await(List<Future<?>> futures) throws Exception {
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+}
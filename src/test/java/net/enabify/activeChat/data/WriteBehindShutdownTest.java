@@ -0,0 +1,135 @@
+package net.enabify.activeChat.data;
+
+import net.enabify.activeChat.testing.SimulatedClock;
+import net.enabify.activeChat.testing.SimulatedServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * シャットダウン時の保存の確認
+ * 実行中の保存が待ち時間を過ぎた場合はもう一度だけ待ち、それでも終わらなければ未保存の変更を書き出して諦める
+ */
+class WriteBehindShutdownTest {
+    private static final UUID SAVING = new UUID(0x4143L, 1);
+    private static final UUID PENDING = new UUID(0x4143L, 2);
+    private static final long TIMEOUT_MILLIS = 200;
+    // 実行中の保存にかかる時間（1回目の待ち時間より長く、2回目の待ち時間までには終わる）
+    private static final long SLOW_FLUSH_MILLIS = 300;
+    
+    @TempDir
+    File dataFolder;
+    
+    @Test
+    void secondWaitWritesPendingChanges() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PlayerDataManager dataManager = new PlayerDataManager(slowStore(flushing, release));
+        WriteBehindSaver saver = saver(dataManager);
+        
+        Thread periodic = startPeriodicFlush(dataManager, flushing);
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(SLOW_FLUSH_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        }, "release-flush");
+        releaser.start();
+        
+        assertTrue(saver.shutdown(TIMEOUT_MILLIS, recoveryFile()), "シャットダウン時の保存");
+        periodic.join();
+        releaser.join();
+        assertEquals(0, dataManager.getDirtyCount(), "未保存の変更");
+        assertFalse(recoveryFile().exists(), "書き出したファイル");
+        dataManager.close();
+        
+        // 保存先から読み直しても、どちらの変更も残っている
+        JsonPointsStore reopened = new JsonPointsStore(dataFolder, false);
+        assertEquals(10, reopened.get(SAVING).getNormalChat());
+        assertEquals(20, reopened.get(PENDING).getNormalChat());
+        reopened.close();
+    }
+    
+    /**
+     * 保存が終わらない場合も待ち続けず、未保存の変更を書き出して戻る
+     */
+    @Test
+    void stuckFlushDumpsPendingChanges() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PlayerDataManager dataManager = new PlayerDataManager(slowStore(flushing, release));
+        WriteBehindSaver saver = saver(dataManager);
+        
+        Thread periodic = startPeriodicFlush(dataManager, flushing);
+        long started = System.nanoTime();
+        assertFalse(saver.shutdown(TIMEOUT_MILLIS, recoveryFile()), "シャットダウン時の保存");
+        long waitedMillis = (System.nanoTime() - started) / 1_000_000;
+        assertTrue(waitedMillis < 10 * TIMEOUT_MILLIS, "待った時間: " + waitedMillis + "ms");
+        
+        // 書き込めていない変更はすべて、現在のポイントとして書き出されている
+        Map<UUID, PlayerPoints> dumped = new HashMap<>();
+        JsonPointsStore.readFile(recoveryFile(), dumped::put);
+        assertEquals(2, dumped.size(), "書き出した人数");
+        assertEquals(10, dumped.get(SAVING).getNormalChat());
+        assertEquals(20, dumped.get(PENDING).getNormalChat());
+        
+        release.countDown();
+        periodic.join();
+        dataManager.close();
+    }
+    
+    /**
+     * 最初の書き込みだけ、releaseが開くまで終わらないストア
+     */
+    private JsonPointsStore slowStore(CountDownLatch flushing, CountDownLatch release) {
+        return new JsonPointsStore(dataFolder, false) {
+            @Override
+            public int flush() throws IOException {
+                if (flushing.getCount() > 0) {
+                    flushing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.flush();
+            }
+        };
+    }
+    
+    private WriteBehindSaver saver(PlayerDataManager dataManager) {
+        WriteBehindSaver saver = new WriteBehindSaver(new SimulatedServer(new SimulatedClock(0)).plugin(),
+            dataManager, 30000, Integer.MAX_VALUE);
+        saver.start();
+        return saver;
+    }
+    
+    /**
+     * SAVINGの変更を書き込む定期保存を始め、書き込み中にPENDINGの変更を加える
+     */
+    private Thread startPeriodicFlush(PlayerDataManager dataManager, CountDownLatch flushing) throws InterruptedException {
+        dataManager.addNormalChatPoints(SAVING, 10);
+        Thread periodic = new Thread(dataManager::flush, "periodic-flush");
+        periodic.start();
+        flushing.await();
+        dataManager.addNormalChatPoints(PENDING, 20);
+        return periodic;
+    }
+    
+    private File recoveryFile() {
+        return new File(dataFolder, "playerPoints.recovery.json");
+    }
+}
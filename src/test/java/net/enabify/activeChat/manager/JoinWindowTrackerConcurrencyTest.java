@@ -0,0 +1,161 @@
+package net.enabify.activeChat.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JoinWindowTrackerの並行動作の確認
+ * Foliaのリージョンスレッドを模したスレッドがそれぞれ自分のリージョンで参加を記録し、
+ * チャットのスレッドを模したスレッドが同時に読み取って次の点を確かめる
+ * - 記録が終わった参加は、どのスレッドからもすぐに読める（サーバー全体・ワールド・近くのリージョン）
+ * - 読み取る時刻は後退しない
+ * - 遠くのリージョンや別のワールドの参加は、リージョン・ワールド単位の読み取りに混ざらない
+ * - 古い記録の削除（prune）と同時に記録しても、削除対象でない参加は失われない
+ */
+class JoinWindowTrackerConcurrencyTest {
+    private static final long RUN_MILLIS = 2000;
+    private static final int REGION_THREADS = 8;
+    private static final int CHAT_THREADS = 4;
+    // 1スレッドが受け持つリージョン数
+    private static final int REGIONS_PER_THREAD = 4;
+    // リージョンの1辺のブロック数（32チャンク）
+    private static final int REGION_BLOCKS = 32 * 16;
+    private static final int EVENT = 0;
+    
+    private final JoinWindowTracker tracker = new JoinWindowTracker(2, 32);
+    // 期待どおりでなかった内容（最初の10件だけ残す）
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private final AtomicLong failureCount = new AtomicLong();
+    
+    @Test
+    void concurrentRecordsAreVisibleAndIsolated() throws InterruptedException {
+        UUID world = UUID.randomUUID();
+        UUID otherWorld = UUID.randomUUID();
+        // 論理時刻（記録ごとに1ずつ進め、どの記録が新しいかを比べられるようにする）
+        AtomicLong clock = new AtomicLong(1);
+        // 削除の基準時刻（これより古い記録は消えていてよい）
+        AtomicLong pruneThreshold = new AtomicLong();
+        
+        // リージョンスレッドごとの位置と、記録を終えた最後の時刻
+        long[][] locations = new long[REGION_THREADS][REGIONS_PER_THREAD];
+        AtomicLongArray lastWritten = new AtomicLongArray(REGION_THREADS * REGIONS_PER_THREAD);
+        for (int t = 0; t < REGION_THREADS; t++) {
+            for (int r = 0; r < REGIONS_PER_THREAD; r++) {
+                // リージョンどうしが隣り合わないよう、4リージョンずつ離して配置する
+                locations[t][r] = tracker.locationKey(world, (t * REGIONS_PER_THREAD + r) * 4 * REGION_BLOCKS, 0);
+            }
+        }
+        long farAway = tracker.locationKey(world, 0, 1000 * REGION_BLOCKS);
+        long inOtherWorld = tracker.locationKey(otherWorld, 0, 0);
+        
+        AtomicLong reads = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        
+        for (int t = 0; t < REGION_THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                await(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int r = random.nextInt(REGIONS_PER_THREAD);
+                    long time = clock.getAndIncrement();
+                    tracker.record(EVENT, locations[thread][r], time);
+                    lastWritten.set(thread * REGIONS_PER_THREAD + r, time);
+                }
+            }, "region-" + t));
+        }
+        
+        for (int c = 0; c < CHAT_THREADS; c++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long previousGlobal = 0;
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    int thread = random.nextInt(REGION_THREADS);
+                    int r = random.nextInt(REGIONS_PER_THREAD);
+                    long written = lastWritten.get(thread * REGIONS_PER_THREAD + r);
+                    long location = locations[thread][r];
+                    
+                    long global = tracker.lastTime(EVENT, JoinWindowTracker.Scope.GLOBAL, location);
+                    check(global >= written, "サーバー全体の時刻が記録より古い", written, global);
+                    check(global >= previousGlobal, "サーバー全体の時刻が後退した", previousGlobal, global);
+                    previousGlobal = global;
+                    
+                    long worldTime = tracker.lastTime(EVENT, JoinWindowTracker.Scope.WORLD, location);
+                    long regionTime = tracker.lastTime(EVENT, JoinWindowTracker.Scope.REGION, location);
+                    // 削除の基準は読み取りの後に読む（読み取りより前の削除は必ず基準に反映されている）
+                    long threshold = pruneThreshold.get();
+                    check(worldTime >= written || written < threshold, "ワールドの時刻が記録より古い", written, worldTime);
+                    check(regionTime >= written || written < threshold, "リージョンの時刻が記録より古い", written, regionTime);
+                    
+                    long far = tracker.lastTime(EVENT, JoinWindowTracker.Scope.REGION, farAway);
+                    check(far == 0, "遠くのリージョンに参加が混ざった", 0, far);
+                    long other = tracker.lastTime(EVENT, JoinWindowTracker.Scope.WORLD, inOtherWorld);
+                    check(other == 0, "別のワールドに参加が混ざった", 0, other);
+                    count++;
+                }
+                reads.addAndGet(count);
+            }, "chat-" + c));
+        }
+        
+        // 古い記録の削除（JoinListenerの定期的な削除を模して、基準を上げながら繰り返す）
+        threads.add(new Thread(() -> {
+            await(start);
+            while (System.nanoTime() < deadline) {
+                long threshold = clock.get() - 10_000;
+                // 読み取る側が判定に使う基準は、削除より先に上げておく
+                pruneThreshold.accumulateAndGet(threshold, Math::max);
+                tracker.prune(threshold);
+                Thread.onSpinWait();
+            }
+        }, "prune"));
+        
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        // 最後の記録がすべて読めること
+        long threshold = pruneThreshold.get();
+        for (int t = 0; t < REGION_THREADS; t++) {
+            for (int r = 0; r < REGIONS_PER_THREAD; r++) {
+                long written = lastWritten.get(t * REGIONS_PER_THREAD + r);
+                long regionTime = tracker.lastTime(EVENT, JoinWindowTracker.Scope.REGION, locations[t][r]);
+                check(regionTime == written || written < threshold, "最後の記録が失われた", written, regionTime);
+            }
+        }
+        
+        assertTrue(reads.get() > 0, "読み取りが1回も行われていない");
+        assertTrue(failureCount.get() == 0, failureCount.get() + "件の失敗: " + failures);
+    }
+    
+    private void check(boolean ok, String message, long expected, long actual) {
+        if (!ok && failureCount.incrementAndGet() <= 10) {
+            failures.add(message + "（期待 " + expected + " / 実際 " + actual + "）");
+        }
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
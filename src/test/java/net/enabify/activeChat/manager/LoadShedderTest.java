@@ -0,0 +1,220 @@
+package net.enabify.activeChat.manager;
+
+import io.papermc.paper.event.player.AsyncChatEvent;
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PointsStore;
+import net.enabify.activeChat.data.WriteBehindSaver;
+import net.enabify.activeChat.listener.ChatListener;
+import net.enabify.activeChat.listener.JoinListener;
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.metrics.PluginMetrics;
+import net.enabify.activeChat.testing.CountingPointsStore;
+import net.enabify.activeChat.testing.SimulatedClock;
+import net.enabify.activeChat.testing.SimulatedServer;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * チャットが集中したときの負荷軽減モードの確認
+ * 同じチャットの集中を、負荷軽減モードありとなしで再生して比べる
+ */
+class LoadShedderTest {
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    private static final int PLAYERS = 200;
+    private static final int SPAMMERS = 3;
+    // 集中の前後は1秒に1件、集中している間は各プレイヤーが0.5秒ごとに送る（1秒あたり約400件）
+    private static final long FLOOD_FROM = 120_000;
+    private static final long FLOOD_TO = 150_000;
+    private static final long FLOOD_INTERVAL = 500;
+    // 集中の途中で新規さんが参加する（挨拶・歓迎の有効時間が始まる）
+    private static final long NEWCOMER_AT = 135_000;
+    private static final long END = 240_000;
+    
+    private record Chat(long offsetMillis, int player, String message) {}
+    
+    @TempDir
+    File dataFolder;
+    
+    @Test
+    void sheddingKeepsPointsAndMutesWhileSavingWork() {
+        List<Chat> chats = chats();
+        Run baseline = new Run(new File(dataFolder, "baseline"), false);
+        Run shedding = new Run(new File(dataFolder, "shedding"), true);
+        try {
+            baseline.replay(chats);
+            shedding.replay(chats);
+            
+            // 集中している間だけ負荷軽減モードになり、落ち着くと通常モードに戻る
+            assertEquals(1, shedding.loadShedder.getActivations(), "負荷軽減モードに切り替えた回数");
+            assertFalse(shedding.loadShedder.isShedding(), "終了時の負荷軽減モード");
+            // 事前判定で省略しても、プレイヤーごとの獲得ポイントは負荷軽減モードなしと同じ
+            assertEquals(baseline.awardedTotal(), shedding.awardedTotal(), "獲得ポイントの合計");
+            assertEquals(0, shedding.differingPlayers(baseline), "獲得ポイントが異なるプレイヤー");
+            // スパム検知を間引いても、連投するプレイヤーはミュートされる
+            assertEquals(SPAMMERS, shedding.muted.size(), "ミュートされた連投プレイヤー");
+            assertTrue(shedding.loadShedder.getPrefiltered() > 0, "事前判定で省略したチャット");
+            assertTrue(shedding.loadShedder.getSpamChecksSkipped() > 0, "スパム検知を省略したチャット");
+            // チャットのポイントの保存要求が減る
+            assertTrue(baseline.dataManager.getSavesSkipped() > shedding.dataManager.getSavesSkipped(), "保存要求");
+        } finally {
+            baseline.close();
+            shedding.close();
+        }
+    }
+    
+    /**
+     * 集中の前後と集中しているときのチャット（連投するプレイヤーは集中している間、同じメッセージを送り続ける）
+     */
+    private static List<Chat> chats() {
+        List<Chat> chats = new ArrayList<>();
+        int sequence = 0;
+        for (long t = 1_000; t < END; t += 1_000) {
+            if (t < FLOOD_FROM || t >= FLOOD_TO) {
+                int player = (int) (t / 1_000) % PLAYERS;
+                chats.add(new Chat(t, player, message(player, sequence++)));
+            }
+        }
+        for (int player = 0; player < PLAYERS + SPAMMERS; player++) {
+            // 送る時刻をプレイヤーごとにずらす
+            long offset = FLOOD_FROM + player * FLOOD_INTERVAL / (PLAYERS + SPAMMERS);
+            for (long t = offset; t < FLOOD_TO; t += FLOOD_INTERVAL) {
+                chats.add(new Chat(t, player, player < PLAYERS ? message(player, sequence++) : "買って買って！！www"));
+            }
+        }
+        chats.sort(Comparator.comparingLong(Chat::offsetMillis));
+        return chats;
+    }
+    
+    /**
+     * 毎回異なるメッセージ（10回に1回は挨拶と歓迎のキーワードを含む）
+     */
+    private static String message(int player, int sequence) {
+        return (sequence % 10 == 0 ? "こんにちは、よろしく " : "今日の雑談 ") + player + "-" + sequence;
+    }
+    
+    private static UUID uuid(String name) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 設定ファイルの既定値と同じ構成の1回分の再生
+     */
+    private static final class Run {
+        final SimulatedClock clock = new SimulatedClock(START_MILLIS);
+        final SimulatedServer server = new SimulatedServer(clock);
+        final CountingPointsStore store;
+        final PlayerDataManager dataManager;
+        final WriteBehindSaver writeBehindSaver;
+        final ScoreQueue scoreQueue;
+        final LoadShedder loadShedder;
+        final JoinListener joinListener;
+        final ChatListener chatListener;
+        final Player[] players = new Player[PLAYERS + SPAMMERS];
+        final Set<String> muted = new HashSet<>();
+        final File recoveryFile;
+        
+        Run(File dataFolder, boolean shedding) {
+            recoveryFile = new File(dataFolder, "playerPoints.recovery.json");
+            Plugin plugin = server.plugin();
+            store = new CountingPointsStore(new JsonPointsStore(dataFolder, false));
+            dataManager = new PlayerDataManager(store, new PluginMetrics());
+            writeBehindSaver = new WriteBehindSaver(plugin, dataManager, TimeUnit.SECONDS.toMillis(30), 500);
+            writeBehindSaver.start();
+            ExpiryWheel expiryWheel = new ExpiryWheel(plugin, 1000, clock);
+            expiryWheel.start();
+            PointsManager pointsManager = new PointsManager(
+                ScoringPlan.compile(ScoringRule.defaults(KeywordMatcher.defaultKeywords())), clock, 32, expiryWheel);
+            SessionManager sessionManager = new SessionManager(8, pointsManager.getRuleCount());
+            ActivityLog activity = new ActivityLog(plugin, clock, null);
+            scoreQueue = new ScoreQueue(plugin, dataManager, new Leaderboard(dataFolder, clock, ZoneOffset.UTC), 8192, 50);
+            scoreQueue.start();
+            loadShedder = new LoadShedder(plugin, clock, scoreQueue,
+                new LoadShedder.Settings(100, 500, 50, 200, TimeUnit.SECONDS.toMillis(30), 4, 1, 5000), 1000);
+            if (shedding) {
+                loadShedder.start();
+            }
+            MuteDispatcher muteDispatcher = new MuteDispatcher(plugin, "mute %player%") {
+                @Override
+                public void mute(String playerName) {
+                    muted.add(playerName);
+                    super.mute(playerName);
+                }
+            };
+            chatListener = new ChatListener(pointsManager, sessionManager,
+                new SpamDetector(TimeUnit.SECONDS.toMillis(60), 3), muteDispatcher, clock, new PluginMetrics(),
+                scoreQueue, activity, loadShedder);
+            PayoutQueue payoutQueue = new PayoutQueue(plugin, dataManager, (uuid, name, amount) -> true, 20, 1000, clock);
+            joinListener = new JoinListener(plugin, pointsManager, sessionManager, payoutQueue, clock, expiryWheel, activity);
+            for (int i = 0; i < players.length; i++) {
+                players[i] = join(i < PLAYERS ? "player" + i : "spammer" + (i - PLAYERS), true);
+            }
+        }
+        
+        Player join(String name, boolean playedBefore) {
+            Player player = server.player(uuid(name), name, new boolean[] {playedBefore});
+            joinListener.onPlayerJoin(new PlayerJoinEvent(player, ""));
+            return player;
+        }
+        
+        void replay(List<Chat> chats) {
+            boolean newcomer = false;
+            for (Chat chat : chats) {
+                if (!newcomer && chat.offsetMillis() >= NEWCOMER_AT) {
+                    server.advanceTo(START_MILLIS + NEWCOMER_AT);
+                    join("newcomer", false);
+                    newcomer = true;
+                }
+                server.advanceTo(START_MILLIS + chat.offsetMillis());
+                Component message = Component.text(chat.message());
+                chatListener.onPlayerChat(new AsyncChatEvent(true, players[chat.player()], new HashSet<>(), null,
+                    message, message, null));
+            }
+            server.advanceTo(START_MILLIS + END);
+            scoreQueue.stop();
+            writeBehindSaver.shutdown(5000, recoveryFile);
+        }
+        
+        long awardedTotal() {
+            return store.awarded(PointsStore.NORMAL_CHAT) + store.awarded(PointsStore.GREETING)
+                + store.awarded(PointsStore.WELCOME_NEW_PLAYER);
+        }
+        
+        int differingPlayers(Run other) {
+            int differing = 0;
+            for (Player player : players) {
+                UUID uuid = player.getUniqueId();
+                for (int category = 0; category < 3; category++) {
+                    if (store.awarded(uuid, category) != other.store.awarded(uuid, category)) {
+                        differing++;
+                        break;
+                    }
+                }
+            }
+            return differing;
+        }
+        
+        void close() {
+            dataManager.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package net.enabify.activeChat.manager;
+
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PayoutClaims;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.data.PlayerPoints;
+import net.enabify.activeChat.testing.BukkitStubs;
+import net.enabify.activeChat.testing.SimulatedClock;
+import net.enabify.activeChat.testing.SimulatedServer;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 参加時のポイント付与の確認
+ * 取得したポイントは、付与を確かめるまでプレイヤーか付与待ちの記録のどちらかに必ず保存されている
+ */
+class PayoutQueueTest {
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    private static final UUID ALICE = new UUID(0x4143L, 1);
+    
+    @TempDir
+    File dataFolder;
+    
+    private final SimulatedClock clock = new SimulatedClock(START_MILLIS);
+    private final List<Long> given = new ArrayList<>();
+    private PlayerDataManager dataManager;
+    private PayoutClaims claims;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, false));
+        claims = new PayoutClaims(new File(dataFolder, "payouts.pending"));
+        dataManager.addNormalChatPoints(ALICE, 10);
+        dataManager.addGreetingPoints(ALICE, 5);
+        dataManager.saveData();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        dataManager.close();
+    }
+    
+    @Test
+    void paidPointsAreClearedFromRecord() {
+        SimulatedServer server = new SimulatedServer(clock);
+        PayoutQueue queue = queue(server.plugin(), (uuid, name, amount) -> given.add(amount));
+        queue.enqueue(server.player(ALICE, "Alice", new boolean[] {true}));
+        queue.drain();
+        
+        assertEquals(List.of(15L), given);
+        assertEquals(0, dataManager.getPoints(ALICE).getTotal());
+        assertEquals(0, dataManager.getPoints(claims.key(ALICE)).getTotal(), "付与待ちの記録");
+        assertTrue(claims.players().isEmpty(), "付与待ちの一覧");
+        assertEquals(0, stored(ALICE).getTotal(), "保存したポイント");
+        assertEquals(0, stored(claims.key(ALICE)).getTotal(), "保存した付与待ちの記録");
+    }
+    
+    @Test
+    void failedPayoutIsRestored() {
+        SimulatedServer server = new SimulatedServer(clock);
+        PayoutQueue queue = queue(server.plugin(), (uuid, name, amount) -> false);
+        queue.enqueue(server.player(ALICE, "Alice", new boolean[] {true}));
+        queue.drain();
+        assertRestored();
+    }
+    
+    @Test
+    void payoutExceptionIsRestored() {
+        SimulatedServer server = new SimulatedServer(clock);
+        PayoutQueue queue = queue(server.plugin(), (uuid, name, amount) -> {
+            throw new IllegalStateException("付与の失敗（テスト）");
+        });
+        queue.enqueue(server.player(ALICE, "Alice", new boolean[] {true}));
+        queue.drain();
+        assertRestored();
+    }
+    
+    /**
+     * 付与前に停止した場合は、取得済みのバッチをその場で戻して保存する
+     */
+    @Test
+    void stopRestoresClaimedBatch() {
+        // グローバルリージョンのタスクを実行しないため、取得したバッチは付与されない
+        PayoutQueue queue = queue(BukkitStubs.plugin(), (uuid, name, amount) -> given.add(amount));
+        queue.enqueue(BukkitStubs.player(ALICE, "Alice"));
+        queue.drain();
+        
+        // リセットと付与待ちの記録は、付与より先に一緒に保存されている
+        assertEquals(0, stored(ALICE).getTotal(), "取得後に保存したポイント");
+        assertEquals(15, stored(claims.key(ALICE)).getTotal(), "取得後に保存した付与待ちの記録");
+        
+        queue.stop();
+        assertTrue(given.isEmpty(), "停止後の付与");
+        assertRestored();
+    }
+    
+    /**
+     * 付与を確かめる前に停止処理なしで止まった場合は、次回の起動時に付与待ちの記録を戻す
+     */
+    @Test
+    void restartRestoresUnconfirmedClaim() throws IOException {
+        PayoutQueue queue = queue(BukkitStubs.plugin(), (uuid, name, amount) -> given.add(amount));
+        queue.enqueue(BukkitStubs.player(ALICE, "Alice"));
+        queue.drain();
+        dataManager.close();
+        
+        // 保存済みの内容だけで再起動する
+        dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, false));
+        claims = new PayoutClaims(new File(dataFolder, "payouts.pending"));
+        assertEquals(List.of(ALICE), claims.players());
+        queue(BukkitStubs.plugin(), (uuid, name, amount) -> given.add(amount)).start();
+        
+        assertTrue(given.isEmpty(), "再起動時の付与");
+        assertRestored();
+    }
+    
+    private PayoutQueue queue(Plugin plugin, PointsPayout payout) {
+        return new PayoutQueue(plugin, dataManager, payout, 20, 0, clock, claims);
+    }
+    
+    /**
+     * ポイントがプレイヤーに戻り、付与待ちの記録が残っていないこと（メモリと保存先の両方）
+     */
+    private void assertRestored() {
+        PlayerPoints points = dataManager.getPoints(ALICE);
+        assertEquals(10, points.getNormalChat());
+        assertEquals(5, points.getGreeting());
+        assertEquals(0, dataManager.getPoints(claims.key(ALICE)).getTotal(), "付与待ちの記録");
+        assertTrue(claims.players().isEmpty(), "付与待ちの一覧");
+        assertEquals(15, stored(ALICE).getTotal(), "保存したポイント");
+        assertEquals(0, stored(claims.key(ALICE)).getTotal(), "保存した付与待ちの記録");
+    }
+    
+    /**
+     * 保存先から読み直したポイント
+     */
+    private PlayerPoints stored(UUID uuid) {
+        JsonPointsStore store = new JsonPointsStore(dataFolder, false);
+        try {
+            return store.get(uuid);
+        } finally {
+            try {
+                store.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
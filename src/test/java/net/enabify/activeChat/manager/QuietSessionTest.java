@@ -0,0 +1,66 @@
+package net.enabify.activeChat.manager;
+
+import net.enabify.activeChat.testing.BukkitStubs;
+import net.enabify.activeChat.testing.SimulatedClock;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 負荷軽減モードの事前判定（どのルールも獲得できないチャットの判定を省略する）の確認
+ * 判定を省略してよいのは、求めたときから出来事が無く、プレイヤーが動いていない間だけ
+ */
+class QuietSessionTest {
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    // リージョンの1辺のブロック数（32チャンク）
+    private static final int REGION_BLOCKS = 32 * 16;
+    
+    private final SimulatedClock clock = new SimulatedClock(START_MILLIS);
+    // 近くのリージョンの参加から60秒以内だけ獲得できる挨拶
+    private final PointsManager pointsManager = new PointsManager(ScoringPlan.compile(List.of(
+        new ScoringRule("greeting", ScoringRule.TRIGGER_CHAT, "greeting", 5, 0, 30000,
+            ScoringRule.EVENT_PLAYER_JOIN, 60000, JoinWindowTracker.Scope.REGION, List.of("こんにちは")))), clock, 32);
+    private final World world = BukkitStubs.stub(World.class, (proxy, method, args) ->
+        method.getName().equals("getUID") ? new UUID(0x4143L, 1) : BukkitStubs.defaultValue(method.getReturnType()));
+    private final long spawn = pointsManager.locationKey(new Location(world, 0, 64, 0));
+    private final long farAway = pointsManager.locationKey(new Location(world, 100 * REGION_BLOCKS, 64, 0));
+    
+    @Test
+    void movingIntoOpenWindowEndsQuiet() {
+        ChatSession session = new ChatSession(8, pointsManager.getRuleCount());
+        session.setLocationKey(farAway);
+        clock.set(START_MILLIS + 1000);
+        pointsManager.recordEvent(ScoringRule.EVENT_PLAYER_JOIN, spawn);
+        
+        // 遠くのリージョンでは有効時間が閉じているため、判定を省略できる
+        pointsManager.updateQuiet(session, START_MILLIS + 1500);
+        assertTrue(pointsManager.isQuiet(session, START_MILLIS + 1600));
+        
+        // 参加があったリージョンへ移動すると、省略せずに判定して挨拶のポイントを獲得する
+        session.setLocationKey(spawn);
+        assertFalse(pointsManager.isQuiet(session, START_MILLIS + 1700), "移動した後の事前判定");
+        long result = pointsManager.evaluateChat(session, "こんにちは", START_MILLIS + 1700);
+        assertEquals(5, ScoringPlan.points(result, ScoringPlan.GREETING));
+    }
+    
+    @Test
+    void newEventEndsQuiet() throws InterruptedException {
+        ChatSession session = new ChatSession(8, pointsManager.getRuleCount());
+        session.setLocationKey(spawn);
+        pointsManager.updateQuiet(session, START_MILLIS);
+        assertTrue(pointsManager.isQuiet(session, START_MILLIS + 100));
+        
+        // 別のスレッドからの記録でも版が変わる
+        Thread region = new Thread(() -> pointsManager.recordEvent(ScoringRule.EVENT_PLAYER_JOIN, spawn));
+        region.start();
+        region.join();
+        assertFalse(pointsManager.isQuiet(session, START_MILLIS + 200), "参加を記録した後の事前判定");
+    }
+}
@@ -0,0 +1,50 @@
+package net.enabify.activeChat.manager;
+
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 満杯になった加算待ちの確認
+ * 満杯の分はチャットのスレッドで加算せずに破棄して数え、キューに入った分だけが取り出しで加算される
+ */
+class ScoreQueueTest {
+    private static final UUID PLAYER = new UUID(0x4143L, 1);
+    
+    @TempDir
+    File dataFolder;
+    
+    @Test
+    void dropsWhenFullInsteadOfApplyingInline() throws Exception {
+        PlayerDataManager dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, false));
+        try {
+            // 取り出しを開始しないため、満杯になっても空かない
+            ScoreQueue queue = new ScoreQueue(null, dataManager, new Leaderboard(dataFolder, Clock.systemUTC(), ZoneOffset.UTC), 4, 50);
+            for (int i = 0; i < 6; i++) {
+                queue.publish(PLAYER, "player", 1, 0, 0);
+            }
+            assertEquals(4, queue.getPublished());
+            assertEquals(2, queue.getDropped());
+            // 破棄した分はその場で加算されていない
+            assertEquals(0, dataManager.getPoints(PLAYER).getNormalChat());
+            
+            queue.drain();
+            assertEquals(4, dataManager.getPoints(PLAYER).getNormalChat());
+            assertEquals(0, queue.size());
+            
+            // 取り出した後は再び追加できる
+            queue.publish(PLAYER, "player", 1, 0, 0);
+            assertEquals(1, queue.size());
+        } finally {
+            dataManager.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package net.enabify.activeChat.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ルールの検証の確認
+ */
+class ScoringPlanTest {
+    
+    /**
+     * keywords を指定したルールがキーワード判定の上限を超える場合は、超えたルールの名前で失敗する
+     */
+    @Test
+    void tooManyKeywordRulesNameTheRule() {
+        List<ScoringRule> rules = keywordRules(KeywordMatcher.MAX_CATEGORIES);
+        assertEquals(KeywordMatcher.MAX_CATEGORIES, ScoringPlan.compile(rules).getRuleCount());
+        
+        rules.add(keywordRule(KeywordMatcher.MAX_CATEGORIES));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ScoringPlan.compile(rules));
+        assertTrue(e.getMessage().startsWith("rule-" + KeywordMatcher.MAX_CATEGORIES + ": "), e.getMessage());
+    }
+    
+    private static List<ScoringRule> keywordRules(int count) {
+        List<ScoringRule> rules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rules.add(keywordRule(i));
+        }
+        return rules;
+    }
+    
+    private static ScoringRule keywordRule(int i) {
+        return new ScoringRule("rule-" + i, ScoringRule.TRIGGER_CHAT, "greeting", 1, 0, 0, null, 0,
+            JoinWindowTracker.Scope.GLOBAL, List.of("%word" + i + "%"));
+    }
+}
@@ -0,0 +1,30 @@
+package net.enabify.activeChat.manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * オンライン中のプレイヤーのチャット状態の管理の確認
+ */
+class SessionManagerTest {
+    private final SessionManager sessionManager = new SessionManager(8, 3);
+    private final UUID uuid = UUID.randomUUID();
+    
+    /**
+     * 退出後に届いたチャットで状態を作り直さない（保持する数がオンライン人数を超えない）
+     */
+    @Test
+    void getAfterQuitDoesNotReopen() {
+        ChatSession session = sessionManager.open(uuid);
+        assertSame(session, sessionManager.get(uuid));
+        
+        sessionManager.close(uuid);
+        assertNull(sessionManager.get(uuid), "退出後の状態");
+        assertEquals(0, sessionManager.size(), "退出後に保持している状態の数");
+    }
+}
@@ -0,0 +1,83 @@
+package net.enabify.activeChat.metrics;
+
+import net.enabify.activeChat.testing.SimulatedClock;
+import net.enabify.activeChat.testing.SimulatedServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * チャット活動のファイルへの書き込みの確認
+ */
+class ActivityLogTest {
+    // 分の区切りちょうどの時刻
+    private static final long START_MILLIS = 28_333_333L * 60_000;
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    @TempDir
+    File dataFolder;
+    
+    /**
+     * 1分ぶんの書き込みが途中で失敗しても、再試行で書き込めた項目を重複して加算しない
+     */
+    @Test
+    void retryAfterPartialWriteDoesNotDoubleCount() throws IOException {
+        SimulatedClock clock = new SimulatedClock(START_MILLIS);
+        SimulatedServer server = new SimulatedServer(clock);
+        FailingFile file = new FailingFile(new File(dataFolder, "activity.dat"));
+        ActivityLog activity = new ActivityLog(server.plugin(), clock, file);
+        activity.start();
+        
+        long minute = activity.getCurrentMinute();
+        activity.recordChat(true, true, false);
+        activity.record(ActivityLog.MUTES);
+        // 最初の書き込みはチャット数だけ書き込んで失敗し、次の書き込みで残りを書き込む
+        file.failNext = true;
+        server.advanceTo(START_MILLIS + 3 * MINUTE_MILLIS);
+        assertEquals(1, file.failures, "失敗した書き込み");
+        
+        long[] values = activity.query(minute, minute + 1, 1)[0];
+        assertEquals(1, values[ActivityLog.CHATS], "チャット数");
+        assertEquals(1, values[ActivityLog.QUALIFYING_CHATS], "ポイント対象のチャット数");
+        assertEquals(1, values[ActivityLog.GREETINGS], "挨拶");
+        assertEquals(1, values[ActivityLog.MUTES], "ミュート");
+        // ファイルだけから読んでも同じ
+        long[][] stored = new long[1][ActivityLog.COLUMNS];
+        file.sum(minute, minute + 1, 1, stored);
+        assertEquals(1, stored[0][ActivityLog.CHATS], "ファイルのチャット数");
+        assertEquals(1, stored[0][ActivityLog.MUTES], "ファイルのミュート");
+        activity.stop();
+    }
+    
+    /**
+     * 次の書き込みを、最初の項目だけ書き込んだところで失敗させるファイル
+     */
+    private static final class FailingFile extends ActivityFile {
+        boolean failNext;
+        int failures;
+        
+        FailingFile(File file) throws IOException {
+            super(file, ActivityLog.COLUMNS);
+        }
+        
+        @Override
+        public void add(long minute, long[] values) throws IOException {
+            if (!failNext) {
+                super.add(minute, values);
+                return;
+            }
+            failNext = false;
+            failures++;
+            long[] first = new long[values.length];
+            first[0] = values[0];
+            super.add(minute, first);
+            values[0] = 0;
+            throw new IOException("書き込みの失敗（テスト）");
+        }
+    }
+}
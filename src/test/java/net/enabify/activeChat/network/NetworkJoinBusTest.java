@@ -0,0 +1,197 @@
+package net.enabify.activeChat.network;
+
+import net.enabify.activeChat.data.JsonPointsStore;
+import net.enabify.activeChat.data.PlayerDataManager;
+import net.enabify.activeChat.listener.JoinListener;
+import net.enabify.activeChat.manager.ExpiryWheel;
+import net.enabify.activeChat.manager.KeywordMatcher;
+import net.enabify.activeChat.manager.PayoutQueue;
+import net.enabify.activeChat.manager.PointsManager;
+import net.enabify.activeChat.manager.ScoringPlan;
+import net.enabify.activeChat.manager.ScoringRule;
+import net.enabify.activeChat.manager.SessionManager;
+import net.enabify.activeChat.metrics.ActivityLog;
+import net.enabify.activeChat.testing.SimulatedClock;
+import net.enabify.activeChat.testing.SimulatedServer;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * NetworkJoinBusでつないだ複数サーバーの参加の扱いの確認（LoopbackTransportで同じプロセス内につなぐ）
+ * 新規さんはロビーに入るため、新規プレイヤーを判定するのはロビーだけにする
+ */
+class NetworkJoinBusTest {
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    private static final long BATCH_INTERVAL_MILLIS = 250;
+    private static final long STEP_MILLIS = 50;
+    // 参加の有効時間（既定値の5分）が終わるまで待つ時間
+    private static final long AFTER_WINDOW_MILLIS = 400_000;
+    private static final int STORM_PLAYERS = 500;
+    
+    private final SimulatedClock clock = new SimulatedClock(START_MILLIS);
+    private final LoopbackTransport.Network network = new LoopbackTransport.Network();
+    
+    @TempDir
+    File dataFolder;
+    
+    private PlayerDataManager dataManager;
+    private Node hub;
+    private Node survival;
+    private Node creative;
+    private List<Node> nodes;
+    
+    @BeforeEach
+    void setUp() {
+        dataManager = new PlayerDataManager(new JsonPointsStore(dataFolder, false));
+        hub = new Node(true);
+        survival = new Node(false);
+        creative = new Node(false);
+        nodes = List.of(hub, survival, creative);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        for (Node node : nodes) {
+            node.bus.stop();
+        }
+        dataManager.close();
+    }
+    
+    /**
+     * ロビーに参加した新規さんを、別のサーバーのプレイヤーが歓迎するとポイントの対象になる
+     */
+    @Test
+    void remoteNewcomerCanBeWelcomed() {
+        Player bob = survival.join("Bob", true);
+        advance(AFTER_WINDOW_MILLIS);
+        
+        hub.join("Alice", false);
+        advance(AFTER_WINDOW_MILLIS + 500);
+        long result = survival.chat(bob, "082よろしく");
+        assertEquals(50, ScoringPlan.points(result, ScoringPlan.WELCOME_NEW_PLAYER), "他のサーバーの新規さんへの歓迎");
+        assertEquals(5, ScoringPlan.points(result, ScoringPlan.GREETING), "他のサーバーの参加への挨拶");
+    }
+    
+    /**
+     * サーバーの移動は参加として数えず、通知も送らない
+     */
+    @Test
+    void serverSwitchIsNotAnnounced() {
+        Player alice = hub.join("Alice", false);
+        advance(20_000);
+        long sentBefore = survival.bus.getEventsSent();
+        hub.quit(alice);
+        survival.join("Alice", false);
+        advance(21_000);
+        assertEquals(0, survival.bus.getEventsSent() - sentBefore, "サーバーの移動で送った通知");
+    }
+    
+    /**
+     * 他のサーバーで遊んだことのあるプレイヤーが初めて入ったサーバーでは、新規さんとして扱わない
+     */
+    @Test
+    void veteranIsNotNewOnFirstVisit() {
+        Player bob = survival.join("Bob", true);
+        advance(AFTER_WINDOW_MILLIS);
+        
+        creative.join("Carol", false);
+        advance(AFTER_WINDOW_MILLIS + 500);
+        long result = survival.chat(bob, "082 welcome!");
+        assertEquals(0, ScoringPlan.points(result, ScoringPlan.WELCOME_NEW_PLAYER), "初めて入ったサーバーでのベテランへの歓迎");
+        assertEquals(5, ScoringPlan.points(result, ScoringPlan.GREETING), "初めて入ったサーバーでのベテランへの挨拶");
+    }
+    
+    /**
+     * 参加が集中しても、通知はまとめる間隔ごとにサーバーあたり1通（受け取るのは他の2サーバー）
+     */
+    @Test
+    void joinStormIsBatched() {
+        advance(1_000);
+        for (int i = 0; i < STORM_PLAYERS; i++) {
+            for (Node node : nodes) {
+                node.join("storm" + nodes.indexOf(node) + "-" + i, true);
+            }
+        }
+        advance(1_000 + BATCH_INTERVAL_MILLIS);
+        
+        long messages = 0;
+        for (Node node : nodes) {
+            messages += node.bus.getMessagesSent();
+        }
+        assertEquals(nodes.size(), messages, "参加の集中で送った通知");
+        assertEquals(nodes.size() * (nodes.size() - 1), network.getDeliveries(), "参加の集中で届いた通知");
+        assertEquals(2L * STORM_PLAYERS, hub.bus.getEventsReceived(), "参加の集中でロビーに届いた参加");
+    }
+    
+    /**
+     * 全サーバーの模擬時計を少しずつ進める（サーバー間の通知の順序を実際に近づける）
+     */
+    private void advance(long offsetMillis) {
+        long target = START_MILLIS + offsetMillis;
+        long now = clock.millis();
+        while (now < target) {
+            now = Math.min(target, now + STEP_MILLIS);
+            for (Node node : nodes) {
+                node.server.advanceTo(now);
+            }
+            clock.set(now);
+        }
+    }
+    
+    /**
+     * ネットワーク内の1サーバー（設定ファイルの既定値と同じ構成）
+     */
+    private final class Node {
+        final SimulatedServer server = new SimulatedServer(clock);
+        final PointsManager pointsManager;
+        final SessionManager sessionManager;
+        final NetworkJoinBus bus;
+        final JoinListener joinListener;
+        
+        Node(boolean detectNewPlayers) {
+            ExpiryWheel expiryWheel = new ExpiryWheel(server.plugin(), 1000, clock);
+            expiryWheel.start();
+            pointsManager = new PointsManager(ScoringPlan.compile(ScoringRule.defaults(KeywordMatcher.defaultKeywords())),
+                clock, 32, expiryWheel);
+            sessionManager = new SessionManager(8, pointsManager.getRuleCount());
+            bus = new NetworkJoinBus(server.plugin(), new LoopbackTransport(network), pointsManager, clock, expiryWheel,
+                TimeUnit.MINUTES.toMillis(5), BATCH_INTERVAL_MILLIS, detectNewPlayers);
+            bus.start();
+            PayoutQueue payoutQueue = new PayoutQueue(server.plugin(), dataManager, (uuid, name, amount) -> true,
+                20, 1000, clock);
+            joinListener = new JoinListener(server.plugin(), pointsManager, sessionManager, payoutQueue, clock,
+                expiryWheel, new ActivityLog(server.plugin(), clock, null), bus);
+        }
+        
+        /**
+         * @param playedBefore このサーバーで遊んだことがあるかどうか
+         */
+        Player join(String name, boolean playedBefore) {
+            UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+            Player player = server.player(uuid, name, new boolean[] {playedBefore});
+            joinListener.onPlayerJoin(new PlayerJoinEvent(player, ""));
+            return player;
+        }
+        
+        void quit(Player player) {
+            joinListener.onPlayerQuit(new PlayerQuitEvent(player, ""));
+        }
+        
+        long chat(Player player, String message) {
+            return pointsManager.evaluateChat(sessionManager.get(player.getUniqueId()), message, clock.millis());
+        }
+    }
+}
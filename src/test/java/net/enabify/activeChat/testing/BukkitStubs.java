@@ -0,0 +1,100 @@
+package net.enabify.activeChat.testing;
+
+import io.papermc.paper.threadedregions.scheduler.AsyncScheduler;
+import io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * サーバーを起動せずにリスナーを動かすための最小限のBukkitスタブ（テストとベンチマークで共通）
+ * - 非同期スケジューラーのrunNowは呼び出したスレッドでそのまま実行する
+ * - グローバルリージョンスケジューラーと定期実行は何もしない（コマンド実行や定期保存は計測しない）
+ * - それ以外のメソッドは既定値（null / 0 / false）を返す
+ */
+public final class BukkitStubs {
+    private BukkitStubs() {}
+    
+    public static Plugin plugin() {
+        AsyncScheduler asyncScheduler = stub(AsyncScheduler.class, (proxy, method, args) -> {
+            if (method.getName().equals("runNow")) {
+                @SuppressWarnings("unchecked")
+                Consumer<ScheduledTask> task = (Consumer<ScheduledTask>) args[1];
+                task.accept(null);
+            }
+            return null;
+        });
+        GlobalRegionScheduler globalScheduler = stub(GlobalRegionScheduler.class, (proxy, method, args) -> null);
+        Server server = stub(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getAsyncScheduler" -> asyncScheduler;
+            case "getGlobalRegionScheduler" -> globalScheduler;
+            default -> defaultValue(method.getReturnType());
+        });
+        Logger logger = Logger.getLogger("ActiveChat-benchmark");
+        return stub(Plugin.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getServer" -> server;
+            case "getLogger" -> logger;
+            case "getName" -> "ActiveChat";
+            case "isEnabled" -> true;
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+    
+    public static Player player(UUID uuid, String name) {
+        return stub(Player.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> uuid;
+            case "getName" -> name;
+            case "hasPlayedBefore", "isOnline" -> true;
+            case "equals" -> proxy == args[0];
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+    
+    public static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class && !method.getName().equals("equals")) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "toString" -> type.getSimpleName() + "Stub";
+                    default -> null;
+                };
+            }
+            return handler.invoke(proxy, method, args);
+        }));
+    }
+    
+    public static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
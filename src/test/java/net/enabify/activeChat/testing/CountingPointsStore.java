@@ -0,0 +1,114 @@
+package net.enabify.activeChat.testing;
+
+import net.enabify.activeChat.data.PlayerPoints;
+import net.enabify.activeChat.data.PointsStore;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * 加算されたポイントを数えるストア（実際の保存は元のストアに任せる）
+ * 付与に失敗して戻したポイントも加算として数える（再生では付与は失敗しない）
+ * 再生は1スレッドで行うため、スレッド安全にはしていない
+ */
+public final class CountingPointsStore implements PointsStore {
+    private final PointsStore delegate;
+    // 項目ごとの獲得ポイントの合計
+    private final long[] awarded = new long[3];
+    // プレイヤーごと・項目ごとの獲得ポイント
+    private final Map<UUID, long[]> awardedByPlayer = new HashMap<>();
+    
+    public CountingPointsStore(PointsStore delegate) {
+        this.delegate = delegate;
+    }
+    
+    public long awarded(int category) {
+        return awarded[category];
+    }
+    
+    public long awarded(UUID uuid, int category) {
+        long[] points = awardedByPlayer.get(uuid);
+        return points != null ? points[category] : 0;
+    }
+    
+    @Override
+    public PlayerPoints get(UUID uuid) {
+        return delegate.get(uuid);
+    }
+    
+    @Override
+    public void add(UUID uuid, int category, int points) {
+        if (points > 0) {
+            awarded[category] += points;
+            awardedByPlayer.computeIfAbsent(uuid, k -> new long[3])[category] += points;
+        }
+        delegate.add(uuid, category, points);
+    }
+    
+    @Override
+    public PlayerPoints getAndReset(UUID uuid) {
+        return delegate.getAndReset(uuid);
+    }
+    
+    /**
+     * 付与待ちの記録へ移すポイントは獲得として数えない
+     */
+    @Override
+    public PlayerPoints getAndMove(UUID from, UUID to) {
+        return delegate.getAndMove(from, to);
+    }
+    
+    @Override
+    public int flush() throws IOException {
+        return delegate.flush();
+    }
+    
+    @Override
+    public int save() throws IOException {
+        return delegate.save();
+    }
+    
+    @Override
+    public int prune(Predicate<UUID> keep) throws IOException {
+        return delegate.prune(keep);
+    }
+    
+    @Override
+    public int residentCount() {
+        return delegate.residentCount();
+    }
+    
+    @Override
+    public int pendingCount() {
+        return delegate.pendingCount();
+    }
+    
+    @Override
+    public Set<UUID> pendingPlayers() {
+        return delegate.pendingPlayers();
+    }
+    
+    @Override
+    public long bytesWritten() {
+        return delegate.bytesWritten();
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+    
+    @Override
+    public void importPoints(UUID uuid, PlayerPoints points) {
+        delegate.importPoints(uuid, points);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
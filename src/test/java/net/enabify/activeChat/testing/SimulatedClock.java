@@ -0,0 +1,42 @@
+package net.enabify.activeChat.testing;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * 再生用の模擬時計
+ * 時刻は再生側が進めるため、実時間より速く再生できる
+ */
+public final class SimulatedClock extends Clock {
+    private volatile long millis;
+    
+    public SimulatedClock(long startMillis) {
+        this.millis = startMillis;
+    }
+    
+    public void set(long millis) {
+        this.millis = millis;
+    }
+    
+    @Override
+    public long millis() {
+        return millis;
+    }
+    
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+    
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+    
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+}
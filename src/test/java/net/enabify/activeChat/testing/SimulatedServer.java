@@ -0,0 +1,193 @@
+package net.enabify.activeChat.testing;
+
+import io.papermc.paper.threadedregions.scheduler.AsyncScheduler;
+import io.papermc.paper.threadedregions.scheduler.EntityScheduler;
+import io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.ServicesManager;
+
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * 再生用のサーバーとスケジューラーのスタブ（テストとベンチマークで共通）
+ * - runNow / run はその場で実行する
+ * - 遅延・定期実行のタスクは模擬時計の時刻表に登録し、advanceToで時刻が来たものを実行する
+ * - 各スケジューラーのタスク数とコマンド実行数を数える
+ * 再生は1スレッドで行うため、スレッド安全にはしていない
+ */
+public final class SimulatedServer {
+    private static final long TICK_MILLIS = 50;
+    
+    private final SimulatedClock clock;
+    private final PriorityQueue<TimedTask> timeline = new PriorityQueue<>();
+    private long sequence;
+    
+    private long asyncTasks;
+    private long globalTasks;
+    private long entityTasks;
+    private long timedRuns;
+    private long commands;
+    
+    private final Plugin plugin;
+    private final EntityScheduler entityScheduler;
+    
+    public SimulatedServer(SimulatedClock clock) {
+        this.clock = clock;
+        AsyncScheduler asyncScheduler = BukkitStubs.stub(AsyncScheduler.class, (proxy, method, args) -> {
+            asyncTasks++;
+            return switch (method.getName()) {
+                case "runNow" -> runNow(task(args[1]));
+                case "runDelayed" -> schedule(task(args[1]), ((TimeUnit) args[3]).toMillis((long) args[2]), 0);
+                case "runAtFixedRate" -> schedule(task(args[1]), ((TimeUnit) args[4]).toMillis((long) args[2]),
+                    ((TimeUnit) args[4]).toMillis((long) args[3]));
+                default -> null;
+            };
+        });
+        GlobalRegionScheduler globalScheduler = BukkitStubs.stub(GlobalRegionScheduler.class, (proxy, method, args) -> {
+            globalTasks++;
+            return switch (method.getName()) {
+                case "execute" -> {
+                    ((Runnable) args[1]).run();
+                    yield null;
+                }
+                case "run" -> runNow(task(args[1]));
+                case "runDelayed" -> schedule(task(args[1]), (long) args[2] * TICK_MILLIS, 0);
+                case "runAtFixedRate" -> schedule(task(args[1]), (long) args[2] * TICK_MILLIS, (long) args[3] * TICK_MILLIS);
+                default -> null;
+            };
+        });
+        entityScheduler = BukkitStubs.stub(EntityScheduler.class, (proxy, method, args) -> {
+            entityTasks++;
+            return switch (method.getName()) {
+                case "execute" -> {
+                    ((Runnable) args[1]).run();
+                    yield true;
+                }
+                case "run" -> runNow(task(args[1]));
+                case "runDelayed" -> schedule(task(args[1]), (long) args[3] * TICK_MILLIS, 0);
+                default -> null;
+            };
+        });
+        ServicesManager servicesManager = BukkitStubs.stub(ServicesManager.class, (proxy, method, args) -> null);
+        Server server = BukkitStubs.stub(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getAsyncScheduler" -> asyncScheduler;
+            case "getGlobalRegionScheduler" -> globalScheduler;
+            case "getServicesManager" -> servicesManager;
+            case "dispatchCommand" -> {
+                commands++;
+                yield true;
+            }
+            default -> BukkitStubs.defaultValue(method.getReturnType());
+        });
+        Logger logger = Logger.getLogger("ActiveChat-replay");
+        plugin = BukkitStubs.stub(Plugin.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getServer" -> server;
+            case "getLogger" -> logger;
+            case "getName" -> "ActiveChat";
+            case "isEnabled" -> true;
+            default -> BukkitStubs.defaultValue(method.getReturnType());
+        });
+    }
+    
+    public Plugin plugin() {
+        return plugin;
+    }
+    
+    /**
+     * スケジューラーごとのタスク数・時刻表から実行した回数・コマンド実行数の要約
+     */
+    public String summary() {
+        return String.format("非同期 %d / グローバル %d / エンティティ %d / 予約実行 %d / コマンド %d",
+            asyncTasks, globalTasks, entityTasks, timedRuns, commands);
+    }
+    
+    /**
+     * 再生用のプレイヤーを作成する（エンティティスケジューラーは共通）
+     */
+    public Player player(UUID uuid, String name, boolean[] playedBefore) {
+        return BukkitStubs.stub(Player.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> uuid;
+            case "getName" -> name;
+            case "hasPlayedBefore" -> playedBefore[0];
+            case "isOnline" -> true;
+            case "getScheduler" -> entityScheduler;
+            case "equals" -> proxy == args[0];
+            default -> BukkitStubs.defaultValue(method.getReturnType());
+        });
+    }
+    
+    /**
+     * 指定した時刻までに実行予定のタスクを時刻順に実行し、時計を進める
+     */
+    public void advanceTo(long millis) {
+        TimedTask next;
+        while ((next = timeline.peek()) != null && next.dueMillis <= millis) {
+            timeline.poll();
+            if (next.cancelled) {
+                continue;
+            }
+            clock.set(Math.max(clock.millis(), next.dueMillis));
+            timedRuns++;
+            next.action.accept(next.handle);
+            if (next.periodMillis > 0 && !next.cancelled) {
+                next.dueMillis += next.periodMillis;
+                next.sequence = sequence++;
+                timeline.add(next);
+            }
+        }
+        clock.set(Math.max(clock.millis(), millis));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Consumer<ScheduledTask> task(Object argument) {
+        return (Consumer<ScheduledTask>) argument;
+    }
+    
+    private ScheduledTask runNow(Consumer<ScheduledTask> action) {
+        ScheduledTask handle = BukkitStubs.stub(ScheduledTask.class, (proxy, method, args) -> BukkitStubs.defaultValue(method.getReturnType()));
+        action.accept(handle);
+        return handle;
+    }
+    
+    private ScheduledTask schedule(Consumer<ScheduledTask> action, long delayMillis, long periodMillis) {
+        TimedTask task = new TimedTask(action, clock.millis() + Math.max(0, delayMillis), periodMillis, sequence++);
+        task.handle = BukkitStubs.stub(ScheduledTask.class, (proxy, method, args) -> {
+            if (method.getName().equals("cancel")) {
+                task.cancelled = true;
+                return ScheduledTask.CancelledState.CANCELLED_BY_CALLER;
+            }
+            return BukkitStubs.defaultValue(method.getReturnType());
+        });
+        timeline.add(task);
+        return task.handle;
+    }
+    
+    private static final class TimedTask implements Comparable<TimedTask> {
+        final Consumer<ScheduledTask> action;
+        final long periodMillis;
+        long dueMillis;
+        long sequence;
+        boolean cancelled;
+        ScheduledTask handle;
+        
+        TimedTask(Consumer<ScheduledTask> action, long dueMillis, long periodMillis, long sequence) {
+            this.action = action;
+            this.dueMillis = dueMillis;
+            this.periodMillis = periodMillis;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public int compareTo(TimedTask other) {
+            int byTime = Long.compare(dueMillis, other.dueMillis);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}